@@ -0,0 +1,198 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.benchmark;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.dom4j.DocumentException;
+import static org.dom4j.DocumentHelper.parseText;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.actionsequence.dom.ActionInput;
+import org.pentaho.actionsequence.dom.ActionSequenceDocument;
+import org.pentaho.actionsequence.dom.IActionDefinition;
+import org.pentaho.actionsequence.dom.IActionInput;
+import org.pentaho.actionsequence.dom.IActionOutput;
+import org.pentaho.actionsequence.dom.IActionResource;
+import org.pentaho.actionsequence.dom.IActionSequenceExecutableStatement;
+import org.pentaho.actionsequence.dom.actions.CachingActionParameterMgr;
+import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+import org.pentaho.actionsequence.dom.actions.ITemplateParameterMgr;
+import org.pentaho.commons.connection.IPentahoStreamSource;
+
+/**
+ * Benchmarks for reading the values of the action inputs of a generated action
+ * sequence, as components do inside loops, with and without a
+ * <code>CachingActionParameterMgr</code>, and through compiled parameter
+ * templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionInputBenchmark {
+
+    @Param({"100", "1000"})
+    public int actions;
+
+    @Param({"8"})
+    public int ios;
+
+    private ActionInput[] inputs;
+
+    private ActionInput[] cachedInputs;
+
+    private ActionInput[] templateInputs;
+
+    @Setup
+    public void setUp() throws DocumentException {
+        ActionSequenceDocument doc = new ActionSequenceDocument(parseText(
+                ActionSequenceGenerator.generateXml(actions, 1, ios)));
+        IActionParameterMgr actionParameterMgr = new TemplateParameterMgr();
+        CachingActionParameterMgr cache = new CachingActionParameterMgr(actionParameterMgr);
+        ArrayList elements = new ArrayList();
+        IActionSequenceExecutableStatement[] children = doc.getExecutableChildren();
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] instanceof IActionDefinition) {
+                IActionInput[] actionInputs = ((IActionDefinition) children[i]).getInputs();
+                for (int j = 0; j < actionInputs.length; j++) {
+                    if (actionInputs[j] instanceof ActionInput) {
+                        elements.add(((ActionInput) actionInputs[j]).getElement());
+                    }
+                }
+            }
+        }
+        inputs = new ActionInput[elements.size()];
+        cachedInputs = new ActionInput[elements.size()];
+        templateInputs = new ActionInput[elements.size()];
+        IActionParameterMgr templateParameterMgr = new CompiledTemplateParameterMgr();
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new ActionInput((Element) elements.get(i), actionParameterMgr);
+            cachedInputs[i] = new ActionInput((Element) elements.get(i), cache);
+            templateInputs[i] = new ActionInput((Element) elements.get(i), templateParameterMgr);
+        }
+    }
+
+    @Benchmark
+    public int readInputs() {
+        return read(inputs);
+    }
+
+    @Benchmark
+    public int readCachedInputs() {
+        return read(cachedInputs);
+    }
+
+    @Benchmark
+    public int readTemplateInputs() {
+        return read(templateInputs);
+    }
+
+    private static int read(ActionInput[] inputs) {
+        int total = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            total += inputs[i].getIntValue(0);
+            if (inputs[i].getBooleanValue(false)) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Resolves every input to a template that refers to a parameter, the way
+     * inputs holding queries or messages do, and substitutes the parameters
+     * from a map.
+     */
+    private static class TemplateParameterMgr implements IActionParameterMgr {
+
+        final HashMap parameters = new HashMap();
+
+        @Override
+        public Object getInputValue(IActionInput actionInput) {
+            String name = ((ActionInput) actionInput).getReferencedVariableName();
+            if (!parameters.containsKey(name)) {
+                parameters.put(name, String.valueOf(parameters.size()));
+            }
+            return "{" + name + "}"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        @Override
+        public String replaceParameterReferences(String inputString) {
+            StringBuilder result = new StringBuilder();
+            int start = 0;
+            int open = inputString.indexOf('{');
+            while (open >= 0) {
+                int close = inputString.indexOf('}', open);
+                if (close < 0) {
+                    break;
+                }
+                result.append(inputString, start, open);
+                Object value = parameters.get(inputString.substring(open + 1, close));
+                result.append(value != null ? value : inputString.substring(open, close + 1));
+                start = close + 1;
+                open = inputString.indexOf('{', start);
+            }
+            return result.append(inputString, start, inputString.length()).toString();
+        }
+
+        @Override
+        public IPentahoStreamSource getDataSource(IActionResource actionResource) {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream(IActionResource actionResource) {
+            return null;
+        }
+
+        @Override
+        public IPentahoStreamSource getDataSource(IActionInput actionInput) {
+            return null;
+        }
+
+        @Override
+        public void setOutputValue(IActionOutput actionOutput, Object value) {
+        }
+
+        @Override
+        public String getString(IActionResource actionResource) {
+            return null;
+        }
+    }
+
+    /**
+     * Renders the same values through the compiled templates of the inputs.
+     */
+    private static class CompiledTemplateParameterMgr extends TemplateParameterMgr implements ITemplateParameterMgr {
+
+        @Override
+        public String getParameterValue(String name) {
+            return (String) parameters.get(name);
+        }
+    }
+}
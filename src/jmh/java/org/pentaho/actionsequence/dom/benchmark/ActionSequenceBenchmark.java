@@ -0,0 +1,274 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.benchmark;
+
+import java.io.IOException;
+import static java.io.OutputStream.nullOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import static org.dom4j.DocumentHelper.parseText;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.actionsequence.dom.ActionControlStatement;
+import org.pentaho.actionsequence.dom.ActionSequenceBinaryFormat;
+import org.pentaho.actionsequence.dom.ActionSequenceDocument;
+import org.pentaho.actionsequence.dom.ActionSequenceLoader;
+import org.pentaho.actionsequence.dom.ExecutableChildList;
+import org.pentaho.actionsequence.dom.IActionControlStatement;
+import org.pentaho.actionsequence.dom.IActionDefinition;
+import org.pentaho.actionsequence.dom.IActionInput;
+import org.pentaho.actionsequence.dom.IActionInputVariable;
+import org.pentaho.actionsequence.dom.IActionOutput;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.IActionSequenceElement;
+import org.pentaho.actionsequence.dom.IActionSequenceExecutableStatement;
+import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
+import org.pentaho.actionsequence.dom.TrackingDocumentFactory;
+
+/**
+ * Benchmarks for parsing, navigating, validating and serializing action
+ * sequences generated by <code>ActionSequenceGenerator</code>. Run with
+ * <code>mvn -Pjmh test-compile exec:exec</code>, which reports allocation
+ * rates through the gc profiler by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionSequenceBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int actions;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    @Param({"2", "8"})
+    public int ios;
+
+    private String xml;
+
+    private byte[] xmlBytes;
+
+    private byte[] binaryBytes;
+
+    private Document document;
+
+    private ActionSequenceDocument actionSequenceDocument;
+
+    private IActionDefinition lastAction;
+
+    private IActionDefinition[] actionDefinitions;
+
+    private IActionOutput[] actionOutputs;
+
+    private IActionInput[] actionInputs;
+
+    @Setup
+    public void setUp() throws DocumentException {
+        xml = ActionSequenceGenerator.generateXml(actions, depth, ios);
+        xmlBytes = xml.getBytes(UTF_8);
+        // Read as the loader reads documents, so that edits are tracked and
+        // reference queries do not check the tree.
+        document = new SAXReader(TrackingDocumentFactory.getInstance()).read(new StringReader(xml));
+        actionSequenceDocument = new ActionSequenceDocument(document);
+        binaryBytes = ActionSequenceBinaryFormat.toByteArray(actionSequenceDocument);
+        lastAction = findLastAction(actionSequenceDocument.getExecutableChildren());
+        ArrayList actionDefs = new ArrayList();
+        ArrayList outputs = new ArrayList();
+        ArrayList inputs = new ArrayList();
+        collect(actionSequenceDocument.getExecutableChildren(), actionDefs, outputs, inputs);
+        actionDefinitions = (IActionDefinition[]) actionDefs.toArray(new IActionDefinition[0]);
+        actionOutputs = (IActionOutput[]) outputs.toArray(new IActionOutput[0]);
+        actionInputs = (IActionInput[]) inputs.toArray(new IActionInput[0]);
+    }
+
+    @Benchmark
+    public Document parse() throws DocumentException {
+        return parseText(xml);
+    }
+
+    @Benchmark
+    public ActionSequenceDocument load() throws DocumentException {
+        return ActionSequenceLoader.load(ByteBuffer.wrap(xmlBytes));
+    }
+
+    @Benchmark
+    public ActionSequenceDocument loadBinary() throws DocumentException {
+        return ActionSequenceBinaryFormat.read(binaryBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return ActionSequenceBinaryFormat.toByteArray(actionSequenceDocument);
+    }
+
+    @Benchmark
+    public ActionSequenceDocument wrap() {
+        return new ActionSequenceDocument(document);
+    }
+
+    @Benchmark
+    public void traverseChildren(Blackhole blackhole) {
+        traverse(actionSequenceDocument.getExecutableChildren(), blackhole);
+    }
+
+    /**
+     * Counts the action definitions through the child lists, which only wraps
+     * the control statements.
+     */
+    @Benchmark
+    public int countActions() {
+        return countActions(((ActionControlStatement) actionSequenceDocument.getRootLoop()).getChildList());
+    }
+
+    @Benchmark
+    public IActionSequenceValidationError[] validate() {
+        return actionSequenceDocument.validate();
+    }
+
+    @Benchmark
+    public IActionSequenceElement[] getBrokenReferences() {
+        return actionSequenceDocument.getBrokenReferences();
+    }
+
+    /**
+     * Collects the elements referencing every action output and then checks
+     * every action input against them, using wrapper hash codes.
+     */
+    @Benchmark
+    public int resolveReferences() {
+        return resolveReferences(new HashSet());
+    }
+
+    /**
+     * The same as <code>resolveReferences</code> with the linear list scans
+     * that wrappers without consistent hash codes are limited to.
+     */
+    @Benchmark
+    public int resolveReferencesLinear() {
+        return resolveReferences(new ArrayList());
+    }
+
+    @Benchmark
+    public IActionInputVariable[] getAvailInputVariables() {
+        return actionSequenceDocument.getAvailInputVariables(lastAction, STRING_TYPE);
+    }
+
+    /**
+     * Looks up the preceding action definitions and available variables of
+     * every action definition, as a designer does when it shows a document.
+     */
+    @Benchmark
+    public void getScopes(Blackhole blackhole) {
+        for (int i = 0; i < actionDefinitions.length; i++) {
+            blackhole.consume(actionSequenceDocument.getPrecedingActionDefinitions(actionDefinitions[i]));
+            blackhole.consume(actionSequenceDocument.getAvailInputVariables(actionDefinitions[i], STRING_TYPE));
+        }
+    }
+
+    @Benchmark
+    public Document prettyPrint() {
+        return ActionSequenceDocument.prettyPrint(document);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return actionSequenceDocument.toString();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        actionSequenceDocument.write(nullOutputStream());
+    }
+
+    private int resolveReferences(Collection references) {
+        for (int i = 0; i < actionOutputs.length; i++) {
+            references.addAll(asList(actionSequenceDocument.getReferencesTo(actionOutputs[i])));
+        }
+        int resolvedCount = 0;
+        for (int i = 0; i < actionInputs.length; i++) {
+            if (references.contains(actionInputs[i])) {
+                resolvedCount++;
+            }
+        }
+        return resolvedCount;
+    }
+
+    private static void traverse(IActionSequenceExecutableStatement[] children, Blackhole blackhole) {
+        for (int i = 0; i < children.length; i++) {
+            blackhole.consume(children[i]);
+            if (children[i] instanceof IActionControlStatement) {
+                traverse(((IActionControlStatement) children[i]).getChildren(), blackhole);
+            }
+        }
+    }
+
+    private static int countActions(ExecutableChildList children) {
+        int count = 0;
+        for (int i = 0; i < children.size(); i++) {
+            if (children.isActionDefinition(i)) {
+                count++;
+            } else {
+                count += countActions(((ActionControlStatement) children.get(i)).getChildList());
+            }
+        }
+        return count;
+    }
+
+    private static void collect(IActionSequenceExecutableStatement[] children, Collection actionDefs,
+            Collection outputs, Collection inputs) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] instanceof IActionDefinition) {
+                actionDefs.add(children[i]);
+                outputs.addAll(asList(((IActionDefinition) children[i]).getOutputs()));
+                inputs.addAll(asList(((IActionDefinition) children[i]).getInputs()));
+            } else if (children[i] instanceof IActionControlStatement) {
+                collect(((IActionControlStatement) children[i]).getChildren(), actionDefs, outputs, inputs);
+            }
+        }
+    }
+
+    private static IActionDefinition findLastAction(IActionSequenceExecutableStatement[] children) {
+        IActionDefinition lastAction = null;
+        for (int i = children.length - 1; (i >= 0) && (lastAction == null); i--) {
+            if (children[i] instanceof IActionDefinition) {
+                lastAction = (IActionDefinition) children[i];
+            } else if (children[i] instanceof IActionControlStatement) {
+                lastAction = findLastAction(((IActionControlStatement) children[i]).getChildren());
+            }
+        }
+        return lastAction;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.benchmark;
+
+import org.pentaho.actionsequence.dom.ActionSequenceDocument;
+import org.pentaho.actionsequence.dom.IActionControlStatement;
+import org.pentaho.actionsequence.dom.IActionIfStatement;
+import org.pentaho.actionsequence.dom.IActionLoop;
+import org.pentaho.actionsequence.dom.IActionSequenceDocument;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Builds synthetic action sequences for the benchmarks. A generated sequence
+ * has a chain of nested control statements, alternating between loops and if
+ * statements, with the actions distributed over the levels of the chain. Each
+ * action reads the outputs of the action before it so that the variable
+ * lookups have realistic work to do.
+ */
+public class ActionSequenceGenerator {
+
+    /**
+     * The result set input that the generated loops iterate over.
+     */
+    public static final String ROWS_INPUT = "rows"; //$NON-NLS-1$
+
+    private static final String CONDITION = "input0 != null"; //$NON-NLS-1$
+
+    private ActionSequenceGenerator() {
+    }
+
+    /**
+     * Generates an action sequence.
+     *
+     * @param actionCount the number of actions
+     * @param depth the number of nested control statements
+     * @param ioCount the number of document inputs and of inputs and outputs
+     * per action
+     * @return the action sequence document
+     */
+    public static ActionSequenceDocument generate(int actionCount, int depth, int ioCount) {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.setTitle("Generated action sequence"); //$NON-NLS-1$
+        doc.createInput(ROWS_INPUT, RESULTSET_TYPE);
+        for (int i = 0; i < ioCount; i++) {
+            doc.createInput("input" + i, STRING_TYPE); //$NON-NLS-1$
+        }
+
+        IActionControlStatement[] levels = new IActionControlStatement[depth + 1];
+        levels[0] = doc.getRootLoop();
+        for (int i = 1; i <= depth; i++) {
+            if ((i % 2) == 1) {
+                IActionLoop loop = levels[i - 1].addLoop(ROWS_INPUT);
+                loop.setLoopOn(ROWS_INPUT);
+                levels[i] = loop;
+            } else {
+                IActionIfStatement ifStatement = levels[i - 1].addIf(CONDITION);
+                ifStatement.setCondition(CONDITION);
+                levels[i] = ifStatement;
+            }
+        }
+
+        for (int i = 0; i < actionCount; i++) {
+            ActionDefinition action = (ActionDefinition) levels[i % levels.length].addAction(SqlQueryAction.class);
+            for (int j = 0; j < ioCount; j++) {
+                if ((i == 0) || ((j % 2) == 0)) {
+                    action.addInput("input" + j, STRING_TYPE); //$NON-NLS-1$
+                } else {
+                    action.addInput("in" + j, STRING_TYPE).setMapping(getOutputName(i - 1, j)); //$NON-NLS-1$
+                }
+                action.addOutput(getOutputName(i, j), STRING_TYPE);
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Generates the XML of an action sequence.
+     *
+     * @see #generate(int, int, int)
+     */
+    public static String generateXml(int actionCount, int depth, int ioCount) {
+        IActionSequenceDocument doc = generate(actionCount, depth, ioCount);
+        return doc.getDocument().asXML();
+    }
+
+    private static String getOutputName(int action, int io) {
+        return "output" + action + "_" + io; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -18,7 +18,6 @@ import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireIoChange
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MAPPING_NAME;
 import org.pentaho.actionsequence.dom.actions.ActionDefinition;
-import org.pentaho.actionsequence.dom.actions.ActionFactory;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 
 /**
@@ -83,7 +82,8 @@ public abstract class AbstractActionIOElement extends AbstractIOElement implemen
                 ancestorElement = ancestorElement.getParent();
                 if ((ancestorElement != null)
                         && ancestorElement.getName().equals(ACTION_DEFINITION_NAME)) {
-                    actionDefinition = ActionFactory.getActionDefinition(ancestorElement, actionInputProvider);
+                    actionDefinition = (ActionDefinition) ActionSequenceDocument.getElement(ancestorElement,
+                            actionInputProvider);
                 }
             }
         }
@@ -93,7 +93,7 @@ public abstract class AbstractIOElement implements IAbstractIOElement {
         Document doc = ioElement.getDocument();
         if (doc != null) {
             ioElement.detach();
-            fireIoRemoved(new ActionSequenceDocument(doc, actionInputProvider), this);
+            fireIoRemoved(ActionSequenceDocument.getActionSequenceDocument(doc, actionInputProvider), this);
         }
     }
 
@@ -119,6 +119,11 @@ public abstract class AbstractIOElement implements IAbstractIOElement {
         return result;
     }
 
+    @Override
+    public int hashCode() {
+        return ioElement != null ? ioElement.hashCode() : super.hashCode();
+    }
+
     /*
    * (non-Javadoc)
    * 
@@ -128,7 +133,7 @@ public abstract class AbstractIOElement implements IAbstractIOElement {
     public IActionSequenceDocument getDocument() {
         IActionSequenceDocument doc = null;
         if ((ioElement != null) && (ioElement.getDocument() != null)) {
-            doc = new ActionSequenceDocument(ioElement.getDocument(), actionInputProvider);
+            doc = ActionSequenceDocument.getActionSequenceDocument(ioElement.getDocument(), actionInputProvider);
         }
         return doc;
     }
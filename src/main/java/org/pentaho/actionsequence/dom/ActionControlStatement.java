@@ -14,20 +14,16 @@ package org.pentaho.actionsequence.dom;
 
 import java.util.ArrayList;
 import static java.util.Arrays.asList;
-import java.util.Iterator;
 import java.util.List;
 import org.dom4j.Document;
 import org.dom4j.Element;
-import org.dom4j.tree.DefaultElement;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireActionAdded;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireControlStatementAdded;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireControlStatementRemoved;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
-import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.CONDITION_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.DOC_ACTIONS_PATH;
 import org.pentaho.actionsequence.dom.actions.ActionDefinition;
-import static org.pentaho.actionsequence.dom.actions.ActionFactory.getActionDefinition;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
@@ -90,24 +86,13 @@ public abstract class ActionControlStatement implements IActionControlStatement
     public IActionDefinition addAction(Class actionDefClass, int index) {
         IActionDefinition actionDef = null;
         try {
-            Object[] children = getChildren();
-            if (index >= children.length) {
+            int elementIndex = getChildElementIndex(index);
+            if (elementIndex < 0) {
                 actionDef = addAction(actionDefClass);
             } else {
-                Object childAtIndex = children[index];
-                Element childElement
-                        = (childAtIndex instanceof ActionControlStatement)
-                                ? ((ActionControlStatement) childAtIndex).controlElement : ((ActionDefinition) childAtIndex)
-                                        .getElement();
-                List childElements = controlElement.elements();
-                index = childElements.indexOf(childElement);
-                if (index >= 0) {
-                    actionDef = (ActionDefinition) actionDefClass.newInstance();
-                    childElements.add(index, actionDef.getElement());
-                    fireActionAdded(actionDef);
-                } else {
-                    actionDef = addAction(actionDefClass);
-                }
+                actionDef = (ActionDefinition) actionDefClass.newInstance();
+                controlElement.elements().add(elementIndex, actionDef.getElement());
+                fireActionAdded(actionDef);
             }
         } catch (IllegalAccessException | InstantiationException e) {
             e.printStackTrace();
@@ -120,22 +105,28 @@ public abstract class ActionControlStatement implements IActionControlStatement
      */
     @Override
     public IActionSequenceExecutableStatement[] getChildren() {
-        List allChildren = controlElement.elements();
-        List filteredChildren = new ArrayList();
-        for (Iterator iter = allChildren.iterator(); iter.hasNext();) {
-            Element element = (Element) iter.next();
-            String elementName = element.getName();
-            if (elementName.equals(ACTION_DEFINITION_NAME)) {
-                filteredChildren.add(getActionDefinition(element, actionInputProvider));
-            } else if (elementName.equals(ACTIONS_NAME)) {
-                if (element.element(CONDITION_NAME) == null) {
-                    filteredChildren.add(new ActionLoop(element, actionInputProvider));
-                } else {
-                    filteredChildren.add(new ActionIfStatement(element, actionInputProvider));
-                }
-            }
-        }
-        return (IActionSequenceExecutableStatement[]) filteredChildren.toArray(new IActionSequenceExecutableStatement[0]);
+        return (IActionSequenceExecutableStatement[]) getChildList().toArray(new IActionSequenceExecutableStatement[0]);
+    }
+
+    /**
+     * Returns the child actions and control statements without wrapping
+     * them. Use this instead of <code>getChildren</code> to count the children
+     * or to find a child by its element.
+     *
+     * @return the child actions and control statements
+     */
+    public ExecutableChildList getChildList() {
+        return new ExecutableChildList(controlElement, actionInputProvider);
+    }
+
+    /**
+     * @return the position among all the child elements of the child at the
+     * given position in the list of children, or -1 if there are not that many
+     * children.
+     */
+    private int getChildElementIndex(int index) {
+        ExecutableChildList children = getChildList();
+        return index < children.size() ? children.getElementIndex(index) : -1;
     }
 
     /*
@@ -147,7 +138,7 @@ public abstract class ActionControlStatement implements IActionControlStatement
     public IActionSequenceDocument getDocument() {
         ActionSequenceDocument doc = null;
         if ((controlElement != null) && (controlElement.getDocument() != null)) {
-            doc = new ActionSequenceDocument(controlElement.getDocument(), actionInputProvider);
+            doc = ActionSequenceDocument.getActionSequenceDocument(controlElement.getDocument(), actionInputProvider);
         }
         return doc;
     }
@@ -162,7 +153,7 @@ public abstract class ActionControlStatement implements IActionControlStatement
         Document doc = controlElement.getDocument();
         if (doc != null) {
             controlElement.detach();
-            ActionSequenceDocument asDoc = new ActionSequenceDocument(doc, actionInputProvider);
+            ActionSequenceDocument asDoc = ActionSequenceDocument.getActionSequenceDocument(doc, actionInputProvider);
             fireControlStatementRemoved(asDoc, this);
         }
     }
@@ -178,11 +169,8 @@ public abstract class ActionControlStatement implements IActionControlStatement
             Element ancestorElement = controlElement.getParent();
             if ((ancestorElement != null) && ancestorElement.getName().equals(ACTIONS_NAME)
                     && !ancestorElement.getPath().equals(DOC_ACTIONS_PATH)) {
-                if (ancestorElement.element(CONDITION_NAME) == null) {
-                    controlStatement = new ActionLoop(ancestorElement, actionInputProvider);
-                } else {
-                    controlStatement = new ActionIfStatement(ancestorElement, actionInputProvider);
-                }
+                controlStatement = (IActionControlStatement) ActionSequenceDocument.getElement(ancestorElement,
+                        actionInputProvider);
             }
         }
         return controlStatement;
@@ -212,24 +200,18 @@ public abstract class ActionControlStatement implements IActionControlStatement
      */
     @Override
     public void add(IActionDefinition actionDef, int index) {
-        IActionSequenceElement[] children = getChildren();
-        if (index >= children.length) {
+        index = getChildElementIndex(index);
+        if (index < 0) {
             add(actionDef);
         } else {
-            Element childElement = children[index].getElement();
             List childElements = controlElement.elements();
-            index = childElements.indexOf(childElement);
             int actionDefIndex = childElements.indexOf(actionDef.getElement());
-            if (index >= 0) {
-                actionDef.delete();
-                if ((actionDefIndex >= 0) && (actionDefIndex < index)) {
-                    index--;
-                }
-                controlElement.elements().add(index, actionDef.getElement());
-                fireActionAdded(actionDef);
-            } else {
-                add(actionDef);
+            actionDef.delete();
+            if ((actionDefIndex >= 0) && (actionDefIndex < index)) {
+                index--;
             }
+            controlElement.elements().add(index, actionDef.getElement());
+            fireActionAdded(actionDef);
         }
     }
 
@@ -257,24 +239,18 @@ public abstract class ActionControlStatement implements IActionControlStatement
      */
     @Override
     public void add(IActionControlStatement controlStatement, int index) {
-        IActionSequenceElement[] children = getChildren();
-        if (index >= children.length) {
+        index = getChildElementIndex(index);
+        if (index < 0) {
             add(controlStatement);
         } else {
-            Element childElement = children[index].getElement();
             List childElements = controlElement.elements();
-            index = childElements.indexOf(childElement);
             int actionLoopIndex = childElements.indexOf(controlStatement.getElement());
-            if (index >= 0) {
-                controlStatement.delete();
-                if ((actionLoopIndex >= 0) && (actionLoopIndex < index)) {
-                    index--;
-                }
-                controlElement.elements().add(index, controlStatement.getControlElement());
-                fireControlStatementAdded(controlStatement);
-            } else {
-                add(controlStatement);
+            controlStatement.delete();
+            if ((actionLoopIndex >= 0) && (actionLoopIndex < index)) {
+                index--;
             }
+            controlElement.elements().add(index, controlStatement.getControlElement());
+            fireControlStatementAdded(controlStatement);
         }
     }
 
@@ -288,7 +264,7 @@ public abstract class ActionControlStatement implements IActionControlStatement
     public IActionLoop addLoop(String loopOn) {
         Element child = createLoopElement();
         controlElement.elements().add(child);
-        ActionLoop loop = new ActionLoop(child, actionInputProvider);
+        ActionLoop loop = (ActionLoop) ActionSequenceDocument.getElement(child, actionInputProvider);
         fireControlStatementAdded(loop);
         return loop;
     }
@@ -303,25 +279,15 @@ public abstract class ActionControlStatement implements IActionControlStatement
      */
     @Override
     public IActionLoop addLoop(String loopOn, int index) {
-        Object[] children = getChildren();
         IActionLoop actionLoop = null;
-        if (index >= children.length) {
+        int elementIndex = getChildElementIndex(index);
+        if (elementIndex < 0) {
             actionLoop = addLoop(loopOn);
         } else {
-            Object childAtIndex = children[index];
-            Element childElement
-                    = (childAtIndex instanceof ActionControlStatement) ? ((ActionControlStatement) childAtIndex).controlElement
-                            : ((ActionDefinition) childAtIndex).getElement();
-            List childElements = controlElement.elements();
-            index = childElements.indexOf(childElement);
-            if (index >= 0) {
-                Element child = createLoopElement();
-                childElements.add(index, child);
-                actionLoop = new ActionLoop(child, actionInputProvider);
-                fireControlStatementAdded(actionLoop);
-            } else {
-                actionLoop = addLoop(loopOn);
-            }
+            Element child = createLoopElement();
+            controlElement.elements().add(elementIndex, child);
+            actionLoop = (ActionLoop) ActionSequenceDocument.getElement(child, actionInputProvider);
+            fireControlStatementAdded(actionLoop);
         }
         return actionLoop;
     }
@@ -336,7 +302,7 @@ public abstract class ActionControlStatement implements IActionControlStatement
     public IActionIfStatement addIf(String condition) {
         Element child = createIfElement();
         controlElement.elements().add(child);
-        ActionIfStatement actionIf = new ActionIfStatement(child, actionInputProvider);
+        ActionIfStatement actionIf = (ActionIfStatement) ActionSequenceDocument.getElement(child, actionInputProvider);
         fireControlStatementAdded(actionIf);
         return actionIf;
     }
@@ -351,38 +317,28 @@ public abstract class ActionControlStatement implements IActionControlStatement
      */
     @Override
     public IActionIfStatement addIf(String condition, int index) {
-        Object[] children = getChildren();
         IActionIfStatement actionIf = null;
-        if (index >= children.length) {
+        int elementIndex = getChildElementIndex(index);
+        if (elementIndex < 0) {
             actionIf = addIf(condition);
         } else {
-            Object childAtIndex = children[index];
-            Element childElement
-                    = (childAtIndex instanceof ActionControlStatement) ? ((ActionControlStatement) childAtIndex).controlElement
-                            : ((ActionDefinition) childAtIndex).getElement();
-            List childElements = controlElement.elements();
-            index = childElements.indexOf(childElement);
-            if (index >= 0) {
-                Element child = createIfElement();
-                childElements.add(index, child);
-                actionIf = new ActionIfStatement(child, actionInputProvider);
-                fireControlStatementAdded(actionIf);
-            } else {
-                actionIf = addIf(condition);
-            }
+            Element child = createIfElement();
+            controlElement.elements().add(elementIndex, child);
+            actionIf = (ActionIfStatement) ActionSequenceDocument.getElement(child, actionInputProvider);
+            fireControlStatementAdded(actionIf);
         }
         return actionIf;
     }
 
     private Element createLoopElement() {
         Element element = null;
-        element = new DefaultElement(ACTIONS_NAME);
+        element = TrackingDocumentFactory.getInstance().createElement(ACTIONS_NAME);
         return element;
     }
 
     private Element createIfElement() {
         Element element = null;
-        element = new DefaultElement(ACTIONS_NAME);
+        element = TrackingDocumentFactory.getInstance().createElement(ACTIONS_NAME);
         element.addElement(CONDITION_NAME);
         return element;
     }
@@ -413,6 +369,11 @@ public abstract class ActionControlStatement implements IActionControlStatement
         return result;
     }
 
+    @Override
+    public int hashCode() {
+        return controlElement != null ? controlElement.hashCode() : super.hashCode();
+    }
+
     /**
      * Returns the list of action definitions that precede this control
      * statement in the action sequence.
@@ -440,7 +401,7 @@ public abstract class ActionControlStatement implements IActionControlStatement
     @Override
     public IActionSequenceValidationError[] validate(boolean validateDescendants) {
         ArrayList errors = new ArrayList();
-        errors.add(validateThis());
+        errors.addAll(asList(validateThis()));
         if (validateDescendants) {
             IActionSequenceExecutableStatement[] children = getChildren();
             for (IActionSequenceExecutableStatement children1 : children) {
@@ -12,9 +12,12 @@
  */
 package org.pentaho.actionsequence.dom;
 
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
 import org.dom4j.Element;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+import org.pentaho.actionsequence.dom.actions.ITemplateParameterMgr;
+import org.pentaho.actionsequence.dom.actions.ParameterTemplate;
 
 /**
  * Convenience class used to distinguish action inputs from action outputs.
@@ -24,6 +27,14 @@ import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
  */
 public class ActionInput extends AbstractActionIOElement implements IActionInput, IActionSequenceElement {
 
+    /**
+     * The compiled form of the last value whose parameter references were
+     * replaced. Wrappers are shared between threads, so the template is
+     * immutable and published through a volatile field. It holds its source,
+     * and is only used while the value still equals that source.
+     */
+    private volatile ParameterTemplate template;
+
     public ActionInput(Element ioElement, IActionParameterMgr actionInputProvider) {
         super(ioElement, actionInputProvider);
     }
@@ -42,15 +53,15 @@ public class ActionInput extends AbstractActionIOElement implements IActionInput
         Boolean boolValue = null;
         String stringValue = getStringValue();
         if (stringValue != null) {
-            boolValue = new Boolean(stringValue);
+            boolValue = Boolean.valueOf(stringValue);
         }
         return boolValue;
     }
 
     @Override
     public boolean getBooleanValue(boolean defaultValue) {
-        Boolean boolValue = getBooleanValue();
-        return boolValue != null ? boolValue : defaultValue;
+        String stringValue = getStringValue();
+        return stringValue != null ? parseBoolean(stringValue) : defaultValue;
     }
 
     @Override
@@ -65,8 +76,8 @@ public class ActionInput extends AbstractActionIOElement implements IActionInput
 
     @Override
     public int getIntValue(int defaultValue) {
-        Integer intValue = getIntValue();
-        return intValue != null ? intValue : defaultValue;
+        String stringValue = getStringValue();
+        return stringValue != null ? parseInt(stringValue) : defaultValue;
     }
 
     @Override
@@ -83,7 +94,7 @@ public class ActionInput extends AbstractActionIOElement implements IActionInput
     public String getStringValue(boolean replaceParamReferences, String defaultValue) {
         Object theValue = getValue();
         if (replaceParamReferences && (actionInputProvider != null) && (theValue != null)) {
-            theValue = actionInputProvider.replaceParameterReferences(theValue.toString());
+            theValue = replaceParameterReferences(theValue.toString());
         }
         return theValue != null ? theValue.toString() : defaultValue;
     }
@@ -93,6 +104,25 @@ public class ActionInput extends AbstractActionIOElement implements IActionInput
         return getStringValue(true, defaultValue);
     }
 
+    /**
+     * Replaces the parameter references of a string, through the compiled
+     * template of the string if the parameter manager renders templates.
+     */
+    private String replaceParameterReferences(String inputString) {
+        String result;
+        if (actionInputProvider instanceof ITemplateParameterMgr) {
+            ParameterTemplate compiledTemplate = template;
+            if ((compiledTemplate == null) || !compiledTemplate.getSource().equals(inputString)) {
+                compiledTemplate = ParameterTemplate.compile(inputString);
+                template = compiledTemplate;
+            }
+            result = compiledTemplate.render((ITemplateParameterMgr) actionInputProvider);
+        } else {
+            result = actionInputProvider.replaceParameterReferences(inputString);
+        }
+        return result;
+    }
+
     /**
      * @return the mapped name if it exists, otherwise the input/output name is
      * returned.
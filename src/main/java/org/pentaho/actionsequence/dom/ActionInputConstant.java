@@ -12,9 +12,12 @@
  */
 package org.pentaho.actionsequence.dom;
 
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
 import org.dom4j.Element;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+import org.pentaho.actionsequence.dom.actions.ITemplateParameterMgr;
+import org.pentaho.actionsequence.dom.actions.ParameterTemplate;
 
 // This class is used to set an action input to a constant value.
 public class ActionInputConstant implements IActionInput, IActionInputSource {
@@ -23,6 +26,12 @@ public class ActionInputConstant implements IActionInput, IActionInputSource {
     String inputName;
     IActionParameterMgr actionParameterMgr;
 
+    /**
+     * The compiled form of the last value whose parameter references were
+     * replaced, used only while the value still equals its source.
+     */
+    private volatile ParameterTemplate template;
+
     public ActionInputConstant(Element componentDefElement, IActionParameterMgr actionParameterMgr) {
         inputName = componentDefElement.getName();
         value = componentDefElement.getText();
@@ -84,7 +93,7 @@ public class ActionInputConstant implements IActionInput, IActionInputSource {
     public String getStringValue(boolean replaceParamReferences, String defaultValue) {
         Object theValue = value;
         if (replaceParamReferences && (actionParameterMgr != null) && (theValue != null)) {
-            theValue = actionParameterMgr.replaceParameterReferences(theValue.toString());
+            theValue = replaceParameterReferences(theValue.toString());
         }
         return theValue != null ? theValue.toString() : defaultValue;
     }
@@ -94,20 +103,47 @@ public class ActionInputConstant implements IActionInput, IActionInputSource {
         return getStringValue(true, defaultValue);
     }
 
+    /**
+     * Replaces the parameter references of a string, through the compiled
+     * template of the string if the parameter manager renders templates.
+     */
+    private String replaceParameterReferences(String inputString) {
+        String result;
+        if (actionParameterMgr instanceof ITemplateParameterMgr) {
+            ParameterTemplate compiledTemplate = template;
+            if ((compiledTemplate == null) || !compiledTemplate.getSource().equals(inputString)) {
+                compiledTemplate = ParameterTemplate.compile(inputString);
+                template = compiledTemplate;
+            }
+            result = compiledTemplate.render((ITemplateParameterMgr) actionParameterMgr);
+        } else {
+            result = actionParameterMgr.replaceParameterReferences(inputString);
+        }
+        return result;
+    }
+
     @Override
     public Boolean getBooleanValue() {
         Boolean boolValue = null;
         String stringValue = getStringValue();
         if (stringValue != null) {
-            boolValue = new Boolean(stringValue);
+            boolValue = Boolean.valueOf(stringValue);
         }
         return boolValue;
     }
 
     @Override
     public boolean getBooleanValue(boolean defaultValue) {
-        Boolean boolValue = getBooleanValue();
-        return boolValue != null ? boolValue : defaultValue;
+        boolean boolValue = defaultValue;
+        if (value instanceof Boolean) {
+            boolValue = (Boolean) value;
+        } else {
+            String stringValue = getStringValue();
+            if (stringValue != null) {
+                boolValue = parseBoolean(stringValue);
+            }
+        }
+        return boolValue;
     }
 
     @Override
@@ -126,14 +162,31 @@ public class ActionInputConstant implements IActionInput, IActionInputSource {
 
     @Override
     public int getIntValue(int defaultValue) {
-        Integer intValue = getIntValue();
-        return intValue != null ? intValue : defaultValue;
+        int intValue = defaultValue;
+        if (value instanceof Integer) {
+            intValue = (Integer) value;
+        } else {
+            String stringValue = getStringValue();
+            if (stringValue != null) {
+                try {
+                    intValue = parseInt(stringValue);
+                } catch (NumberFormatException e) {
+                    intValue = defaultValue;
+                }
+            }
+        }
+        return intValue;
     }
 
     @Override
     public boolean equals(Object obj) {
-        return value != null && (obj instanceof ActionInputConstant)
-                && value.equals(((ActionInputConstant) obj).getValue());
+        return (obj == this) || (value != null && (obj instanceof ActionInputConstant)
+                && value.equals(((ActionInputConstant) obj).getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+        return value != null ? value.hashCode() : super.hashCode();
     }
 
     @Override
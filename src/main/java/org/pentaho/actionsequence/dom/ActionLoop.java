@@ -17,6 +17,8 @@ import java.util.ArrayList;
 import org.dom4j.Attribute;
 import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireControlStatementChanged;
+import static org.pentaho.actionsequence.dom.ActionSequenceValidationError.INPUT_MISSING;
+import static org.pentaho.actionsequence.dom.ActionSequenceValidationError.INPUT_REFERENCES_UNKNOWN_VAR;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.LOOP_ON_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.PEEK_ONLY_NAME;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
@@ -72,8 +74,8 @@ public class ActionLoop extends ActionControlStatement implements IActionLoop {
     protected IActionSequenceValidationError[] validateThis() {
         ArrayList errors = new ArrayList();
         String loopOn = getLoopOn();
-        if (loopOn.trim().length() == 0) {
-            errors.add("Missing loop variable.");
+        if ((loopOn == null) || (loopOn.trim().length() == 0)) {
+            errors.add(createValidationError(INPUT_MISSING, "Missing loop variable.", loopOn)); //$NON-NLS-1$
         } else {
             IActionInputVariable[] actionVariables = getDocument().getAvailInputVariables(this);
             boolean isValid = false;
@@ -81,12 +83,21 @@ public class ActionLoop extends ActionControlStatement implements IActionLoop {
                 isValid = actionVariables[i].getVariableName().equals(loopOn);
             }
             if (!isValid) {
-                errors.add("Loop references unknown variable.");
+                errors.add(createValidationError(INPUT_REFERENCES_UNKNOWN_VAR, "Loop references unknown variable.", loopOn)); //$NON-NLS-1$
             }
         }
         return (ActionSequenceValidationError[]) errors.toArray(new ActionSequenceValidationError[0]);
     }
 
+    private ActionSequenceValidationError createValidationError(int errorCode, String errorMsg, String loopOn) {
+        ActionSequenceValidationError error = new ActionSequenceValidationError();
+        error.controlStatement = this;
+        error.errorCode = errorCode;
+        error.errorMsg = errorMsg;
+        error.parameterName = loopOn;
+        return error;
+    }
+
     @Override
     public Boolean getLoopUsingPeek() {
         return parseBoolean(controlElement.attributeValue(PEEK_ONLY_NAME));
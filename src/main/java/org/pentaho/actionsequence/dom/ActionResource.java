@@ -25,7 +25,6 @@ import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireResource
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MAPPING_NAME;
 import org.pentaho.actionsequence.dom.actions.ActionDefinition;
-import org.pentaho.actionsequence.dom.actions.ActionFactory;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 import org.pentaho.commons.connection.IPentahoStreamSource;
 
@@ -111,7 +110,7 @@ public class ActionResource extends AbstractActionIOElement implements IActionRe
         Document doc = ioElement.getDocument();
         if (doc != null) {
             ioElement.detach();
-            fireResourceRemoved(new ActionSequenceDocument(doc, actionInputProvider), this);
+            fireResourceRemoved(ActionSequenceDocument.getActionSequenceDocument(doc, actionInputProvider), this);
         }
     }
 
@@ -146,7 +145,7 @@ public class ActionResource extends AbstractActionIOElement implements IActionRe
     public IActionSequenceDocument getDocument() {
         ActionSequenceDocument doc = null;
         if ((ioElement != null) && (ioElement.getDocument() != null)) {
-            doc = new ActionSequenceDocument(ioElement.getDocument(), actionInputProvider);
+            doc = ActionSequenceDocument.getActionSequenceDocument(ioElement.getDocument(), actionInputProvider);
         }
         return doc;
     }
@@ -170,7 +169,8 @@ public class ActionResource extends AbstractActionIOElement implements IActionRe
                 ancestorElement = ancestorElement.getParent();
                 if ((ancestorElement != null)
                         && ancestorElement.getName().equals(ACTION_DEFINITION_NAME)) {
-                    actionDefinition = ActionFactory.getActionDefinition(ancestorElement, actionInputProvider);
+                    actionDefinition = (ActionDefinition) ActionSequenceDocument.getElement(ancestorElement,
+                            actionInputProvider);
                 }
             }
         }
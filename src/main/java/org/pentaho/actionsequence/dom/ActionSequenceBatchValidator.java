@@ -0,0 +1,309 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static java.util.Collections.EMPTY_LIST;
+import static java.util.Collections.unmodifiableList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.IActionSequenceValidationError.INPUT_REFERENCES_UNKNOWN_VAR;
+import static org.pentaho.actionsequence.dom.messages.Messages.getString;
+
+/**
+ * Validates many action sequence files in parallel. Each file is loaded,
+ * validated and checked for broken references on an executor, and the
+ * results are passed to a consumer on the calling thread as the files
+ * complete. At most a fixed number of files are loaded or waiting to be
+ * consumed at any time, so memory use does not depend on the number of
+ * files. Results do not refer to the loaded documents.
+ */
+public class ActionSequenceBatchValidator {
+
+    /**
+     * The extension of the files validated when a directory tree is given.
+     */
+    public static final String FILE_EXTENSION = ".xaction"; //$NON-NLS-1$
+
+    private final Executor executor;
+
+    private final int maxPendingFiles;
+
+    /**
+     * Creates a validator using the common fork join pool and allowing two
+     * pending files per processor.
+     */
+    public ActionSequenceBatchValidator() {
+        this(ForkJoinPool.commonPool(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor the executor the files are validated on
+     * @param maxPendingFiles the maximum number of files being validated or
+     * waiting to be consumed
+     */
+    public ActionSequenceBatchValidator(Executor executor, int maxPendingFiles) {
+        if (maxPendingFiles < 1) {
+            throw new IllegalArgumentException(String.valueOf(maxPendingFiles));
+        }
+        this.executor = executor;
+        this.maxPendingFiles = maxPendingFiles;
+    }
+
+    /**
+     * Validates the action sequence files in a directory tree.
+     *
+     * @param directory the root of the directory tree
+     * @param consumer receives the result of each file
+     * @throws IOException if the directory tree cannot be read
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void validate(Path directory, Consumer<Result> consumer) throws IOException, InterruptedException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            validate(paths.filter(path -> isActionSequenceFile(path)).iterator(), consumer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Validates the given action sequence files.
+     *
+     * @param files the files. The stream is consumed lazily.
+     * @param consumer receives the result of each file
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void validate(Stream<Path> files, Consumer<Result> consumer) throws InterruptedException {
+        validate(files.iterator(), consumer);
+    }
+
+    /**
+     * Validates the given action sequence files. The consumer is called on
+     * the calling thread, in the order in which the files complete, and the
+     * method returns once every file has been consumed.
+     *
+     * @param files the files
+     * @param consumer receives the result of each file
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void validate(Iterator<Path> files, Consumer<Result> consumer) throws InterruptedException {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+        int pendingFiles = 0;
+        while (files.hasNext() || (pendingFiles > 0)) {
+            boolean submit = files.hasNext() && (pendingFiles < maxPendingFiles);
+            Result result = submit ? results.poll() : results.take();
+            if (result != null) {
+                pendingFiles--;
+                consumer.accept(result);
+            } else {
+                Path file = files.next();
+                executor.execute(() -> validate(file, results));
+                pendingFiles++;
+            }
+        }
+    }
+
+    private static void validate(Path file, BlockingQueue<Result> results) {
+        try {
+            results.add(validate(file));
+        } catch (Error e) {
+            results.add(new Result(file, EMPTY_LIST, new ExecutionException(e)));
+            throw e;
+        }
+    }
+
+    /**
+     * Loads and validates a single file.
+     *
+     * @param file the action sequence file
+     * @return the validation errors and broken references of the file, or the
+     * exception that prevented it from being loaded
+     */
+    public static Result validate(Path file) {
+        Result result;
+        try {
+            ActionSequenceDocument doc = ActionSequenceLoader.load(file);
+            ArrayList problems = new ArrayList();
+            IActionSequenceValidationError[] errors = doc.validate();
+            for (IActionSequenceValidationError error : errors) {
+                IActionSequenceElement statement = error.getActionDefinition();
+                if ((statement == null) && (error instanceof ActionSequenceValidationError)) {
+                    statement = ((ActionSequenceValidationError) error).getControlStatement();
+                }
+                problems.add(new Problem(error.getErrorCode(), error.getErrorMsg(), error.getParameterName(),
+                        statement));
+            }
+            IActionSequenceElement[] brokenReferences = doc.getBrokenReferences();
+            for (IActionSequenceElement brokenReference : brokenReferences) {
+                String errorMsg = getString("ActionSequenceBatchValidator.BROKEN_REFERENCE"); //$NON-NLS-1$
+                if (brokenReference instanceof IActionLoop) {
+                    problems.add(new Problem(INPUT_REFERENCES_UNKNOWN_VAR, errorMsg,
+                            ((IActionLoop) brokenReference).getLoopOn(), brokenReference));
+                } else {
+                    Element element = brokenReference.getElement();
+                    problems.add(new Problem(INPUT_REFERENCES_UNKNOWN_VAR, errorMsg,
+                            ReferenceIndex.getReferencedName(element), doc.getElement(element.getParent().getParent())));
+                }
+            }
+            result = new Result(file, unmodifiableList(problems), null);
+        } catch (IOException | DocumentException | RuntimeException e) {
+            result = new Result(file, EMPTY_LIST, e);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the path names an action sequence file.
+     */
+    public static boolean isActionSequenceFile(Path path) {
+        Path fileName = path.getFileName();
+        return (fileName != null) && fileName.toString().toLowerCase(Locale.ROOT).endsWith(FILE_EXTENSION)
+                && Files.isRegularFile(path);
+    }
+
+    /**
+     * The outcome of validating one file.
+     */
+    public static final class Result {
+
+        private final Path file;
+
+        private final List problems;
+
+        private final Exception exception;
+
+        Result(Path file, List problems, Exception exception) {
+            this.file = file;
+            this.problems = problems;
+            this.exception = exception;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return the validation errors followed by the broken references of
+         * the file, as <code>Problem</code>s.
+         */
+        public List getProblems() {
+            return problems;
+        }
+
+        /**
+         * @return the exception that prevented the file from being loaded or
+         * validated, or null if there was none.
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        /**
+         * @return true if the file was validated and has no problems.
+         */
+        public boolean isValid() {
+            return (exception == null) && problems.isEmpty();
+        }
+    }
+
+    /**
+     * A validation error or broken reference found in a file.
+     */
+    public static final class Problem {
+
+        private final int errorCode;
+
+        private final String errorMsg;
+
+        private final String parameterName;
+
+        private final String componentName;
+
+        private final String actionDescription;
+
+        private final String path;
+
+        Problem(int errorCode, String errorMsg, String parameterName, IActionSequenceElement statement) {
+            this.errorCode = errorCode;
+            this.errorMsg = errorMsg;
+            this.parameterName = parameterName;
+            if (statement instanceof IActionDefinition) {
+                componentName = ((IActionDefinition) statement).getComponentName();
+                actionDescription = ((IActionDefinition) statement).getDescription();
+            } else {
+                componentName = null;
+                actionDescription = null;
+            }
+            path = statement != null ? statement.getElement().getUniquePath() : null;
+        }
+
+        /**
+         * @return one of the error codes of
+         * <code>ActionSequenceValidationError</code>
+         */
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorMsg() {
+            return errorMsg;
+        }
+
+        public String getParameterName() {
+            return parameterName;
+        }
+
+        /**
+         * @return the component name of the action definition the problem was
+         * found in, or null if it was found in a control statement.
+         */
+        public String getComponentName() {
+            return componentName;
+        }
+
+        /**
+         * @return the description of the action definition the problem was
+         * found in, or null if it was found in a control statement.
+         */
+        public String getActionDescription() {
+            return actionDescription;
+        }
+
+        /**
+         * @return the XPath of the action definition or control statement the
+         * problem was found in.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return path + ": " + parameterName + ": " + errorMsg; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
+import org.dom4j.ProcessingInstruction;
+import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+import static org.pentaho.actionsequence.dom.messages.Messages.getString;
+
+/**
+ * A compact binary encoding of action sequence documents, for caching parsed
+ * documents and for sending them between servers. Decoding builds the
+ * document, the action definition wrappers and the variable reference index
+ * in a single pass, as <code>ActionSequenceLoader</code> does for XML.
+ * <p>
+ * The encoding is a header followed by the nodes of the document in document
+ * order. Every string is written once; later occurrences, such as repeated
+ * element and attribute names, refer back to the first one. Counts, lengths
+ * and string references are unsigned variable length integers of seven bits
+ * per byte.
+ * <ul>
+ * <li>header: the bytes <code>ASB</code>, the format version and the XML
+ * encoding of the document</li>
+ * <li>element: the element tag; the name, prefix and namespace URI; the number
+ * of additional namespace declarations followed by their prefixes and URIs;
+ * the number of attributes followed by their names, prefixes, namespace URIs
+ * and values; the content of the element; the end tag</li>
+ * <li>text, CDATA and comment: the node tag and the text</li>
+ * <li>processing instruction: the node tag, the target and the data</li>
+ * <li>the end tag after the last node of the document</li>
+ * </ul>
+ * A string is written as 0 for null, as 1 followed by the length and the
+ * UTF-8 bytes of a string not written before, or as 2 plus the position of a
+ * string written before among the strings written so far.
+ */
+public final class ActionSequenceBinaryFormat {
+
+    /**
+     * The version of the encoding written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'A', 'S', 'B'};
+
+    private static final int END = 0;
+
+    private static final int ELEMENT = 1;
+
+    private static final int TEXT = 2;
+
+    private static final int CDATA = 3;
+
+    private static final int COMMENT = 4;
+
+    private static final int PROCESSING_INSTRUCTION = 5;
+
+    private static final int NULL_STRING = 0;
+
+    private static final int NEW_STRING = 1;
+
+    private static final int FIRST_STRING_REFERENCE = 2;
+
+    private ActionSequenceBinaryFormat() {
+    }
+
+    /**
+     * Encodes an action sequence document.
+     *
+     * @param actionSequenceDocument the document
+     * @return the encoded document
+     */
+    public static byte[] toByteArray(ActionSequenceDocument actionSequenceDocument) {
+        return new Encoder().encode(actionSequenceDocument.getDocument());
+    }
+
+    /**
+     * Encodes an action sequence document to a stream. The stream is not
+     * closed.
+     *
+     * @param actionSequenceDocument the document
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public static void write(ActionSequenceDocument actionSequenceDocument, OutputStream out) throws IOException {
+        out.write(toByteArray(actionSequenceDocument));
+    }
+
+    /**
+     * @see #read(ByteBuffer, IActionParameterMgr)
+     */
+    public static ActionSequenceDocument read(byte[] bytes) throws DocumentException {
+        return read(ByteBuffer.wrap(bytes), null);
+    }
+
+    /**
+     * Decodes an action sequence document from the remaining bytes of a buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer the encoded document
+     * @param actionInputProvider the parameter manager used by the document
+     * @return the action sequence document
+     * @throws DocumentException if the buffer does not contain an encoded
+     * action sequence of a supported version
+     */
+    public static ActionSequenceDocument read(ByteBuffer buffer, IActionParameterMgr actionInputProvider)
+            throws DocumentException {
+        try {
+            return new Decoder(buffer.duplicate(), actionInputProvider).decode();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new DocumentException(getString("ActionSequenceBinaryFormat.CORRUPT_DATA"), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Decodes an action sequence document from the rest of a stream. The
+     * stream is not closed.
+     *
+     * @param in the stream to read from
+     * @param actionInputProvider the parameter manager used by the document
+     * @return the action sequence document
+     * @throws IOException if the stream cannot be read
+     * @throws DocumentException if the stream does not contain an encoded
+     * action sequence of a supported version
+     */
+    public static ActionSequenceDocument read(InputStream in, IActionParameterMgr actionInputProvider)
+            throws IOException, DocumentException {
+        return read(ByteBuffer.wrap(in.readAllBytes()), actionInputProvider);
+    }
+
+    /**
+     * Writes the nodes of a document to a growing byte array.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class Encoder {
+
+        private final HashMap strings = new HashMap();
+
+        private byte[] bytes = new byte[4096];
+
+        private int length;
+
+        byte[] encode(Document document) {
+            writeBytes(MAGIC, 0, MAGIC.length);
+            writeInt(VERSION);
+            writeString(document.getXMLEncoding());
+            writeContent(document.content());
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void writeContent(List content) {
+            for (Iterator iter = content.iterator(); iter.hasNext();) {
+                Node node = (Node) iter.next();
+                switch (node.getNodeType()) {
+                    case Node.ELEMENT_NODE:
+                        writeElement((Element) node);
+                        break;
+                    case Node.TEXT_NODE:
+                    case Node.ENTITY_REFERENCE_NODE:
+                        writeInt(TEXT);
+                        writeString(node.getText());
+                        break;
+                    case Node.CDATA_SECTION_NODE:
+                        writeInt(CDATA);
+                        writeString(node.getText());
+                        break;
+                    case Node.COMMENT_NODE:
+                        writeInt(COMMENT);
+                        writeString(node.getText());
+                        break;
+                    case Node.PROCESSING_INSTRUCTION_NODE:
+                        writeInt(PROCESSING_INSTRUCTION);
+                        writeString(((ProcessingInstruction) node).getTarget());
+                        writeString(((ProcessingInstruction) node).getText());
+                        break;
+                    default:
+                        // Namespace declarations are written with their element
+                        // and document types are not retained.
+                        break;
+                }
+            }
+            writeInt(END);
+        }
+
+        private void writeElement(Element element) {
+            writeInt(ELEMENT);
+            writeString(element.getName());
+            writeString(element.getNamespacePrefix());
+            writeString(element.getNamespaceURI());
+            List namespaces = element.additionalNamespaces();
+            writeInt(namespaces.size());
+            for (Iterator iter = namespaces.iterator(); iter.hasNext();) {
+                Namespace namespace = (Namespace) iter.next();
+                writeString(namespace.getPrefix());
+                writeString(namespace.getURI());
+            }
+            int attributeCount = element.attributeCount();
+            writeInt(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                Attribute attribute = element.attribute(i);
+                writeString(attribute.getName());
+                writeString(attribute.getNamespacePrefix());
+                writeString(attribute.getNamespaceURI());
+                writeString(attribute.getValue());
+            }
+            writeContent(element.content());
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeInt(NULL_STRING);
+            } else {
+                Integer position = (Integer) strings.get(value);
+                if (position != null) {
+                    writeInt(FIRST_STRING_REFERENCE + position);
+                } else {
+                    strings.put(value, strings.size());
+                    writeInt(NEW_STRING);
+                    byte[] encoded = value.getBytes(UTF_8);
+                    writeInt(encoded.length);
+                    writeBytes(encoded, 0, encoded.length);
+                }
+            }
+        }
+
+        private void writeInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] source, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        private void ensureCapacity(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+    }
+
+    /**
+     * Reads the nodes of a document and passes them to the loader's builder.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class Decoder {
+
+        private final ByteBuffer buffer;
+
+        private final ActionSequenceLoader.Builder builder;
+
+        private final ArrayList strings = new ArrayList();
+
+        Decoder(ByteBuffer buffer, IActionParameterMgr actionInputProvider) {
+            this.buffer = buffer;
+            builder = new ActionSequenceLoader.Builder(actionInputProvider);
+        }
+
+        ActionSequenceDocument decode() throws DocumentException {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (!buffer.hasRemaining() || (buffer.get() != MAGIC[i])) {
+                    throw new DocumentException(getString("ActionSequenceBinaryFormat.NOT_BINARY_ACTION_SEQUENCE")); //$NON-NLS-1$
+                }
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new DocumentException(getString("ActionSequenceBinaryFormat.UNSUPPORTED_VERSION", //$NON-NLS-1$
+                        String.valueOf(version)));
+            }
+            builder.setXMLEncoding(readString());
+            int depth = 0;
+            int tag = readInt();
+            while ((tag != END) || (depth > 0)) {
+                switch (tag) {
+                    case END:
+                        builder.endElement();
+                        depth--;
+                        break;
+                    case ELEMENT:
+                        builder.startElement(readElement());
+                        depth++;
+                        break;
+                    case TEXT:
+                        builder.addText(readString(), false);
+                        break;
+                    case CDATA:
+                        builder.addText(readString(), true);
+                        break;
+                    case COMMENT:
+                        builder.addComment(readString());
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        builder.addProcessingInstruction(readString(), readString());
+                        break;
+                    default:
+                        throw new DocumentException(getString("ActionSequenceBinaryFormat.CORRUPT_DATA")); //$NON-NLS-1$
+                }
+                tag = readInt();
+            }
+            return builder.build();
+        }
+
+        private Element readElement() {
+            Element element = builder.createElement(readString(), readString(), readString());
+            for (int i = readInt(); i > 0; i--) {
+                element.add(builder.createNamespace(readString(), readString()));
+            }
+            for (int i = readInt(); i > 0; i--) {
+                element.addAttribute(builder.createQName(readString(), readString(), readString()), readString());
+            }
+            return element;
+        }
+
+        private String readString() {
+            String value = null;
+            int code = readInt();
+            if (code == NEW_STRING) {
+                int length = readInt();
+                if ((length < 0) || (length > buffer.remaining())) {
+                    throw new BufferUnderflowException();
+                }
+                if (buffer.hasArray()) {
+                    value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+                    buffer.position(buffer.position() + length);
+                } else {
+                    byte[] encoded = new byte[length];
+                    buffer.get(encoded);
+                    value = new String(encoded, UTF_8);
+                }
+                strings.add(value);
+            } else if (code != NULL_STRING) {
+                value = (String) strings.get(code - FIRST_STRING_REFERENCE);
+            }
+            return value;
+        }
+
+        private int readInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b < 0) && (shift < 35));
+            return value;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import org.dom4j.Element;
+
+/**
+ * The changes made to an action sequence document during a batch, coalesced
+ * so that each element is reported at most once per kind of change. Changes
+ * to an element that was added in the batch are reported by its addition, and
+ * an element that was added and then removed in the batch is not reported at
+ * all. Neither are additions and modifications below an element that was
+ * removed later in the batch. The changes are kept in the order in which they
+ * were first made.
+ * <p>
+ * A change set is delivered to the listeners of a document when the batch is
+ * committed; see <code>IActionSequenceDocumentListener.changesCommitted</code>.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class ActionSequenceChangeSet {
+
+    private static final int IO = 0;
+    private static final int RESOURCE = 1;
+    private static final int ACTION = 2;
+    private static final int CONTROL_STATEMENT = 3;
+    private static final int HEADER = 4;
+
+    private static final int ADDED = 0;
+    private static final int REMOVED = 1;
+    private static final int RENAMED = 2;
+    private static final int CHANGED = 3;
+
+    /**
+     * The coalesced changes, each keyed by itself.
+     */
+    private final LinkedHashMap changes = new LinkedHashMap();
+
+    /**
+     * The structure of the root element of the document as it was when the
+     * batch began, or null once the batch is committed.
+     */
+    SavedContent priorContent;
+
+    /**
+     * The listener that records the events fired during the batch, in place of
+     * the listeners of the document.
+     */
+    final IActionSequenceDocumentListener[] recorder = {new Recorder()};
+
+    ActionSequenceChangeSet(SavedContent priorContent) {
+        this.priorContent = priorContent;
+    }
+
+    /**
+     * @return the number of coalesced changes
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Notifies a listener of each change in the set, in order, through its
+     * individual event methods.
+     *
+     * @param listener the listener
+     */
+    public void replay(IActionSequenceDocumentListener listener) {
+        for (Iterator iter = changes.values().iterator(); iter.hasNext();) {
+            ((Change) iter.next()).notify(listener);
+        }
+    }
+
+    private void record(int category, int type, Object node, Object subject, Object parent) {
+        Change change = new Change(category, type, node, subject, parent);
+        Change added = new Change(category, ADDED, node, null, null);
+        if (type == REMOVED) {
+            changes.remove(new Change(category, RENAMED, node, null, null));
+            changes.remove(new Change(category, CHANGED, node, null, null));
+            if (changes.remove(added) == null) {
+                changes.put(change, change);
+            }
+            if (node instanceof Element) {
+                removeDescendantChanges((Element) node);
+            }
+        } else if ((type == ADDED) || !changes.containsKey(added)) {
+            // A repeated change keeps its position but reports the latest
+            // wrapper of the element.
+            changes.put(change, change);
+        }
+    }
+
+    /**
+     * Discards the additions and modifications recorded for the descendants
+     * of a removed element; they are reported by the removal, or not at all
+     * if the element was added in the batch. Removals of descendants are
+     * kept.
+     */
+    private void removeDescendantChanges(Element removedElement) {
+        if (removedElement.nodeCount() > 0) {
+            for (Iterator iter = changes.keySet().iterator(); iter.hasNext();) {
+                Change change = (Change) iter.next();
+                if ((change.type != REMOVED) && (change.node instanceof Element)
+                        && isDescendant((Element) change.node, removedElement)) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    private static boolean isDescendant(Element element, Element ancestor) {
+        Element parent = element.getParent();
+        while ((parent != null) && (parent != ancestor)) {
+            parent = parent.getParent();
+        }
+        return parent != null;
+    }
+
+    /**
+     * @return the element wrapped by a resource, or the resource itself.
+     */
+    private static Object getNode(Object resource) {
+        return resource instanceof IActionSequenceElement ? ((IActionSequenceElement) resource).getElement()
+                : resource;
+    }
+
+    /**
+     * A change to one element. Changes are equal if they are of the same kind
+     * and to the same element.
+     */
+    private static final class Change {
+
+        final int category;
+
+        final int type;
+
+        final Object node;
+
+        final Object subject;
+
+        final Object parent;
+
+        Change(int category, int type, Object node, Object subject, Object parent) {
+            this.category = category;
+            this.type = type;
+            this.node = node;
+            this.subject = subject;
+            this.parent = parent;
+        }
+
+        void notify(IActionSequenceDocumentListener listener) {
+            switch (category * 4 + type) {
+                case IO * 4 + ADDED:
+                    listener.ioAdded((IAbstractIOElement) subject);
+                    break;
+                case IO * 4 + REMOVED:
+                    listener.ioRemoved(parent, (IAbstractIOElement) subject);
+                    break;
+                case IO * 4 + RENAMED:
+                    listener.ioRenamed((IAbstractIOElement) subject);
+                    break;
+                case IO * 4 + CHANGED:
+                    listener.ioChanged((IAbstractIOElement) subject);
+                    break;
+                case RESOURCE * 4 + ADDED:
+                    listener.resourceAdded(subject);
+                    break;
+                case RESOURCE * 4 + REMOVED:
+                    listener.resourceRemoved(parent, subject);
+                    break;
+                case RESOURCE * 4 + RENAMED:
+                    listener.resourceRenamed(subject);
+                    break;
+                case RESOURCE * 4 + CHANGED:
+                    listener.resourceChanged(subject);
+                    break;
+                case ACTION * 4 + ADDED:
+                    listener.actionAdded((IActionDefinition) subject);
+                    break;
+                case ACTION * 4 + REMOVED:
+                    listener.actionRemoved(parent, (IActionDefinition) subject);
+                    break;
+                case ACTION * 4 + RENAMED:
+                    listener.actionRenamed((IActionDefinition) subject);
+                    break;
+                case ACTION * 4 + CHANGED:
+                    listener.actionChanged((IActionDefinition) subject);
+                    break;
+                case CONTROL_STATEMENT * 4 + ADDED:
+                    listener.controlStatementAdded((IActionControlStatement) subject);
+                    break;
+                case CONTROL_STATEMENT * 4 + REMOVED:
+                    listener.controlStatementRemoved(parent, (IActionControlStatement) subject);
+                    break;
+                case CONTROL_STATEMENT * 4 + CHANGED:
+                    listener.controlStatementChanged((IActionControlStatement) subject);
+                    break;
+                default:
+                    listener.headerChanged((IActionSequenceDocument) subject);
+                    break;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return ((category * 4 + type) * 31) + (node != null ? node.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean result = false;
+            if (obj instanceof Change) {
+                Change change = (Change) obj;
+                result = (change.category == category) && (change.type == type) && (change.node == node);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records the events fired during a batch.
+     */
+    private final class Recorder implements IActionSequenceDocumentListener {
+
+        @Override
+        public void ioAdded(IAbstractIOElement io) {
+            record(IO, ADDED, io.getElement(), io, null);
+        }
+
+        @Override
+        public void ioRemoved(Object parent, IAbstractIOElement io) {
+            record(IO, REMOVED, io.getElement(), io, parent);
+        }
+
+        @Override
+        public void ioRenamed(IAbstractIOElement io) {
+            record(IO, RENAMED, io.getElement(), io, null);
+        }
+
+        @Override
+        public void ioChanged(IAbstractIOElement io) {
+            record(IO, CHANGED, io.getElement(), io, null);
+        }
+
+        @Override
+        public void resourceAdded(Object resource) {
+            record(RESOURCE, ADDED, getNode(resource), resource, null);
+        }
+
+        @Override
+        public void resourceRemoved(Object parent, Object resource) {
+            record(RESOURCE, REMOVED, getNode(resource), resource, parent);
+        }
+
+        @Override
+        public void resourceRenamed(Object resource) {
+            record(RESOURCE, RENAMED, getNode(resource), resource, null);
+        }
+
+        @Override
+        public void resourceChanged(Object resource) {
+            record(RESOURCE, CHANGED, getNode(resource), resource, null);
+        }
+
+        @Override
+        public void actionAdded(IActionDefinition action) {
+            record(ACTION, ADDED, action.getElement(), action, null);
+        }
+
+        @Override
+        public void actionRemoved(Object parent, IActionDefinition action) {
+            record(ACTION, REMOVED, action.getElement(), action, parent);
+        }
+
+        @Override
+        public void actionRenamed(IActionDefinition action) {
+            record(ACTION, RENAMED, action.getElement(), action, null);
+        }
+
+        @Override
+        public void actionChanged(IActionDefinition action) {
+            record(ACTION, CHANGED, action.getElement(), action, null);
+        }
+
+        @Override
+        public void controlStatementAdded(IActionControlStatement controlStatement) {
+            record(CONTROL_STATEMENT, ADDED, controlStatement.getElement(), controlStatement, null);
+        }
+
+        @Override
+        public void controlStatementRemoved(Object parent, IActionControlStatement controlStatement) {
+            record(CONTROL_STATEMENT, REMOVED, controlStatement.getElement(), controlStatement, parent);
+        }
+
+        @Override
+        public void controlStatementChanged(IActionControlStatement controlStatement) {
+            record(CONTROL_STATEMENT, CHANGED, controlStatement.getElement(), controlStatement, null);
+        }
+
+        @Override
+        public void headerChanged(IActionSequenceDocument actionSequenceDocument) {
+            record(HEADER, CHANGED, null, actionSequenceDocument, null);
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.dom4j.DocumentException;
+import static org.pentaho.actionsequence.dom.ActionSequenceBatchValidator.isActionSequenceFile;
+import org.pentaho.actionsequence.dom.actions.AbstractRelationalDbAction;
+import org.pentaho.actionsequence.dom.actions.JFreeReportAction;
+import static org.pentaho.actionsequence.dom.actions.JFreeReportAction.REPORT_DEFINITION_ELEMENT;
+import org.pentaho.actionsequence.dom.actions.KettleTransformAction;
+import org.pentaho.actionsequence.dom.actions.SubActionAction;
+import static org.pentaho.actionsequence.dom.messages.Messages.getString;
+
+/**
+ * An on-disk index of what the action sequence files of a repository depend
+ * on: the paths of their resources, the JNDI names of their relational
+ * actions, their Kettle transformations, the paths of their sub-actions and
+ * their report definitions. Reverse dependency queries are answered from the
+ * index without loading any action sequence.
+ * <p>
+ * The dependencies of a file are extracted from the document loaded by
+ * <code>ActionSequenceLoader</code>, so each updated file is parsed in full
+ * and held in memory while its dependencies are extracted. Files whose
+ * modification time and size match the index are not loaded. An action input
+ * counts as a dependency if it is a constant, or refers to a
+ * document input with a default value.
+ * <p>
+ * The index file is memory mapped. Files that were updated or removed since
+ * the index file was written are held in memory, override their entries in
+ * the index file and are written to a new index file by <code>save</code>.
+ * All integers of the index file are big endian.
+ * <ul>
+ * <li>header: the bytes <code>ASDI</code>, the format version, the number of
+ * files and the number of keys</li>
+ * <li>files: sorted by path, each as the offset of the path in the string
+ * area, the modification time and the size of the file</li>
+ * <li>keys: sorted, each as the offset of the key in the string area, the
+ * position of its first posting and the number of its postings</li>
+ * <li>postings: for each key, the positions of the files that have it</li>
+ * <li>string area: each string as its length and its UTF-8 bytes</li>
+ * </ul>
+ * A key is the type of a dependency and the dependency, separated by a null
+ * character.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class ActionSequenceDependencyIndex {
+
+    /**
+     * The path of a document resource.
+     */
+    public static final String RESOURCE = "resource"; //$NON-NLS-1$
+
+    /**
+     * The JNDI name of a relational database action.
+     */
+    public static final String JNDI = "jndi"; //$NON-NLS-1$
+
+    /**
+     * The transformation of a Kettle transformation action.
+     */
+    public static final String TRANSFORMATION = "transformation"; //$NON-NLS-1$
+
+    /**
+     * The path of a sub-action.
+     */
+    public static final String SUB_ACTION = "sub-action"; //$NON-NLS-1$
+
+    /**
+     * The path of the report definition resource of a report action, or the
+     * value of its report definition input.
+     */
+    public static final String REPORT_DEFINITION = "report-definition"; //$NON-NLS-1$
+
+    /**
+     * The version of the index file written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'A', 'S', 'D', 'I'};
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int FILE_RECORD_SIZE = 20;
+
+    private static final int KEY_RECORD_SIZE = 12;
+
+    private static final char KEY_SEPARATOR = '\0';
+
+    private static final FileEntry REMOVED = new FileEntry(0, 0, null);
+
+    private final Path indexFile;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+    private int fileCount;
+
+    private int keyCount;
+
+    private int keyTableStart;
+
+    private int postingsStart;
+
+    private int stringsStart;
+
+    /**
+     * The files updated or removed since the index file was written, keyed by
+     * path.
+     */
+    private final HashMap changedFiles = new HashMap();
+
+    /**
+     * The sorted paths of the updated files that have each key.
+     */
+    private final HashMap changedKeys = new HashMap();
+
+    /**
+     * Opens an index. The index is empty if the index file does not exist.
+     *
+     * @param indexFile the index file
+     * @throws IOException if the index file cannot be read or is not an index
+     */
+    public ActionSequenceDependencyIndex(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        if (Files.exists(indexFile)) {
+            map();
+        }
+    }
+
+    private void map() throws IOException {
+        ByteBuffer mappedBuffer;
+        try (FileChannel channel = FileChannel.open(indexFile, READ)) {
+            mappedBuffer = channel.map(READ_ONLY, 0, channel.size());
+        }
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            mappedBuffer.duplicate().get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(getString("ActionSequenceDependencyIndex.NOT_DEPENDENCY_INDEX", //$NON-NLS-1$
+                        indexFile.toString()));
+            }
+            int version = mappedBuffer.getInt(MAGIC.length);
+            if (version != VERSION) {
+                throw new IOException(getString("ActionSequenceDependencyIndex.UNSUPPORTED_VERSION", //$NON-NLS-1$
+                        String.valueOf(version)));
+            }
+            int files = mappedBuffer.getInt(8);
+            int keys = mappedBuffer.getInt(12);
+            int keysStart = HEADER_SIZE + (files * FILE_RECORD_SIZE);
+            int postings = keysStart + (keys * KEY_RECORD_SIZE);
+            int postingCount = keys > 0 ? mappedBuffer.getInt(postings - 8) + mappedBuffer.getInt(postings - 4) : 0;
+            int strings = postings + (postingCount * 4);
+            if ((files < 0) || (keys < 0) || (postingCount < 0) || (strings > mappedBuffer.limit())) {
+                throw new IndexOutOfBoundsException();
+            }
+            buffer = mappedBuffer;
+            fileCount = files;
+            keyCount = keys;
+            keyTableStart = keysStart;
+            postingsStart = postings;
+            stringsStart = strings;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(getString("ActionSequenceDependencyIndex.CORRUPT_INDEX", //$NON-NLS-1$
+                    indexFile.toString()), e);
+        }
+    }
+
+    /**
+     * Updates the dependencies of a file, if the file was modified since they
+     * were extracted.
+     *
+     * @param file the action sequence file
+     * @return true if the file was loaded
+     * @throws IOException if the file cannot be read
+     * @throws DocumentException if the file does not contain well formed XML
+     */
+    public synchronized boolean update(Path file) throws IOException, DocumentException {
+        String path = getPathKey(file);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        boolean modified = !isCurrent(path, lastModified, attributes.size());
+        if (modified) {
+            ActionSequenceDocument doc = ActionSequenceLoader.load(file);
+            setFile(path, new FileEntry(lastModified, attributes.size(), getDependencyKeys(doc)));
+        }
+        return modified;
+    }
+
+    /**
+     * Updates the dependencies of the action sequence files in a directory
+     * tree, and removes the files of the tree that no longer exist. Files that
+     * cannot be loaded are removed from the index.
+     *
+     * @param directory the root of the directory tree
+     * @return the exception that prevented each failed file from being loaded
+     * @throws IOException if the directory tree cannot be read
+     */
+    public synchronized Map<Path, Exception> updateAll(Path directory) throws IOException {
+        LinkedHashMap<Path, Exception> failures = new LinkedHashMap<Path, Exception>();
+        HashSet existingPaths = new HashSet();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Iterator<Path> iter = paths.filter(path -> isActionSequenceFile(path)).iterator(); iter.hasNext();) {
+                Path file = iter.next();
+                existingPaths.add(getPathKey(file));
+                try {
+                    update(file);
+                } catch (IOException | DocumentException | RuntimeException e) {
+                    remove(file);
+                    failures.put(file, e);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        String directoryPrefix = getPathKey(directory);
+        String separator = directory.getFileSystem().getSeparator();
+        if (!directoryPrefix.endsWith(separator)) {
+            directoryPrefix += separator;
+        }
+        for (Iterator iter = getIndexedPaths().iterator(); iter.hasNext();) {
+            String path = (String) iter.next();
+            if (path.startsWith(directoryPrefix) && !existingPaths.contains(path)) {
+                setFile(path, REMOVED);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Removes the dependencies of a file.
+     *
+     * @param file the action sequence file
+     */
+    public synchronized void remove(Path file) {
+        String path = getPathKey(file);
+        if (changedFiles.containsKey(path) || (findFile(path) >= 0)) {
+            setFile(path, REMOVED);
+        }
+    }
+
+    /**
+     * Finds the action sequence files that depend on something.
+     *
+     * @param type the type of the dependency, such as <code>JNDI</code>
+     * @param dependency the dependency, such as a JNDI name
+     * @return the dependent files, sorted by path
+     */
+    public synchronized List<Path> findDependents(String type, String dependency) {
+        String key = type + KEY_SEPARATOR + dependency;
+        TreeSet paths = new TreeSet();
+        int keyIndex = findKey(key);
+        if (keyIndex >= 0) {
+            int keyRecord = keyTableStart + (keyIndex * KEY_RECORD_SIZE);
+            int firstPosting = buffer.getInt(keyRecord + 4);
+            int postingCount = buffer.getInt(keyRecord + 8);
+            for (int i = 0; i < postingCount; i++) {
+                String path = getFilePath(buffer.getInt(postingsStart + ((firstPosting + i) * 4)));
+                if (!changedFiles.containsKey(path)) {
+                    paths.add(path);
+                }
+            }
+        }
+        TreeSet changedPaths = (TreeSet) changedKeys.get(key);
+        if (changedPaths != null) {
+            paths.addAll(changedPaths);
+        }
+        ArrayList<Path> dependents = new ArrayList<Path>(paths.size());
+        for (Iterator iter = paths.iterator(); iter.hasNext();) {
+            dependents.add(Paths.get((String) iter.next()));
+        }
+        return dependents;
+    }
+
+    /**
+     * @return the number of indexed files
+     */
+    public synchronized int size() {
+        return getIndexedPaths().size();
+    }
+
+    /**
+     * Writes the index to a new index file, which replaces the index file
+     * once it is complete, and maps the new index file.
+     *
+     * @throws IOException if the index file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        ArrayList[] keysByFile = new ArrayList[fileCount];
+        for (int i = 0; i < keyCount; i++) {
+            int keyRecord = keyTableStart + (i * KEY_RECORD_SIZE);
+            String key = readString(buffer.getInt(keyRecord));
+            int firstPosting = buffer.getInt(keyRecord + 4);
+            int postingCount = buffer.getInt(keyRecord + 8);
+            for (int j = 0; j < postingCount; j++) {
+                int fileIndex = buffer.getInt(postingsStart + ((firstPosting + j) * 4));
+                if (keysByFile[fileIndex] == null) {
+                    keysByFile[fileIndex] = new ArrayList();
+                }
+                keysByFile[fileIndex].add(key);
+            }
+        }
+        TreeMap files = new TreeMap();
+        for (int i = 0; i < fileCount; i++) {
+            int fileRecord = HEADER_SIZE + (i * FILE_RECORD_SIZE);
+            String path = readString(buffer.getInt(fileRecord));
+            if (!changedFiles.containsKey(path)) {
+                String[] keys = keysByFile[i] != null ? (String[]) keysByFile[i].toArray(new String[0]) : new String[0];
+                files.put(path, new FileEntry(buffer.getLong(fileRecord + 4), buffer.getLong(fileRecord + 12), keys));
+            }
+        }
+        for (Iterator iter = changedFiles.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            if (entry.getValue() != REMOVED) {
+                files.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Path directory = indexFile.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp"); //$NON-NLS-1$
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                write(files, out);
+            }
+            Files.move(tempFile, indexFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        changedFiles.clear();
+        changedKeys.clear();
+        map();
+    }
+
+    private static void write(TreeMap files, DataOutputStream out) throws IOException {
+        TreeMap postings = new TreeMap();
+        int fileIndex = 0;
+        for (Iterator iter = files.values().iterator(); iter.hasNext(); fileIndex++) {
+            String[] keys = ((FileEntry) iter.next()).keys;
+            for (String key : keys) {
+                ArrayList keyPostings = (ArrayList) postings.get(key);
+                if (keyPostings == null) {
+                    keyPostings = new ArrayList();
+                    postings.put(key, keyPostings);
+                }
+                keyPostings.add(fileIndex);
+            }
+        }
+
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(files.size());
+        out.writeInt(postings.size());
+        ArrayList strings = new ArrayList(files.size() + postings.size());
+        int stringOffset = 0;
+        for (Iterator iter = files.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            FileEntry fileEntry = (FileEntry) entry.getValue();
+            byte[] path = ((String) entry.getKey()).getBytes(UTF_8);
+            out.writeInt(stringOffset);
+            out.writeLong(fileEntry.lastModified);
+            out.writeLong(fileEntry.size);
+            strings.add(path);
+            stringOffset += 4 + path.length;
+        }
+        int postingCount = 0;
+        for (Iterator iter = postings.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            byte[] key = ((String) entry.getKey()).getBytes(UTF_8);
+            int keyPostingCount = ((ArrayList) entry.getValue()).size();
+            out.writeInt(stringOffset);
+            out.writeInt(postingCount);
+            out.writeInt(keyPostingCount);
+            strings.add(key);
+            stringOffset += 4 + key.length;
+            postingCount += keyPostingCount;
+        }
+        for (Iterator iter = postings.values().iterator(); iter.hasNext();) {
+            for (Iterator postingIter = ((ArrayList) iter.next()).iterator(); postingIter.hasNext();) {
+                out.writeInt((Integer) postingIter.next());
+            }
+        }
+        for (Iterator iter = strings.iterator(); iter.hasNext();) {
+            byte[] string = (byte[]) iter.next();
+            out.writeInt(string.length);
+            out.write(string);
+        }
+    }
+
+    /**
+     * Extracts the dependencies of an action sequence.
+     *
+     * @param doc the action sequence document
+     * @return the sorted dependency keys
+     */
+    static String[] getDependencyKeys(ActionSequenceDocument doc) {
+        TreeSet keys = new TreeSet();
+        IActionSequenceResource[] resources = doc.getResources();
+        for (IActionSequenceResource resource : resources) {
+            addKey(keys, RESOURCE, resource.getPath());
+        }
+        AbstractRelationalDbAction[] relationalActions = doc.findActions(AbstractRelationalDbAction.class);
+        for (AbstractRelationalDbAction relationalAction : relationalActions) {
+            addKey(keys, JNDI, getStaticValue(doc, relationalAction.getJndi()));
+        }
+        KettleTransformAction[] transformActions = doc.findActions(KettleTransformAction.class);
+        for (KettleTransformAction transformAction : transformActions) {
+            addKey(keys, TRANSFORMATION, getStaticValue(doc, transformAction.getTransformation()));
+        }
+        SubActionAction[] subActions = doc.findActions(SubActionAction.class);
+        for (SubActionAction subAction : subActions) {
+            addKey(keys, SUB_ACTION, getStaticValue(doc, subAction.getPath()));
+        }
+        IActionDefinition[] actions = doc.findActions(IActionDefinition.class);
+        for (IActionDefinition action : actions) {
+            Object reportDefinition = action instanceof JFreeReportAction
+                    ? ((JFreeReportAction) action).getReportDefinition() : action.getResource(REPORT_DEFINITION_ELEMENT);
+            if (reportDefinition instanceof IActionResource) {
+                IActionSequenceResource resource
+                        = doc.getResource(((IActionResource) reportDefinition).getPublicName());
+                if (resource != null) {
+                    addKey(keys, REPORT_DEFINITION, resource.getPath());
+                }
+            } else if (reportDefinition instanceof IActionInput) {
+                addKey(keys, REPORT_DEFINITION, getStaticValue(doc, (IActionInput) reportDefinition));
+            }
+        }
+        return (String[]) keys.toArray(new String[0]);
+    }
+
+    /**
+     * @return the value of a constant input, the default value of the document
+     * input a variable input refers to, or null
+     */
+    private static String getStaticValue(ActionSequenceDocument doc, IActionInput actionInput) {
+        String value = null;
+        if (actionInput instanceof ActionInputConstant) {
+            value = ((ActionInputConstant) actionInput).getStringValue(false);
+        } else if (actionInput instanceof ActionInput) {
+            IActionSequenceInput docInput = doc.getInput(((ActionInput) actionInput).getReferencedVariableName());
+            if ((docInput != null) && (docInput.getDefaultValue() instanceof String)) {
+                value = (String) docInput.getDefaultValue();
+            }
+        }
+        return value;
+    }
+
+    private static void addKey(TreeSet keys, String type, String dependency) {
+        if (dependency != null) {
+            dependency = dependency.trim();
+            if (dependency.length() > 0) {
+                keys.add(type + KEY_SEPARATOR + dependency);
+            }
+        }
+    }
+
+    private static String getPathKey(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private boolean isCurrent(String path, long lastModified, long size) {
+        boolean current;
+        if (changedFiles.containsKey(path)) {
+            FileEntry entry = (FileEntry) changedFiles.get(path);
+            current = (entry != REMOVED) && (entry.lastModified == lastModified) && (entry.size == size);
+        } else {
+            int fileIndex = findFile(path);
+            int fileRecord = HEADER_SIZE + (fileIndex * FILE_RECORD_SIZE);
+            current = (fileIndex >= 0) && (buffer.getLong(fileRecord + 4) == lastModified)
+                    && (buffer.getLong(fileRecord + 12) == size);
+        }
+        return current;
+    }
+
+    private void setFile(String path, FileEntry entry) {
+        FileEntry previousEntry = (FileEntry) changedFiles.put(path, entry);
+        if ((previousEntry != null) && (previousEntry != REMOVED)) {
+            for (String key : previousEntry.keys) {
+                TreeSet paths = (TreeSet) changedKeys.get(key);
+                paths.remove(path);
+                if (paths.isEmpty()) {
+                    changedKeys.remove(key);
+                }
+            }
+        }
+        if (entry != REMOVED) {
+            for (String key : entry.keys) {
+                TreeSet paths = (TreeSet) changedKeys.get(key);
+                if (paths == null) {
+                    paths = new TreeSet();
+                    changedKeys.put(key, paths);
+                }
+                paths.add(path);
+            }
+        }
+    }
+
+    /**
+     * @return the sorted paths of the indexed files
+     */
+    private TreeSet getIndexedPaths() {
+        TreeSet paths = new TreeSet();
+        for (int i = 0; i < fileCount; i++) {
+            paths.add(getFilePath(i));
+        }
+        for (Iterator iter = changedFiles.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            if (entry.getValue() != REMOVED) {
+                paths.add(entry.getKey());
+            } else {
+                paths.remove(entry.getKey());
+            }
+        }
+        return paths;
+    }
+
+    private String getFilePath(int fileIndex) {
+        return readString(buffer.getInt(HEADER_SIZE + (fileIndex * FILE_RECORD_SIZE)));
+    }
+
+    /**
+     * @return the position of a file in the index file, or a negative number
+     * if the file is not in the index file
+     */
+    private int findFile(String path) {
+        return binarySearch(HEADER_SIZE, FILE_RECORD_SIZE, fileCount, path);
+    }
+
+    /**
+     * @return the position of a key in the index file, or a negative number if
+     * the key is not in the index file
+     */
+    private int findKey(String key) {
+        return binarySearch(keyTableStart, KEY_RECORD_SIZE, keyCount, key);
+    }
+
+    private int binarySearch(int tableStart, int recordSize, int recordCount, String string) {
+        int low = 0;
+        int high = recordCount - 1;
+        int result = -1;
+        while ((result < 0) && (low <= high)) {
+            int middle = (low + high) >>> 1;
+            int comparison = readString(buffer.getInt(tableStart + (middle * recordSize))).compareTo(string);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                result = middle;
+            }
+        }
+        return result;
+    }
+
+    private String readString(int offset) {
+        ByteBuffer stringBuffer = buffer.duplicate();
+        stringBuffer.position(stringsStart + offset);
+        byte[] bytes = new byte[stringBuffer.getInt()];
+        stringBuffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * The modification time, size and dependency keys of an indexed file.
+     */
+    private static class FileEntry {
+
+        final long lastModified;
+
+        final long size;
+
+        final String[] keys;
+
+        FileEntry(long lastModified, long size, String[] keys) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.keys = keys;
+        }
+    }
+}
@@ -13,29 +13,40 @@
 package org.pentaho.actionsequence.dom;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.Writer;
 import static java.lang.System.out;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
 import java.net.URI;
 import java.util.ArrayList;
 import static java.util.Arrays.asList;
-import java.util.HashMap;
+import static java.util.Collections.synchronizedMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
-import static org.dom4j.DocumentHelper.createDocument;
 import static org.dom4j.DocumentHelper.makeElement;
 import static org.dom4j.DocumentHelper.parseText;
 import org.dom4j.Element;
 import org.dom4j.Node;
-import org.dom4j.io.OutputFormat;
-import static org.dom4j.io.OutputFormat.createPrettyPrint;
-import org.dom4j.io.XMLWriter;
 import static org.pentaho.actionsequence.dom.IAbstractIOElement.TYPE_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.getChildElement;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchild;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchildren;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.ActionFactory;
 import static org.pentaho.actionsequence.dom.actions.ActionFactory.getActionDefinition;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+import static org.pentaho.actionsequence.dom.messages.Messages.getString;
 
 /**
  * A wrapper class for an action definition resource element.
@@ -133,7 +144,58 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     IActionParameterMgr actionInputProvider;
     Metadata metadata = new Metadata();
 
-    static HashMap listenersMap = new HashMap();
+    /**
+     * The live action sequence document wrappers of each dom4j document. The
+     * wrappers are weakly referenced so that neither the wrapper nor the
+     * document are kept alive by this map. The arrays are replaced, never
+     * modified, so that lookups need no lock.
+     */
+    static final WeakDocumentMap<WeakReference[]> documentWrappers = new WeakDocumentMap<WeakReference[]>();
+
+    /**
+     * The wrappers handed out for elements of this document, keyed by element.
+     * Both keys and wrappers are weakly referenced since every wrapper holds on
+     * to its element. The wrappers of a read only document are held by a
+     * concurrent map instead, so that readers of a snapshot do not contend for
+     * a lock. Its elements never change, and its wrappers are held as long as
+     * the snapshot.
+     */
+    final Map elementWrappers;
+
+    /**
+     * The compact default tables of the result set and property map list
+     * inputs of the dom4j document, keyed by input element. The map is shared
+     * by all wrappers of the same dom4j document.
+     */
+    Map defaultTables;
+
+    /**
+     * The listeners of the dom4j document. The registry is shared by all
+     * wrappers of the same dom4j document and held only by them.
+     */
+    DocumentListenerRegistry listenerRegistry;
+
+    /**
+     * The variable references of a document that is not tracked. Discarded
+     * whenever the document is modified through the wrapper API, and rebuilt
+     * on the next reference query or when that query finds the tree was
+     * edited directly. Tracked documents hold their own index.
+     */
+    volatile ReferenceIndex referenceIndex;
+
+    /**
+     * The action definitions of this document by component. Discarded
+     * whenever an action definition or control statement is added, removed or
+     * renamed and rebuilt on the next query.
+     */
+    volatile ActionTypeIndex actionTypeIndex;
+
+    /**
+     * The wrappers created while the document was loaded. They are held here
+     * so that the weakly referenced cache entries survive until first use,
+     * and are released as soon as any cached wrapper is evicted.
+     */
+    private volatile Object[] preloadedWrappers;
 
     /**
      * @deprecated This class is created to workaround architectual issues in
@@ -151,6 +213,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         }
 
         public void setSolutionName(String solutionName) {
+            checkWritable();
             this.solutionName = solutionName;
         }
 
@@ -159,6 +222,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         }
 
         public void setSolutionPath(String solutionPath) {
+            checkWritable();
             this.solutionPath = solutionPath;
         }
 
@@ -167,17 +231,30 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         }
 
         public void setDocumentName(String documentName) {
+            checkWritable();
             this.documentName = documentName;
         }
+
+        /**
+         * @throws UnsupportedOperationException if the document is the read
+         * only document of a snapshot.
+         */
+        private void checkWritable() {
+            if (document != null) {
+                ReadOnlyDocumentFactory.checkWritable(document);
+            }
+        }
     }
 
     public ActionSequenceDocument() {
-        document = createDocument();
+        document = TrackingDocumentFactory.getInstance().createDocument();
+        elementWrappers = createWrapperCache(document);
         Element rootElement = document.addElement(ACTION_SEQUENCE);
         rootElement.addElement(DOC_INPUTS_NAME);
         rootElement.addElement(DOC_OUTPUTS_NAME);
         rootElement.addElement(DOC_RESOURCES_NAME);
         rootElement.addElement(ACTIONS_NAME);
+        register(this);
     }
 
     /**
@@ -190,24 +267,490 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     public ActionSequenceDocument(Document doc, IActionParameterMgr actionInputProvider) {
         super();
         document = doc;
+        elementWrappers = createWrapperCache(doc);
         this.actionInputProvider = actionInputProvider;
 
         // By convention the document should have one actions child
         // element that is not a loop. This code insures that this
         // is the case.
-        List actions = document.selectNodes("/" + ACTION_SEQUENCE + "/" + ACTIONS_NAME); //$NON-NLS-1$ //$NON-NLS-2$
-        Element masterAction = null;
+        Element rootElement = getActionSequenceElement();
+        List actions = rootElement != null ? new ArrayList(rootElement.elements(ACTIONS_NAME)) : new ArrayList();
+        if (!isMasterActions(actions)) {
+            Element masterAction = rootElement != null ? rootElement.addElement(ACTIONS_NAME)
+                    : document.addElement(ACTIONS_NAME);
+            for (Iterator iter = actions.iterator(); iter.hasNext();) {
+                masterAction.add(((Element) iter.next()).detach());
+            }
+        }
+        register(this);
+    }
+
+    /**
+     * Creates the wrapper of a document built by <code>ActionSequenceLoader</code>.
+     * The loader has already normalized the actions element and built the
+     * reference index and action definition wrappers while reading the
+     * document.
+     *
+     * @param doc the loaded document
+     * @param actionInputProvider the parameter manager
+     * @param referenceIndex the reference index of the document
+     * @param actionDefinitions the action definition wrappers of the document
+     */
+    ActionSequenceDocument(Document doc, IActionParameterMgr actionInputProvider, ReferenceIndex referenceIndex,
+            List actionDefinitions) {
+        super();
+        document = doc;
+        elementWrappers = createWrapperCache(doc);
+        this.actionInputProvider = actionInputProvider;
+        if (!TrackingDocumentFactory.setReferenceIndex(doc, referenceIndex)) {
+            this.referenceIndex = referenceIndex;
+        }
+        ArrayList actionDefElements = new ArrayList(actionDefinitions.size());
+        for (Iterator iter = actionDefinitions.iterator(); iter.hasNext();) {
+            ActionDefinition actionDefinition = (ActionDefinition) iter.next();
+            cacheWrapper(actionDefinition.getElement(), actionDefinition);
+            actionDefElements.add(actionDefinition.getElement());
+        }
+        actionTypeIndex = new ActionTypeIndex(actionDefElements);
+        preloadedWrappers = actionDefinitions.toArray();
+        register(this);
+    }
+
+    /**
+     * @param actions the actions children of the action sequence element
+     * @return true if there is exactly one actions element and it does not
+     * have a loop-on child
+     */
+    static boolean isMasterActions(List actions) {
+        boolean result = false;
         if (actions.size() == 1) {
-            masterAction = (Element) actions.get(0);
-            if ((masterAction.valueOf(LOOP_ON_NAME) != null)
-                    && (masterAction.valueOf(LOOP_ON_NAME).trim().length() > 0)) {
-                masterAction = null;
+            Element loopOn = ((Element) actions.get(0)).element(LOOP_ON_NAME);
+            result = (loopOn == null) || (loopOn.getStringValue().trim().length() == 0);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the action sequence document that wraps the given dom4j
+     * document. If a wrapper using the same parameter manager is still in use
+     * that wrapper is returned, so that repeated navigation from elements of
+     * the document back to the document does not create new wrappers.
+     *
+     * @param doc the dom4j document
+     * @param actionInputProvider the parameter manager used by the wrapper
+     * @return the action sequence document or null if doc is null
+     */
+    public static ActionSequenceDocument getActionSequenceDocument(Document doc,
+            IActionParameterMgr actionInputProvider) {
+        ActionSequenceDocument actionSequenceDocument = null;
+        if (doc != null) {
+            actionSequenceDocument = getRegisteredDocument(doc, actionInputProvider);
+            if (actionSequenceDocument == null) {
+                actionSequenceDocument = new ActionSequenceDocument(doc, actionInputProvider);
             }
         }
-        if (masterAction == null) {
-            masterAction = document.addElement(ACTIONS_NAME);
-            for (Iterator iter = actions.iterator(); iter.hasNext();) {
-                masterAction.add(((Element) iter.next()).detach());
+        return actionSequenceDocument;
+    }
+
+    /**
+     * @return the live wrapper of the document that uses the given parameter
+     * manager, or null if there is none. Neither locks nor modifies anything.
+     */
+    private static ActionSequenceDocument getRegisteredDocument(Document doc,
+            IActionParameterMgr actionInputProvider) {
+        ActionSequenceDocument actionSequenceDocument = null;
+        WeakReference[] wrapperRefs = documentWrappers.get(doc);
+        if (wrapperRefs != null) {
+            for (int i = 0; (i < wrapperRefs.length) && (actionSequenceDocument == null); i++) {
+                ActionSequenceDocument wrapper = (ActionSequenceDocument) wrapperRefs[i].get();
+                if ((wrapper != null) && (wrapper.actionInputProvider == actionInputProvider)) {
+                    actionSequenceDocument = wrapper;
+                }
+            }
+        }
+        return actionSequenceDocument;
+    }
+
+    private static ActionSequenceDocument[] getRegisteredDocuments(Document doc) {
+        ArrayList wrappers = new ArrayList();
+        WeakReference[] wrapperRefs = documentWrappers.get(doc);
+        if (wrapperRefs != null) {
+            for (WeakReference wrapperRef : wrapperRefs) {
+                Object wrapper = wrapperRef.get();
+                if (wrapper != null) {
+                    wrappers.add(wrapper);
+                }
+            }
+        }
+        return (ActionSequenceDocument[]) wrappers.toArray(new ActionSequenceDocument[0]);
+    }
+
+    private static void register(final ActionSequenceDocument actionSequenceDocument) {
+        documentWrappers.update(actionSequenceDocument.document, wrapperRefs -> {
+            ArrayList liveRefs = new ArrayList();
+            ActionSequenceDocument liveWrapper = null;
+            if (wrapperRefs != null) {
+                for (WeakReference wrapperRef : wrapperRefs) {
+                    ActionSequenceDocument wrapper = (ActionSequenceDocument) wrapperRef.get();
+                    if (wrapper != null) {
+                        liveRefs.add(wrapperRef);
+                        liveWrapper = wrapper;
+                    }
+                }
+            }
+            if (liveWrapper != null) {
+                actionSequenceDocument.defaultTables = liveWrapper.defaultTables;
+                actionSequenceDocument.listenerRegistry = liveWrapper.listenerRegistry;
+            } else {
+                actionSequenceDocument.defaultTables = synchronizedMap(new WeakHashMap());
+                actionSequenceDocument.listenerRegistry = new DocumentListenerRegistry();
+            }
+            liveRefs.add(new WeakReference(actionSequenceDocument));
+            return (WeakReference[]) liveRefs.toArray(new WeakReference[liveRefs.size()]);
+        });
+    }
+
+    /**
+     * @return a live wrapper of a dom4j document, or null if the document is
+     * not wrapped. Neither locks nor allocates.
+     */
+    private static ActionSequenceDocument getAnyRegisteredDocument(Document doc) {
+        ActionSequenceDocument actionSequenceDocument = null;
+        WeakReference[] wrapperRefs = documentWrappers.get(doc);
+        if (wrapperRefs != null) {
+            for (int i = 0; (i < wrapperRefs.length) && (actionSequenceDocument == null); i++) {
+                actionSequenceDocument = (ActionSequenceDocument) wrapperRefs[i].get();
+            }
+        }
+        return actionSequenceDocument;
+    }
+
+    /**
+     * @return the default table cache of a dom4j document, or null if the
+     * document is not wrapped
+     */
+    static Map getDefaultTables(Document doc) {
+        ActionSequenceDocument wrapper = getAnyRegisteredDocument(doc);
+        return wrapper != null ? wrapper.defaultTables : null;
+    }
+
+    /**
+     * Returns the listeners to which the events of a dom4j document are
+     * dispatched. While a batch is open for the document, this is the recorder
+     * of the batch's change set rather than the registered listeners.
+     *
+     * @param doc the dom4j document
+     * @return the listeners of the document or null if there are none or the
+     * document is not wrapped. The returned array must not be modified.
+     */
+    static IActionSequenceDocumentListener[] getListeners(Document doc) {
+        IActionSequenceDocumentListener[] listeners = null;
+        if (doc != null) {
+            ActionSequenceDocument wrapper = getAnyRegisteredDocument(doc);
+            if (wrapper != null) {
+                listeners = wrapper.listenerRegistry.getListeners();
+            }
+        }
+        return listeners;
+    }
+
+    /**
+     * Discards the cached default table of an input of a dom4j document.
+     */
+    private static void invalidateDefaultTable(Document doc, Element inputElement) {
+        Map defaultTables = getDefaultTables(doc);
+        if (defaultTables != null) {
+            defaultTables.remove(inputElement);
+        }
+    }
+
+    /**
+     * Returns the wrapper for an element of this document. Wrappers are
+     * cached, so repeated calls for the same element return the same object
+     * until the element is modified through the wrapper API.
+     *
+     * @param element an element of this document
+     * @return the wrapper for the element, or null if the element is not an
+     * action sequence element
+     */
+    public IActionSequenceElement getElement(Element element) {
+        IActionSequenceElement wrapper = getCachedWrapper(element, IActionSequenceElement.class);
+        if (wrapper == null) {
+            wrapper = createWrapper(element, actionInputProvider);
+            cacheWrapper(element, wrapper);
+        }
+        return wrapper;
+    }
+
+    /**
+     * Returns the wrapper for the given element. If the element belongs to a
+     * document that is wrapped using the same parameter manager, the cached
+     * wrapper of that document is returned, otherwise a new wrapper is
+     * created. No document wrapper is created and the document is not
+     * modified.
+     *
+     * @param element the element to be wrapped
+     * @param actionInputProvider the parameter manager used by the wrapper
+     * @return the wrapper for the element, or null if the element is not an
+     * action sequence element
+     */
+    public static IActionSequenceElement getElement(Element element, IActionParameterMgr actionInputProvider) {
+        IActionSequenceElement wrapper = null;
+        if (element != null) {
+            ActionSequenceDocument actionSequenceDocument = getRegisteredDocument(element.getDocument(),
+                    actionInputProvider);
+            if (actionSequenceDocument != null) {
+                wrapper = actionSequenceDocument.getElement(element);
+            } else {
+                wrapper = createWrapper(element, actionInputProvider);
+            }
+        }
+        return wrapper;
+    }
+
+    private static IActionSequenceElement createWrapper(Element element, IActionParameterMgr actionInputProvider) {
+        IActionSequenceElement actionSequenceElement = null;
+        Element parent = element.getParent();
+        if (isSectionElement(parent, DOC_INPUTS_NAME)) {
+            actionSequenceElement = new ActionSequenceInput(element, actionInputProvider);
+        } else if (isSectionElement(parent, DOC_OUTPUTS_NAME)) {
+            actionSequenceElement = new ActionSequenceOutput(element, actionInputProvider);
+        } else if (isSectionElement(parent, DOC_RESOURCES_NAME)) {
+            actionSequenceElement = new ActionSequenceResource(element, actionInputProvider);
+        } else if ((parent != null) && parent.getName().equals(ACTION_INPUTS_NAME)) {
+            actionSequenceElement = new ActionInput(element, actionInputProvider);
+        } else if ((parent != null) && parent.getName().equals(ACTION_OUTPUTS_NAME)) {
+            actionSequenceElement = new ActionOutput(element, actionInputProvider);
+        } else if ((parent != null) && parent.getName().equals(ACTION_RESOURCES_NAME)) {
+            actionSequenceElement = new ActionResource(element, actionInputProvider);
+        } else if (element.getName().equals(ACTION_DEFINITION_NAME)) {
+            actionSequenceElement = getActionDefinition(element, actionInputProvider);
+        } else if (element.getName().equals(ACTIONS_NAME)) {
+            if (element.element(CONDITION_NAME) == null) {
+                actionSequenceElement = new ActionLoop(element, actionInputProvider);
+            } else {
+                actionSequenceElement = new ActionIfStatement(element, actionInputProvider);
+            }
+        }
+        return actionSequenceElement;
+    }
+
+    /**
+     * @return true if the given element is the named child of the action
+     * sequence root element.
+     */
+    private static boolean isSectionElement(Element element, String sectionName) {
+        boolean result = false;
+        if ((element != null) && element.getName().equals(sectionName)) {
+            Element rootElement = element.getParent();
+            result = (rootElement != null) && (rootElement.getParent() == null)
+                    && rootElement.getName().equals(ACTION_SEQUENCE) && (rootElement.getDocument() != null);
+        }
+        return result;
+    }
+
+    private static Map createWrapperCache(Document doc) {
+        return ReadOnlyDocumentFactory.isReadOnly(doc) ? new ConcurrentHashMap() : synchronizedMap(new WeakHashMap());
+    }
+
+    /**
+     * @return the wrapper held by an entry of the wrapper cache, or null if it
+     * was garbage collected
+     */
+    private static Object getWrapper(Object cacheEntry) {
+        return cacheEntry instanceof WeakReference ? ((WeakReference) cacheEntry).get() : cacheEntry;
+    }
+
+    private IActionSequenceElement getCachedWrapper(Element element, Class wrapperClass) {
+        IActionSequenceElement wrapper = (IActionSequenceElement) getWrapper(elementWrappers.get(element));
+        if ((wrapper != null) && !(wrapperClass.isInstance(wrapper) && isCurrentWrapper(wrapper, element))) {
+            wrapper = null;
+        }
+        return wrapper;
+    }
+
+    /**
+     * @return false if the cached wrapper no longer matches the element it
+     * wraps, i.e. if a loop became an if statement, or the parameter manager of
+     * an action definition was changed by one of its users.
+     */
+    private boolean isCurrentWrapper(IActionSequenceElement wrapper, Element element) {
+        boolean result = true;
+        if (wrapper instanceof ActionControlStatement) {
+            result = (wrapper instanceof ActionIfStatement) == (element.element(CONDITION_NAME) != null);
+        } else if (wrapper instanceof ActionDefinition) {
+            result = ((ActionDefinition) wrapper).getActionParameterMgr() == actionInputProvider;
+        }
+        return result;
+    }
+
+    private void cacheWrapper(Element element, IActionSequenceElement wrapper) {
+        if ((wrapper != null) && (element.getDocument() == document)) {
+            elementWrappers.put(element,
+                    elementWrappers instanceof ConcurrentHashMap ? wrapper : new WeakReference(wrapper));
+        }
+    }
+
+    /**
+     * Replaces the cached wrappers of a newly added element and its
+     * descendants with the wrapper that was handed out by the add method.
+     */
+    static void cacheAddedWrapper(IActionSequenceElement wrapper) {
+        Element element = wrapper.getElement();
+        IActionParameterMgr wrapperProvider = null;
+        if (wrapper instanceof ActionDefinition) {
+            wrapperProvider = ((ActionDefinition) wrapper).getActionParameterMgr();
+        } else if (wrapper instanceof ActionControlStatement) {
+            wrapperProvider = ((ActionControlStatement) wrapper).actionInputProvider;
+        } else if (wrapper instanceof AbstractIOElement) {
+            wrapperProvider = ((AbstractIOElement) wrapper).actionInputProvider;
+        }
+        if ((element != null) && (element.getDocument() != null)) {
+            ActionSequenceDocument[] wrappers = getRegisteredDocuments(element.getDocument());
+            for (ActionSequenceDocument actionSequenceDocument : wrappers) {
+                actionSequenceDocument.evictWrappers(element);
+                if (actionSequenceDocument.actionInputProvider == wrapperProvider) {
+                    actionSequenceDocument.cacheWrapper(element, wrapper);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached wrappers of the given element and its descendants
+     * from every wrapper of the given document.
+     */
+    static void evictWrappers(Document doc, Element element) {
+        if ((doc != null) && (element != null)) {
+            ActionSequenceDocument[] wrappers = getRegisteredDocuments(doc);
+            for (ActionSequenceDocument wrapper : wrappers) {
+                wrapper.evictWrappers(element);
+            }
+        }
+    }
+
+    private void evictWrappers(Element element) {
+        preloadedWrappers = null;
+        if (!elementWrappers.isEmpty()) {
+            elementWrappers.remove(element);
+            for (Iterator iter = element.elementIterator(); iter.hasNext();) {
+                evictWrappers((Element) iter.next());
+            }
+        }
+    }
+
+    /**
+     * Returns the reference index of this document. The index of a tracked
+     * document is updated by the events of the wrapper API and rebuilt only
+     * when the document was modified directly. The index of any other
+     * document is discarded by those events, and rebuilt when it no longer
+     * matches the tree, which is checked on every call unless the document is
+     * read only. Queries should call this once and use the returned index
+     * throughout.
+     *
+     * @return the reference index of this document
+     */
+    ReferenceIndex getReferenceIndex() {
+        ReferenceIndex index = TrackingDocumentFactory.getReferenceIndex(document);
+        if (index == null) {
+            index = referenceIndex;
+            if ((index == null) || (!ReadOnlyDocumentFactory.isReadOnly(document)
+                    && !index.isCurrent(document.getRootElement()))) {
+                index = new ReferenceIndex(document);
+                referenceIndex = index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Updates the reference index of a document after a change made through
+     * the wrapper API.
+     *
+     * @param doc the document
+     * @param element the element the change is about, or null if any part of
+     * the document may have changed
+     */
+    static void updateReferenceIndex(Document doc, Element element) {
+        if ((doc != null) && !TrackingDocumentFactory.updateReferenceIndex(doc, element)) {
+            invalidateReferenceIndex(doc);
+        }
+    }
+
+    /**
+     * Discards the reference index of the given document and of every
+     * wrapper of it.
+     */
+    static void invalidateReferenceIndex(Document doc) {
+        if (doc != null) {
+            TrackingDocumentFactory.updateReferenceIndex(doc, null);
+            ActionSequenceDocument[] wrappers = getRegisteredDocuments(doc);
+            for (ActionSequenceDocument wrapper : wrappers) {
+                wrapper.referenceIndex = null;
+            }
+        }
+    }
+
+    /**
+     * @return the action type index of this document, building it if action
+     * definitions were added, removed or renamed since the last query.
+     */
+    ActionTypeIndex getActionTypeIndex() {
+        ActionTypeIndex index = actionTypeIndex;
+        if (index == null) {
+            index = new ActionTypeIndex(document);
+            actionTypeIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Discards the action type index of every wrapper of the given document.
+     */
+    static void invalidateActionTypeIndex(Document doc) {
+        if (doc != null) {
+            ActionSequenceDocument[] wrappers = getRegisteredDocuments(doc);
+            for (ActionSequenceDocument wrapper : wrappers) {
+                wrapper.actionTypeIndex = null;
+            }
+        }
+    }
+
+    /**
+     * Removes the cached wrappers of every action definition and control
+     * statement of the given document.
+     */
+    static void evictExecutableWrappers(Document doc) {
+        if (doc != null) {
+            ActionSequenceDocument[] wrappers = getRegisteredDocuments(doc);
+            for (ActionSequenceDocument wrapper : wrappers) {
+                wrapper.preloadedWrappers = null;
+                synchronized (wrapper.elementWrappers) {
+                    for (Iterator iter = wrapper.elementWrappers.values().iterator(); iter.hasNext();) {
+                        Object cachedWrapper = getWrapper(iter.next());
+                        if ((cachedWrapper == null) || (cachedWrapper instanceof IActionSequenceExecutableStatement)) {
+                            iter.remove();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached wrapper of the action definition that owns the given
+     * action input, output or resource element.
+     */
+    static void evictOwnerWrapper(Element ioElement) {
+        Document doc = ioElement.getDocument();
+        Element sectionElement = ioElement.getParent();
+        if ((doc != null) && (sectionElement != null) && (sectionElement.getParent() != null)
+                && sectionElement.getParent().getName().equals(ACTION_DEFINITION_NAME)) {
+            Element actionDefElement = sectionElement.getParent();
+            ActionSequenceDocument[] wrappers = getRegisteredDocuments(doc);
+            for (ActionSequenceDocument wrapper : wrappers) {
+                wrapper.preloadedWrappers = null;
+                wrapper.elementWrappers.remove(actionDefElement);
             }
         }
     }
@@ -219,30 +762,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public IActionSequenceElement getElement(String xPath) {
         IActionSequenceElement actionSequenceElement = null;
-        Node node = getDocument().selectSingleNode(xPath);
+        Node node = selectSingleNode(getDocument(), xPath);
         if (node instanceof Element) {
-            Element element = (Element) node;
-            if (element.getName().equals(ACTION_DEFINITION_NAME)) {
-                actionSequenceElement = getActionDefinition(element, actionInputProvider);
-            } else if (element.getName().equals(ACTIONS_NAME)) {
-                if (element.element(CONDITION_NAME) == null) {
-                    actionSequenceElement = new ActionLoop(element, actionInputProvider);
-                } else {
-                    actionSequenceElement = new ActionIfStatement(element, actionInputProvider);
-                }
-            } else if (element.getParent().getPath().equals(DOC_INPUTS_PATH)) {
-                actionSequenceElement = new ActionSequenceInput(element, actionInputProvider);
-            } else if (element.getParent().getPath().equals(DOC_OUTPUTS_PATH)) {
-                actionSequenceElement = new ActionSequenceOutput(element, actionInputProvider);
-            } else if (element.getParent().getPath().equals(DOC_RESOURCES_PATH)) {
-                actionSequenceElement = new ActionSequenceResource(element, actionInputProvider);
-            } else if (element.getParent().getName().equals(ACTION_INPUTS_NAME)) {
-                actionSequenceElement = new ActionInput(element, actionInputProvider);
-            } else if (element.getParent().getName().equals(ACTION_OUTPUTS_NAME)) {
-                actionSequenceElement = new ActionOutput(element, actionInputProvider);
-            } else if (element.getParent().getName().equals(ACTION_RESOURCES_NAME)) {
-                actionSequenceElement = new ActionResource(element, actionInputProvider);
-            }
+            actionSequenceElement = getElement((Element) node);
         }
         return actionSequenceElement;
     }
@@ -255,15 +777,24 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         return document;
     }
 
+    /**
+     * @return the action sequence root element or null if the document has a
+     * different root element.
+     */
+    private Element getActionSequenceElement() {
+        Element rootElement = document.getRootElement();
+        return (rootElement != null) && rootElement.getName().equals(ACTION_SEQUENCE) ? rootElement : null;
+    }
+
     /**
      * @return the action sequence description
      */
     @Override
     public String getDescription() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_DESCRIPT);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_DESCRIPT);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -277,9 +808,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getHelp() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_HELP);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_HELP);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -293,9 +824,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getVersion() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_VERSION);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_VERSION);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -310,9 +841,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getLoggingLevel() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_LOGGING_LEVEL);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_LOGGING_LEVEL);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -326,9 +857,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getAuthor() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_AUTHOR);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_AUTHOR);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -342,9 +873,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getResultType() {
         String result = null;
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_RESULT_TYPE);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_RESULT_TYPE);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -358,9 +889,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getIconLocation() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_ICON);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_ICON);
             if (subElement != null) {
                 result = subElement.getText().trim();
                 int index = result.indexOf("|"); //$NON-NLS-1$
@@ -378,9 +909,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getFlyoverIconLocation() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_ICON);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_ICON);
             if (subElement != null) {
                 result = subElement.getText();
                 int index = result.indexOf("|"); //$NON-NLS-1$
@@ -400,9 +931,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public String getTitle() {
         String result = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (actSeq != null) {
-            Element subElement = (Element) actSeq.selectSingleNode(ACTION_SEQUENCE_TITLE);
+            Element subElement = getChildElement(actSeq, ACTION_SEQUENCE_TITLE);
             if (subElement != null) {
                 result = subElement.getText();
             }
@@ -417,7 +948,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setDescription(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_DESCRIPT);
         subElement.setText(value == null ? "" : value); //$NON-NLS-1$
         fireHeaderChanged(this);
@@ -430,7 +961,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setHelp(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_HELP);
         subElement.setText(value == null ? "" : value); //$NON-NLS-1$
         fireHeaderChanged(this);
@@ -443,7 +974,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setVersion(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_VERSION);
         subElement.setText(value == null ? "" : value); //$NON-NLS-1$
         fireHeaderChanged(this);
@@ -456,7 +987,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setLoggingLevel(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_LOGGING_LEVEL);
         subElement.setText(value == null ? "" : value); //$NON-NLS-1$
         fireHeaderChanged(this);
@@ -469,7 +1000,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setAuthor(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_AUTHOR);
         subElement.setText(value == null ? "" : value); //$NON-NLS-1$
         fireHeaderChanged(this);
@@ -482,9 +1013,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setResultType(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         if (value == null) {
-            Node subElement = actSeq.selectSingleNode(ACTION_SEQUENCE_DOCUMENTATION_RESULT_TYPE);
+            Node subElement = getChildElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_RESULT_TYPE);
             if (subElement != null) {
                 subElement.detach();
                 fireHeaderChanged(this);
@@ -504,7 +1035,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public void setIconLocation(String value) {
         String location = ""; //$NON-NLS-1$
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_ICON);
         if (value != null) {
             location = value;
@@ -524,7 +1055,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setFlyoverIconLocation(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_DOCUMENTATION_ICON);
         String location = getIconLocation();
         if ((value != null) && (value.trim().length() > 0)) {
@@ -541,7 +1072,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public void setTitle(String value) {
-        Element actSeq = (Element) document.selectSingleNode(ACTION_SEQUENCE);
+        Element actSeq = getActionSequenceElement();
         Element subElement = makeElement(actSeq, ACTION_SEQUENCE_TITLE);
         subElement.setText(value == null ? "" : value); //$NON-NLS-1$
         fireHeaderChanged(this);
@@ -571,9 +1102,9 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         if (types == null) {
             matchingInputs.addAll(asList(allInputs));
         } else {
-            ArrayList typesList = new ArrayList(asList(types));
+            HashSet typesSet = new HashSet(asList(types));
             for (IActionSequenceInput allInput : allInputs) {
-                if (typesList.contains(allInput.getType())) {
+                if (typesSet.contains(allInput.getType())) {
                     matchingInputs.add(allInput);
                 }
             }
@@ -586,11 +1117,11 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public IActionSequenceInput[] getInputs() {
-        List inputsList = document.getRootElement().selectNodes(DOC_INPUTS_NAME + "/*"); //$NON-NLS-1$
+        List inputsList = getGrandchildren(document.getRootElement(), DOC_INPUTS_NAME);
         ActionSequenceInput[] inputs = new ActionSequenceInput[inputsList.size()];
         int index = 0;
         for (Iterator iter = inputsList.iterator(); iter.hasNext();) {
-            inputs[index++] = new ActionSequenceInput((Element) iter.next(), actionInputProvider);
+            inputs[index++] = getInputWrapper((Element) iter.next());
         }
         return inputs;
     }
@@ -601,8 +1132,8 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public IActionSequenceInput getInput(String inputName) {
-        Element element = (Element) document.getRootElement().selectSingleNode(DOC_INPUTS_NAME + "/" + inputName); //$NON-NLS-1$
-        return element != null ? new ActionSequenceInput(element, actionInputProvider) : null;
+        Element element = getGrandchild(document.getRootElement(), DOC_INPUTS_NAME, inputName);
+        return element != null ? getInputWrapper(element) : null;
     }
 
     /**
@@ -619,7 +1150,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         if (input == null) {
             Element inputElement = makeElement(document.getRootElement(), DOC_INPUTS_NAME + "/" + inputName); //$NON-NLS-1$
             inputElement.addAttribute(TYPE_NAME, inputType);
-            input = new ActionSequenceInput(inputElement, actionInputProvider);
+            input = getInputWrapper(inputElement);
             fireIoAdded(input);
             if (inputType.equals(STRING_TYPE)) {
                 input.addSource(REQUEST_INPUT_SOURCE, inputName);
@@ -649,11 +1180,11 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public IActionSequenceOutput[] getOutputs() {
-        List outputsList = document.getRootElement().selectNodes(DOC_OUTPUTS_NAME + "/*"); //$NON-NLS-1$
+        List outputsList = getGrandchildren(document.getRootElement(), DOC_OUTPUTS_NAME);
         ActionSequenceOutput[] outputs = new ActionSequenceOutput[outputsList.size()];
         int index = 0;
         for (Iterator iter = outputsList.iterator(); iter.hasNext();) {
-            outputs[index++] = new ActionSequenceOutput((Element) iter.next(), actionInputProvider);
+            outputs[index++] = getOutputWrapper((Element) iter.next());
         }
         return outputs;
     }
@@ -665,8 +1196,8 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public IActionSequenceOutput getOutput(String outputName) {
-        Element element = (Element) document.getRootElement().selectSingleNode(DOC_OUTPUTS_NAME + "/" + outputName); //$NON-NLS-1$
-        return element != null ? new ActionSequenceOutput(element, actionInputProvider) : null;
+        Element element = getGrandchild(document.getRootElement(), DOC_OUTPUTS_NAME, outputName);
+        return element != null ? getOutputWrapper(element) : null;
     }
 
     /**
@@ -684,7 +1215,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
             Element outputElement
                     = makeElement(document.getRootElement(), DOC_OUTPUTS_NAME + "/" + outputName); //$NON-NLS-1$
             outputElement.addAttribute(TYPE_NAME, outputType);
-            output = new ActionSequenceOutput(outputElement, actionInputProvider);
+            output = getOutputWrapper(outputElement);
             fireIoAdded(output);
         } else {
             output.setType(outputType);
@@ -715,11 +1246,11 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public IActionSequenceResource[] getResources() {
-        List resourcesList = document.getRootElement().selectNodes(DOC_RESOURCES_NAME + "/*"); //$NON-NLS-1$
+        List resourcesList = getGrandchildren(document.getRootElement(), DOC_RESOURCES_NAME);
         ActionSequenceResource[] resources = new ActionSequenceResource[resourcesList.size()];
         int index = 0;
         for (Iterator iter = resourcesList.iterator(); iter.hasNext();) {
-            resources[index++] = new ActionSequenceResource((Element) iter.next(), actionInputProvider);
+            resources[index++] = getResourceWrapper((Element) iter.next());
         }
         return resources;
     }
@@ -730,8 +1261,8 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
      */
     @Override
     public IActionSequenceResource getResource(String resourceName) {
-        Element element = (Element) document.getRootElement().selectSingleNode(DOC_RESOURCES_NAME + "/" + resourceName); //$NON-NLS-1$
-        return element != null ? new ActionSequenceResource(element, actionInputProvider) : null;
+        Element element = getGrandchild(document.getRootElement(), DOC_RESOURCES_NAME, resourceName);
+        return element != null ? getResourceWrapper(element) : null;
     }
 
     /**
@@ -755,7 +1286,7 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
             if (docResource == null) {
                 Element resourceElement
                         = makeElement(document.getRootElement(), DOC_RESOURCES_NAME + "/" + resourceName); //$NON-NLS-1$
-                docResource = new ActionSequenceResource(resourceElement, actionInputProvider);
+                docResource = getResourceWrapper(resourceElement);
                 fireResourceAdded(docResource);
             }
             docResource.setUri(uri);
@@ -766,8 +1297,41 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
 
     @Override
     public IActionLoop getRootLoop() {
-        return new ActionLoop(
-                (Element) document.selectSingleNode("/" + ACTION_SEQUENCE + "/" + ACTIONS_NAME), actionInputProvider); //$NON-NLS-1$ //$NON-NLS-2$ 
+        Element rootLoopElement = getChildElement(getActionSequenceElement(), ACTIONS_NAME);
+        ActionLoop rootLoop = (ActionLoop) getCachedWrapper(rootLoopElement, ActionLoop.class);
+        if (rootLoop == null) {
+            rootLoop = new ActionLoop(rootLoopElement, actionInputProvider);
+            cacheWrapper(rootLoopElement, rootLoop);
+        }
+        return rootLoop;
+    }
+
+    private ActionSequenceInput getInputWrapper(Element element) {
+        ActionSequenceInput input = (ActionSequenceInput) getCachedWrapper(element, ActionSequenceInput.class);
+        if (input == null) {
+            input = new ActionSequenceInput(element, actionInputProvider);
+            cacheWrapper(element, input);
+        }
+        return input;
+    }
+
+    private ActionSequenceOutput getOutputWrapper(Element element) {
+        ActionSequenceOutput output = (ActionSequenceOutput) getCachedWrapper(element, ActionSequenceOutput.class);
+        if (output == null) {
+            output = new ActionSequenceOutput(element, actionInputProvider);
+            cacheWrapper(element, output);
+        }
+        return output;
+    }
+
+    private ActionSequenceResource getResourceWrapper(Element element) {
+        ActionSequenceResource resource
+                = (ActionSequenceResource) getCachedWrapper(element, ActionSequenceResource.class);
+        if (resource == null) {
+            resource = new ActionSequenceResource(element, actionInputProvider);
+            cacheWrapper(element, resource);
+        }
+        return resource;
     }
 
     /**
@@ -823,6 +1387,45 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         return getRootLoop().getChildren();
     }
 
+    /**
+     * Returns the action definitions, at any depth, that are instances of the
+     * given class.
+     *
+     * @param actionClass the action definition class or interface
+     * @return the action definitions in document order
+     */
+    @Override
+    public <T extends IActionDefinition> T[] findActions(Class<T> actionClass) {
+        String[] componentNames = ActionFactory.getComponentNames(actionClass);
+        List actionDefElements = componentNames != null ? getActionTypeIndex().getActionDefinitions(componentNames)
+                : getActionTypeIndex().getActionDefinitions();
+        ArrayList actions = new ArrayList();
+        for (Iterator iter = actionDefElements.iterator(); iter.hasNext();) {
+            IActionSequenceElement action = getElement((Element) iter.next());
+            if (actionClass.isInstance(action)) {
+                actions.add(action);
+            }
+        }
+        return (T[]) actions.toArray((Object[]) Array.newInstance(actionClass, actions.size()));
+    }
+
+    /**
+     * Returns the action definitions, at any depth, that are processed by the
+     * given component.
+     *
+     * @param componentName the fully qualified or short component name
+     * @return the action definitions in document order
+     */
+    @Override
+    public IActionDefinition[] findActions(String componentName) {
+        List actionDefElements = getActionTypeIndex().getActionDefinitions(componentName);
+        IActionDefinition[] actions = new IActionDefinition[actionDefElements.size()];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = (IActionDefinition) getElement((Element) actionDefElements.get(i));
+        }
+        return actions;
+    }
+
     /**
      * Adds a new child action definition to the end of this documents list of
      * children.
@@ -852,30 +1455,126 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         return getRootLoop().addAction(actionDefinitionClass, index);
     }
 
+    /**
+     * Registers a listener for the events of the dom4j document. The listener
+     * is held by the wrappers of the document, and is notified for as long as
+     * any of them is reachable.
+     */
     @Override
     public void addListener(IActionSequenceDocumentListener listener) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(document);
-        if (listenerList == null) {
-            listenerList = new ArrayList();
-            listenersMap.put(document, listenerList);
-        }
-        listenerList.add(listener);
+        listenerRegistry.addListener(listener);
     }
 
     @Override
     public void removeListener(IActionSequenceDocumentListener listener) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(document);
-        if (listenerList != null) {
-            listenerList.remove(listener);
+        listenerRegistry.removeListener(listener);
+    }
+
+    /**
+     * Starts a batch of edits to the document. Until the batch is committed or
+     * rolled back, the listeners of the document are not notified of each
+     * edit. The edits are coalesced into a change set that is delivered to each
+     * listener once, by <code>commit</code>. The structure of the document is
+     * recorded, without copying any node, so that <code>rollback</code> can
+     * restore it.
+     *
+     * @throws IllegalStateException if a batch is already open for the
+     * document
+     */
+    @Override
+    public void beginBatch() {
+        Element rootElement = document.getRootElement();
+        ActionSequenceChangeSet changes = new ActionSequenceChangeSet(
+                rootElement != null ? new SavedContent(rootElement) : null);
+        if (!listenerRegistry.beginBatch(changes)) {
+            throw new IllegalStateException(getString("ActionSequenceDocument.BATCH_ALREADY_OPEN")); //$NON-NLS-1$
         }
     }
 
+    /**
+     * Ends the open batch and delivers its changes to the listeners of the
+     * document.
+     *
+     * @return the changes made in the batch
+     * @throws IllegalStateException if no batch is open for the document
+     */
+    @Override
+    public ActionSequenceChangeSet commit() {
+        ActionSequenceChangeSet changes = endBatch();
+        changes.priorContent = null;
+        if (!changes.isEmpty()) {
+            IActionSequenceDocumentListener[] listeners = listenerRegistry.getListeners();
+            if (listeners != null) {
+                for (int i = 0; i < listeners.length; ++i) {
+                    listeners[i].changesCommitted(changes);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Ends the open batch and restores the content the document had when the
+     * batch began. The listeners of the document are not notified. The
+     * original element objects are put back in place, so wrappers obtained
+     * before the batch and the state listeners keep about those elements
+     * remain valid; elements added in the batch are discarded.
+     *
+     * @throws IllegalStateException if no batch is open for the document
+     */
+    @Override
+    public void rollback() {
+        ActionSequenceChangeSet changes = endBatch();
+        Element rootElement = document.getRootElement();
+        if ((rootElement != null) && (changes.priorContent != null)) {
+            evictWrappers(document, rootElement);
+            changes.priorContent.restore();
+            changes.priorContent = null;
+        }
+        evictExecutableWrappers(document);
+        invalidateReferenceIndex(document);
+        invalidateActionTypeIndex(document);
+        Map defaultTables = getDefaultTables(document);
+        if (defaultTables != null) {
+            defaultTables.clear();
+        }
+    }
+
+    /**
+     * Makes a batch of edits to the document. The batch is committed if the
+     * edits complete and rolled back if they throw an exception.
+     *
+     * @param edits the edits, which are passed this document
+     * @return the changes made in the batch
+     */
+    @Override
+    public ActionSequenceChangeSet edit(Consumer<IActionSequenceDocument> edits) {
+        beginBatch();
+        try {
+            edits.accept(this);
+        } catch (RuntimeException | Error e) {
+            rollback();
+            throw e;
+        }
+        return commit();
+    }
+
+    private ActionSequenceChangeSet endBatch() {
+        ActionSequenceChangeSet changes = listenerRegistry.endBatch();
+        if (changes == null) {
+            throw new IllegalStateException(getString("ActionSequenceDocument.NO_OPEN_BATCH")); //$NON-NLS-1$
+        }
+        return changes;
+    }
+
     public static void fireIoAdded(final IAbstractIOElement io) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(io.getElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        evictOwnerWrapper(io.getElement());
+        cacheAddedWrapper(io);
+        updateReferenceIndex(io.getElement().getDocument(), io.getElement());
+        IActionSequenceDocumentListener[] listeners = getListeners(io.getElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.ioAdded(io);
             }
         }
@@ -889,11 +1588,15 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
             doc = ((ActionSequenceDocument) parent).document;
         }
         if (doc != null) {
-            ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-            if (listenerList != null) {
-                Object[] listeners = listenerList.toArray();
+            invalidateDefaultTable(doc, io.getElement());
+            evictWrappers(doc, io.getElement());
+            evictExecutableWrappers(doc);
+            updateReferenceIndex(doc,
+                    parent instanceof ActionDefinition ? ((ActionDefinition) parent).getElement() : io.getElement());
+            IActionSequenceDocumentListener[] listeners = getListeners(doc);
+            if (listeners != null) {
                 for (int i = 0; i < listeners.length; ++i) {
-                    final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                    final IActionSequenceDocumentListener l = listeners[i];
                     l.ioRemoved(parent, io);
                 }
             }
@@ -901,22 +1604,25 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     }
 
     protected static void fireIoRenamed(final IAbstractIOElement io) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(io.getElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        evictOwnerWrapper(io.getElement());
+        updateReferenceIndex(io.getElement().getDocument(), io.getElement());
+        IActionSequenceDocumentListener[] listeners = getListeners(io.getElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.ioRenamed(io);
             }
         }
     }
 
     public static void fireIoChanged(final IAbstractIOElement io) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(io.getElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        evictOwnerWrapper(io.getElement());
+        invalidateDefaultTable(io.getElement().getDocument(), io.getElement());
+        updateReferenceIndex(io.getElement().getDocument(), io.getElement());
+        IActionSequenceDocumentListener[] listeners = getListeners(io.getElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.ioChanged(io);
             }
         }
@@ -924,16 +1630,23 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
 
     public static void fireResourceAdded(final Object resource) {
         Document doc = null;
+        Element element = null;
         if (resource instanceof ActionResource) {
-            doc = ((ActionResource) resource).ioElement.getDocument();
+            element = ((ActionResource) resource).ioElement;
+            doc = element.getDocument();
+            evictOwnerWrapper(element);
         } else if (resource instanceof ActionSequenceResource) {
-            doc = ((ActionSequenceResource) resource).ioElement.getDocument();
+            element = ((ActionSequenceResource) resource).ioElement;
+            doc = element.getDocument();
+        }
+        if (resource instanceof IActionSequenceElement) {
+            cacheAddedWrapper((IActionSequenceElement) resource);
         }
-        ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        updateReferenceIndex(doc, element);
+        IActionSequenceDocumentListener[] listeners = getListeners(doc);
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.resourceAdded(resource);
             }
         }
@@ -946,11 +1659,21 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         } else if (parent instanceof ActionSequenceDocument) {
             doc = ((ActionSequenceDocument) parent).document;
         }
-        ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        Element element = null;
+        if (parent instanceof ActionDefinition) {
+            element = ((ActionDefinition) parent).getElement();
+        } else if (resource instanceof IActionSequenceElement) {
+            element = ((IActionSequenceElement) resource).getElement();
+        }
+        if (resource instanceof IActionSequenceElement) {
+            evictWrappers(doc, ((IActionSequenceElement) resource).getElement());
+            evictExecutableWrappers(doc);
+        }
+        updateReferenceIndex(doc, element);
+        IActionSequenceDocumentListener[] listeners = getListeners(doc);
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.resourceRemoved(parent, resource);
             }
         }
@@ -958,16 +1681,20 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
 
     protected static void fireResourceRenamed(final Object resource) {
         Document doc = null;
+        Element element = null;
         if (resource instanceof ActionResource) {
-            doc = ((ActionResource) resource).ioElement.getDocument();
+            element = ((ActionResource) resource).ioElement;
+            doc = element.getDocument();
+            evictOwnerWrapper(element);
         } else if (resource instanceof ActionSequenceResource) {
-            doc = ((ActionSequenceResource) resource).ioElement.getDocument();
+            element = ((ActionSequenceResource) resource).ioElement;
+            doc = element.getDocument();
         }
-        ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        updateReferenceIndex(doc, element);
+        IActionSequenceDocumentListener[] listeners = getListeners(doc);
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.resourceRenamed(resource);
             }
         }
@@ -975,27 +1702,33 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
 
     public static void fireResourceChanged(final Object resource) {
         Document doc = null;
+        Element element = null;
         if (resource instanceof ActionResource) {
-            doc = ((ActionResource) resource).ioElement.getDocument();
+            element = ((ActionResource) resource).ioElement;
+            doc = element.getDocument();
+            evictOwnerWrapper(element);
         } else if (resource instanceof ActionSequenceResource) {
-            doc = ((ActionSequenceResource) resource).ioElement.getDocument();
+            element = ((ActionSequenceResource) resource).ioElement;
+            doc = element.getDocument();
         }
-        ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        updateReferenceIndex(doc, element);
+        IActionSequenceDocumentListener[] listeners = getListeners(doc);
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.resourceChanged(resource);
             }
         }
     }
 
     protected static void fireActionAdded(final IActionDefinition action) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(action.getElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        cacheAddedWrapper(action);
+        updateReferenceIndex(action.getElement().getDocument(), action.getElement());
+        invalidateActionTypeIndex(action.getElement().getDocument());
+        IActionSequenceDocumentListener[] listeners = getListeners(action.getElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.actionAdded(action);
             }
         }
@@ -1009,11 +1742,13 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
             doc = ((ActionSequenceDocument) parent).document;
         }
         if (doc != null) {
-            ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-            if (listenerList != null) {
-                Object[] listeners = listenerList.toArray();
+            evictWrappers(doc, action.getElement());
+            updateReferenceIndex(doc, action.getElement());
+            invalidateActionTypeIndex(doc);
+            IActionSequenceDocumentListener[] listeners = getListeners(doc);
+            if (listeners != null) {
                 for (int i = 0; i < listeners.length; ++i) {
-                    final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                    final IActionSequenceDocumentListener l = listeners[i];
                     l.actionRemoved(parent, action);
                 }
             }
@@ -1021,44 +1756,48 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     }
 
     public static void fireActionRenamed(final ActionDefinition action) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(action.getElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        evictWrappers(action.getElement().getDocument(), action.getElement());
+        updateReferenceIndex(action.getElement().getDocument(), action.getElement());
+        invalidateActionTypeIndex(action.getElement().getDocument());
+        IActionSequenceDocumentListener[] listeners = getListeners(action.getElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.actionRenamed(action);
             }
         }
     }
 
     public static void fireHeaderChanged(final ActionSequenceDocument actionSequenceDocument) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(actionSequenceDocument.getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        IActionSequenceDocumentListener[] listeners = getListeners(actionSequenceDocument.getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.headerChanged(actionSequenceDocument);
             }
         }
     }
 
     public static void fireActionChanged(final IActionDefinition action) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(action.getElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        evictWrappers(action.getElement().getDocument(), action.getElement());
+        updateReferenceIndex(action.getElement().getDocument(), action.getElement());
+        IActionSequenceDocumentListener[] listeners = getListeners(action.getElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.actionChanged(action);
             }
         }
     }
 
     protected static void fireControlStatementAdded(final IActionControlStatement controlStatement) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(controlStatement.getControlElement().getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        cacheAddedWrapper(controlStatement);
+        updateReferenceIndex(controlStatement.getControlElement().getDocument(), controlStatement.getControlElement());
+        invalidateActionTypeIndex(controlStatement.getControlElement().getDocument());
+        IActionSequenceDocumentListener[] listeners = getListeners(controlStatement.getControlElement().getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.controlStatementAdded(controlStatement);
             }
         }
@@ -1072,11 +1811,13 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
             doc = ((ActionSequenceDocument) parent).document;
         }
         if (doc != null) {
-            ArrayList listenerList = (ArrayList) listenersMap.get(doc);
-            if (listenerList != null) {
-                Object[] listeners = listenerList.toArray();
+            evictWrappers(doc, controlStmnt.getControlElement());
+            updateReferenceIndex(doc, controlStmnt.getControlElement());
+            invalidateActionTypeIndex(doc);
+            IActionSequenceDocumentListener[] listeners = getListeners(doc);
+            if (listeners != null) {
                 for (int i = 0; i < listeners.length; ++i) {
-                    final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                    final IActionSequenceDocumentListener l = listeners[i];
                     l.controlStatementRemoved(parent, controlStmnt);
                 }
             }
@@ -1084,11 +1825,12 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     }
 
     protected static void fireControlStatementChanged(final ActionControlStatement controlStatement) {
-        ArrayList listenerList = (ArrayList) listenersMap.get(controlStatement.controlElement.getDocument());
-        if (listenerList != null) {
-            Object[] listeners = listenerList.toArray();
+        evictWrappers(controlStatement.controlElement.getDocument(), controlStatement.controlElement);
+        updateReferenceIndex(controlStatement.controlElement.getDocument(), controlStatement.controlElement);
+        IActionSequenceDocumentListener[] listeners = getListeners(controlStatement.controlElement.getDocument());
+        if (listeners != null) {
             for (int i = 0; i < listeners.length; ++i) {
-                final IActionSequenceDocumentListener l = (IActionSequenceDocumentListener) listeners[i];
+                final IActionSequenceDocumentListener l = listeners[i];
                 l.controlStatementChanged(controlStatement);
             }
         }
@@ -1106,32 +1848,25 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         return result;
     }
 
+    @Override
+    public int hashCode() {
+        return document != null ? document.hashCode() : super.hashCode();
+    }
+
     private List getAncestorExecutables(IActionSequenceElement actionDefOrControlStatement,
             boolean includeAncestorConrolStatements) {
         List prevDefs = new ArrayList();
-        IActionControlStatement parentControlStatement = null;
-        if (actionDefOrControlStatement instanceof ActionDefinition) {
-            parentControlStatement = ((ActionDefinition) actionDefOrControlStatement).getParent();
+        Element element = actionDefOrControlStatement.getElement();
+        Document doc = element.getDocument();
+        if ((doc != null) && (doc != document)) {
+            prevDefs = getActionSequenceDocument(doc, actionInputProvider).getAncestorExecutables(
+                    actionDefOrControlStatement, includeAncestorConrolStatements);
         } else {
-            parentControlStatement = ((IActionControlStatement) actionDefOrControlStatement).getParent();
-        }
-        if (parentControlStatement != null) {
-            prevDefs.addAll(getAncestorExecutables(parentControlStatement, includeAncestorConrolStatements));
-            IActionSequenceElement[] siblings = parentControlStatement.getChildren();
-            for (IActionSequenceElement sibling : siblings) {
-                if (sibling.equals(actionDefOrControlStatement)) {
-                    break;
-                } else if (includeAncestorConrolStatements || (sibling instanceof ActionDefinition)) {
-                    prevDefs.add(sibling);
-                }
-            }
-        } else {
-            IActionSequenceElement[] siblings = actionDefOrControlStatement.getDocument().getExecutableChildren();
-            for (IActionSequenceElement sibling : siblings) {
-                if (sibling.equals(actionDefOrControlStatement)) {
-                    break;
-                } else if (includeAncestorConrolStatements || (sibling instanceof ActionDefinition)) {
-                    prevDefs.add(sibling);
+            List precedingElements = getReferenceIndex().getPrecedingExecutables(element);
+            for (Iterator iter = precedingElements.iterator(); iter.hasNext();) {
+                Element precedingElement = (Element) iter.next();
+                if (includeAncestorConrolStatements || precedingElement.getName().equals(ACTION_DEFINITION_NAME)) {
+                    prevDefs.add(getElement(precedingElement));
                 }
             }
         }
@@ -1172,9 +1907,12 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     public IActionInputVariable[] getAvailInputVariables(IActionDefinition actionDefinition, String[] types) {
         List availParams = new ArrayList();
         availParams.addAll(asList(getInputs(types)));
-        IActionDefinition[] precedingActionDefs = getPrecedingActionDefinitions(actionDefinition);
-        for (IActionDefinition precedingActionDef : precedingActionDefs) {
-            availParams.addAll(asList(precedingActionDef.getOutputs(types)));
+        HashSet typesSet = types != null ? new HashSet(asList(types)) : null;
+        for (Iterator iter = getPrecedingOutputs(actionDefinition.getElement()).iterator(); iter.hasNext();) {
+            Element outputElement = (Element) iter.next();
+            if ((typesSet == null) || typesSet.contains(outputElement.attributeValue(TYPE_NAME))) {
+                availParams.add(getElement(outputElement));
+            }
         }
         return (IActionInputVariable[]) availParams.toArray(new IActionInputVariable[0]);
     }
@@ -1195,13 +1933,17 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     @Override
     public IActionInputVariable[] getAvailInputVariables(IActionControlStatement controlStatement) {
         List availParams = new ArrayList();
+        List precedingOutputs = getPrecedingOutputs(controlStatement.getElement());
         if (controlStatement instanceof ActionLoop) {
             String[] types
                     = new String[]{PROPERTY_MAP_LIST_TYPE, STRING_LIST_TYPE, RESULTSET_TYPE};
             availParams.addAll(asList(getInputs(types)));
-            IActionDefinition[] precedingActionDefs = getPrecedingActionDefinitions(controlStatement);
-            for (IActionDefinition precedingActionDef : precedingActionDefs) {
-                availParams.addAll(asList(precedingActionDef.getOutputs(types)));
+            HashSet typesSet = new HashSet(asList(types));
+            for (Iterator iter = precedingOutputs.iterator(); iter.hasNext();) {
+                Element outputElement = (Element) iter.next();
+                if (typesSet.contains(outputElement.attributeValue(TYPE_NAME))) {
+                    availParams.add(getElement(outputElement));
+                }
             }
         } else {
             IActionSequenceInput[] actionSequenceInputs = getInputs();
@@ -1210,38 +1952,31 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
                     availParams.add(actionSequenceInput);
                 }
             }
-            IActionDefinition[] precedingActionDefs = getPrecedingActionDefinitions(controlStatement);
-            for (IActionDefinition precedingActionDef : precedingActionDefs) {
-                IActionOutput[] actionOutputs = precedingActionDef.getOutputs();
-                for (IActionOutput actionOutput : actionOutputs) {
-                    if (actionOutput.getPublicName().indexOf('-') == -1) {
-                        availParams.add(actionOutput);
-                    }
+            for (Iterator iter = precedingOutputs.iterator(); iter.hasNext();) {
+                Element outputElement = (Element) iter.next();
+                if (ReferenceIndex.getPublicName(outputElement).indexOf('-') == -1) {
+                    availParams.add(getElement(outputElement));
                 }
             }
         }
         return (IActionInputVariable[]) availParams.toArray(new IActionInputVariable[0]);
     }
 
+    /**
+     * @return the output elements of the action definitions that precede the
+     * given action definition or control statement element.
+     */
+    private List getPrecedingOutputs(Element target) {
+        return getReferenceIndex().getVisibleOutputs(target);
+    }
+
     @Override
     public IActionSequenceElement[] getReferencesTo(IActionSequenceInput actionSequenceInput) {
         ArrayList references = new ArrayList();
         if (this.equals(actionSequenceInput.getDocument())) {
-            String name = actionSequenceInput.getName();
-            String xpath1
-                    = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_INPUTS_NAME + "/" + name + "[not(@" + MAPPING_NAME + ")]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-            String xpath2
-                    = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_INPUTS_NAME + "/" + "*[@" + MAPPING_NAME + "='" + name + "']"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
-            String xpath3
-                    = "//" + ACTIONS_NAME + "[@" + LOOP_ON_NAME + "='" + name + "']"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$  
-            List referencingElements = document.selectNodes(xpath1 + "|" + xpath2 + "|" + xpath3); //$NON-NLS-1$ //$NON-NLS-2$
+            List referencingElements = getReferenceIndex().getInputReferences(actionSequenceInput.getName());
             for (Iterator iter = referencingElements.iterator(); iter.hasNext();) {
-                Element element = (Element) iter.next();
-                if (element.getName().equals(ACTIONS_NAME)) {
-                    references.add(new ActionLoop(element, actionInputProvider));
-                } else {
-                    references.add(new ActionInput(element, actionInputProvider));
-                }
+                references.add(getElement((Element) iter.next()));
             }
         }
         return (IActionSequenceElement[]) references.toArray(new IActionSequenceElement[0]);
@@ -1249,61 +1984,146 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
 
     @Override
     public IActionSequenceElement[] getBrokenReferences() {
-        String xPath1
-                = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_INPUTS_NAME + "/*"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        String xPath2 = "//" + ACTIONS_NAME + "[@" + LOOP_ON_NAME + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        String xPath3
-                = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_RESOURCES_NAME + "/*"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        List allActionInputElements = document.selectNodes(xPath1 + "|" + xPath2 + "|" + xPath3); //$NON-NLS-1$ //$NON-NLS-2$ 
+        ReferenceIndex index = getReferenceIndex();
+        HashSet inputNames = new HashSet();
+        for (Iterator iter = document.getRootElement().elementIterator(DOC_INPUTS_NAME); iter.hasNext();) {
+            for (Iterator inputIter = ((Element) iter.next()).elementIterator(); inputIter.hasNext();) {
+                inputNames.add(((Element) inputIter.next()).getName());
+            }
+        }
+        HashSet resourceNames = new HashSet();
+        for (Iterator iter = document.getRootElement().elementIterator(DOC_RESOURCES_NAME); iter.hasNext();) {
+            for (Iterator resourceIter = ((Element) iter.next()).elementIterator(); resourceIter.hasNext();) {
+                resourceNames.add(((Element) resourceIter.next()).getName());
+            }
+        }
+
         ArrayList brokenReferences = new ArrayList();
-        for (Iterator iterator = allActionInputElements.iterator(); iterator.hasNext();) {
-            Element element = (Element) iterator.next();
+        for (Iterator iter = index.getReferences().iterator(); iter.hasNext();) {
+            Element element = (Element) iter.next();
+            boolean resolved;
             if (element.getName().equals(ACTIONS_NAME)) {
-                brokenReferences.add(new ActionLoop(element, actionInputProvider));
-            } else if (element.getParent().getName().equals(ACTION_INPUTS_NAME)) {
-                brokenReferences.add(new ActionInput(element, actionInputProvider));
+                String name = element.attributeValue(LOOP_ON_NAME);
+                resolved = inputNames.contains(name) || isOutputReference(index, name, element);
             } else if (element.getParent().getName().equals(ACTION_RESOURCES_NAME)) {
-                brokenReferences.add(new ActionResource(element, actionInputProvider));
+                resolved = resourceNames.contains(ReferenceIndex.getReferencedName(element));
+            } else {
+                String name = ReferenceIndex.getReferencedName(element);
+                resolved = inputNames.contains(name) || isOutputReference(index, name, element.getParent().getParent());
+            }
+            if (!resolved) {
+                IActionSequenceElement wrapper = getElement(element);
+                if (wrapper != null) {
+                    brokenReferences.add(wrapper);
+                }
             }
         }
+        return (IActionSequenceElement[]) brokenReferences.toArray(new IActionSequenceElement[0]);
+    }
 
-        IActionSequenceInput[] actionSequenceInputs = getInputs();
-        for (IActionSequenceInput actionSequenceInput : actionSequenceInputs) {
-            brokenReferences.removeAll(asList(getReferencesTo(actionSequenceInput)));
+    /**
+     * @return true if the named variable is an output of an action definition
+     * that does not precede the referencing executable.
+     */
+    private static boolean isOutputReference(ReferenceIndex index, String name, Element referencingExecutable) {
+        boolean result = false;
+        for (Iterator iter = index.getOutputs(name).iterator(); iter.hasNext() && !result;) {
+            result = isOutputReference(index, (Element) iter.next(), referencingExecutable);
         }
+        return result;
+    }
 
-        List allActionOutputElements
-                = document
-                        .selectNodes("//" + ACTION_DEFINITION_NAME + "/" + ACTION_OUTPUTS_NAME + "/*"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        ArrayList allActionOutputs = new ArrayList();
-        for (Iterator iterator = allActionOutputElements.iterator(); iterator.hasNext();) {
-            allActionOutputs.add(new ActionOutput((Element) iterator.next(), actionInputProvider));
-        }
+    private static boolean isOutputReference(ReferenceIndex index, Element outputElement,
+            Element referencingExecutable) {
+        Element actionDefElement = outputElement.getParent().getParent();
+        return (referencingExecutable != actionDefElement)
+                && !index.isPrecedingExecutable(referencingExecutable, actionDefElement);
+    }
 
-        for (Iterator iterator = allActionOutputs.iterator(); iterator.hasNext();) {
-            brokenReferences.removeAll(asList(getReferencesTo((ActionOutput) iterator.next())));
+    /**
+     * Renames a variable throughout the document in a single walk. The
+     * document input and output with the old name are renamed, loops on the
+     * variable loop on the new name, and action inputs and outputs that refer
+     * to the variable are mapped to the new name. Action inputs and outputs
+     * keep their private names, which their component definitions refer to.
+     * The conditions of if statements are scripts and are left unchanged.
+     *
+     * @param oldName the variable name
+     * @param newName the new variable name
+     */
+    @Override
+    public void renameVariable(String oldName, String newName) {
+        newName = newName.trim();
+        if (newName.split("\\s+").length > 1) { //$NON-NLS-1$
+            throw new IllegalArgumentException(getString("ActionSequenceIO.NO_SPACES_IN_NAME")); //$NON-NLS-1$
+        }
+        Element rootElement = document.getRootElement();
+        if (!oldName.equals(newName) && (rootElement != null)) {
+            ArrayList elements = new ArrayList();
+            for (Iterator iter = rootElement.elementIterator(); iter.hasNext();) {
+                Element child = (Element) iter.next();
+                String name = child.getName();
+                if (name.equals(DOC_INPUTS_NAME) || name.equals(DOC_OUTPUTS_NAME)) {
+                    Element ioElement = child.element(oldName);
+                    if (ioElement != null) {
+                        elements.add(ioElement);
+                    }
+                }
+            }
+            collectVariableReferences(rootElement, oldName, elements);
+
+            for (Iterator iter = elements.iterator(); iter.hasNext();) {
+                IActionSequenceElement wrapper = getElement((Element) iter.next());
+                if (wrapper instanceof IActionLoop) {
+                    ((IActionLoop) wrapper).setLoopOn(newName);
+                } else if (wrapper instanceof IActionIOElement) {
+                    ((IActionIOElement) wrapper).setMapping(newName);
+                } else if (wrapper instanceof IAbstractIOElement) {
+                    ((IAbstractIOElement) wrapper).setName(newName);
+                }
+            }
         }
+    }
 
-        IActionSequenceResource[] actionSequenceResources = getResources();
-        for (IActionSequenceResource actionSequenceResource : actionSequenceResources) {
-            brokenReferences.removeAll(asList(getReferencesTo(actionSequenceResource)));
+    /**
+     * Adds the loops, action inputs and action outputs below an element that
+     * refer to the named variable to a list, in document order.
+     */
+    private static void collectVariableReferences(Element parent, String name, List elements) {
+        for (Iterator iter = parent.elementIterator(); iter.hasNext();) {
+            Element child = (Element) iter.next();
+            String childName = child.getName();
+            if (childName.equals(ACTIONS_NAME)) {
+                if (name.equals(child.attributeValue(LOOP_ON_NAME))) {
+                    elements.add(child);
+                }
+                collectVariableReferences(child, name, elements);
+            } else if (childName.equals(ACTION_DEFINITION_NAME)) {
+                for (Iterator sectionIter = child.elementIterator(); sectionIter.hasNext();) {
+                    Element section = (Element) sectionIter.next();
+                    boolean inputs = section.getName().equals(ACTION_INPUTS_NAME);
+                    if (inputs || section.getName().equals(ACTION_OUTPUTS_NAME)) {
+                        for (Iterator ioIter = section.elementIterator(); ioIter.hasNext();) {
+                            Element ioElement = (Element) ioIter.next();
+                            String referencedName = inputs ? ReferenceIndex.getReferencedName(ioElement)
+                                    : ReferenceIndex.getPublicName(ioElement);
+                            if (name.equals(referencedName)) {
+                                elements.add(ioElement);
+                            }
+                        }
+                    }
+                }
+            }
         }
-
-        return (IActionSequenceElement[]) brokenReferences.toArray(new IActionSequenceElement[0]);
     }
 
     @Override
     public IActionResource[] getReferencesTo(IActionSequenceResource actionSequenceResource) {
         ArrayList actionInputs = new ArrayList();
         if (this.equals(actionSequenceResource.getDocument())) {
-            String name = actionSequenceResource.getName();
-            String xpath1
-                    = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_RESOURCES_NAME + "/" + name + "[not(@" + MAPPING_NAME + ")]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-            String xpath2
-                    = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_RESOURCES_NAME + "/" + "*[@" + MAPPING_NAME + "='" + name + "']"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
-            List references = document.selectNodes(xpath1 + "|" + xpath2); //$NON-NLS-1$
+            List references = getReferenceIndex().getResourceReferences(actionSequenceResource.getName());
             for (Iterator iter = references.iterator(); iter.hasNext();) {
-                actionInputs.add(new ActionResource((Element) iter.next(), actionInputProvider));
+                actionInputs.add(getElement((Element) iter.next()));
             }
         }
         return (IActionResource[]) actionInputs.toArray(new ActionResource[0]);
@@ -1313,31 +2133,15 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     public IActionSequenceElement[] getReferencesTo(IActionOutput actionOutput) {
         ArrayList references = new ArrayList();
         if (this.equals(actionOutput.getDocument())) {
-            ArrayList excludedActionDefs = new ArrayList();
-            excludedActionDefs.add(actionOutput.getActionDefinition());
-            excludedActionDefs.addAll(asList(getPrecedingExecutables(actionOutput.getActionDefinition())));
-            String name = actionOutput.getPublicName();
-            String xpath1
-                    = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_INPUTS_NAME + "/" + name + "[not(@" + MAPPING_NAME + ")]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-            String xpath2
-                    = "//" + ACTION_DEFINITION_NAME + "/" + ACTION_INPUTS_NAME + "/" + "*[@" + MAPPING_NAME + "='" + name + "']"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
-            String xpath3
-                    = "//" + ACTIONS_NAME + "[@" + LOOP_ON_NAME + "='" + name + "']"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$  
-            List referencingElements = document.selectNodes(xpath1 + "|" + xpath2 + "|" + xpath3); //$NON-NLS-1$ //$NON-NLS-2$
+            ReferenceIndex index = getReferenceIndex();
+            Element outputElement = actionOutput.getElement();
+            List referencingElements = index.getInputReferences(actionOutput.getPublicName());
             for (Iterator iter = referencingElements.iterator(); iter.hasNext();) {
                 Element element = (Element) iter.next();
-                IActionSequenceExecutableStatement executableStatement = null;
-                if (element.getName().equals(ACTIONS_NAME)) {
-                    executableStatement = new ActionLoop(element, actionInputProvider);
-                    if (!excludedActionDefs.contains(executableStatement)) {
-                        references.add(executableStatement);
-                    }
-                } else {
-                    ActionInput actionInput = new ActionInput(element, actionInputProvider);
-                    executableStatement = actionInput.getActionDefinition();
-                    if (!excludedActionDefs.contains(executableStatement)) {
-                        references.add(actionInput);
-                    }
+                Element referencingExecutable
+                        = element.getName().equals(ACTIONS_NAME) ? element : element.getParent().getParent();
+                if (isOutputReference(index, outputElement, referencingExecutable)) {
+                    references.add(getElement(element));
                 }
             }
         }
@@ -1362,14 +2166,8 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
 
     public static Document prettyPrint(Document document) {
         try {
-            OutputFormat format = createPrettyPrint();
-            format.setEncoding(document.getXMLEncoding());
             StringWriter stringWriter = new StringWriter();
-            XMLWriter writer = new XMLWriter(stringWriter, format);
-            // XMLWriter has a bug that is avoided if we reparse the document
-            // prior to calling XMLWriter.write()
-            writer.write(parseText(document.asXML()));
-            writer.close();
+            ActionSequenceWriter.write(document, stringWriter);
             document = parseText(stringWriter.toString());
         } catch (IOException | DocumentException e) {
             e.printStackTrace();
@@ -1382,22 +2180,38 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
     public String toString() {
         String string = null;
         try {
-            OutputFormat format = createPrettyPrint();
-            format.setEncoding(document.getXMLEncoding());
             StringWriter stringWriter = new StringWriter();
-            XMLWriter writer = new XMLWriter(stringWriter, format);
-            // XMLWriter has a bug that is avoided if we reparse the document
-            // prior to calling XMLWriter.write()
-            writer.write(parseText(document.asXML()));
-            writer.close();
-            Document tempDocument = parseText(stringWriter.toString());
-            string = tempDocument.getRootElement().asXML();
-        } catch (IOException | DocumentException e) {
+            new ActionSequenceWriter(stringWriter, document.getXMLEncoding()).writeRootElement(document.getRootElement());
+            string = stringWriter.toString();
+        } catch (IOException e) {
             string = super.toString();
         }
         return string;
     }
 
+    /**
+     * Writes the pretty printed document to a writer without building an
+     * intermediate string.
+     *
+     * @param writer the writer to write to. The writer is flushed but not
+     * closed.
+     * @throws IOException
+     */
+    public void write(Writer writer) throws IOException {
+        ActionSequenceWriter.write(document, writer);
+    }
+
+    /**
+     * Writes the pretty printed document to a stream in the document's
+     * encoding.
+     *
+     * @param out the stream to write to. The stream is flushed but not closed.
+     * @throws IOException
+     */
+    public void write(OutputStream out) throws IOException {
+        ActionSequenceWriter.write(document, out);
+    }
+
     public static void main(String[] args) throws Exception {
         // Create the action sequence document.
         ActionSequenceDocument actionSequenceDocument = new ActionSequenceDocument();
@@ -1496,6 +2310,17 @@ public class ActionSequenceDocument implements IActionSequenceDocument {
         }
     }
 
+    /**
+     * Creates an immutable snapshot of this action sequence. The snapshot does
+     * not change when this document is modified, and can be shared by
+     * concurrent executions.
+     *
+     * @return the snapshot
+     */
+    public ActionSequenceSnapshot freeze() {
+        return new ActionSequenceSnapshot(this);
+    }
+
     /**
      * @deprecated No replacement. This method was created to workaround
      * architectual issues in the BI server. As soon as the issues are addressed
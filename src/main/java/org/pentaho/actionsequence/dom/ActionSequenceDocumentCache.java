@@ -0,0 +1,344 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import static java.util.Arrays.asList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+
+/**
+ * A cache of parsed action sequence documents. Entries are keyed by the
+ * solution name, solution path and document name of the action sequence and
+ * by the normalized path of the file it is loaded from, and are validated
+ * against the modification time, size and content hash of that file. A file
+ * requested by several threads at once is read and parsed only once. The least recently used entries are evicted
+ * once the cache holds more than the maximum number of entries, or once the
+ * total size of the cached files exceeds the maximum weight.
+ * <p>
+ * Each file is cached as an <code>ActionSequenceSnapshot</code>. The
+ * documents returned by <code>getDocument</code> are the read only documents
+ * of these snapshots and are shared by all callers; every method that would
+ * modify them throws an <code>UnsupportedOperationException</code>. Callers
+ * that need to modify a document should use <code>getCopy</code>, which
+ * returns a private copy of the cached document.
+ */
+public class ActionSequenceDocumentCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    private final int maxEntries;
+
+    private final long maxWeight;
+
+    private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+    private long weight;
+
+    /**
+     * The loads in progress, keyed like the entries. Threads that request a
+     * file that is being loaded wait for that load instead of starting their
+     * own.
+     */
+    private final ConcurrentHashMap loads = new ConcurrentHashMap();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ActionSequenceDocumentCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param maxEntries the maximum number of cached documents
+     * @param maxWeight the maximum total size in bytes of the cached files
+     */
+    public ActionSequenceDocumentCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the read only document loaded from the given file. The file is
+     * loaded if it is not cached, or if it was modified since it was cached.
+     *
+     * @param solutionName the solution name of the action sequence
+     * @param solutionPath the solution path of the action sequence
+     * @param documentName the document name of the action sequence
+     * @param file the file the action sequence is stored in
+     * @return the shared, read only action sequence document
+     * @throws IOException if the file cannot be read
+     * @throws DocumentException if the file does not contain well formed XML
+     */
+    public ActionSequenceDocument getDocument(String solutionName, String solutionPath, String documentName,
+            Path file) throws IOException, DocumentException {
+        return getCurrentEntry(solutionName, solutionPath, documentName, file).snapshot.getDocument();
+    }
+
+    /**
+     * Returns the immutable snapshot of the document loaded from the given
+     * file.
+     *
+     * @see #getDocument(String, String, String, Path)
+     */
+    public ActionSequenceSnapshot getSnapshot(String solutionName, String solutionPath, String documentName,
+            Path file) throws IOException, DocumentException {
+        return getCurrentEntry(solutionName, solutionPath, documentName, file).snapshot;
+    }
+
+    private Entry getCurrentEntry(String solutionName, String solutionPath, String documentName, Path file)
+            throws IOException, DocumentException {
+        List key = asList(new Object[]{solutionName, solutionPath, documentName, file.toAbsolutePath().normalize()});
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Entry entry = getEntry(key);
+        if ((entry == null) || entry.isModified(attributes)) {
+            entry = reload(key, file, entry, attributes);
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Reloads the file of an entry that is missing or outdated, or waits for
+     * the load of another thread that is already doing so.
+     */
+    private Entry reload(List key, Path file, Entry entry, BasicFileAttributes attributes)
+            throws IOException, DocumentException {
+        FutureTask newLoad = new FutureTask(() -> reloadContent(key, file, entry, attributes));
+        FutureTask load = (FutureTask) loads.putIfAbsent(key, newLoad);
+        Entry result;
+        try {
+            if (load == null) {
+                load = newLoad;
+                load.run();
+                loads.remove(key, load);
+            } else {
+                hitCount.incrementAndGet();
+            }
+            result = (Entry) load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof DocumentException) {
+                throw (DocumentException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        return result;
+    }
+
+    private Entry reloadContent(List key, Path file, Entry entry, BasicFileAttributes attributes)
+            throws IOException, DocumentException {
+        Entry result = entry;
+        ByteBuffer content = ActionSequenceLoader.readContent(file);
+        byte[] digest = getDigest(content);
+        if ((entry != null) && MessageDigest.isEqual(digest, entry.digest)) {
+            // The file was touched but not changed.
+            entry.lastModifiedTime = attributes.lastModifiedTime();
+            hitCount.incrementAndGet();
+        } else {
+            result = load(key, content, digest, attributes.lastModifiedTime());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a private copy of the document loaded from the given file. The
+     * copy may be modified without affecting the cached document.
+     *
+     * @see #getDocument(String, String, String, Path)
+     */
+    public ActionSequenceDocument getCopy(String solutionName, String solutionPath, String documentName, Path file)
+            throws IOException, DocumentException {
+        ActionSequenceDocument sharedDocument = getDocument(solutionName, solutionPath, documentName, file);
+        // The clone of a read only document is modifiable.
+        ActionSequenceDocument copy = new ActionSequenceDocument((Document) sharedDocument.getDocument().clone());
+        setMetadata(copy, solutionName, solutionPath, documentName);
+        return copy;
+    }
+
+    /**
+     * Finds the action definitions of every cached document that are instances
+     * of the given class. The documents are not reloaded if their files were
+     * modified since they were cached.
+     *
+     * @param actionClass the action definition class or interface
+     * @return the matching action definitions of each cached document that has
+     * any, keyed by the shared, read only document
+     */
+    public <T extends IActionDefinition> Map<ActionSequenceDocument, T[]> findActions(Class<T> actionClass) {
+        Object[] cachedEntries;
+        synchronized (this) {
+            cachedEntries = entries.values().toArray();
+        }
+        LinkedHashMap<ActionSequenceDocument, T[]> actions = new LinkedHashMap<ActionSequenceDocument, T[]>();
+        for (Object cachedEntry : cachedEntries) {
+            ActionSequenceDocument document = ((Entry) cachedEntry).snapshot.getDocument();
+            T[] documentActions = document.findActions(actionClass);
+            if (documentActions.length > 0) {
+                actions.put(document, documentActions);
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Removes the document of an action sequence from the cache, whichever
+     * file it was loaded from.
+     */
+    public synchronized void invalidate(String solutionName, String solutionPath, String documentName) {
+        List name = asList(new String[]{solutionName, solutionPath, documentName});
+        for (Iterator iter = entries.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry mapEntry = (Map.Entry) iter.next();
+            if (((List) mapEntry.getKey()).subList(0, 3).equals(name)) {
+                weight -= ((Entry) mapEntry.getValue()).size;
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size in bytes of the cached files.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of requests served from the cache, including those
+     * for files that were touched but not changed.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of requests that loaded a file.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the limits.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private synchronized Entry getEntry(List key) {
+        return (Entry) entries.get(key);
+    }
+
+    private Entry load(List key, ByteBuffer content, byte[] digest, FileTime lastModifiedTime)
+            throws DocumentException {
+        missCount.incrementAndGet();
+        ActionSequenceDocument document = ActionSequenceLoader.load(content);
+        setMetadata(document, (String) key.get(0), (String) key.get(1), (String) key.get(2));
+        Entry entry = new Entry(document.freeze(), content.remaining(), digest, lastModifiedTime);
+        synchronized (this) {
+            Entry oldEntry = (Entry) entries.put(key, entry);
+            if (oldEntry != null) {
+                weight -= oldEntry.size;
+            }
+            weight += entry.size;
+            for (Iterator iter = entries.values().iterator(); iter.hasNext()
+                    && ((entries.size() > maxEntries) || (weight > maxWeight));) {
+                weight -= ((Entry) iter.next()).size;
+                iter.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+        return entry;
+    }
+
+    private static void setMetadata(ActionSequenceDocument document, String solutionName, String solutionPath,
+            String documentName) {
+        ActionSequenceDocument.Metadata metadata = document.getMetadata();
+        metadata.setSolutionName(solutionName);
+        metadata.setSolutionPath(solutionPath);
+        metadata.setDocumentName(documentName);
+    }
+
+    private static byte[] getDigest(ByteBuffer content) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            messageDigest.update(content.duplicate());
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+
+        final ActionSequenceSnapshot snapshot;
+
+        final long size;
+
+        final byte[] digest;
+
+        volatile FileTime lastModifiedTime;
+
+        Entry(ActionSequenceSnapshot snapshot, long size, byte[] digest, FileTime lastModifiedTime) {
+            this.snapshot = snapshot;
+            this.size = size;
+            this.digest = digest;
+            this.lastModifiedTime = lastModifiedTime;
+        }
+
+        boolean isModified(BasicFileAttributes attributes) {
+            return (attributes.size() != size) || !attributes.lastModifiedTime().equals(lastModifiedTime);
+        }
+    }
+}
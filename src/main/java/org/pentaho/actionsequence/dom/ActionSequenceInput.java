@@ -3,14 +3,15 @@ package org.pentaho.actionsequence.dom;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
 import static org.dom4j.DocumentHelper.makeElement;
 import org.dom4j.Element;
+import org.dom4j.Node;
 import org.dom4j.tree.DefaultElement;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireIoChanged;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.BIGDECIMAL_TYPE;
@@ -29,6 +30,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_R
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_LIST_TYPE;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchildren;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 
 /**
@@ -292,80 +294,56 @@ public class ActionSequenceInput extends AbstractIOElement implements IActionSeq
         return linkedHashMap;
     }
 
-    private TableModel getDefaultPropertyMapList() {
-        DefaultTableModel defaultTableModel = null;
+    /**
+     * Returns a cursor over the rows of the default value of a result set or
+     * property map list input. Unlike <code>getDefaultValue</code>, only one
+     * row is held in memory at a time.
+     *
+     * @return the cursor or null if the input is of another type or has no
+     * default value
+     */
+    @Override
+    public DefaultTableCursor getDefaultValueCursor() {
+        DefaultTableCursor cursor = null;
         Element defValElement = ioElement.element(DEFAULT_VAL_NAME);
         if (defValElement != null) {
-            defaultTableModel = new DefaultTableModel();
-            List propertyMaps = defValElement.elements(PROPERTY_MAP_TYPE);
-            HashSet columnSet = new HashSet();
-            for (Iterator iter = propertyMaps.iterator(); iter.hasNext();) {
-                Element propertyMap = (Element) iter.next();
-                List propertyMapEntries = propertyMap.elements(PROPERTY_MAP_ENTRY);
-                for (Iterator entryIter = propertyMapEntries.iterator(); entryIter.hasNext();) {
-                    Element entry = (Element) entryIter.next();
-                    columnSet.add(entry.attributeValue(PROPERTY_MAP_ENTRY_KEY));
-                }
-            }
-
-            defaultTableModel.setColumnIdentifiers(columnSet.toArray());
-
-            for (Iterator iter = propertyMaps.iterator(); iter.hasNext();) {
-                Element propertyMap = (Element) iter.next();
-                ArrayList row = new ArrayList();
-                for (Iterator columnIter = columnSet.iterator(); columnIter.hasNext();) {
-                    String columnName = ((String) columnIter.next());
-                    String cellValue = ""; //$NON-NLS-1$
-                    List propertyMapEntries = propertyMap.elements(PROPERTY_MAP_ENTRY);
-                    for (Iterator entryIter = propertyMapEntries.iterator(); entryIter.hasNext();) {
-                        Element entry = (Element) entryIter.next();
-                        if (columnName.equals(entry.attributeValue(PROPERTY_MAP_ENTRY_KEY))) {
-                            cellValue = entry.getText();
-                            break;
-                        }
-                    }
-                    row.add(cellValue);
-                }
-                defaultTableModel.addRow(row.toArray());
+            String type = getType();
+            if (RESULTSET_TYPE.equals(type)) {
+                cursor = DefaultTableCursor.forResultSet(ioElement, defValElement);
+            } else if (PROPERTY_MAP_LIST_TYPE.equals(type)) {
+                cursor = DefaultTableCursor.forPropertyMapList(defValElement);
             }
         }
-        return defaultTableModel;
+        return cursor;
     }
 
-    private TableModel getDefaultResultSet() {
-        DefaultTableModel defaultTableModel = null;
-        Element defValElement = ioElement.element(DEFAULT_VAL_NAME);
-        if (defValElement != null) {
-            defaultTableModel = new DefaultTableModel();
-            ArrayList columnList = new ArrayList();
-            Element columnsElement = ioElement.element(RESULTSET_DEFAULT_COLUMNS);
-            if (columnsElement != null) {
-                List columns = columnsElement.elements();
-                for (Iterator iter = columns.iterator(); iter.hasNext();) {
-                    Element columnElement = (Element) iter.next();
-                    columnList.add(columnElement.getName());
-                }
+    /**
+     * Returns the default value of a result set or property map list input as
+     * a new table that the caller may modify. The rows are read from the
+     * cursor into a compact table, which the document caches until the input
+     * changes, and copied from there.
+     *
+     * @return the default table or null if there is none
+     */
+    private TableModel getDefaultTable() {
+        ColumnarTableModel table = null;
+        Map defaultTables = ActionSequenceDocument.getDefaultTables(ioElement.getDocument());
+        if (defaultTables != null) {
+            CachedTable cachedTable = (CachedTable) defaultTables.get(ioElement);
+            if ((cachedTable != null) && cachedTable.isCurrent(ioElement)) {
+                table = cachedTable.table;
             }
-
-            defaultTableModel.setColumnIdentifiers(columnList.toArray());
-
-            List rows = defValElement.elements(RESULTSET_ROW);
-            for (Iterator rowIterator = rows.iterator(); rowIterator.hasNext();) {
-                Element rowElement = (Element) rowIterator.next();
-                ArrayList rowValues = new ArrayList();
-                for (Iterator columnIter = columnList.iterator(); columnIter.hasNext();) {
-                    String columnName = ((String) columnIter.next());
-                    String cellValue = ""; //$NON-NLS-1$
-                    Element cellElement = rowElement.element(columnName);
-                    if (cellElement != null) {
-                        cellValue = cellElement.getText();
-                    }
-                    rowValues.add(cellValue);
+        }
+        if (table == null) {
+            DefaultTableCursor cursor = getDefaultValueCursor();
+            if (cursor != null) {
+                table = new ColumnarTableModel(cursor);
+                if (defaultTables != null) {
+                    defaultTables.put(ioElement, new CachedTable(ioElement, table));
                 }
-                defaultTableModel.addRow(rowValues.toArray());
             }
         }
-        return defaultTableModel;
+        return table != null ? table.toDefaultTableModel() : null;
     }
 
     /**
@@ -383,13 +361,13 @@ public class ActionSequenceInput extends AbstractIOElement implements IActionSeq
                 defVal = getDefaultStringList();
                 break;
             case RESULTSET_TYPE:
-                defVal = getDefaultResultSet();
+                defVal = getDefaultTable();
                 break;
             case PROPERTY_MAP_TYPE:
                 defVal = getDefaultPropertyMap();
                 break;
             case PROPERTY_MAP_LIST_TYPE:
-                defVal = getDefaultPropertyMapList();
+                defVal = getDefaultTable();
                 break;
             case STRING_TYPE:
                 defVal = getDefaultString();
@@ -416,7 +394,7 @@ public class ActionSequenceInput extends AbstractIOElement implements IActionSeq
     @Override
     public IActionSequenceInputSource[] getSources() {
         ArrayList inputSources = new ArrayList();
-        List sourceElements = ioElement.selectNodes(INPUT_SOURCES_NAME + "/*"); //$NON-NLS-1$
+        List sourceElements = getGrandchildren(ioElement, INPUT_SOURCES_NAME);
         for (Iterator iter = sourceElements.iterator(); iter.hasNext();) {
             inputSources.add(new ActionSequenceInputSource((Element) iter.next(), actionInputProvider));
         }
@@ -468,4 +446,42 @@ public class ActionSequenceInput extends AbstractIOElement implements IActionSeq
         return getName();
     }
 
+
+    /**
+     * A cached default table and the nodes it was read from. Edits made
+     * through the wrapper API discard the table. Direct edits that add,
+     * remove or replace rows, the default value or the declared columns are
+     * detected by comparing the nodes; edits to the text of a cell in place
+     * are not.
+     */
+    private static final class CachedTable {
+
+        final ColumnarTableModel table;
+
+        private final Element defValElement;
+
+        private final Element columnsElement;
+
+        private final Node[] nodes;
+
+        CachedTable(Element inputElement, ColumnarTableModel table) {
+            this.table = table;
+            defValElement = inputElement.element(DEFAULT_VAL_NAME);
+            columnsElement = inputElement.element(RESULTSET_DEFAULT_COLUMNS);
+            nodes = new Node[defValElement.nodeCount()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = defValElement.node(i);
+            }
+        }
+
+        boolean isCurrent(Element inputElement) {
+            boolean result = (inputElement.element(DEFAULT_VAL_NAME) == defValElement)
+                    && (inputElement.element(RESULTSET_DEFAULT_COLUMNS) == columnsElement)
+                    && (defValElement.nodeCount() == nodes.length);
+            for (int i = 0; (i < nodes.length) && result; i++) {
+                result = defValElement.node(i) == nodes[i];
+            }
+            return result;
+        }
+    }
 }
@@ -0,0 +1,499 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import static java.nio.channels.Channels.newInputStream;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.READ;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import static javax.xml.XMLConstants.ACCESS_EXTERNAL_DTD;
+import javax.xml.stream.XMLInputFactory;
+import static javax.xml.stream.XMLInputFactory.IS_COALESCING;
+import static javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES;
+import static javax.xml.stream.XMLInputFactory.newFactory;
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.COMMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.PROCESSING_INSTRUCTION;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.logging.Log;
+import static org.apache.commons.logging.LogFactory.getLog;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_SEQUENCE;
+import static org.pentaho.actionsequence.dom.ReferenceIndex.isActionIOSection;
+import static org.pentaho.actionsequence.dom.actions.ActionFactory.getActionDefinition;
+import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+
+/**
+ * Loads action sequence documents with a StAX reader. The dom4j tree, the
+ * normalized root actions element, the action definition wrappers and the
+ * variable reference index are all built while the document is read, so the
+ * returned document needs no further processing before it is used.
+ * <p>
+ * The reader is configured like the SAX reader used for action plugins:
+ * external entities and external DTDs are not loaded, and the JDK's secure
+ * processing limits apply. Document type declarations are not retained.
+ */
+public final class ActionSequenceLoader {
+
+    /**
+     * The size in bytes from which files are mapped into memory rather than
+     * read through a stream. Mapping smaller files costs more than it saves.
+     */
+    public static final long MAPPED_LOAD_THRESHOLD = 1 << 20;
+
+    private static final Log logger = getLog(ActionSequenceLoader.class);
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event"; //$NON-NLS-1$
+
+    private static final String IGNORE_EXTERNAL_DTD = "http://java.sun.com/xml/stream/properties/ignore-external-dtd"; //$NON-NLS-1$
+
+    private static final XMLInputFactory inputFactory = createSafeInputFactory();
+
+    private ActionSequenceLoader() {
+    }
+
+    /**
+     * @see #load(InputStream, IActionParameterMgr)
+     */
+    public static ActionSequenceDocument load(InputStream in) throws DocumentException {
+        return load(in, null);
+    }
+
+    /**
+     * Loads an action sequence document from a stream. The stream is not
+     * closed.
+     *
+     * @param in the stream to read from
+     * @param actionInputProvider the parameter manager used by the document
+     * @return the action sequence document
+     * @throws DocumentException if the stream does not contain well formed XML
+     */
+    public static ActionSequenceDocument load(InputStream in, IActionParameterMgr actionInputProvider)
+            throws DocumentException {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(in);
+            return new Builder(actionInputProvider).build(reader);
+        } catch (XMLStreamException e) {
+            throw new DocumentException(e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.error(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @see #load(Path, IActionParameterMgr)
+     */
+    public static ActionSequenceDocument load(Path path) throws IOException, DocumentException {
+        return load(path, null);
+    }
+
+    /**
+     * Loads an action sequence document from a file. Files of at least
+     * <code>MAPPED_LOAD_THRESHOLD</code> bytes are mapped into memory and
+     * parsed directly from the mapping, so that large files are not copied
+     * into a byte array first.
+     *
+     * @param path the file to read
+     * @param actionInputProvider the parameter manager used by the document
+     * @return the action sequence document
+     * @throws IOException if the file cannot be read
+     * @throws DocumentException if the file does not contain well formed XML
+     */
+    public static ActionSequenceDocument load(Path path, IActionParameterMgr actionInputProvider)
+            throws IOException, DocumentException {
+        return load(readContent(path), actionInputProvider);
+    }
+
+    /**
+     * Returns the content of a file as a buffer. Files of at least
+     * <code>MAPPED_LOAD_THRESHOLD</code> bytes are mapped into memory, smaller
+     * files are read into a heap buffer.
+     *
+     * @param path the file to read
+     * @return the content, from position 0 to the limit
+     * @throws IOException if the file cannot be read
+     */
+    public static ByteBuffer readContent(Path path) throws IOException {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            long size = channel.size();
+            if ((size >= MAPPED_LOAD_THRESHOLD) && (size <= Integer.MAX_VALUE)) {
+                content = channel.map(READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.wrap(newInputStream(channel).readAllBytes());
+            }
+        }
+        return content;
+    }
+
+    /**
+     * @see #load(ByteBuffer, IActionParameterMgr)
+     */
+    public static ActionSequenceDocument load(ByteBuffer buffer) throws DocumentException {
+        return load(buffer, null);
+    }
+
+    /**
+     * Loads an action sequence document from the remaining bytes of a buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer the encoded document
+     * @param actionInputProvider the parameter manager used by the document
+     * @return the action sequence document
+     * @throws DocumentException if the buffer does not contain well formed XML
+     */
+    public static ActionSequenceDocument load(ByteBuffer buffer, IActionParameterMgr actionInputProvider)
+            throws DocumentException {
+        return load(new ByteBufferInputStream(buffer.duplicate()), actionInputProvider);
+    }
+
+    private static XMLInputFactory createSafeInputFactory() {
+        XMLInputFactory factory = newFactory();
+        factory.setProperty(IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(IS_COALESCING, false);
+        setProperty(factory, ACCESS_EXTERNAL_DTD, ""); //$NON-NLS-1$
+        setProperty(factory, IGNORE_EXTERNAL_DTD, true);
+        setProperty(factory, REPORT_CDATA, true);
+        return factory;
+    }
+
+    private static void setProperty(XMLInputFactory factory, String name, Object value) {
+        try {
+            factory.setProperty(name, value);
+        } catch (IllegalArgumentException e) {
+            logger.error(e);
+        }
+    }
+
+    /**
+     * Builds the document and the structures that are derived from it from
+     * the events of a stream reader, or from the nodes of another encoding
+     * passed to it in document order.
+     */
+    static final class Builder {
+
+        private static final int CONTAINER = 0;
+
+        private static final int ACTION_DEFINITION = 1;
+
+        private static final int ACTION_IO_SECTION = 2;
+
+        private static final int OTHER = 3;
+
+        private final IActionParameterMgr actionInputProvider;
+
+        private final DocumentFactory factory = TrackingDocumentFactory.getInstance();
+
+        private final Document document = factory.createDocument();
+
+        private final ReferenceIndex referenceIndex = new ReferenceIndex();
+
+        private final ArrayList actionDefinitions = new ArrayList();
+
+        private final ArrayList rootActions = new ArrayList();
+
+        private final ArrayList elements = new ArrayList();
+
+        private int[] kinds = new int[16];
+
+        private final StringBuilder text = new StringBuilder();
+
+        private boolean isCDATA;
+
+        Builder(IActionParameterMgr actionInputProvider) {
+            this.actionInputProvider = actionInputProvider;
+        }
+
+        ActionSequenceDocument build(XMLStreamReader reader) throws XMLStreamException {
+            String encoding = reader.getEncoding();
+            setXMLEncoding(encoding != null ? encoding : reader.getCharacterEncodingScheme());
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case START_ELEMENT:
+                        flushText();
+                        startElement(reader);
+                        break;
+                    case END_ELEMENT:
+                        flushText();
+                        endElement();
+                        break;
+                    case CHARACTERS:
+                    case SPACE:
+                        appendText(reader, false);
+                        break;
+                    case CDATA:
+                        appendText(reader, true);
+                        break;
+                    case COMMENT:
+                        flushText();
+                        addComment(reader.getText());
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        flushText();
+                        addProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return build();
+        }
+
+        void setXMLEncoding(String encoding) {
+            document.setXMLEncoding(encoding);
+        }
+
+        /**
+         * @return the action sequence document once all the nodes have been
+         * added
+         */
+        ActionSequenceDocument build() {
+            ActionSequenceDocument actionSequenceDocument;
+            Element rootElement = document.getRootElement();
+            if ((rootElement != null) && rootElement.getName().equals(ACTION_SEQUENCE)) {
+                ReferenceIndex index = referenceIndex;
+                if (!ActionSequenceDocument.isMasterActions(rootActions)) {
+                    Element masterAction = rootElement.addElement(ACTIONS_NAME);
+                    for (Iterator iter = rootActions.iterator(); iter.hasNext();) {
+                        masterAction.add(((Element) iter.next()).detach());
+                    }
+                    // The actions moved, so the index is built again.
+                    index = new ReferenceIndex(document);
+                } else {
+                    index.complete(rootElement);
+                }
+                actionSequenceDocument = new ActionSequenceDocument(document, actionInputProvider, index,
+                        actionDefinitions);
+            } else {
+                actionSequenceDocument = new ActionSequenceDocument(document, actionInputProvider);
+            }
+            return actionSequenceDocument;
+        }
+
+        private void startElement(XMLStreamReader reader) {
+            Element element = factory.createElement(createQName(reader.getLocalName(), reader.getPrefix(),
+                    reader.getNamespaceURI()));
+            for (int i = 0, count = reader.getNamespaceCount(); i < count; i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                Namespace namespace = factory.createNamespace(prefix != null ? prefix : "", //$NON-NLS-1$
+                        reader.getNamespaceURI(i));
+                if (!namespace.equals(element.getNamespace())) {
+                    element.add(namespace);
+                }
+            }
+            for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+                element.addAttribute(createQName(reader.getAttributeLocalName(i), reader.getAttributePrefix(i),
+                        reader.getAttributeNamespace(i)), reader.getAttributeValue(i));
+            }
+            startElement(element);
+        }
+
+        /**
+         * Adds an element, with its attributes and namespace declarations but
+         * no content yet, to the current element or to the document if there
+         * is no current element. The element becomes the current element.
+         */
+        void startElement(Element element) {
+            int depth = elements.size();
+            Element parent = depth > 0 ? (Element) elements.get(depth - 1) : null;
+            if (parent != null) {
+                parent.add(element);
+            } else {
+                document.add(element);
+            }
+
+            int kind = OTHER;
+            String name = element.getName();
+            if (parent == null) {
+                kind = CONTAINER;
+            } else if (kinds[depth - 1] == CONTAINER) {
+                if (name.equals(ACTIONS_NAME)) {
+                    kind = CONTAINER;
+                    referenceIndex.addActions(element);
+                    if (depth == 1) {
+                        rootActions.add(element);
+                    }
+                } else if (name.equals(ACTION_DEFINITION_NAME)) {
+                    kind = ACTION_DEFINITION;
+                    referenceIndex.addActionDefinition(element);
+                }
+            } else if (kinds[depth - 1] == ACTION_DEFINITION) {
+                if (isActionIOSection(name)) {
+                    kind = ACTION_IO_SECTION;
+                }
+            } else if (kinds[depth - 1] == ACTION_IO_SECTION) {
+                referenceIndex.addActionIO(parent.getName(), element);
+            }
+            if (depth == kinds.length) {
+                int[] newKinds = new int[depth * 2];
+                System.arraycopy(kinds, 0, newKinds, 0, depth);
+                kinds = newKinds;
+            }
+            kinds[depth] = kind;
+            elements.add(element);
+        }
+
+        /**
+         * Ends the current element. Its parent becomes the current element.
+         */
+        void endElement() {
+            int depth = elements.size() - 1;
+            Element element = (Element) elements.remove(depth);
+            if (kinds[depth] == ACTION_DEFINITION) {
+                // The subtree is complete, so the action class can be resolved.
+                actionDefinitions.add(getActionDefinition(element, actionInputProvider));
+            }
+        }
+
+        /**
+         * @return a new element that is not yet part of the document
+         */
+        Element createElement(String localName, String prefix, String namespaceURI) {
+            return factory.createElement(createQName(localName, prefix, namespaceURI));
+        }
+
+        Namespace createNamespace(String prefix, String namespaceURI) {
+            return factory.createNamespace(prefix, namespaceURI);
+        }
+
+        QName createQName(String localName, String prefix, String namespaceURI) {
+            QName qName;
+            if ((namespaceURI == null) || (namespaceURI.length() == 0)) {
+                qName = factory.createQName(localName);
+            } else {
+                qName = factory.createQName(localName, prefix != null ? prefix : "", namespaceURI); //$NON-NLS-1$
+            }
+            return qName;
+        }
+
+        private Element getCurrentElement() {
+            return (Element) elements.get(elements.size() - 1);
+        }
+
+        /**
+         * Adjacent character events are collected into a single text or CDATA
+         * node, as the SAX reader does.
+         */
+        private void appendText(XMLStreamReader reader, boolean cdata) {
+            if ((text.length() > 0) && (isCDATA != cdata)) {
+                flushText();
+            }
+            isCDATA = cdata;
+            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        }
+
+        private void flushText() {
+            if (text.length() > 0) {
+                addText(text.toString(), isCDATA);
+                text.setLength(0);
+            }
+        }
+
+        /**
+         * Adds a text or CDATA node to the current element.
+         */
+        void addText(String value, boolean cdata) {
+            // Text outside of the root element is not part of the document.
+            if (!elements.isEmpty()) {
+                Element element = getCurrentElement();
+                if (cdata) {
+                    element.addCDATA(value);
+                } else {
+                    element.addText(value);
+                }
+            }
+        }
+
+        /**
+         * Adds a comment to the current element or to the document if there is
+         * no current element.
+         */
+        void addComment(String comment) {
+            if (elements.isEmpty()) {
+                document.addComment(comment);
+            } else {
+                getCurrentElement().addComment(comment);
+            }
+        }
+
+        /**
+         * Adds a processing instruction to the current element or to the
+         * document if there is no current element.
+         */
+        void addProcessingInstruction(String target, String data) {
+            if (elements.isEmpty()) {
+                document.addProcessingInstruction(target, data);
+            } else {
+                getCurrentElement().addProcessingInstruction(target, data);
+            }
+        }
+    }
+
+    /**
+     * An input stream reading the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            int result = -1;
+            if (buffer.hasRemaining()) {
+                result = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, result);
+            }
+            return result;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import static org.dom4j.DocumentHelper.makeElement;
 import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireIoChanged;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.OUTPUTS_DESTINATIONS_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchildren;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 
 /**
@@ -40,7 +41,7 @@ public class ActionSequenceOutput extends AbstractIOElement implements IActionSe
     @Override
     public IActionSequenceOutputDestination[] getDestinations() {
         ArrayList outputDestinations = new ArrayList();
-        List destinationElements = ioElement.selectNodes(OUTPUTS_DESTINATIONS_NAME + "/*"); //$NON-NLS-1$
+        List destinationElements = getGrandchildren(ioElement, OUTPUTS_DESTINATIONS_NAME);
         for (Iterator iter = destinationElements.iterator(); iter.hasNext();) {
             outputDestinations.add(new ActionSequenceOutputDestination((Element) iter.next(), actionInputProvider));
         }
@@ -12,10 +12,13 @@
  */
 package org.pentaho.actionsequence.dom;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Iterator;
 import java.util.List;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -25,6 +28,7 @@ import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireResourceChanged;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireResourceRemoved;
 import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireResourceRenamed;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchild;
 import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
 
 /**
@@ -73,13 +77,13 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
         if (null != resType) {
             switch (resType) {
                 case SOLUTION_FILE_RESOURCE_TYPE:
-                    mimeElement = (Element) ioElement.selectSingleNode(SOLUTION_FILE_RESOURCE_TYPE + "/" + RES_MIME_TYPE_NAME); //$NON-NLS-1$
+                    mimeElement = getGrandchild(ioElement, SOLUTION_FILE_RESOURCE_TYPE, RES_MIME_TYPE_NAME);
                     break;
                 case FILE_RESOURCE_TYPE:
-                    mimeElement = (Element) ioElement.selectSingleNode(FILE_RESOURCE_TYPE + "/" + RES_MIME_TYPE_NAME); //$NON-NLS-1$
+                    mimeElement = getGrandchild(ioElement, FILE_RESOURCE_TYPE, RES_MIME_TYPE_NAME);
                     break;
                 case URL_RESOURCE_TYPE:
-                    mimeElement = (Element) ioElement.selectSingleNode(URL_RESOURCE_TYPE + "/" + RES_MIME_TYPE_NAME); //$NON-NLS-1$
+                    mimeElement = getGrandchild(ioElement, URL_RESOURCE_TYPE, RES_MIME_TYPE_NAME);
                     break;
                 default:
                     break;
@@ -123,13 +127,13 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
         if (null != resType) {
             switch (resType) {
                 case SOLUTION_FILE_RESOURCE_TYPE:
-                    mimeElement = (Element) ioElement.selectSingleNode(SOLUTION_FILE_RESOURCE_TYPE + "/" + RES_MIME_TYPE_NAME); //$NON-NLS-1$
+                    mimeElement = getGrandchild(ioElement, SOLUTION_FILE_RESOURCE_TYPE, RES_MIME_TYPE_NAME);
                     break;
                 case FILE_RESOURCE_TYPE:
-                    mimeElement = (Element) ioElement.selectSingleNode(FILE_RESOURCE_TYPE + "/" + RES_MIME_TYPE_NAME); //$NON-NLS-1$
+                    mimeElement = getGrandchild(ioElement, FILE_RESOURCE_TYPE, RES_MIME_TYPE_NAME);
                     break;
                 case URL_RESOURCE_TYPE:
-                    mimeElement = (Element) ioElement.selectSingleNode(URL_RESOURCE_TYPE + "/" + RES_MIME_TYPE_NAME); //$NON-NLS-1$
+                    mimeElement = getGrandchild(ioElement, URL_RESOURCE_TYPE, RES_MIME_TYPE_NAME);
                     break;
                 default:
                     break;
@@ -155,13 +159,13 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
         if (null != resType) {
             switch (resType) {
                 case SOLUTION_FILE_RESOURCE_TYPE:
-                    pathElement = (Element) ioElement.selectSingleNode(SOLUTION_FILE_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+                    pathElement = getGrandchild(ioElement, SOLUTION_FILE_RESOURCE_TYPE, RES_LOCATION_NAME);
                     break;
                 case FILE_RESOURCE_TYPE:
-                    pathElement = (Element) ioElement.selectSingleNode(FILE_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+                    pathElement = getGrandchild(ioElement, FILE_RESOURCE_TYPE, RES_LOCATION_NAME);
                     break;
                 case URL_RESOURCE_TYPE:
-                    pathElement = (Element) ioElement.selectSingleNode(URL_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+                    pathElement = getGrandchild(ioElement, URL_RESOURCE_TYPE, RES_LOCATION_NAME);
                     break;
                 default:
                     break;
@@ -207,13 +211,13 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
         if (null != resType) {
             switch (resType) {
                 case SOLUTION_FILE_RESOURCE_TYPE:
-                    pathElement = (Element) ioElement.selectSingleNode(SOLUTION_FILE_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+                    pathElement = getGrandchild(ioElement, SOLUTION_FILE_RESOURCE_TYPE, RES_LOCATION_NAME);
                     break;
                 case FILE_RESOURCE_TYPE:
-                    pathElement = (Element) ioElement.selectSingleNode(FILE_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+                    pathElement = getGrandchild(ioElement, FILE_RESOURCE_TYPE, RES_LOCATION_NAME);
                     break;
                 case URL_RESOURCE_TYPE:
-                    pathElement = (Element) ioElement.selectSingleNode(URL_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+                    pathElement = getGrandchild(ioElement, URL_RESOURCE_TYPE, RES_LOCATION_NAME);
                     break;
                 default:
                     break;
@@ -347,7 +351,7 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
         Document doc = ioElement.getDocument();
         if (doc != null) {
             ioElement.detach();
-            fireResourceRemoved(new ActionSequenceDocument(doc, actionInputProvider), this);
+            fireResourceRemoved(ActionSequenceDocument.getActionSequenceDocument(doc, actionInputProvider), this);
         }
     }
 
@@ -384,7 +388,7 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
     public IActionSequenceDocument getDocument() {
         ActionSequenceDocument doc = null;
         if ((ioElement != null) && (ioElement.getDocument() != null)) {
-            doc = new ActionSequenceDocument(ioElement.getDocument(), actionInputProvider);
+            doc = ActionSequenceDocument.getActionSequenceDocument(ioElement.getDocument(), actionInputProvider);
         }
         return doc;
     }
@@ -461,21 +465,60 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
      */
     @Override
     public String getXml() {
-        String xml = null;
+        Element element = getEmbeddedElement();
+        return element != null ? element.asXML() : null;
+    }
+
+    /**
+     * Returns a copy of the embedded XML of an XML resource, so that it can be
+     * navigated without converting it to a string and parsing it again.
+     * Changes to the copy do not change the document; use <code>setXml</code>
+     * for that.
+     *
+     * @return a copy of the root element of the embedded XML or null if this
+     * is not an XML resource or the resource is empty.
+     */
+    public Element getXmlElement() {
+        Element element = getEmbeddedElement();
+        return element != null ? element.createCopy() : null;
+    }
+
+    /**
+     * @return the root element of the embedded XML itself, or null
+     */
+    private Element getEmbeddedElement() {
+        Element element = null;
         if (XML_RESOURCE_TYPE.equals(getType())) {
-            Element element = (Element) ioElement.selectSingleNode(XML_RESOURCE_TYPE + "/" + RES_LOCATION_NAME + "/*"); //$NON-NLS-1$
-            if (element != null) {
-                xml = element.asXML();
+            Element locationElement = getGrandchild(ioElement, XML_RESOURCE_TYPE, RES_LOCATION_NAME);
+            if (locationElement != null) {
+                Iterator iter = locationElement.elementIterator();
+                element = iter.hasNext() ? (Element) iter.next() : null;
             }
         }
-        return xml;
+        return element;
+    }
+
+    /**
+     * Writes the embedded XML of an XML resource, as returned by
+     * <code>getXml</code>, without building the string.
+     *
+     * @param writer the writer to write to
+     * @return true if there was XML to write
+     * @throws IOException if the writer cannot be written to
+     */
+    public boolean writeXml(Writer writer) throws IOException {
+        Element element = getEmbeddedElement();
+        if (element != null) {
+            element.write(writer);
+        }
+        return element != null;
     }
 
     @Override
     public void setXml(String xml) throws DocumentException {
         setType(XML_RESOURCE_TYPE);
         Document document = parseText(xml);
-        Element locationElement = (Element) ioElement.selectSingleNode(XML_RESOURCE_TYPE + "/" + RES_LOCATION_NAME); //$NON-NLS-1$
+        Element locationElement = getGrandchild(ioElement, XML_RESOURCE_TYPE, RES_LOCATION_NAME);
         List elements = locationElement.elements();
         for (Object obj : elements) {
             ((Element) obj).detach();
@@ -485,7 +528,6 @@ public class ActionSequenceResource extends AbstractIOElement implements IAction
 
     @Override
     public int hashCode() {
-        int hash = 3;
-        return hash;
+        return ioElement != null ? ioElement.hashCode() : super.hashCode();
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+
+/**
+ * An immutable copy of an action sequence that can be shared by concurrent
+ * executions without copying or locking. The inputs, outputs, resources and
+ * executable statements of the sequence, as well as all of its action
+ * definitions resolved to their <code>ActionDefinition</code> subclasses, are
+ * collected when the snapshot is created.
+ * <p>
+ * The wrappers handed out by the snapshot are the usual wrapper classes, but
+ * the document they wrap is read only: every method that would modify the
+ * document, including the setters of its metadata, throws an
+ * <code>UnsupportedOperationException</code>.
+ * <p>
+ * The wrappers use the parameter manager of the document the snapshot was
+ * taken of. Executions that resolve parameters through their own manager use
+ * <code>withParameterManager</code> to get a view of the snapshot whose
+ * wrappers use that manager.
+ */
+public final class ActionSequenceSnapshot {
+
+    private final ActionSequenceDocument document;
+
+    private final List inputs;
+
+    private final List outputs;
+
+    private final List resources;
+
+    private final List executableChildren;
+
+    private final List actionDefinitions;
+
+    private final Map inputsByName;
+
+    ActionSequenceSnapshot(ActionSequenceDocument source) {
+        this(new ActionSequenceDocument(ReadOnlyDocumentFactory.copy(source.getDocument()),
+                source.actionInputProvider), source);
+    }
+
+    /**
+     * @param document the wrapper of the read only document
+     * @param source the document whose metadata is copied
+     */
+    private ActionSequenceSnapshot(ActionSequenceDocument document, ActionSequenceDocument source) {
+        this.document = document;
+        document.metadata.solutionName = source.metadata.solutionName;
+        document.metadata.solutionPath = source.metadata.solutionPath;
+        document.metadata.documentName = source.metadata.documentName;
+
+        IActionSequenceInput[] inputArray = document.getInputs();
+        HashMap inputMap = new HashMap();
+        for (IActionSequenceInput input : inputArray) {
+            inputMap.put(input.getName(), input);
+        }
+        inputs = unmodifiableList(asList(inputArray));
+        inputsByName = unmodifiableMap(inputMap);
+        outputs = unmodifiableList(asList(document.getOutputs()));
+        resources = unmodifiableList(asList(document.getResources()));
+        IActionSequenceExecutableStatement[] executableArray = document.getExecutableChildren();
+        executableChildren = unmodifiableList(asList(executableArray));
+        ArrayList actionDefinitionList = new ArrayList();
+        addActionDefinitions(executableArray, actionDefinitionList);
+        actionDefinitions = unmodifiableList(actionDefinitionList);
+
+        // Built now so that concurrent reference queries do not build it.
+        document.getReferenceIndex();
+    }
+
+    private static void addActionDefinitions(IActionSequenceExecutableStatement[] executables, List result) {
+        for (IActionSequenceExecutableStatement executable : executables) {
+            if (executable instanceof IActionDefinition) {
+                result.add(executable);
+            } else if (executable instanceof IActionControlStatement) {
+                addActionDefinitions(((IActionControlStatement) executable).getChildren(), result);
+            }
+        }
+    }
+
+    /**
+     * Returns a view of this snapshot whose wrappers use the given parameter
+     * manager. The view shares the read only document and reference index of
+     * this snapshot.
+     *
+     * @param actionParameterMgr the parameter manager of the view
+     * @return the view, or this snapshot if it already uses the manager
+     */
+    public ActionSequenceSnapshot withParameterManager(IActionParameterMgr actionParameterMgr) {
+        ActionSequenceSnapshot view = this;
+        if (actionParameterMgr != document.actionInputProvider) {
+            ActionSequenceDocument viewDocument = new ActionSequenceDocument(document.getDocument(),
+                    actionParameterMgr);
+            viewDocument.referenceIndex = document.referenceIndex;
+            view = new ActionSequenceSnapshot(viewDocument, document);
+        }
+        return view;
+    }
+
+    /**
+     * @return the read only action sequence document
+     */
+    public ActionSequenceDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * @return the action sequence inputs
+     */
+    public List getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @return the named action sequence input or null if there is none
+     */
+    public IActionSequenceInput getInput(String name) {
+        return (IActionSequenceInput) inputsByName.get(name);
+    }
+
+    /**
+     * @return the action sequence outputs
+     */
+    public List getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * @return the action sequence resources
+     */
+    public List getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the action definitions and control statements at the top level
+     * of the action sequence
+     */
+    public List getExecutableChildren() {
+        return executableChildren;
+    }
+
+    /**
+     * @return all action definitions of the action sequence in document order,
+     * including those within loops and if statements
+     */
+    public List getActionDefinitions() {
+        return actionDefinitions;
+    }
+}
@@ -12,8 +12,16 @@
  */
 package org.pentaho.actionsequence.dom;
 
+import java.util.Objects;
+import static java.util.Objects.hash;
 import org.pentaho.actionsequence.dom.actions.ActionDefinition;
 
+/**
+ * A validation error of an action definition or control statement. Errors
+ * are equal when they have the same code, message and parameter and were
+ * reported for the same element, so sets of errors from successive
+ * validations can be compared.
+ */
 public class ActionSequenceValidationError implements IActionSequenceValidationError {
 
     public static final int INPUT_OK = 0;
@@ -27,6 +35,7 @@ public class ActionSequenceValidationError implements IActionSequenceValidationE
     public String errorMsg;
     public ActionDefinition actionDefinition;
     public String parameterName;
+    public IActionControlStatement controlStatement;
 
     @Override
     public int getErrorCode() {
@@ -48,4 +57,30 @@ public class ActionSequenceValidationError implements IActionSequenceValidationE
         return parameterName;
     }
 
+    /**
+     * @return the control statement the error was reported for or null if the
+     * error was reported for an action definition.
+     */
+    public IActionControlStatement getControlStatement() {
+        return controlStatement;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        boolean result = obj == this;
+        if (!result && (obj instanceof ActionSequenceValidationError)) {
+            ActionSequenceValidationError error = (ActionSequenceValidationError) obj;
+            result = (errorCode == error.errorCode) && Objects.equals(errorMsg, error.errorMsg)
+                    && Objects.equals(parameterName, error.parameterName)
+                    && Objects.equals(actionDefinition, error.actionDefinition)
+                    && Objects.equals(controlStatement, error.controlStatement);
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(errorCode, errorMsg, parameterName, actionDefinition, controlStatement);
+    }
+
 }
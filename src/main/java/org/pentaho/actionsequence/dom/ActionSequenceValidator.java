@@ -0,0 +1,556 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import static java.util.Collections.newSetFromMap;
+import static java.util.Collections.unmodifiableSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.IAbstractIOElement.TYPE_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_INPUTS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_OUTPUTS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_RESOURCES_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.DOC_INPUTS_NAME;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+
+/**
+ * Keeps the validation errors of an action sequence up to date as the
+ * document is modified. The validator listens to the document and records,
+ * for each action definition and control statement, the variable names and
+ * types its validation depends on. When an input, output or resource
+ * changes only the statements that own it or that depend on the name or type
+ * of the variable it declares are validated again.
+ * <p>
+ * The set returned by <code>getErrors</code> is live. Validation errors are
+ * compared by value, so a copy of the set taken before a modification can be
+ * compared with the set afterwards to find the errors that were fixed or
+ * introduced. Like the document itself the validator is not thread safe.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ActionSequenceValidator {
+
+    private static final IActionSequenceValidationError[] NO_ERRORS = new IActionSequenceValidationError[0];
+
+    private final ActionSequenceDocument document;
+
+    private final Element rootElement;
+
+    private final IActionSequenceDocumentListener listener;
+
+    /**
+     * The validated statements keyed by their element.
+     */
+    private final IdentityHashMap statements = new IdentityHashMap();
+
+    /**
+     * The statement elements that depend on each variable name.
+     */
+    private final HashMap nameDependents = new HashMap();
+
+    /**
+     * The statement elements that depend on each variable type.
+     */
+    private final HashMap typeDependents = new HashMap();
+
+    /**
+     * The statement element owning each action input, output and resource.
+     */
+    private final IdentityHashMap owners = new IdentityHashMap();
+
+    /**
+     * The name and type last seen for each document input and action output.
+     */
+    private final IdentityHashMap variables = new IdentityHashMap();
+
+    private final LinkedHashSet errors = new LinkedHashSet();
+
+    private final Set errorsView = unmodifiableSet(errors);
+
+    private long validationCount;
+
+    /**
+     * Validates the document and starts listening to it for changes.
+     *
+     * @param document the document to be validated
+     */
+    public ActionSequenceValidator(ActionSequenceDocument document) {
+        this.document = document;
+        rootElement = document.getRootLoop().getElement();
+        revalidate();
+        listener = new Listener(this);
+        document.addListener(listener);
+    }
+
+    /**
+     * @return the current validation errors. The set is updated as the
+     * document changes and must not be modified.
+     */
+    public Set getErrors() {
+        return errorsView;
+    }
+
+    /**
+     * @return the number of times an action definition or control statement
+     * has been validated since the validator was created.
+     */
+    public long getValidationCount() {
+        return validationCount;
+    }
+
+    /**
+     * Discards all recorded dependencies and validates the whole document
+     * again. This is only needed if the document was modified other than
+     * through the DOM wrapper API.
+     */
+    public void revalidate() {
+        statements.clear();
+        nameDependents.clear();
+        typeDependents.clear();
+        owners.clear();
+        variables.clear();
+        errors.clear();
+        for (Iterator iter = document.getDocument().getRootElement().elementIterator(DOC_INPUTS_NAME); iter.hasNext();) {
+            for (Iterator inputIter = ((Element) iter.next()).elementIterator(); inputIter.hasNext();) {
+                Element inputElement = (Element) inputIter.next();
+                variables.put(inputElement, getVariableKey(inputElement.getName(), inputElement));
+            }
+        }
+        Set affected = newStatementSet();
+        addStatements(rootElement, affected, false);
+        validate(affected);
+    }
+
+    /**
+     * Stops listening to the document. A validator that is no longer
+     * referenced is collected and stops listening without being disposed.
+     */
+    public void dispose() {
+        document.removeListener(listener);
+    }
+
+    private void ioElementChanged(Element ioElement) {
+        Set affected = newStatementSet();
+        Element section = ioElement.getParent();
+        if (section != null) {
+            String sectionName = section.getName();
+            if (ReferenceIndex.isActionIOSection(sectionName)) {
+                Element statementElement = section.getParent();
+                if (statements.containsKey(statementElement)) {
+                    owners.put(ioElement, statementElement);
+                    affected.add(statementElement);
+                    if (sectionName.equals(ACTION_OUTPUTS_NAME)) {
+                        updateVariable(ioElement, ReferenceIndex.getPublicName(ioElement), affected);
+                    }
+                }
+            } else if (sectionName.equals(DOC_INPUTS_NAME)) {
+                updateVariable(ioElement, ioElement.getName(), affected);
+            }
+        }
+        validate(affected);
+    }
+
+    private void ioElementRemoved(Element ioElement) {
+        Set affected = newStatementSet();
+        Object statementElement = owners.remove(ioElement);
+        if (statementElement != null) {
+            affected.add(statementElement);
+        }
+        addDependents((String[]) variables.remove(ioElement), affected);
+        validate(affected);
+    }
+
+    private void statementAdded(Element statementElement) {
+        if (isDescendant(statementElement, rootElement)) {
+            Set affected = newStatementSet();
+            addStatements(statementElement, affected, true);
+            validate(affected);
+        }
+    }
+
+    private void statementRemoved(Element statementElement) {
+        Set affected = newStatementSet();
+        removeStatements(statementElement, affected);
+        validate(affected);
+    }
+
+    private void statementChanged(Element statementElement) {
+        if (statements.containsKey(statementElement)) {
+            Set affected = newStatementSet();
+            affected.add(statementElement);
+            addIO(statementElement, affected);
+            validate(affected);
+        }
+    }
+
+    /**
+     * Adds a statement and the statements it contains, along with the
+     * statements depending on the outputs they declare.
+     */
+    private void addStatements(Element statementElement, Set affected, boolean includeStatement) {
+        if (includeStatement) {
+            if (!statements.containsKey(statementElement)) {
+                statements.put(statementElement, null);
+            }
+            affected.add(statementElement);
+            addIO(statementElement, affected);
+        }
+        if (statementElement.getName().equals(ACTIONS_NAME)) {
+            for (Iterator iter = statementElement.elementIterator(); iter.hasNext();) {
+                Element child = (Element) iter.next();
+                String name = child.getName();
+                if (name.equals(ACTIONS_NAME) || name.equals(ACTION_DEFINITION_NAME)) {
+                    addStatements(child, affected, true);
+                }
+            }
+        }
+    }
+
+    private void removeStatements(Element statementElement, Set affected) {
+        if (statements.containsKey(statementElement)) {
+            setErrors(statementElement, null);
+            statements.remove(statementElement);
+            for (Iterator iter = statementElement.elementIterator(); iter.hasNext();) {
+                Element child = (Element) iter.next();
+                String name = child.getName();
+                if (name.equals(ACTIONS_NAME) || name.equals(ACTION_DEFINITION_NAME)) {
+                    removeStatements(child, affected);
+                } else if (ReferenceIndex.isActionIOSection(name)) {
+                    for (Iterator ioIter = child.elementIterator(); ioIter.hasNext();) {
+                        Element ioElement = (Element) ioIter.next();
+                        owners.remove(ioElement);
+                        addDependents((String[]) variables.remove(ioElement), affected);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the owner of the inputs, outputs and resources of an action
+     * definition and the variables declared by its outputs.
+     */
+    private void addIO(Element statementElement, Set affected) {
+        if (statementElement.getName().equals(ACTION_DEFINITION_NAME)) {
+            for (Iterator iter = statementElement.elementIterator(); iter.hasNext();) {
+                Element section = (Element) iter.next();
+                String sectionName = section.getName();
+                if (ReferenceIndex.isActionIOSection(sectionName)) {
+                    for (Iterator ioIter = section.elementIterator(); ioIter.hasNext();) {
+                        Element ioElement = (Element) ioIter.next();
+                        owners.put(ioElement, statementElement);
+                        if (sectionName.equals(ACTION_OUTPUTS_NAME)) {
+                            updateVariable(ioElement, ReferenceIndex.getPublicName(ioElement), affected);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void updateVariable(Element variableElement, String name, Set affected) {
+        String[] key = getVariableKey(name, variableElement);
+        addDependents((String[]) variables.put(variableElement, key), affected);
+        addDependents(key, affected);
+    }
+
+    private void addDependents(String[] variableKey, Set affected) {
+        if (variableKey != null) {
+            Set dependents = (Set) nameDependents.get(variableKey[0]);
+            if (dependents != null) {
+                affected.addAll(dependents);
+            }
+            dependents = (Set) typeDependents.get(variableKey[1]);
+            if (dependents != null) {
+                affected.addAll(dependents);
+            }
+        }
+    }
+
+    private void validate(Set affected) {
+        for (Iterator iter = affected.iterator(); iter.hasNext();) {
+            Element statementElement = (Element) iter.next();
+            if (statements.containsKey(statementElement)) {
+                if (isDescendant(statementElement, rootElement)) {
+                    validate(statementElement);
+                } else {
+                    removeStatements(statementElement, newStatementSet());
+                }
+            }
+        }
+    }
+
+    private void validate(Element statementElement) {
+        HashSet names = new HashSet();
+        HashSet types = new HashSet();
+        IActionSequenceValidationError[] statementErrors = NO_ERRORS;
+        IActionSequenceElement statement = document.getElement(statementElement);
+        if (statement instanceof ActionDefinition) {
+            statementErrors = ((ActionDefinition) statement).validate();
+            for (Iterator iter = statementElement.elementIterator(ACTION_INPUTS_NAME); iter.hasNext();) {
+                for (Iterator inputIter = ((Element) iter.next()).elementIterator(); inputIter.hasNext();) {
+                    Element inputElement = (Element) inputIter.next();
+                    names.add(ReferenceIndex.getReferencedName(inputElement));
+                    types.add(inputElement.attributeValue(TYPE_NAME));
+                }
+            }
+            for (Iterator iter = statementElement.elementIterator(ACTION_RESOURCES_NAME); iter.hasNext();) {
+                for (Iterator resourceIter = ((Element) iter.next()).elementIterator(); resourceIter.hasNext();) {
+                    names.add(ReferenceIndex.getReferencedName((Element) resourceIter.next()));
+                }
+            }
+        } else if (statement instanceof ActionControlStatement) {
+            statementErrors = ((ActionControlStatement) statement).validateThis();
+            if (statement instanceof ActionLoop) {
+                names.add(((ActionLoop) statement).getLoopOn());
+            }
+        }
+        validationCount++;
+        setErrors(statementElement, statementErrors);
+        setDependencies(nameDependents, statementElement, names);
+        setDependencies(typeDependents, statementElement, types);
+    }
+
+    /**
+     * Replaces the errors recorded for a statement.
+     */
+    private void setErrors(Element statementElement, IActionSequenceValidationError[] statementErrors) {
+        Statement statement = (Statement) statements.get(statementElement);
+        if (statement != null) {
+            errors.removeAll(asList(statement.errors));
+            removeDependencies(nameDependents, statementElement, statement.names);
+            removeDependencies(typeDependents, statementElement, statement.types);
+        }
+        if (statementErrors != null) {
+            errors.addAll(asList(statementErrors));
+            statements.put(statementElement, new Statement(statementErrors));
+        }
+    }
+
+    private void setDependencies(HashMap dependentsMap, Element statementElement, Set keys) {
+        Statement statement = (Statement) statements.get(statementElement);
+        List statementKeys = new ArrayList(keys.size());
+        for (Iterator iter = keys.iterator(); iter.hasNext();) {
+            Object key = iter.next();
+            if (key != null) {
+                Set dependents = (Set) dependentsMap.get(key);
+                if (dependents == null) {
+                    dependents = newStatementSet();
+                    dependentsMap.put(key, dependents);
+                }
+                dependents.add(statementElement);
+                statementKeys.add(key);
+            }
+        }
+        if (dependentsMap == nameDependents) {
+            statement.names = statementKeys;
+        } else {
+            statement.types = statementKeys;
+        }
+    }
+
+    private static void removeDependencies(HashMap dependentsMap, Element statementElement, List keys) {
+        for (Iterator iter = keys.iterator(); iter.hasNext();) {
+            Object key = iter.next();
+            Set dependents = (Set) dependentsMap.get(key);
+            if (dependents != null) {
+                dependents.remove(statementElement);
+                if (dependents.isEmpty()) {
+                    dependentsMap.remove(key);
+                }
+            }
+        }
+    }
+
+    private static String[] getVariableKey(String name, Element variableElement) {
+        return new String[]{name, variableElement.attributeValue(TYPE_NAME)};
+    }
+
+    private static boolean isDescendant(Element element, Element ancestor) {
+        Element parent = element.getParent();
+        while ((parent != null) && (parent != ancestor)) {
+            parent = parent.getParent();
+        }
+        return parent != null;
+    }
+
+    private static Set newStatementSet() {
+        return newSetFromMap(new IdentityHashMap());
+    }
+
+    /**
+     * The errors and dependencies recorded for a statement.
+     */
+    private static final class Statement {
+
+        final IActionSequenceValidationError[] errors;
+
+        List names = new ArrayList(0);
+
+        List types = new ArrayList(0);
+
+        Statement(IActionSequenceValidationError[] errors) {
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Forwards the events of the document to the validator. The validator is
+     * weakly referenced, so a validator that is dropped without being
+     * disposed does not live as long as its document; the listener removes
+     * itself on the first event after the validator is collected.
+     */
+    private static final class Listener extends ActionSequenceDocumentAdapter {
+
+        private final WeakReference validatorRef;
+
+        private final ActionSequenceDocument document;
+
+        Listener(ActionSequenceValidator validator) {
+            validatorRef = new WeakReference(validator);
+            document = validator.document;
+        }
+
+        private ActionSequenceValidator getValidator() {
+            ActionSequenceValidator validator = (ActionSequenceValidator) validatorRef.get();
+            if (validator == null) {
+                document.removeListener(this);
+            }
+            return validator;
+        }
+
+        private void ioElementChanged(Element ioElement) {
+            ActionSequenceValidator validator = getValidator();
+            if (validator != null) {
+                validator.ioElementChanged(ioElement);
+            }
+        }
+
+        private void ioElementRemoved(Element ioElement) {
+            ActionSequenceValidator validator = getValidator();
+            if (validator != null) {
+                validator.ioElementRemoved(ioElement);
+            }
+        }
+
+        private void statementAdded(Element statementElement) {
+            ActionSequenceValidator validator = getValidator();
+            if (validator != null) {
+                validator.statementAdded(statementElement);
+            }
+        }
+
+        private void statementRemoved(Element statementElement) {
+            ActionSequenceValidator validator = getValidator();
+            if (validator != null) {
+                validator.statementRemoved(statementElement);
+            }
+        }
+
+        private void statementChanged(Element statementElement) {
+            ActionSequenceValidator validator = getValidator();
+            if (validator != null) {
+                validator.statementChanged(statementElement);
+            }
+        }
+
+        @Override
+        public void ioAdded(IAbstractIOElement io) {
+            ioElementChanged(io.getElement());
+        }
+
+        @Override
+        public void ioRemoved(Object parent, IAbstractIOElement io) {
+            ioElementRemoved(io.getElement());
+        }
+
+        @Override
+        public void ioRenamed(IAbstractIOElement io) {
+            ioElementChanged(io.getElement());
+        }
+
+        @Override
+        public void ioChanged(IAbstractIOElement io) {
+            ioElementChanged(io.getElement());
+        }
+
+        @Override
+        public void resourceAdded(Object resource) {
+            resourceChanged(resource);
+        }
+
+        @Override
+        public void resourceRemoved(Object parent, Object resource) {
+            if (resource instanceof IActionSequenceElement) {
+                ioElementRemoved(((IActionSequenceElement) resource).getElement());
+            }
+        }
+
+        @Override
+        public void resourceRenamed(Object resource) {
+            resourceChanged(resource);
+        }
+
+        @Override
+        public void resourceChanged(Object resource) {
+            if (resource instanceof IActionSequenceElement) {
+                ioElementChanged(((IActionSequenceElement) resource).getElement());
+            }
+        }
+
+        @Override
+        public void actionAdded(IActionDefinition action) {
+            statementAdded(action.getElement());
+        }
+
+        @Override
+        public void actionRemoved(Object parent, IActionDefinition action) {
+            statementRemoved(action.getElement());
+        }
+
+        @Override
+        public void actionRenamed(IActionDefinition action) {
+            statementChanged(action.getElement());
+        }
+
+        @Override
+        public void actionChanged(IActionDefinition action) {
+            statementChanged(action.getElement());
+        }
+
+        @Override
+        public void controlStatementAdded(IActionControlStatement controlStatement) {
+            statementAdded(controlStatement.getElement());
+        }
+
+        @Override
+        public void controlStatementRemoved(Object parent, IActionControlStatement controlStatement) {
+            statementRemoved(controlStatement.getElement());
+        }
+
+        @Override
+        public void controlStatementChanged(IActionControlStatement controlStatement) {
+            statementChanged(controlStatement.getElement());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.Text;
+import org.dom4j.io.OutputFormat;
+import static org.dom4j.io.OutputFormat.createPrettyPrint;
+import org.dom4j.io.XMLWriter;
+
+/**
+ * Writes action sequence documents in the pretty printed format in a single
+ * pass. Whitespace only text between child elements, such as the indentation
+ * of a document that was itself pretty printed, is ignored rather than being
+ * written as stray spaces, so documents no longer need to be reparsed before
+ * they are written.
+ */
+public class ActionSequenceWriter extends XMLWriter {
+
+    private boolean suppressLineSeparator;
+
+    /**
+     * @param writer the writer to write to
+     * @param encoding the encoding to put in the XML declaration or null for
+     * the default encoding
+     */
+    public ActionSequenceWriter(Writer writer, String encoding) {
+        super(writer, createFormat(encoding));
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param encoding the encoding to write the document in or null for the
+     * default encoding
+     * @throws UnsupportedEncodingException if the encoding is not supported
+     */
+    public ActionSequenceWriter(OutputStream out, String encoding) throws UnsupportedEncodingException {
+        super(out, createFormat(encoding));
+    }
+
+    /**
+     * Writes an element without the line separator that normally precedes it.
+     * This is the format returned by <code>ActionSequenceDocument.toString()</code>.
+     *
+     * @param element the element to write
+     * @throws IOException
+     */
+    public void writeRootElement(Element element) throws IOException {
+        suppressLineSeparator = true;
+        writeElement(element);
+        flush();
+    }
+
+    @Override
+    protected void writePrintln() throws IOException {
+        if (suppressLineSeparator) {
+            suppressLineSeparator = false;
+        } else {
+            super.writePrintln();
+        }
+    }
+
+    @Override
+    protected void writeElementContent(Element element) throws IOException {
+        if (getOutputFormat().isTrimText() && !isElementSpacePreserved(element) && hasIgnorableWhitespace(element)) {
+            for (Iterator iter = element.nodeIterator(); iter.hasNext();) {
+                Node node = (Node) iter.next();
+                if (!(node instanceof Text)) {
+                    writeNode(node);
+                }
+            }
+        } else {
+            super.writeElementContent(element);
+        }
+    }
+
+    /**
+     * @return true if the element has child elements and all of its text is
+     * whitespace.
+     */
+    private static boolean hasIgnorableWhitespace(Element element) {
+        boolean hasText = false;
+        boolean hasElements = false;
+        boolean isWhitespace = true;
+        for (int i = 0, size = element.nodeCount(); (i < size) && isWhitespace; i++) {
+            Node node = element.node(i);
+            if (node instanceof Text) {
+                hasText = true;
+                isWhitespace = node.getText().trim().length() == 0;
+            } else if (node instanceof Element) {
+                hasElements = true;
+            }
+        }
+        return hasText && hasElements && isWhitespace;
+    }
+
+    private static OutputFormat createFormat(String encoding) {
+        OutputFormat format = createPrettyPrint();
+        if (encoding != null) {
+            format.setEncoding(encoding);
+        }
+        return format;
+    }
+
+    /**
+     * Writes a pretty printed document.
+     *
+     * @param document the document to write
+     * @param writer the writer to write to. The writer is flushed but not
+     * closed.
+     * @throws IOException
+     */
+    public static void write(Document document, Writer writer) throws IOException {
+        ActionSequenceWriter xmlWriter = new ActionSequenceWriter(writer, document.getXMLEncoding());
+        xmlWriter.write(document);
+        xmlWriter.flush();
+    }
+
+    /**
+     * Writes a pretty printed document in the document's encoding.
+     *
+     * @param document the document to write
+     * @param out the stream to write to. The stream is flushed but not closed.
+     * @throws IOException
+     */
+    public static void write(Document document, OutputStream out) throws IOException {
+        ActionSequenceWriter xmlWriter = new ActionSequenceWriter(out, document.getXMLEncoding());
+        xmlWriter.write(document);
+        xmlWriter.flush();
+    }
+
+    /**
+     * Writes a pretty printed document in the document's encoding.
+     *
+     * @param document the document to write
+     * @param channel the channel to write to. The channel is not closed.
+     * @throws IOException
+     */
+    public static void write(Document document, WritableByteChannel channel) throws IOException {
+        write(document, Channels.newOutputStream(channel));
+    }
+}
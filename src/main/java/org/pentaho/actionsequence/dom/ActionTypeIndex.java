@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.ArrayList;
+import static java.util.Collections.EMPTY_LIST;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_NAME;
+import static org.pentaho.actionsequence.dom.actions.ActionFactory.getShortComponentName;
+
+/**
+ * Maps the short component names used within an action sequence to the
+ * action definition elements that name them. The index is built in a single
+ * walk of the actions of the document and only changes when action
+ * definitions or control statements are added, removed or renamed. All lists
+ * are in document order.
+ */
+class ActionTypeIndex {
+
+    private final ArrayList actionDefinitions = new ArrayList();
+
+    private final HashMap actionDefinitionsByComponent = new HashMap();
+
+    private final IdentityHashMap positions = new IdentityHashMap();
+
+    ActionTypeIndex(Document document) {
+        Element rootElement = document.getRootElement();
+        if (rootElement != null) {
+            indexActions(rootElement);
+        }
+    }
+
+    /**
+     * Creates the index of the action definitions of a loaded document.
+     *
+     * @param actionDefinitionElements the action definition elements in
+     * document order
+     */
+    ActionTypeIndex(List actionDefinitionElements) {
+        for (Iterator iter = actionDefinitionElements.iterator(); iter.hasNext();) {
+            add((Element) iter.next());
+        }
+    }
+
+    /**
+     * @return every action definition element of the document
+     */
+    List getActionDefinitions() {
+        return actionDefinitions;
+    }
+
+    /**
+     * @param componentName the fully qualified or short component name
+     * @return the action definition elements of the component
+     */
+    List getActionDefinitions(String componentName) {
+        List elements = (List) actionDefinitionsByComponent.get(getShortComponentName(componentName));
+        return elements != null ? elements : EMPTY_LIST;
+    }
+
+    /**
+     * @param componentNames the short component names
+     * @return the action definition elements of any of the components
+     */
+    List getActionDefinitions(String[] componentNames) {
+        List result;
+        if (componentNames.length == 1) {
+            result = getActionDefinitions(componentNames[0]);
+        } else {
+            ArrayList elements = new ArrayList();
+            for (String componentName : componentNames) {
+                elements.addAll(getActionDefinitions(componentName));
+            }
+            elements.sort((first, second) -> (Integer) positions.get(first) - (Integer) positions.get(second));
+            result = elements;
+        }
+        return result;
+    }
+
+    private void indexActions(Element element) {
+        for (Iterator iter = element.elementIterator(); iter.hasNext();) {
+            Element child = (Element) iter.next();
+            String name = child.getName();
+            if (name.equals(ACTIONS_NAME)) {
+                indexActions(child);
+            } else if (name.equals(ACTION_DEFINITION_NAME)) {
+                add(child);
+            }
+        }
+    }
+
+    private void add(Element actionDefElement) {
+        positions.put(actionDefElement, actionDefinitions.size());
+        actionDefinitions.add(actionDefElement);
+        Element componentNameElement = actionDefElement.element(COMPONENT_NAME);
+        if (componentNameElement != null) {
+            String componentName = getShortComponentName(componentNameElement.getText());
+            ArrayList elements = (ArrayList) actionDefinitionsByComponent.get(componentName);
+            if (elements == null) {
+                elements = new ArrayList();
+                actionDefinitionsByComponent.put(componentName, elements);
+            }
+            elements.add(actionDefElement);
+        }
+    }
+}
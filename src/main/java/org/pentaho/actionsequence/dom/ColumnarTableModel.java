@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * A read-only table of strings stored by column. Each column holds an int code
+ * per row into a dictionary of the distinct values of the column, so repeated
+ * values are stored once and a row costs four bytes per column.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class ColumnarTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String[] columnNames;
+
+    private final int[][] codes;
+
+    private final String[][] dictionaries;
+
+    private final int rowCount;
+
+    /**
+     * Reads the remaining rows of a cursor into a new table.
+     *
+     * @param cursor the rows of the table
+     */
+    public ColumnarTableModel(DefaultTableCursor cursor) {
+        int columnCount = cursor.getColumnCount();
+        columnNames = new String[columnCount];
+        codes = new int[columnCount][16];
+        dictionaries = new String[columnCount][];
+        HashMap[] valueCodes = new HashMap[columnCount];
+        ArrayList[] values = new ArrayList[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = cursor.getColumnName(i);
+            valueCodes[i] = new HashMap();
+            values[i] = new ArrayList();
+        }
+        int row = 0;
+        while (cursor.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                if (row == codes[i].length) {
+                    codes[i] = Arrays.copyOf(codes[i], row * 2);
+                }
+                String value = cursor.getValue(i);
+                Integer code = (Integer) valueCodes[i].get(value);
+                if (code == null) {
+                    code = values[i].size();
+                    valueCodes[i].put(value, code);
+                    values[i].add(value);
+                }
+                codes[i][row] = code;
+            }
+            row++;
+        }
+        rowCount = row;
+        for (int i = 0; i < columnCount; i++) {
+            codes[i] = Arrays.copyOf(codes[i], rowCount);
+            dictionaries[i] = (String[]) values[i].toArray(new String[values[i].size()]);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    /**
+     * @return the name of the column or, for an unnamed column, the default
+     * spreadsheet style name
+     */
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column] != null ? columnNames[column] : super.getColumnName(column);
+    }
+
+    @Override
+    public Class getColumnClass(int columnIndex) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return dictionaries[columnIndex][codes[columnIndex][rowIndex]];
+    }
+
+    /**
+     * @return a modifiable copy of the table
+     */
+    public DefaultTableModel toDefaultTableModel() {
+        Object[] names = new Object[columnNames.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = getColumnName(i);
+        }
+        Object[][] rows = new Object[rowCount][names.length];
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j < rowCount; j++) {
+                rows[j][i] = dictionaries[i][codes[i][j]];
+            }
+        }
+        return new DefaultTableModel(rows, names);
+    }
+}
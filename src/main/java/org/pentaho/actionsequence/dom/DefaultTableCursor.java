@@ -0,0 +1,191 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.PROPERTY_MAP_ENTRY;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.PROPERTY_MAP_ENTRY_KEY;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.PROPERTY_MAP_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_DEFAULT_COLUMNS;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_ROW;
+
+/**
+ * Reads the rows of the default value of a result set or property map list
+ * input one at a time, straight from the document. Only the current row is
+ * held in memory and each row is read in a single pass over its cells.
+ * Missing cells have the empty string as their value, as they do in the
+ * table returned by <code>getDefaultValue</code>.
+ * <p>
+ * The cursor reads the live document, so it must not be used after the
+ * default value is changed.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class DefaultTableCursor {
+
+    private final String[] columnNames;
+
+    /**
+     * The position of the first column with each name.
+     */
+    private final HashMap columnIndexes = new HashMap();
+
+    /**
+     * The position of the first column with the same name as each column, or
+     * -1 for the first column with a name.
+     */
+    private final int[] duplicateOf;
+
+    /**
+     * The name of the row children that hold cells keyed by an attribute, or
+     * null if the cells are named after their column.
+     */
+    private final String entryName;
+
+    private final Iterator rowIterator;
+
+    private final String[] values;
+
+    private int row = -1;
+
+    private DefaultTableCursor(String[] columnNames, String entryName, Iterator rowIterator) {
+        this.columnNames = columnNames;
+        this.entryName = entryName;
+        this.rowIterator = rowIterator;
+        values = new String[columnNames.length];
+        duplicateOf = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            Integer index = (Integer) columnIndexes.get(columnNames[i]);
+            if (index == null) {
+                columnIndexes.put(columnNames[i], i);
+                duplicateOf[i] = -1;
+            } else {
+                duplicateOf[i] = index;
+            }
+        }
+    }
+
+    /**
+     * Creates a cursor over a result set default value, whose columns are
+     * declared by the input's default columns element.
+     *
+     * @param inputElement the input element
+     * @param defValElement the default value element of the input
+     */
+    static DefaultTableCursor forResultSet(Element inputElement, Element defValElement) {
+        String[] columnNames = new String[0];
+        Element columnsElement = inputElement.element(RESULTSET_DEFAULT_COLUMNS);
+        if (columnsElement != null) {
+            columnNames = new String[columnsElement.nodeCount()];
+            int count = 0;
+            for (Iterator iter = columnsElement.elementIterator(); iter.hasNext();) {
+                columnNames[count++] = ((Element) iter.next()).getName();
+            }
+            columnNames = Arrays.copyOf(columnNames, count);
+        }
+        return new DefaultTableCursor(columnNames, null, defValElement.elementIterator(RESULTSET_ROW));
+    }
+
+    /**
+     * Creates a cursor over a property map list default value. Its columns are
+     * the keys used in any of the property maps, so the property maps are
+     * scanned once to find them.
+     *
+     * @param defValElement the default value element of the input
+     */
+    static DefaultTableCursor forPropertyMapList(Element defValElement) {
+        HashSet columnSet = new HashSet();
+        for (Iterator iter = defValElement.elementIterator(PROPERTY_MAP_TYPE); iter.hasNext();) {
+            Element propertyMap = (Element) iter.next();
+            for (Iterator entryIter = propertyMap.elementIterator(PROPERTY_MAP_ENTRY); entryIter.hasNext();) {
+                columnSet.add(((Element) entryIter.next()).attributeValue(PROPERTY_MAP_ENTRY_KEY));
+            }
+        }
+        return new DefaultTableCursor((String[]) columnSet.toArray(new String[0]), PROPERTY_MAP_ENTRY,
+                defValElement.elementIterator(PROPERTY_MAP_TYPE));
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    /**
+     * @return the name of the column, which may be null for a property map
+     * entry without a key
+     */
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * @return the position of the first column with the given name or -1 if
+     * there is none
+     */
+    public int findColumn(String columnName) {
+        Integer index = (Integer) columnIndexes.get(columnName);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false if there are no more rows
+     */
+    public boolean next() {
+        boolean hasNext = rowIterator.hasNext();
+        if (hasNext) {
+            Arrays.fill(values, null);
+            Element rowElement = (Element) rowIterator.next();
+            for (Iterator iter = rowElement.elementIterator(); iter.hasNext();) {
+                Element cell = (Element) iter.next();
+                Integer index = null;
+                if (entryName == null) {
+                    index = (Integer) columnIndexes.get(cell.getName());
+                } else if (cell.getName().equals(entryName)) {
+                    index = (Integer) columnIndexes.get(cell.attributeValue(PROPERTY_MAP_ENTRY_KEY));
+                }
+                // The first cell for a column wins.
+                if ((index != null) && (values[index] == null)) {
+                    values[index] = cell.getText();
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (duplicateOf[i] >= 0) {
+                    values[i] = values[duplicateOf[i]];
+                } else if (values[i] == null) {
+                    values[i] = ""; //$NON-NLS-1$
+                }
+            }
+            row++;
+        }
+        return hasNext;
+    }
+
+    /**
+     * @return the position of the current row, starting at 0, or -1 before the
+     * first call to <code>next</code>
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return the value of a column of the current row
+     */
+    public String getValue(int column) {
+        return values[column];
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+/**
+ * The listeners registered for a dom4j document and the batch open for it.
+ * A registry is shared by the action sequence document wrappers of the dom4j
+ * document and held only by them, so listeners live exactly as long as a
+ * wrapper of the document is reachable. In particular a listener that refers
+ * back to its document does not keep the document alive. The listener arrays
+ * are never modified once published, so events can be dispatched without
+ * locking, copying or allocating.
+ */
+final class DocumentListenerRegistry {
+
+    private volatile IActionSequenceDocumentListener[] listeners;
+
+    private volatile ActionSequenceChangeSet batch;
+
+    /**
+     * Returns the listeners to which the events of the document are
+     * dispatched. While a batch is open, this is the recorder of the batch's
+     * change set rather than the registered listeners.
+     *
+     * @return the listeners of the document or null if there are none. The
+     * returned array must not be modified.
+     */
+    IActionSequenceDocumentListener[] getListeners() {
+        ActionSequenceChangeSet changes = batch;
+        return changes != null ? changes.recorder : listeners;
+    }
+
+    /**
+     * Opens a batch. Events are recorded in the change set until the batch is
+     * ended.
+     *
+     * @return false if a batch is already open for the document
+     */
+    synchronized boolean beginBatch(ActionSequenceChangeSet changes) {
+        boolean result = batch == null;
+        if (result) {
+            batch = changes;
+        }
+        return result;
+    }
+
+    /**
+     * Ends the open batch.
+     *
+     * @return the change set of the batch or null if no batch is open
+     */
+    synchronized ActionSequenceChangeSet endBatch() {
+        ActionSequenceChangeSet changes = batch;
+        batch = null;
+        return changes;
+    }
+
+    synchronized void addListener(IActionSequenceDocumentListener listener) {
+        IActionSequenceDocumentListener[] newListeners;
+        if (listeners == null) {
+            newListeners = new IActionSequenceDocumentListener[]{listener};
+        } else {
+            newListeners = new IActionSequenceDocumentListener[listeners.length + 1];
+            System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+            newListeners[listeners.length] = listener;
+        }
+        listeners = newListeners;
+    }
+
+    synchronized void removeListener(IActionSequenceDocumentListener listener) {
+        IActionSequenceDocumentListener[] newListeners = listeners;
+        if (newListeners != null) {
+            for (int i = 0; (i < listeners.length) && (newListeners == listeners); i++) {
+                if (listener == null ? listeners[i] == null : listener.equals(listeners[i])) {
+                    newListeners = new IActionSequenceDocumentListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, newListeners, 0, i);
+                    System.arraycopy(listeners, i + 1, newListeners, i, newListeners.length - i);
+                }
+            }
+            listeners = newListeners.length > 0 ? newListeners : null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
+import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+
+/**
+ * The action definitions and control statements that are children of an
+ * actions element. The list records the child elements when it is created;
+ * a child is only wrapped, which for action definitions means finding its
+ * <code>ActionDefinition</code> subclass, when it is retrieved through
+ * <code>get</code> or an iterator. Sizes, element lookups and
+ * <code>indexOf</code> with a wrapper do not wrap any children.
+ */
+@SuppressWarnings({"rawtypes"})
+public final class ExecutableChildList extends AbstractList implements RandomAccess {
+
+    private final Element[] elements;
+
+    private final int[] elementIndexes;
+
+    private final IActionParameterMgr actionInputProvider;
+
+    ExecutableChildList(Element parentElement, IActionParameterMgr actionInputProvider) {
+        this.actionInputProvider = actionInputProvider;
+        List children = parentElement.elements();
+        Element[] executableElements = new Element[children.size()];
+        int[] executableIndexes = new int[children.size()];
+        int size = 0;
+        int elementIndex = 0;
+        for (Iterator iter = children.iterator(); iter.hasNext(); elementIndex++) {
+            Element child = (Element) iter.next();
+            if (isExecutable(child)) {
+                executableElements[size] = child;
+                executableIndexes[size] = elementIndex;
+                size++;
+            }
+        }
+        elements = new Element[size];
+        System.arraycopy(executableElements, 0, elements, 0, size);
+        elementIndexes = new int[size];
+        System.arraycopy(executableIndexes, 0, elementIndexes, 0, size);
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * @return the wrapper of the child at the given position
+     */
+    @Override
+    public Object get(int index) {
+        return ActionSequenceDocument.getElement(elements[index], actionInputProvider);
+    }
+
+    /**
+     * @return the element of the child at the given position
+     */
+    public Element getElement(int index) {
+        return elements[index];
+    }
+
+    /**
+     * @return the position of the child's element among all the child
+     * elements of the parent, as used when inserting elements before it.
+     */
+    public int getElementIndex(int index) {
+        return elementIndexes[index];
+    }
+
+    /**
+     * @return true if the child at the given position is an action definition
+     */
+    public boolean isActionDefinition(int index) {
+        return elements[index].getName().equals(ACTION_DEFINITION_NAME);
+    }
+
+    /**
+     * @return true if the child at the given position is a control statement
+     */
+    public boolean isControlStatement(int index) {
+        return elements[index].getName().equals(ACTIONS_NAME);
+    }
+
+    /**
+     * @return the position of the child with the given element or -1 if there
+     * is none.
+     */
+    public int indexOfElement(Element element) {
+        int result = -1;
+        for (int i = 0; (i < elements.length) && (result < 0); i++) {
+            if (elements[i] == element) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares the element of the given wrapper with the child elements, so
+     * no children are wrapped.
+     */
+    @Override
+    public int indexOf(Object obj) {
+        return (obj instanceof IActionSequenceElement) ? indexOfElement(((IActionSequenceElement) obj).getElement())
+                : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object obj) {
+        return indexOf(obj);
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return indexOf(obj) >= 0;
+    }
+
+    /**
+     * @return true if the element is an action definition or actions element.
+     */
+    static boolean isExecutable(Element element) {
+        String name = element.getName();
+        return name.equals(ACTION_DEFINITION_NAME) || name.equals(ACTIONS_NAME);
+    }
+}
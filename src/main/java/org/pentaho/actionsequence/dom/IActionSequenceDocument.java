@@ -13,6 +13,7 @@
 package org.pentaho.actionsequence.dom;
 
 import java.net.URI;
+import java.util.function.Consumer;
 import org.dom4j.Document;
 
 /**
@@ -379,6 +380,20 @@ public interface IActionSequenceDocument {
      */
     IActionSequenceExecutableStatement[] getExecutableChildren();
 
+    /**
+     * @param actionClass the action definition class or interface
+     * @return the action definitions, at any depth, that are instances of the
+     * class, in document order
+     */
+    <T extends IActionDefinition> T[] findActions(Class<T> actionClass);
+
+    /**
+     * @param componentName the fully qualified or short component name
+     * @return the action definitions, at any depth, that are processed by the
+     * component, in document order
+     */
+    IActionDefinition[] findActions(String componentName);
+
     /**
      * Adds a new child action definition to the end of this documents list of
      * children.
@@ -406,6 +421,34 @@ public interface IActionSequenceDocument {
 
     void removeListener(IActionSequenceDocumentListener listener);
 
+    /**
+     * Starts a batch of edits. Listeners are notified of the edits once, when
+     * the batch is committed.
+     */
+    void beginBatch();
+
+    /**
+     * Ends the open batch and notifies the listeners of its changes.
+     *
+     * @return the changes made in the batch
+     */
+    ActionSequenceChangeSet commit();
+
+    /**
+     * Ends the open batch and restores the document to its state when the
+     * batch began.
+     */
+    void rollback();
+
+    /**
+     * Makes a batch of edits, committing them if they complete and rolling
+     * them back if they throw an exception.
+     *
+     * @param edits the edits, which are passed this document
+     * @return the changes made in the batch
+     */
+    ActionSequenceChangeSet edit(Consumer<IActionSequenceDocument> edits);
+
     IActionSequenceExecutableStatement[] getPrecedingExecutables(IActionDefinition actionDefinition);
 
     IActionSequenceExecutableStatement[] getPrecedingExecutables(IActionControlStatement actionControlStatement);
@@ -428,6 +471,16 @@ public interface IActionSequenceDocument {
 
     IActionSequenceElement[] getReferencesTo(IActionOutput actionOutput);
 
+    /**
+     * Renames a variable throughout the document, updating the document input
+     * or output with the name and the loops, action inputs and action outputs
+     * that refer to it.
+     *
+     * @param oldName the variable name
+     * @param newName the new variable name
+     */
+    void renameVariable(String oldName, String newName);
+
     IActionSequenceValidationError[] validate();
 
     @Override
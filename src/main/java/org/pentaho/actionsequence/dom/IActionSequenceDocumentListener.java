@@ -52,4 +52,15 @@ public interface IActionSequenceDocumentListener {
     void controlStatementChanged(IActionControlStatement controlStatement);
 
     void headerChanged(IActionSequenceDocument actionSequenceDocument);
+
+    /**
+     * Called once when a batch of edits to the document is committed, instead
+     * of the individual event methods for each edit. By default the coalesced
+     * changes are replayed through the individual event methods.
+     *
+     * @param changes the changes made in the batch
+     */
+    default void changesCommitted(ActionSequenceChangeSet changes) {
+        changes.replay(this);
+    }
 }
@@ -79,6 +79,15 @@ public interface IActionSequenceInput extends IActionInputVariable, IAbstractIOE
      */
     Object getDefaultValue();
 
+    /**
+     * @return a cursor over the rows of a result set or property map list
+     * default value, or null if the input is of another type or has no default
+     * value. Implementations that do not support cursors return null.
+     */
+    default DefaultTableCursor getDefaultValueCursor() {
+        return null;
+    }
+
     IActionSequenceInputSource[] getSources();
 
     IActionSequenceInputSource addSource(String origin, String name);
@@ -40,12 +40,14 @@ public class ImplicitActionResource extends ActionResource {
 
     ActionDefinition actionDefinition;
     String resourceName;
+    private final int hash;
 
     public ImplicitActionResource(ActionDefinition actionDefinition, String resourceName,
             IActionParameterMgr actionInputProvider) {
         super(new DefaultElement(resourceName), actionInputProvider);
         this.actionDefinition = actionDefinition;
         this.resourceName = resourceName;
+        hash = resourceName != null ? resourceName.hashCode() : 0;
     }
 
     @Override
@@ -162,6 +164,17 @@ public class ImplicitActionResource extends ActionResource {
         return result;
     }
 
+    /**
+     * The hash is that of the name the resource was created with, so it does
+     * not change when the explicit resource is added to the action definition
+     * or when the resource is renamed. Only <code>equals</code> depends on the
+     * explicit resource.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public IPentahoStreamSource getDataSource() throws FileNotFoundException {
         IPentahoStreamSource dataSource;
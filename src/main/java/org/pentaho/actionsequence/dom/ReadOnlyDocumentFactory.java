@@ -0,0 +1,434 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.dom4j.Attribute;
+import org.dom4j.Branch;
+import org.dom4j.CDATA;
+import org.dom4j.Comment;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.Entity;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
+import org.dom4j.ProcessingInstruction;
+import org.dom4j.QName;
+import org.dom4j.Text;
+import org.dom4j.tree.DefaultAttribute;
+import org.dom4j.tree.DefaultCDATA;
+import org.dom4j.tree.DefaultComment;
+import org.dom4j.tree.DefaultDocument;
+import org.dom4j.tree.DefaultElement;
+import org.dom4j.tree.DefaultText;
+import static org.pentaho.actionsequence.dom.messages.Messages.getString;
+
+/**
+ * Creates read only copies of dom4j documents. Every mutator of the copied
+ * document, its elements, attributes and character data throws an
+ * <code>UnsupportedOperationException</code>, so the wrapper API cannot
+ * modify the copy either. Copies made of the nodes of a read only document,
+ * such as the result of <code>Element.createCopy()</code>, are modifiable.
+ * <p>
+ * dom4j elements create their content and attribute lists on first access.
+ * The copy creates them up front, so that concurrent readers of a read only
+ * document never write to it.
+ */
+final class ReadOnlyDocumentFactory extends DocumentFactory {
+
+    private static final ReadOnlyDocumentFactory instance = new ReadOnlyDocumentFactory();
+
+    private ReadOnlyDocumentFactory() {
+    }
+
+    /**
+     * @param source the document to copy
+     * @return a read only copy of the document
+     */
+    static Document copy(Document source) {
+        ReadOnlyDocument document = new ReadOnlyDocument();
+        document.setXMLEncoding(source.getXMLEncoding());
+        copyContent(source, document);
+        document.readOnly = true;
+        return document;
+    }
+
+    private static void copyContent(Branch source, Branch target) {
+        for (Iterator iter = source.nodeIterator(); iter.hasNext();) {
+            Node node = (Node) iter.next();
+            if (node instanceof Element) {
+                Element sourceElement = (Element) node;
+                Element element = instance.createElement(sourceElement.getQName());
+                target.add(element);
+                for (Iterator attrIter = sourceElement.attributeIterator(); attrIter.hasNext();) {
+                    Attribute attribute = (Attribute) attrIter.next();
+                    element.add(instance.createAttribute(element, attribute.getQName(), attribute.getValue()));
+                }
+                copyContent(sourceElement, element);
+                element.attributes();
+                element.content();
+            } else if (node instanceof CDATA) {
+                ((Element) target).add(instance.createCDATA(node.getText()));
+            } else if (node instanceof Text) {
+                ((Element) target).add(instance.createText(node.getText()));
+            } else if (node instanceof Comment) {
+                target.add(instance.createComment(node.getText()));
+            } else if (node instanceof Namespace) {
+                ((Element) target).add((Namespace) node);
+            } else if ((node instanceof ProcessingInstruction) || (node instanceof Entity)) {
+                target.add((Node) node.clone());
+            }
+        }
+    }
+
+    @Override
+    public Document createDocument() {
+        return new ReadOnlyDocument();
+    }
+
+    @Override
+    public Element createElement(QName qname) {
+        return new ReadOnlyElement(qname);
+    }
+
+    @Override
+    public Attribute createAttribute(Element owner, QName qname, String value) {
+        return new ReadOnlyAttribute(qname, value);
+    }
+
+    @Override
+    public CDATA createCDATA(String text) {
+        return new ReadOnlyCDATA(text);
+    }
+
+    @Override
+    public Comment createComment(String text) {
+        return new ReadOnlyComment(text);
+    }
+
+    @Override
+    public Text createText(String text) {
+        return new ReadOnlyText(text);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the node belongs to a read only
+     * document.
+     */
+    static void checkWritable(Node node) {
+        if (isReadOnly(node.getDocument())) {
+            throw new UnsupportedOperationException(getString("ActionSequenceSnapshot.READ_ONLY")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return true if the document is a read only copy.
+     */
+    static boolean isReadOnly(Document document) {
+        return (document instanceof ReadOnlyDocument) && ((ReadOnlyDocument) document).readOnly;
+    }
+
+    private static class ReadOnlyDocument extends DefaultDocument {
+
+        private boolean readOnly;
+
+        @Override
+        public void setName(String name) {
+            checkWritable(this);
+            super.setName(name);
+        }
+
+        @Override
+        public void setContent(List<Node> content) {
+            checkWritable(this);
+            super.setContent(content);
+        }
+
+        @Override
+        public void clearContent() {
+            checkWritable(this);
+            super.clearContent();
+        }
+
+        @Override
+        public boolean removeProcessingInstruction(String target) {
+            checkWritable(this);
+            return super.removeProcessingInstruction(target);
+        }
+
+        @Override
+        protected void addNode(Node node) {
+            checkWritable(this);
+            super.addNode(node);
+        }
+
+        @Override
+        protected void addNode(int index, Node node) {
+            checkWritable(this);
+            super.addNode(index, node);
+        }
+
+        @Override
+        protected boolean removeNode(Node node) {
+            checkWritable(this);
+            return super.removeNode(node);
+        }
+
+        @Override
+        protected void childAdded(Node node) {
+            checkWritable(this);
+            super.childAdded(node);
+        }
+
+        @Override
+        protected void childRemoved(Node node) {
+            checkWritable(this);
+            super.childRemoved(node);
+        }
+
+        /**
+         * @return a modifiable copy of the document
+         */
+        @Override
+        public Object clone() {
+            DefaultDocument copy = new DefaultDocument();
+            copy.setXMLEncoding(getXMLEncoding());
+            copy.appendContent(this);
+            return copy;
+        }
+    }
+
+    private static class ReadOnlyElement extends DefaultElement {
+
+        ReadOnlyElement(QName qname) {
+            super(qname);
+        }
+
+        @Override
+        public void setQName(QName name) {
+            checkWritable(this);
+            super.setQName(name);
+        }
+
+        @Override
+        public void setName(String name) {
+            checkWritable(this);
+            super.setName(name);
+        }
+
+        @Override
+        public void setNamespace(Namespace namespace) {
+            checkWritable(this);
+            super.setNamespace(namespace);
+        }
+
+        @Override
+        public void setText(String text) {
+            checkWritable(this);
+            super.setText(text);
+        }
+
+        @Override
+        public void setData(Object data) {
+            checkWritable(this);
+            super.setData(data);
+        }
+
+        @Override
+        public void setContent(List<Node> content) {
+            checkWritable(this);
+            super.setContent(content);
+        }
+
+        @Override
+        public void clearContent() {
+            checkWritable(this);
+            super.clearContent();
+        }
+
+        @Override
+        public void normalize() {
+            checkWritable(this);
+            super.normalize();
+        }
+
+        @Override
+        public void setAttributes(List<Attribute> attributes) {
+            checkWritable(this);
+            super.setAttributes(attributes);
+        }
+
+        @Override
+        public void setAttributeValue(String name, String value) {
+            checkWritable(this);
+            super.setAttributeValue(name, value);
+        }
+
+        @Override
+        public void setAttributeValue(QName qName, String value) {
+            checkWritable(this);
+            super.setAttributeValue(qName, value);
+        }
+
+        @Override
+        public Element addAttribute(String name, String value) {
+            checkWritable(this);
+            return super.addAttribute(name, value);
+        }
+
+        @Override
+        public Element addAttribute(QName qName, String value) {
+            checkWritable(this);
+            return super.addAttribute(qName, value);
+        }
+
+        @Override
+        public void add(Attribute attribute) {
+            checkWritable(this);
+            super.add(attribute);
+        }
+
+        @Override
+        public boolean remove(Attribute attribute) {
+            checkWritable(this);
+            return super.remove(attribute);
+        }
+
+        @Override
+        public void appendAttributes(Element element) {
+            checkWritable(this);
+            super.appendAttributes(element);
+        }
+
+        @Override
+        public boolean removeProcessingInstruction(String target) {
+            checkWritable(this);
+            return super.removeProcessingInstruction(target);
+        }
+
+        @Override
+        public Element addProcessingInstruction(String target, Map<String, String> data) {
+            checkWritable(this);
+            return super.addProcessingInstruction(target, data);
+        }
+
+        @Override
+        protected void addNewNode(Node node) {
+            checkWritable(this);
+            super.addNewNode(node);
+        }
+
+        @Override
+        protected void addNewNode(int index, Node node) {
+            checkWritable(this);
+            super.addNewNode(index, node);
+        }
+
+        @Override
+        protected void addNode(Node node) {
+            checkWritable(this);
+            super.addNode(node);
+        }
+
+        @Override
+        protected void addNode(int index, Node node) {
+            checkWritable(this);
+            super.addNode(index, node);
+        }
+
+        @Override
+        protected boolean removeNode(Node node) {
+            checkWritable(this);
+            return super.removeNode(node);
+        }
+
+        @Override
+        protected void childAdded(Node node) {
+            checkWritable(this);
+            super.childAdded(node);
+        }
+
+        @Override
+        protected void childRemoved(Node node) {
+            checkWritable(this);
+            super.childRemoved(node);
+        }
+
+        @Override
+        protected void setAttributeList(List<Attribute> attributeList) {
+            checkWritable(this);
+            super.setAttributeList(attributeList);
+        }
+    }
+
+    private static class ReadOnlyAttribute extends DefaultAttribute {
+
+        ReadOnlyAttribute(QName qname, String value) {
+            super(qname, value);
+        }
+
+        @Override
+        public void setValue(String value) {
+            checkWritable(this);
+            super.setValue(value);
+        }
+
+        @Override
+        public void setData(Object data) {
+            checkWritable(this);
+            super.setData(data);
+        }
+    }
+
+    private static class ReadOnlyText extends DefaultText {
+
+        ReadOnlyText(String text) {
+            super(text);
+        }
+
+        @Override
+        public void setText(String text) {
+            checkWritable(this);
+            super.setText(text);
+        }
+    }
+
+    private static class ReadOnlyCDATA extends DefaultCDATA {
+
+        ReadOnlyCDATA(String text) {
+            super(text);
+        }
+
+        @Override
+        public void setText(String text) {
+            checkWritable(this);
+            super.setText(text);
+        }
+    }
+
+    private static class ReadOnlyComment extends DefaultComment {
+
+        ReadOnlyComment(String text) {
+            super(text);
+        }
+
+        @Override
+        public void setText(String text) {
+            checkWritable(this);
+            super.setText(text);
+        }
+    }
+}
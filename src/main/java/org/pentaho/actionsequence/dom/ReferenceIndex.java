@@ -0,0 +1,783 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import static java.util.Collections.EMPTY_LIST;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_INPUTS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_OUTPUTS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_RESOURCES_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.LOOP_ON_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MAPPING_NAME;
+import static org.pentaho.actionsequence.dom.TrackingDocumentFactory.isTracked;
+
+/**
+ * Maps the variable names used within an action sequence to the elements that
+ * produce and consume them. The index is built in a single walk of the
+ * document. Action inputs and resources are indexed under their mapping if
+ * they have one, loops under their loop-on variable and action outputs under
+ * their public name. All lists are in document order.
+ * <p>
+ * The index also holds the scope of every action definition and control
+ * statement: the outputs and the statements that precede it. The scopes of
+ * the children of a control statement share one array, and each scope is an
+ * immutable view of a prefix of that array that extends the scope of the
+ * control statement. The scopes of the whole document take linear space, and
+ * each lookup is a single map get that returns a shared view.
+ * <p>
+ * The index of a document created by <code>TrackingDocumentFactory</code> is
+ * kept up to date by <code>update</code>, which replaces the entries of the
+ * action definition or control statement an event is about. The scopes and
+ * the list of all references are rebuilt on the next query that needs them.
+ * Other documents may be edited directly through dom4j without the index
+ * knowing, so their index records the indexed elements and the names under
+ * which they are indexed, and <code>isCurrent</code> compares that record
+ * with the tree without allocating.
+ */
+class ReferenceIndex {
+
+    private static final Object END_OF_ACTIONS = new Object();
+
+    /**
+     * True if an indexed element or attribute does not log its changes, so
+     * that the index can only tell whether it is current by comparing its
+     * recorded structure with the tree.
+     */
+    boolean untracked;
+
+    /**
+     * Every action input, action resource and loop that refers to a variable,
+     * or null if it has to be collected again.
+     */
+    private volatile ArrayList references = new ArrayList();
+
+    private final HashMap inputReferences = new HashMap();
+
+    private final HashMap resourceReferences = new HashMap();
+
+    private final HashMap outputsByName = new HashMap();
+
+    /**
+     * The entries of every indexed action definition and control statement.
+     */
+    private final IdentityHashMap records = new IdentityHashMap();
+
+    private final IdentityHashMap executableOrder = new IdentityHashMap();
+
+    private final IdentityHashMap visibleOutputs = new IdentityHashMap();
+
+    private final IdentityHashMap precedingExecutables = new IdentityHashMap();
+
+    private volatile boolean scopesCurrent;
+
+    /**
+     * True while an update inserts entries in document order rather than
+     * appending them.
+     */
+    private boolean updating;
+
+    private Element rootElement;
+
+    /**
+     * The root element followed by every loop, action definition, action io
+     * section and action io element in document order, each with its name and
+     * its loop-on or mapping attribute. Loops are closed by
+     * <code>END_OF_ACTIONS</code>. Only recorded for untracked indexes.
+     */
+    private Object[] structure;
+
+    ReferenceIndex(Document document) {
+        untracked = !isTracked(document);
+        Element root = document.getRootElement();
+        if (root != null) {
+            indexChildren(root);
+        }
+        complete(root);
+    }
+
+    /**
+     * Creates an empty index to be filled in document order through the add
+     * methods, as is done while a document is being loaded. The index is
+     * completed by <code>complete</code> once the document is.
+     */
+    ReferenceIndex() {
+    }
+
+    /**
+     * Builds the scopes of the complete document the index was filled from,
+     * and records its structure if the index is untracked.
+     *
+     * @param root the root element of the document
+     */
+    void complete(Element root) {
+        rootElement = root;
+        if ((root != null) && !isTracked(root)) {
+            untracked = true;
+        }
+        buildScopes();
+        if (untracked) {
+            recordStructure(root);
+        }
+    }
+
+    /**
+     * @return the action inputs and loops that reference the named variable.
+     */
+    List getInputReferences(String name) {
+        List elements = (List) inputReferences.get(name);
+        return elements != null ? elements : EMPTY_LIST;
+    }
+
+    /**
+     * @return the action resources that reference the named resource.
+     */
+    List getResourceReferences(String name) {
+        List elements = (List) resourceReferences.get(name);
+        return elements != null ? elements : EMPTY_LIST;
+    }
+
+    /**
+     * @return the action outputs with the given public name.
+     */
+    List getOutputs(String publicName) {
+        List elements = (List) outputsByName.get(publicName);
+        return elements != null ? elements : EMPTY_LIST;
+    }
+
+    /**
+     * @return every action input, action resource and loop that refers to a
+     * variable, in document order.
+     */
+    List getReferences() {
+        ArrayList result = references;
+        if (result == null) {
+            synchronized (this) {
+                result = references;
+                if (result == null) {
+                    result = new ArrayList();
+                    if (rootElement != null) {
+                        collectReferences(rootElement, result);
+                    }
+                    references = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param executable an action definition or control statement element
+     * @return the output elements of the action definitions that precede the
+     * executable, in document order. Outputs of action definitions nested in
+     * a preceding control statement are not included. The list is shared and
+     * must not be modified.
+     */
+    List getVisibleOutputs(Element executable) {
+        buildScopesIfStale();
+        List outputs = (List) visibleOutputs.get(executable);
+        return outputs != null ? outputs : EMPTY_LIST;
+    }
+
+    /**
+     * @param executable an action definition or control statement element
+     * @return the preceding siblings of the executable and of each of the
+     * control statements containing it, in document order. The list is
+     * shared and must not be modified.
+     */
+    List getPrecedingExecutables(Element executable) {
+        buildScopesIfStale();
+        List executables = (List) precedingExecutables.get(executable);
+        return executables != null ? executables : EMPTY_LIST;
+    }
+
+    /**
+     * Returns whether an executable element is one of the preceding executables
+     * of another, i.e. a preceding sibling of the target or of one of the
+     * control statements containing the target.
+     *
+     * @param executable an action definition or control statement element
+     * @param target an action definition or control statement element
+     * @return true if executable precedes target
+     */
+    boolean isPrecedingExecutable(Element executable, Element target) {
+        boolean result = false;
+        Element executableParent = executable.getParent();
+        Element node = target;
+        Element parent = node.getParent();
+        while ((parent != null) && (parent != executableParent)) {
+            node = parent;
+            parent = node.getParent();
+        }
+        if ((parent != null) && (node != executable)) {
+            Integer executablePosition = (Integer) executableOrder.get(executable);
+            Integer nodePosition = (Integer) executableOrder.get(node);
+            if ((executablePosition != null) && (nodePosition != null)) {
+                result = executablePosition < nodePosition;
+            } else {
+                result = parent.indexOf(executable) < parent.indexOf(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies a change made through the wrapper API. The entries of the action
+     * definition or control statement containing the element are replaced by
+     * those of its current subtree, provided every logged change lies within
+     * that subtree or adds or removes it.
+     *
+     * @param changes the changed element and the added or removed child of
+     * every change logged since the last update
+     * @param element the element the change is about
+     * @return false if the changes reach beyond the executable, in which case
+     * the index must be rebuilt
+     */
+    boolean update(List changes, Element element) {
+        boolean result = true;
+        if (!changes.isEmpty()) {
+            Element executable = getExecutable(element);
+            for (int i = 0, count = changes.size(); (i < count) && (executable == null); i += 2) {
+                if (changes.get(i + 1) == element) {
+                    // The element was removed from the changed element.
+                    executable = getExecutable((Element) changes.get(i));
+                }
+            }
+            result = executable != null;
+            for (int i = 0, count = changes.size(); (i < count) && result; i += 2) {
+                result = (changes.get(i + 1) == executable) || isInSubtree((Element) changes.get(i), executable);
+            }
+            if (result) {
+                updating = true;
+                try {
+                    unindex(executable);
+                    Element parent = executable.getParent();
+                    Record parentRecord = (Record) records.get(parent);
+                    if ((parent != null) && ((parent == rootElement)
+                            || ((parentRecord != null) && (parentRecord.children != null)))) {
+                        index(executable);
+                    }
+                } finally {
+                    updating = false;
+                }
+                references = null;
+                scopesCurrent = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the element if it is an action definition or control statement,
+     * otherwise the closest one containing it, or null if there is none.
+     */
+    private static Element getExecutable(Element element) {
+        Element executable = element;
+        while ((executable != null) && !executable.getName().equals(ACTION_DEFINITION_NAME)
+                && !executable.getName().equals(ACTIONS_NAME)) {
+            executable = executable.getParent();
+        }
+        return executable;
+    }
+
+    private static boolean isInSubtree(Element element, Element subtree) {
+        Element ancestor = element;
+        while ((ancestor != null) && (ancestor != subtree)) {
+            ancestor = ancestor.getParent();
+        }
+        return ancestor != null;
+    }
+
+    /**
+     * Removes the entries of an executable and of the executables it contains.
+     */
+    private void unindex(Element executable) {
+        Record record = (Record) records.get(executable);
+        if (record != null) {
+            if (record.parent != null) {
+                record.parent.children.remove(executable);
+            }
+            removeEntries(executable, record);
+        }
+    }
+
+    private void removeEntries(Element executable, Record record) {
+        records.remove(executable);
+        executableOrder.remove(executable);
+        ArrayList entries = record.entries;
+        for (int i = 0, count = entries.size(); i < count; i += 3) {
+            HashMap map = (HashMap) entries.get(i);
+            List elements = (List) map.get(entries.get(i + 1));
+            elements.remove(entries.get(i + 2));
+            if (elements.isEmpty()) {
+                map.remove(entries.get(i + 1));
+            }
+        }
+        if (record.children != null) {
+            for (Iterator iter = record.children.iterator(); iter.hasNext();) {
+                Element child = (Element) iter.next();
+                removeEntries(child, (Record) records.get(child));
+            }
+        }
+    }
+
+    /**
+     * Adds an actions element, i.e. a loop or if statement.
+     */
+    void addActions(Element actionsElement) {
+        Record record = addExecutable(actionsElement, true);
+        Attribute loopOn = actionsElement.attribute(LOOP_ON_NAME);
+        if (loopOn != null) {
+            checkTracked(loopOn);
+            addReference(actionsElement);
+            add(record, inputReferences, loopOn.getValue(), actionsElement);
+        }
+    }
+
+    void addActionDefinition(Element actionDefElement) {
+        addExecutable(actionDefElement, false);
+    }
+
+    private Record addExecutable(Element executable, boolean container) {
+        checkTracked(executable);
+        Record parent = (Record) records.get(executable.getParent());
+        Record record = new Record(parent, container);
+        records.put(executable, record);
+        if (parent != null) {
+            parent.children.add(executable);
+        }
+        if (!updating) {
+            executableOrder.put(executable, executableOrder.size());
+        }
+        return record;
+    }
+
+    /**
+     * Adds a child of an action-inputs, action-outputs or action-resources
+     * element.
+     *
+     * @param sectionName the name of the parent of the element
+     * @param ioElement the element
+     */
+    void addActionIO(String sectionName, Element ioElement) {
+        checkTracked(ioElement);
+        Attribute mapping = ioElement.attribute(MAPPING_NAME);
+        if (mapping != null) {
+            checkTracked(mapping);
+        }
+        Record record = (Record) records.get(ioElement.getParent().getParent());
+        if (sectionName.equals(ACTION_INPUTS_NAME)) {
+            addReference(ioElement);
+            add(record, inputReferences, getReferencedName(ioElement), ioElement);
+        } else if (sectionName.equals(ACTION_RESOURCES_NAME)) {
+            addReference(ioElement);
+            add(record, resourceReferences, getReferencedName(ioElement), ioElement);
+        } else if (sectionName.equals(ACTION_OUTPUTS_NAME)) {
+            add(record, outputsByName, getPublicName(ioElement), ioElement);
+        }
+    }
+
+    private void addReference(Element element) {
+        if (!updating) {
+            references.add(element);
+        }
+    }
+
+    private void checkTracked(Node node) {
+        if (!untracked && !isTracked(node)) {
+            untracked = true;
+        }
+    }
+
+    private void indexChildren(Element element) {
+        for (Iterator iter = element.elementIterator(); iter.hasNext();) {
+            index((Element) iter.next());
+        }
+    }
+
+    private void index(Element element) {
+        String name = element.getName();
+        if (name.equals(ACTIONS_NAME)) {
+            addActions(element);
+            indexChildren(element);
+        } else if (name.equals(ACTION_DEFINITION_NAME)) {
+            addActionDefinition(element);
+            indexActionDefinition(element);
+        }
+    }
+
+    private void indexActionDefinition(Element actionDefElement) {
+        for (Iterator iter = actionDefElement.elementIterator(); iter.hasNext();) {
+            Element section = (Element) iter.next();
+            String sectionName = section.getName();
+            if (isActionIOSection(sectionName)) {
+                checkTracked(section);
+                for (Iterator ioIter = section.elementIterator(); ioIter.hasNext();) {
+                    addActionIO(sectionName, (Element) ioIter.next());
+                }
+            }
+        }
+    }
+
+    private static void collectReferences(Element parent, List result) {
+        for (Iterator iter = parent.elementIterator(); iter.hasNext();) {
+            Element child = (Element) iter.next();
+            String name = child.getName();
+            if (name.equals(ACTIONS_NAME)) {
+                if (child.attribute(LOOP_ON_NAME) != null) {
+                    result.add(child);
+                }
+                collectReferences(child, result);
+            } else if (name.equals(ACTION_DEFINITION_NAME)) {
+                for (Iterator sectionIter = child.elementIterator(); sectionIter.hasNext();) {
+                    Element section = (Element) sectionIter.next();
+                    if (section.getName().equals(ACTION_INPUTS_NAME)
+                            || section.getName().equals(ACTION_RESOURCES_NAME)) {
+                        result.addAll(section.elements());
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(Record record, HashMap map, String name, Element element) {
+        ArrayList elements = (ArrayList) map.get(name);
+        if (elements == null) {
+            elements = new ArrayList(1);
+            map.put(name, elements);
+        }
+        if (updating) {
+            int low = 0;
+            int high = elements.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (precedes((Element) elements.get(middle), element)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            elements.add(low, element);
+        } else {
+            elements.add(element);
+        }
+        record.entries.add(map);
+        record.entries.add(name);
+        record.entries.add(element);
+    }
+
+    /**
+     * @return true if the first element comes before the second in document
+     * order. Both elements must be in the same tree.
+     */
+    private static boolean precedes(Element first, Element second) {
+        int firstDepth = getDepth(first);
+        int secondDepth = getDepth(second);
+        Element firstAncestor = first;
+        Element secondAncestor = second;
+        for (; firstDepth > secondDepth; firstDepth--) {
+            firstAncestor = firstAncestor.getParent();
+        }
+        for (; secondDepth > firstDepth; secondDepth--) {
+            secondAncestor = secondAncestor.getParent();
+        }
+        boolean result;
+        if (firstAncestor == secondAncestor) {
+            result = firstAncestor == first && first != second;
+        } else {
+            while (firstAncestor.getParent() != secondAncestor.getParent()) {
+                firstAncestor = firstAncestor.getParent();
+                secondAncestor = secondAncestor.getParent();
+            }
+            Element parent = firstAncestor.getParent();
+            result = parent.indexOf(firstAncestor) < parent.indexOf(secondAncestor);
+        }
+        return result;
+    }
+
+    private static int getDepth(Element element) {
+        int depth = 0;
+        for (Element parent = element.getParent(); parent != null; parent = parent.getParent()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private void buildScopesIfStale() {
+        if (!scopesCurrent) {
+            synchronized (this) {
+                if (!scopesCurrent) {
+                    buildScopes();
+                }
+            }
+        }
+    }
+
+    private void buildScopes() {
+        visibleOutputs.clear();
+        precedingExecutables.clear();
+        if (rootElement != null) {
+            buildScopes(rootElement, null, null);
+        }
+        scopesCurrent = true;
+    }
+
+    /**
+     * Builds the scopes of the executable children of an element.
+     *
+     * @param outputs the outputs visible to the element, or null if none
+     * @param executables the executables preceding the element, or null if
+     * none
+     */
+    private void buildScopes(Element parent, ScopeView outputs, ScopeView executables) {
+        int executableCount = 0;
+        int outputCount = 0;
+        for (Iterator iter = parent.elementIterator(); iter.hasNext();) {
+            Element child = (Element) iter.next();
+            String name = child.getName();
+            if (name.equals(ACTIONS_NAME)) {
+                executableCount++;
+            } else if (name.equals(ACTION_DEFINITION_NAME)) {
+                executableCount++;
+                for (Iterator sectionIter = child.elementIterator(ACTION_OUTPUTS_NAME); sectionIter.hasNext();) {
+                    outputCount += ((Element) sectionIter.next()).elements().size();
+                }
+            }
+        }
+        if (executableCount > 0) {
+            Element[] executableArray = new Element[executableCount];
+            Element[] outputArray = new Element[outputCount];
+            int executableIndex = 0;
+            int outputIndex = 0;
+            ScopeView outputView = outputs;
+            int outputViewCount = 0;
+            for (Iterator iter = parent.elementIterator(); iter.hasNext();) {
+                Element child = (Element) iter.next();
+                String name = child.getName();
+                if (name.equals(ACTIONS_NAME) || name.equals(ACTION_DEFINITION_NAME)) {
+                    if (outputIndex != outputViewCount) {
+                        outputView = new ScopeView(outputs, outputArray, outputIndex);
+                        outputViewCount = outputIndex;
+                    }
+                    ScopeView executableView = executableIndex > 0 ? new ScopeView(executables, executableArray,
+                            executableIndex) : executables;
+                    visibleOutputs.put(child, outputView);
+                    precedingExecutables.put(child, executableView);
+                    if (name.equals(ACTIONS_NAME)) {
+                        buildScopes(child, outputView, executableView);
+                    } else {
+                        for (Iterator sectionIter = child.elementIterator(ACTION_OUTPUTS_NAME);
+                                sectionIter.hasNext();) {
+                            for (Iterator outputIter = ((Element) sectionIter.next()).elementIterator();
+                                    outputIter.hasNext();) {
+                                outputArray[outputIndex++] = (Element) outputIter.next();
+                            }
+                        }
+                    }
+                    executableArray[executableIndex++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the structure of the tree the index was built from.
+     *
+     * @param root the root element of the complete document
+     */
+    void recordStructure(Element root) {
+        ArrayList recording = new ArrayList();
+        recording.add(root);
+        if (root != null) {
+            visitChildren(root, recording, 1);
+        }
+        structure = recording.toArray();
+    }
+
+    /**
+     * Returns whether the index still describes the tree, i.e. whether the
+     * tree was not modified directly since the index was built in a way that
+     * affects the index.
+     *
+     * @param root the current root element of the document
+     * @return true if the cached query results are still valid
+     */
+    boolean isCurrent(Element root) {
+        boolean result = (structure != null) && (structure[0] == root);
+        if (result && (root != null)) {
+            result = visitChildren(root, null, 1) == structure.length;
+        }
+        return result;
+    }
+
+    /**
+     * Records or checks the indexed descendants of an element.
+     *
+     * @param recording the list to record to, or null to check the recorded
+     * structure
+     * @param position the position of the next entry in the structure
+     * @return the position after the descendants, or -1 if they do not match
+     * the recorded structure
+     */
+    private int visitChildren(Element parent, ArrayList recording, int position) {
+        for (int i = 0, count = parent.nodeCount(); (i < count) && (position >= 0); i++) {
+            Node node = parent.node(i);
+            if (node instanceof Element) {
+                Element child = (Element) node;
+                String name = child.getName();
+                if (name.equals(ACTIONS_NAME)) {
+                    position = visit(recording, position, child, name, child.attributeValue(LOOP_ON_NAME));
+                    if (position >= 0) {
+                        position = visitChildren(child, recording, position);
+                    }
+                    if (position >= 0) {
+                        position = visit(recording, position, END_OF_ACTIONS, null, null);
+                    }
+                } else if (name.equals(ACTION_DEFINITION_NAME)) {
+                    position = visit(recording, position, child, name, null);
+                    for (int j = 0, sectionCount = child.nodeCount(); (j < sectionCount) && (position >= 0); j++) {
+                        Node section = child.node(j);
+                        if ((section instanceof Element) && isActionIOSection(section.getName())) {
+                            position = visit(recording, position, section, section.getName(), null);
+                            for (int k = 0, ioCount = ((Element) section).nodeCount(); (k < ioCount)
+                                    && (position >= 0); k++) {
+                                Node io = ((Element) section).node(k);
+                                if (io instanceof Element) {
+                                    position = visit(recording, position, io, io.getName(),
+                                            ((Element) io).attributeValue(MAPPING_NAME));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return position;
+    }
+
+    private int visit(ArrayList recording, int position, Object node, String name, String attributeValue) {
+        int result = -1;
+        if (recording != null) {
+            recording.add(node);
+            recording.add(name);
+            recording.add(attributeValue);
+            result = position + 3;
+        } else if ((position + 3 <= structure.length) && (structure[position] == node)
+                && equals(structure[position + 1], name) && equals(structure[position + 2], attributeValue)) {
+            result = position + 3;
+        }
+        return result;
+    }
+
+    private static boolean equals(Object recorded, String current) {
+        return recorded == null ? current == null : recorded.equals(current);
+    }
+
+    /**
+     * @return true if the name is that of the action-inputs, action-outputs or
+     * action-resources element of an action definition.
+     */
+    static boolean isActionIOSection(String name) {
+        return name.equals(ACTION_INPUTS_NAME) || name.equals(ACTION_OUTPUTS_NAME) || name.equals(ACTION_RESOURCES_NAME);
+    }
+
+    /**
+     * @return the mapping attribute if present, otherwise the element name.
+     */
+    static String getReferencedName(Element ioElement) {
+        Attribute mapping = ioElement.attribute(MAPPING_NAME);
+        return mapping != null ? mapping.getValue() : ioElement.getName();
+    }
+
+    /**
+     * @return the trimmed mapping if not empty, otherwise the element name.
+     */
+    static String getPublicName(Element ioElement) {
+        String mapping = ioElement.attributeValue(MAPPING_NAME);
+        return ((mapping != null) && (mapping.trim().length() > 0)) ? mapping.trim() : ioElement.getName();
+    }
+
+    /**
+     * The entries of an indexed action definition or control statement.
+     */
+    private static final class Record {
+
+        final Record parent;
+
+        /**
+         * The map, name and element of every entry.
+         */
+        final ArrayList entries = new ArrayList();
+
+        /**
+         * The executable children of a control statement, null for an action
+         * definition.
+         */
+        final ArrayList children;
+
+        Record(Record parent, boolean container) {
+            this.parent = parent;
+            children = container ? new ArrayList() : null;
+        }
+    }
+
+    /**
+     * An immutable list of elements that extends a parent list with a prefix
+     * of an array shared by the sibling lists.
+     */
+    private static final class ScopeView extends AbstractList implements RandomAccess {
+
+        private final ScopeView parent;
+
+        private final int offset;
+
+        private final Element[] elements;
+
+        private final int size;
+
+        ScopeView(ScopeView parent, Element[] elements, int count) {
+            this.parent = parent;
+            this.elements = elements;
+            offset = parent != null ? parent.size : 0;
+            size = offset + count;
+        }
+
+        @Override
+        public Object get(int index) {
+            if ((index < 0) || (index >= size)) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            ScopeView view = this;
+            while (index < view.offset) {
+                view = view.parent;
+            }
+            return view.elements[index - view.offset];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.ArrayList;
+import org.dom4j.Attribute;
+import org.dom4j.CharacterData;
+import org.dom4j.Element;
+import org.dom4j.Node;
+
+/**
+ * The structure of an element and its descendants, recorded so that it can
+ * be restored with the original node objects. For each element the record
+ * holds its attributes and their values and its content nodes; for each text
+ * node it holds the text. No node is copied, so restoring the record puts
+ * back the very elements the document had when it was recorded, and wrappers
+ * and listeners that refer to those elements remain valid.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class SavedContent {
+
+    /**
+     * For each element, the element followed by its attributes and values
+     * and by its content nodes.
+     */
+    private final ArrayList elements = new ArrayList();
+
+    /**
+     * For each text, CDATA and comment node, the node followed by its text.
+     */
+    private final ArrayList texts = new ArrayList();
+
+    SavedContent(Element element) {
+        save(element);
+    }
+
+    private void save(Element element) {
+        int attributeCount = element.attributeCount();
+        Object[] attributes = new Object[attributeCount * 2];
+        for (int i = 0; i < attributeCount; i++) {
+            Attribute attribute = element.attribute(i);
+            attributes[i * 2] = attribute;
+            attributes[i * 2 + 1] = attribute.getValue();
+        }
+        int nodeCount = element.nodeCount();
+        Node[] content = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = element.node(i);
+            content[i] = node;
+            if (node instanceof Element) {
+                save((Element) node);
+            } else if (node instanceof CharacterData) {
+                texts.add(node);
+                texts.add(node.getText());
+            }
+        }
+        elements.add(element);
+        elements.add(attributes);
+        elements.add(content);
+    }
+
+    /**
+     * Restores the recorded structure. Nodes added since the record was made
+     * are discarded, and recorded nodes that were removed or moved are put
+     * back in their recorded place.
+     */
+    void restore() {
+        // Every recorded node is detached before any is put back, since a
+        // node may have been moved to an element that is restored later or to
+        // an element that is not part of the record.
+        for (int i = 0; i < elements.size(); i += 3) {
+            Element element = (Element) elements.get(i);
+            element.clearContent();
+            element.attributes().clear();
+        }
+        for (int i = 0; i < elements.size(); i += 3) {
+            Node[] content = (Node[]) elements.get(i + 2);
+            for (int j = 0; j < content.length; j++) {
+                if (content[j].getParent() != null) {
+                    content[j].detach();
+                }
+            }
+        }
+        for (int i = 0; i < elements.size(); i += 3) {
+            Element element = (Element) elements.get(i);
+            Object[] attributes = (Object[]) elements.get(i + 1);
+            for (int j = 0; j < attributes.length; j += 2) {
+                Attribute attribute = (Attribute) attributes[j];
+                if (!attribute.getValue().equals(attributes[j + 1])) {
+                    attribute.setValue((String) attributes[j + 1]);
+                }
+                element.add(attribute);
+            }
+            Node[] content = (Node[]) elements.get(i + 2);
+            for (int j = 0; j < content.length; j++) {
+                element.add(content[j]);
+            }
+        }
+        for (int i = 0; i < texts.size(); i += 2) {
+            Node node = (Node) texts.get(i);
+            if (!node.getText().equals(texts.get(i + 1))) {
+                node.setText((String) texts.get(i + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.QName;
+import org.dom4j.tree.AbstractBranch;
+import org.dom4j.tree.ContentListFacade;
+import org.dom4j.tree.DefaultAttribute;
+import org.dom4j.tree.DefaultDocument;
+import org.dom4j.tree.DefaultElement;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTIONS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_DEFINITION_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.LOOP_ON_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MAPPING_NAME;
+
+/**
+ * Creates dom4j documents that keep the reference index of an action
+ * sequence up to date. The elements and attributes of a tracked document log
+ * every change that may affect the index: elements added to or removed from
+ * control statements, action definitions and their io sections, renamed
+ * elements and changed mapping and loop-on attributes. Changes made through
+ * the wrapper API are applied to the index by the event that follows them.
+ * Changes made directly through dom4j are found by a query that sees the log
+ * is not empty, and the index is rebuilt. Queries therefore never walk the
+ * tree to find out whether the index is still current.
+ * <p>
+ * Documents created by <code>ActionSequenceDocument()</code> and by
+ * <code>ActionSequenceLoader</code> are tracked. Other documents can be
+ * tracked by reading them with this factory, for example with
+ * <code>new SAXReader(TrackingDocumentFactory.getInstance())</code>.
+ */
+public final class TrackingDocumentFactory extends DocumentFactory {
+
+    private static final TrackingDocumentFactory instance = new TrackingDocumentFactory();
+
+    /**
+     * The number of changes logged without an event after which the index is
+     * discarded rather than updated.
+     */
+    private static final int MAX_PENDING_CHANGES = 256;
+
+    private TrackingDocumentFactory() {
+    }
+
+    /**
+     * @return the factory of tracked documents
+     */
+    public static TrackingDocumentFactory getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Document createDocument() {
+        TrackedDocument document = new TrackedDocument();
+        document.setDocumentFactory(this);
+        return document;
+    }
+
+    @Override
+    public Element createElement(QName qname) {
+        return new TrackedElement(qname);
+    }
+
+    @Override
+    public Attribute createAttribute(Element owner, QName qname, String value) {
+        return new TrackedAttribute(qname, value);
+    }
+
+    /**
+     * @return true if changes to the node are logged, i.e. if it was created
+     * by this factory.
+     */
+    static boolean isTracked(Node node) {
+        return (node instanceof TrackedElement) || (node instanceof TrackedAttribute)
+                || (node instanceof TrackedDocument);
+    }
+
+    /**
+     * Returns the reference index of a tracked document, building it if there
+     * is none or if the document was modified directly since the last event.
+     *
+     * @param document the document
+     * @return the index, or null if the document is not tracked
+     */
+    static ReferenceIndex getReferenceIndex(Document document) {
+        return document instanceof TrackedDocument ? ((TrackedDocument) document).getReferenceIndex() : null;
+    }
+
+    /**
+     * @return true if the document is tracked and holds a reference index,
+     * i.e. if a query would not have to build one.
+     */
+    static boolean hasReferenceIndex(Document document) {
+        return (document instanceof TrackedDocument) && ((TrackedDocument) document).hasReferenceIndex();
+    }
+
+    /**
+     * Sets the reference index of a tracked document that was built along
+     * with the document.
+     *
+     * @return false if the document is not tracked
+     */
+    static boolean setReferenceIndex(Document document, ReferenceIndex referenceIndex) {
+        boolean result = document instanceof TrackedDocument;
+        if (result) {
+            ((TrackedDocument) document).setReferenceIndex(referenceIndex);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the changes logged since the last event to the reference index
+     * of a tracked document.
+     *
+     * @param document the document
+     * @param element the element the event is about, or null if the event
+     * may have changed any part of the document
+     * @return false if the document is not tracked
+     */
+    static boolean updateReferenceIndex(Document document, Element element) {
+        boolean result = document instanceof TrackedDocument;
+        if (result) {
+            ((TrackedDocument) document).updateReferenceIndex(element);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if children added to or removed from an element with the
+     * name may change the reference index.
+     */
+    private static boolean isIndexedName(String name) {
+        return name.equals(ACTIONS_NAME) || name.equals(ACTION_DEFINITION_NAME)
+                || ReferenceIndex.isActionIOSection(name);
+    }
+
+    private static boolean isReferenceAttribute(String name) {
+        return name.equals(MAPPING_NAME) || name.equals(LOOP_ON_NAME);
+    }
+
+    private static void logChange(Element element, Node child) {
+        Document document = element.getDocument();
+        if (document instanceof TrackedDocument) {
+            ((TrackedDocument) document).logChange(element, child);
+        }
+    }
+
+    private static final class TrackedDocument extends DefaultDocument {
+
+        private ReferenceIndex referenceIndex;
+
+        /**
+         * The changed element and the added or removed child, if any, of
+         * every change logged since the last event.
+         */
+        private final ArrayList changes = new ArrayList();
+
+        synchronized ReferenceIndex getReferenceIndex() {
+            ReferenceIndex index = referenceIndex;
+            if ((index == null) || !changes.isEmpty()
+                    || (index.untracked && !index.isCurrent(getRootElement()))) {
+                index = new ReferenceIndex(this);
+                referenceIndex = index;
+                changes.clear();
+            }
+            return index;
+        }
+
+        synchronized boolean hasReferenceIndex() {
+            return (referenceIndex != null) && changes.isEmpty();
+        }
+
+        synchronized void setReferenceIndex(ReferenceIndex index) {
+            referenceIndex = index;
+            changes.clear();
+        }
+
+        synchronized void updateReferenceIndex(Element element) {
+            ReferenceIndex index = referenceIndex;
+            if ((index != null) && ((element == null) || index.untracked || !index.update(changes, element))) {
+                referenceIndex = null;
+            }
+            changes.clear();
+        }
+
+        synchronized void logChange(Element element, Node child) {
+            if (referenceIndex != null) {
+                if (changes.size() < MAX_PENDING_CHANGES * 2) {
+                    changes.add(element);
+                    changes.add(child);
+                } else {
+                    referenceIndex = null;
+                    changes.clear();
+                }
+            }
+        }
+
+        @Override
+        public void setContent(List<Node> content) {
+            super.setContent(content);
+            updateReferenceIndex(null);
+        }
+
+        @Override
+        public void clearContent() {
+            super.clearContent();
+            updateReferenceIndex(null);
+        }
+
+        @Override
+        protected void childAdded(Node node) {
+            super.childAdded(node);
+            updateReferenceIndex(null);
+        }
+
+        @Override
+        protected void childRemoved(Node node) {
+            super.childRemoved(node);
+            updateReferenceIndex(null);
+        }
+    }
+
+    private static final class TrackedElement extends DefaultElement {
+
+        TrackedElement(QName qname) {
+            super(qname);
+        }
+
+        @Override
+        protected DocumentFactory getDocumentFactory() {
+            return instance;
+        }
+
+        @Override
+        public void setQName(QName name) {
+            super.setQName(name);
+            logChange(this, null);
+        }
+
+        @Override
+        public void setAttributes(List<Attribute> attributes) {
+            super.setAttributes(attributes);
+            logChange(this, null);
+        }
+
+        @Override
+        public List<Node> content() {
+            return new TrackedList<Node>(this, contentList());
+        }
+
+        @Override
+        public List<Attribute> attributes() {
+            return new TrackedList<Attribute>(this, attributeList());
+        }
+
+        @Override
+        protected void childAdded(Node node) {
+            super.childAdded(node);
+            logChildChange(node);
+        }
+
+        @Override
+        protected void childRemoved(Node node) {
+            super.childRemoved(node);
+            logChildChange(node);
+        }
+
+        void logChildChange(Node node) {
+            if (node instanceof Element) {
+                if (isIndexedName(getName()) || isIndexedName(node.getName())) {
+                    logChange(this, node);
+                }
+            } else if (node instanceof Attribute) {
+                if (isReferenceAttribute(node.getName())) {
+                    logChange(this, node);
+                }
+            }
+        }
+    }
+
+    /**
+     * The content or attribute list of a tracked element. dom4j does not
+     * notify the element of the node replaced by <code>set</code>.
+     */
+    private static final class TrackedList<T extends Node> extends ContentListFacade<T> {
+
+        private final TrackedElement element;
+
+        TrackedList(TrackedElement element, List<T> backingList) {
+            super((AbstractBranch) element, backingList);
+            this.element = element;
+        }
+
+        @Override
+        public T set(int index, T node) {
+            T replaced = super.set(index, node);
+            if (replaced != null) {
+                element.logChildChange(replaced);
+            }
+            return replaced;
+        }
+    }
+
+    private static final class TrackedAttribute extends DefaultAttribute {
+
+        TrackedAttribute(QName qname, String value) {
+            super(qname, value);
+        }
+
+        @Override
+        public void setValue(String value) {
+            super.setValue(value);
+            Element owner = getParent();
+            if ((owner != null) && isReferenceAttribute(getName())) {
+                logChange(owner, null);
+            }
+        }
+    }
+}
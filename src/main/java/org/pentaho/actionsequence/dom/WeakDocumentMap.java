@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import static java.lang.System.identityHashCode;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+import org.dom4j.Document;
+
+/**
+ * A map from dom4j documents to values. Documents are compared by identity
+ * and weakly referenced, so the map does not keep them alive; the entries of
+ * collected documents are removed on the next update. Lookups neither lock
+ * nor allocate, which makes the map suitable for paths, such as event
+ * dispatch and wrapper lookup, that run on every navigation or modification
+ * of a document. Updates are serialized on the map.
+ */
+final class WeakDocumentMap<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReferenceQueue<Document> collectedDocuments = new ReferenceQueue<Document>();
+
+    private volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<Entry<V>>(INITIAL_CAPACITY);
+
+    private volatile int size;
+
+    /**
+     * @return the value of the document, or null if there is none
+     */
+    V get(Document doc) {
+        V value = null;
+        if (doc != null) {
+            int hash = identityHashCode(doc);
+            AtomicReferenceArray<Entry<V>> entries = table;
+            for (Entry<V> entry = entries.get(hash & (entries.length() - 1)); entry != null; entry = entry.next) {
+                if ((entry.hash == hash) && (entry.get() == doc)) {
+                    value = entry.value;
+                    break;
+                }
+            }
+        }
+        return value;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Replaces the value of a document.
+     *
+     * @param doc the document
+     * @param update computes the new value from the current value, which is
+     * null if the document has none. A null result removes the entry.
+     * @return the new value
+     */
+    synchronized V update(Document doc, UnaryOperator<V> update) {
+        expungeCollectedDocuments();
+        int hash = identityHashCode(doc);
+        AtomicReferenceArray<Entry<V>> entries = table;
+        int index = hash & (entries.length() - 1);
+        Entry<V> entry = entries.get(index);
+        while ((entry != null) && !((entry.hash == hash) && (entry.get() == doc))) {
+            entry = entry.next;
+        }
+        V value = update.apply(entry != null ? entry.value : null);
+        if (entry != null) {
+            if (value != null) {
+                entry.value = value;
+            } else {
+                remove(entries, index, entry);
+            }
+        } else if (value != null) {
+            entries.set(index, new Entry<V>(doc, hash, value, entries.get(index), collectedDocuments));
+            size++;
+            if (size > (entries.length() * 3) / 4) {
+                resize();
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expungeCollectedDocuments() {
+        for (Reference collected = collectedDocuments.poll(); collected != null;
+                collected = collectedDocuments.poll()) {
+            Entry<V> collectedEntry = (Entry<V>) collected;
+            AtomicReferenceArray<Entry<V>> entries = table;
+            int index = collectedEntry.hash & (entries.length() - 1);
+            for (Entry<V> entry = entries.get(index); entry != null; entry = entry.next) {
+                if (entry == collectedEntry) {
+                    remove(entries, index, entry);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unlinks an entry by copying the entries before it, so that concurrent
+     * lookups always see a complete chain.
+     */
+    private void remove(AtomicReferenceArray<Entry<V>> entries, int index, Entry<V> removedEntry) {
+        Entry<V> chain = removedEntry.next;
+        for (Entry<V> entry = entries.get(index); entry != removedEntry; entry = entry.next) {
+            Document doc = entry.get();
+            if (doc != null) {
+                chain = new Entry<V>(doc, entry.hash, entry.value, chain, collectedDocuments);
+            } else {
+                size--;
+            }
+        }
+        entries.set(index, chain);
+        size--;
+    }
+
+    private void resize() {
+        AtomicReferenceArray<Entry<V>> entries = table;
+        AtomicReferenceArray<Entry<V>> newEntries = new AtomicReferenceArray<Entry<V>>(entries.length() * 2);
+        int newSize = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            for (Entry<V> entry = entries.get(i); entry != null; entry = entry.next) {
+                Document doc = entry.get();
+                if (doc != null) {
+                    int index = entry.hash & (newEntries.length() - 1);
+                    newEntries.set(index,
+                            new Entry<V>(doc, entry.hash, entry.value, newEntries.get(index), collectedDocuments));
+                    newSize++;
+                }
+            }
+        }
+        table = newEntries;
+        size = newSize;
+    }
+
+    private static final class Entry<V> extends WeakReference<Document> {
+
+        final int hash;
+
+        final Entry<V> next;
+
+        volatile V value;
+
+        Entry(Document doc, int hash, V value, Entry<V> next, ReferenceQueue<Document> queue) {
+            super(doc, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import static java.util.Collections.EMPTY_LIST;
+import static java.util.Collections.EMPTY_MAP;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.dom4j.DocumentHelper.createXPath;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.XPath;
+
+/**
+ * Compiled XPath expressions shared by the DOM layer, along with direct
+ * element navigation for the fixed paths that do not need XPath at all.
+ * Expressions are compiled once and reused; the number of compilations is
+ * exposed so that callers can check that steady state navigation no longer
+ * compiles expressions.
+ */
+public final class XPathCache {
+
+    /**
+     * The maximum number of cached expressions. The cache is cleared when the
+     * limit is exceeded so that callers building expressions from variable
+     * names cannot grow it without bound.
+     */
+    static final int MAX_CACHED_EXPRESSIONS = 1024;
+
+    private static final ConcurrentHashMap<String, XPath> expressions = new ConcurrentHashMap<String, XPath>();
+
+    private static final AtomicLong compilationCount = new AtomicLong();
+
+    private XPathCache() {
+    }
+
+    /**
+     * Returns the compiled form of an XPath expression.
+     *
+     * @param xPath the expression
+     * @return the compiled expression
+     */
+    public static XPath getXPath(String xPath) {
+        XPath compiledXPath = expressions.get(xPath);
+        if (compiledXPath == null) {
+            compiledXPath = createXPath(xPath);
+            // A fixed namespace context keeps dom4j from resetting it on each
+            // evaluation, which makes the compiled expression safe to share.
+            compiledXPath.setNamespaceURIs(EMPTY_MAP);
+            compilationCount.incrementAndGet();
+            if (expressions.size() >= MAX_CACHED_EXPRESSIONS) {
+                expressions.clear();
+            }
+            XPath existingXPath = expressions.putIfAbsent(xPath, compiledXPath);
+            if (existingXPath != null) {
+                compiledXPath = existingXPath;
+            }
+        }
+        return compiledXPath;
+    }
+
+    /**
+     * @return the nodes selected by the expression relative to the context node.
+     */
+    public static List selectNodes(Node context, String xPath) {
+        return getXPath(xPath).selectNodes(context);
+    }
+
+    /**
+     * @return the first node selected by the expression relative to the context
+     * node or null if no node is selected.
+     */
+    public static Node selectSingleNode(Node context, String xPath) {
+        return getXPath(xPath).selectSingleNode(context);
+    }
+
+    /**
+     * @return the string value of the expression relative to the context node.
+     */
+    public static String valueOf(Node context, String xPath) {
+        return getXPath(xPath).valueOf(context);
+    }
+
+    /**
+     * Returns the child elements of the named children of an element. This is
+     * the equivalent of the expression <code>childName/*</code>.
+     *
+     * @param parent the parent element
+     * @param childName the name of the child elements
+     * @return the grandchild elements in document order
+     */
+    public static List getGrandchildren(Element parent, String childName) {
+        List grandchildren = EMPTY_LIST;
+        if (parent != null) {
+            for (Iterator iter = parent.elementIterator(childName); iter.hasNext();) {
+                Element child = (Element) iter.next();
+                if (grandchildren == EMPTY_LIST) {
+                    grandchildren = new ArrayList(child.elements());
+                } else {
+                    grandchildren.addAll(child.elements());
+                }
+            }
+        }
+        return grandchildren;
+    }
+
+    /**
+     * Returns the first named grandchild of an element. This is the equivalent
+     * of the expression <code>childName/grandchildName</code>.
+     *
+     * @param parent the parent element
+     * @param childName the name of the child element
+     * @param grandchildName the name of the grandchild element
+     * @return the grandchild element or null if there is none
+     */
+    public static Element getGrandchild(Element parent, String childName, String grandchildName) {
+        Element grandchild = null;
+        if (parent != null) {
+            for (Iterator iter = parent.elementIterator(childName); iter.hasNext() && (grandchild == null);) {
+                grandchild = ((Element) iter.next()).element(grandchildName);
+            }
+        }
+        return grandchild;
+    }
+
+    /**
+     * Returns the first element at a path of child element names separated by
+     * '/', such as <code>documentation/author</code>.
+     *
+     * @param parent the element the path is relative to
+     * @param path the child element names
+     * @return the element or null if there is none
+     */
+    public static Element getChildElement(Element parent, String path) {
+        Element element = parent;
+        int start = 0;
+        while ((element != null) && (start <= path.length())) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            element = element.element(path.substring(start, end));
+            start = end + 1;
+        }
+        return element;
+    }
+
+    /**
+     * @return the number of XPath expressions compiled since the class was
+     * loaded.
+     */
+    public static long getCompilationCount() {
+        return compilationCount.get();
+    }
+}
@@ -112,7 +112,7 @@ public abstract class AbstractChartAction extends ActionDefinition {
 
     public ActionInputConstant getTitleBold() {
         String value = getComponentDefinitionValue(CHART_TITLE_FONT_BOLD_XPATH);
-        return value != null ? new ActionInputConstant(new Boolean(value), this.actionParameterMgr)
+        return value != null ? new ActionInputConstant(Boolean.valueOf(value), this.actionParameterMgr)
                 : NULL_INPUT;
     }
 
@@ -123,7 +123,7 @@ public abstract class AbstractChartAction extends ActionDefinition {
 
     public ActionInputConstant getTitleItalic() {
         String value = getComponentDefinitionValue(CHART_TITLE_FONT_ITALIC_XPATH);
-        return value != null ? new ActionInputConstant(new Boolean(value), this.actionParameterMgr)
+        return value != null ? new ActionInputConstant(Boolean.valueOf(value), this.actionParameterMgr)
                 : NULL_INPUT;
     }
 
@@ -142,7 +142,7 @@ public abstract class AbstractChartAction extends ActionDefinition {
 
     public ActionInputConstant getBorderVisible() {
         String value = getComponentDefinitionValue(CHART_BORDER_VISIBLE_XPATH);
-        return value != null ? new ActionInputConstant(new Boolean(value), this.actionParameterMgr)
+        return value != null ? new ActionInputConstant(Boolean.valueOf(value), this.actionParameterMgr)
                 : NULL_INPUT;
     }
 
@@ -15,19 +15,19 @@ package org.pentaho.actionsequence.dom.actions;
 import java.net.URI;
 import java.util.ArrayList;
 import static java.util.Arrays.asList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import org.dom4j.Attribute;
+import org.dom4j.CDATA;
 import org.dom4j.Document;
-import org.dom4j.DocumentException;
 import static org.dom4j.DocumentHelper.makeElement;
-import static org.dom4j.DocumentHelper.parseText;
 import org.dom4j.Element;
-import org.dom4j.tree.DefaultElement;
+import org.dom4j.Node;
+import org.dom4j.Text;
 import org.pentaho.actionsequence.dom.ActionControlStatement;
-import org.pentaho.actionsequence.dom.ActionIfStatement;
 import org.pentaho.actionsequence.dom.ActionInput;
 import org.pentaho.actionsequence.dom.ActionInputConstant;
-import org.pentaho.actionsequence.dom.ActionLoop;
 import org.pentaho.actionsequence.dom.ActionOutput;
 import org.pentaho.actionsequence.dom.ActionResource;
 import org.pentaho.actionsequence.dom.ActionSequenceDocument;
@@ -61,13 +61,18 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_RESO
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_TYPE_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_NAME;
-import static org.pentaho.actionsequence.dom.IActionSequenceDocument.CONDITION_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.DOC_ACTIONS_PATH;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESOURCE_TYPE;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
 import org.pentaho.actionsequence.dom.IActionSequenceResource;
 import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
 import org.pentaho.actionsequence.dom.ImplicitActionResource;
+import org.pentaho.actionsequence.dom.TrackingDocumentFactory;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchild;
+import static org.pentaho.actionsequence.dom.XPathCache.getGrandchildren;
+import static org.pentaho.actionsequence.dom.XPathCache.selectNodes;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
+import static org.pentaho.actionsequence.dom.actions.ParameterTemplate.renameParameter;
 import static org.pentaho.actionsequence.dom.messages.Messages.getString;
 
 /**
@@ -105,7 +110,7 @@ public class ActionDefinition implements IActionDefinition {
         if ((i >= 0) && (i < (componentName.length() - 1))) {
             componentName = componentName.substring(i + 1);
         }
-        actionDefElement = new DefaultElement(ACTION_DEFINITION_NAME);
+        actionDefElement = TrackingDocumentFactory.getInstance().createElement(ACTION_DEFINITION_NAME);
         actionDefElement.addElement(COMPONENT_NAME).setText(componentName);
         actionDefElement.addElement(COMPONENT_DEF_NAME);
         initNewActionDefinition();
@@ -248,7 +253,7 @@ public class ActionDefinition implements IActionDefinition {
                     = makeElement(actionDefElement, ACTION_INPUTS_NAME
                             + "/" + privateParamName); //$NON-NLS-1$
             inputElement.addAttribute(TYPE_NAME, inputType);
-            input = new ActionInput(inputElement, actionParameterMgr);
+            input = (ActionInput) ActionSequenceDocument.getElement(inputElement, actionParameterMgr);
             fireIoAdded(input);
         } else {
             input.setType(inputType);
@@ -387,7 +392,7 @@ public class ActionDefinition implements IActionDefinition {
                     = makeElement(actionDefElement, ACTION_RESOURCES_NAME
                             + "/" + privateResourceName); //$NON-NLS-1$
             resourceElement.addAttribute(TYPE_NAME, RESOURCE_TYPE);
-            resource = new ActionResource(resourceElement, actionParameterMgr);
+            resource = (ActionResource) ActionSequenceDocument.getElement(resourceElement, actionParameterMgr);
             if ((referencedActionSequenceResource != null) && (referencedActionSequenceResource.trim().length() > 0)) {
                 resource.setMapping(referencedActionSequenceResource);
             }
@@ -401,11 +406,11 @@ public class ActionDefinition implements IActionDefinition {
      */
     @Override
     public IActionResource[] getResources() {
-        List resourcesList = actionDefElement.selectNodes(ACTION_RESOURCES_NAME + "/*"); //$NON-NLS-1$
+        List resourcesList = getGrandchildren(actionDefElement, ACTION_RESOURCES_NAME);
         ActionResource[] resources = new ActionResource[resourcesList.size()];
         int index = 0;
         for (Iterator iter = resourcesList.iterator(); iter.hasNext();) {
-            resources[index++] = new ActionResource((Element) iter.next(), actionParameterMgr);
+            resources[index++] = (ActionResource) ActionSequenceDocument.getElement((Element) iter.next(), actionParameterMgr);
         }
         return resources;
     }
@@ -446,8 +451,7 @@ public class ActionDefinition implements IActionDefinition {
     @Override
     public IActionResource getResource(String privateResourceName, boolean includeImplicitResource) {
         Element inputElement
-                = (Element) actionDefElement.selectSingleNode(ACTION_RESOURCES_NAME
-                        + "/" + privateResourceName); //$NON-NLS-1$
+                = getGrandchild(actionDefElement, ACTION_RESOURCES_NAME, privateResourceName);
         ActionResource actionResource = null;
         if (inputElement == null) {
             if (includeImplicitResource) {
@@ -460,7 +464,7 @@ public class ActionDefinition implements IActionDefinition {
                 }
             }
         } else {
-            actionResource = new ActionResource(inputElement, actionParameterMgr);
+            actionResource = (ActionResource) ActionSequenceDocument.getElement(inputElement, actionParameterMgr);
         }
         return actionResource;
     }
@@ -474,18 +478,18 @@ public class ActionDefinition implements IActionDefinition {
      * @return the inputs list in the action inputs section
      */
     public IActionInput[] getVariableInputs() {
-        List inputElements = actionDefElement.selectNodes(ACTION_INPUTS_NAME + "/*"); //$NON-NLS-1$
+        List inputElements = getGrandchildren(actionDefElement, ACTION_INPUTS_NAME);
         IActionInput[] variableInputs = new ActionInput[inputElements.size()];
         int index = 0;
         for (Iterator iter = inputElements.iterator(); iter.hasNext();) {
-            variableInputs[index++] = new ActionInput((Element) iter.next(), actionParameterMgr);
+            variableInputs[index++] = (ActionInput) ActionSequenceDocument.getElement((Element) iter.next(), actionParameterMgr);
         }
         return variableInputs;
     }
 
     protected ActionInputConstant[] getConstantInputs() {
         ArrayList constantInputs = new ArrayList();
-        List componentDefElements = actionDefElement.selectNodes(COMPONENT_DEF_NAME + "/*"); //$NON-NLS-1$
+        List componentDefElements = getGrandchildren(actionDefElement, COMPONENT_DEF_NAME);
         for (Iterator iter = componentDefElements.iterator(); iter.hasNext();) {
             Element componentDefElement = (Element) iter.next();
             if (componentDefElement.elements().size() == 0) {
@@ -532,9 +536,8 @@ public class ActionDefinition implements IActionDefinition {
      */
     public ActionInput getInputParam(String privateInputName) {
         Element inputElement
-                = (Element) actionDefElement
-                        .selectSingleNode(ACTION_INPUTS_NAME + "/" + privateInputName); //$NON-NLS-1$
-        return inputElement == null ? null : new ActionInput(inputElement, actionParameterMgr);
+                = getGrandchild(actionDefElement, ACTION_INPUTS_NAME, privateInputName);
+        return inputElement == null ? null : (ActionInput) ActionSequenceDocument.getElement(inputElement, actionParameterMgr);
     }
 
     @Override
@@ -546,7 +549,7 @@ public class ActionDefinition implements IActionDefinition {
                     = makeElement(actionDefElement, ACTION_OUTPUTS_NAME
                             + "/" + privateParamName); //$NON-NLS-1$
             outputElement.addAttribute(TYPE_NAME, outputType);
-            output = new ActionOutput(outputElement, actionParameterMgr);
+            output = (ActionOutput) ActionSequenceDocument.getElement(outputElement, actionParameterMgr);
             fireIoAdded(output);
         } else {
             output.setType(outputType);
@@ -562,11 +565,11 @@ public class ActionDefinition implements IActionDefinition {
      */
     @Override
     public IActionOutput[] getOutputs() {
-        List outputsList = actionDefElement.selectNodes(ACTION_OUTPUTS_NAME + "/*"); //$NON-NLS-1$
+        List outputsList = getGrandchildren(actionDefElement, ACTION_OUTPUTS_NAME);
         ActionOutput[] outputs = new ActionOutput[outputsList.size()];
         int index = 0;
         for (Iterator iter = outputsList.iterator(); iter.hasNext();) {
-            outputs[index++] = new ActionOutput((Element) iter.next(), actionParameterMgr);
+            outputs[index++] = (ActionOutput) ActionSequenceDocument.getElement((Element) iter.next(), actionParameterMgr);
         }
         return outputs;
     }
@@ -582,9 +585,8 @@ public class ActionDefinition implements IActionDefinition {
     @Override
     public IActionOutput getOutput(String privateParamName) {
         Element outputElement
-                = (Element) actionDefElement.selectSingleNode(ACTION_OUTPUTS_NAME
-                        + "/" + privateParamName); //$NON-NLS-1$
-        return outputElement == null ? null : new ActionOutput(outputElement, actionParameterMgr);
+                = getGrandchild(actionDefElement, ACTION_OUTPUTS_NAME, privateParamName);
+        return outputElement == null ? null : (ActionOutput) ActionSequenceDocument.getElement(outputElement, actionParameterMgr);
     }
 
     /**
@@ -680,11 +682,8 @@ public class ActionDefinition implements IActionDefinition {
             Element ancestorElement = actionDefElement.getParent();
             if ((ancestorElement != null) && ancestorElement.getName().equals(ACTIONS_NAME)
                     && !ancestorElement.getPath().equals(DOC_ACTIONS_PATH)) {
-                if (ancestorElement.element(CONDITION_NAME) != null) {
-                    controlStatement = new ActionIfStatement(ancestorElement, actionParameterMgr);
-                } else {
-                    controlStatement = new ActionLoop(ancestorElement, actionParameterMgr);
-                }
+                controlStatement = (ActionControlStatement) ActionSequenceDocument.getElement(ancestorElement,
+                        actionParameterMgr);
             }
         }
         return controlStatement;
@@ -710,7 +709,7 @@ public class ActionDefinition implements IActionDefinition {
         Document doc = actionDefElement.getDocument();
         if (doc != null) {
             actionDefElement.detach();
-            fireActionRemoved(new ActionSequenceDocument(doc, actionParameterMgr), this);
+            fireActionRemoved(ActionSequenceDocument.getActionSequenceDocument(doc, actionParameterMgr), this);
         }
     }
 
@@ -723,7 +722,7 @@ public class ActionDefinition implements IActionDefinition {
     public IActionSequenceDocument getDocument() {
         ActionSequenceDocument doc = null;
         if ((actionDefElement != null) && (actionDefElement.getDocument() != null)) {
-            doc = new ActionSequenceDocument(actionDefElement.getDocument(), actionParameterMgr);
+            doc = ActionSequenceDocument.getActionSequenceDocument(actionDefElement.getDocument(), actionParameterMgr);
         }
         return doc;
     }
@@ -767,8 +766,7 @@ public class ActionDefinition implements IActionDefinition {
      */
     @Override
     public Element[] getComponentDefElements(String compDefXpath) {
-        return (Element[]) actionDefElement
-                .selectNodes(COMPONENT_DEF_NAME + "/" + compDefXpath).toArray(new Element[0]); //$NON-NLS-1$
+        return (Element[]) selectNodes(actionDefElement, COMPONENT_DEF_NAME + "/" + compDefXpath).toArray(new Element[0]); //$NON-NLS-1$
     }
 
     /**
@@ -780,8 +778,8 @@ public class ActionDefinition implements IActionDefinition {
      */
     @Override
     public Element getComponentDefElement(String compDefXpath) {
-        return actionDefElement == null ? null : (Element) actionDefElement
-                .selectSingleNode(COMPONENT_DEF_NAME + "/" + compDefXpath); //$NON-NLS-1$
+        return actionDefElement == null ? null : (Element) selectSingleNode(actionDefElement,
+                COMPONENT_DEF_NAME + "/" + compDefXpath); //$NON-NLS-1$
     }
 
     /**
@@ -791,7 +789,7 @@ public class ActionDefinition implements IActionDefinition {
      */
     @Override
     public Element getComponentDefElement() {
-        return (Element) actionDefElement.selectSingleNode(COMPONENT_DEF_NAME); //$NON-NLS-1$
+        return actionDefElement.element(COMPONENT_DEF_NAME);
     }
 
     /**
@@ -819,9 +817,7 @@ public class ActionDefinition implements IActionDefinition {
     public void setComponentDefinition(String compDefXpath, String[] values) {
         boolean changed = false;
         Element[] componentDefs = getComponentDefElements(compDefXpath);
-        for (Element componentDef : componentDefs) {
-            componentDef.detach();
-        }
+        detach(componentDefs);
         if (componentDefs.length > 0) {
             changed = true;
         }
@@ -878,9 +874,7 @@ public class ActionDefinition implements IActionDefinition {
     public void setComponentDefinition(String compDefXpath, String value, boolean useCData) {
         if (value == null) {
             Element[] componentDefs = getComponentDefElements(compDefXpath);
-            for (Element componentDef : componentDefs) {
-                componentDef.detach();
-            }
+            detach(componentDefs);
             if (componentDefs.length > 0) {
                 fireActionChanged(this);
             }
@@ -941,20 +935,36 @@ public class ActionDefinition implements IActionDefinition {
             ActionInput actionInput = getInputParam(oldName);
             if (actionInput != null) {
                 Element componentDefElement = actionDefElement.element(COMPONENT_DEF_NAME);
-                try {
-                    if (componentDefElement != null) {
-                        String xmlString = componentDefElement.asXML();
-                        if (xmlString.contains("{" + oldName + "}")) { //$NON-NLS-1$ //$NON-NLS-2$
-                            xmlString = xmlString.replaceAll("\\{" + oldName + "\\}", "{" + newName + "}"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-                            Document document = parseText(xmlString);
-                            actionDefElement.remove(componentDefElement);
-                            actionDefElement.add(document.getRootElement());
-                        }
-                    }
-                    actionInput.setName(newName);
-                } catch (DocumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+                if (componentDefElement != null) {
+                    renameParameterReferences(componentDefElement, oldName, newName);
+                }
+                actionInput.setName(newName);
+            }
+        }
+    }
+
+    /**
+     * Replaces the <code>{oldName}</code> parameter references in the text,
+     * CDATA and attribute values of an element and its descendants, in place.
+     */
+    private static void renameParameterReferences(Element element, String oldName, String newName) {
+        for (int i = 0, count = element.attributeCount(); i < count; i++) {
+            Attribute attribute = element.attribute(i);
+            String value = attribute.getValue();
+            String renamedValue = renameParameter(value, oldName, newName);
+            if (renamedValue != value) {
+                attribute.setValue(renamedValue);
+            }
+        }
+        for (int i = 0, count = element.nodeCount(); i < count; i++) {
+            Node node = element.node(i);
+            if (node instanceof Element) {
+                renameParameterReferences((Element) node, oldName, newName);
+            } else if ((node instanceof Text) || (node instanceof CDATA)) {
+                String text = node.getText();
+                String renamedText = renameParameter(text, oldName, newName);
+                if (renamedText != text) {
+                    node.setText(renamedText);
                 }
             }
         }
@@ -1006,6 +1016,36 @@ public class ActionDefinition implements IActionDefinition {
         }
     }
 
+    /**
+     * Detaches elements from their parents. When the elements share a parent
+     * they are removed in a single pass over its content rather than one
+     * search per element.
+     */
+    static void detach(Element[] elements) {
+        Element parent = elements.length > 1 ? elements[0].getParent() : null;
+        for (int i = 1; (i < elements.length) && (parent != null); i++) {
+            if (elements[i].getParent() != parent) {
+                parent = null;
+            }
+        }
+        if (parent != null) {
+            HashSet removed = new HashSet(asList(elements));
+            List content = parent.content();
+            ArrayList keptContent = new ArrayList(content.size() - elements.length);
+            for (Iterator iter = content.iterator(); iter.hasNext();) {
+                Object node = iter.next();
+                if (!removed.contains(node)) {
+                    keptContent.add(node);
+                }
+            }
+            parent.setContent(keptContent);
+        } else {
+            for (Element element : elements) {
+                element.detach();
+            }
+        }
+    }
+
     /**
      * Removes all component definition elements at the specified XPath
      *
@@ -1015,9 +1055,7 @@ public class ActionDefinition implements IActionDefinition {
     @Override
     public void removeComponentDefinitions(String compDefXpath) {
         Element[] componentDefs = getComponentDefElements(compDefXpath);
-        for (Element componentDef : componentDefs) {
-            componentDef.detach();
-        }
+        detach(componentDefs);
         if (componentDefs.length > 0) {
             fireActionChanged(this);
         }
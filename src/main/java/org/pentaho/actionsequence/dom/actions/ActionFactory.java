@@ -14,16 +14,38 @@ package org.pentaho.actionsequence.dom.actions;
 
 import java.io.IOException;
 import java.io.InputStream;
-import static java.lang.Boolean.TRUE;
 import static java.lang.Class.forName;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import static java.lang.invoke.MethodHandles.publicLookup;
+import java.lang.invoke.MethodType;
+import static java.lang.invoke.MethodType.methodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import static java.lang.reflect.Modifier.isStatic;
 import java.net.URL;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Collection;
+import static java.util.Collections.synchronizedMap;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.Collections.unmodifiableSet;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import static javax.xml.XMLConstants.FEATURE_SECURE_PROCESSING;
 import org.apache.commons.logging.Log;
 import static org.apache.commons.logging.LogFactory.getLog;
@@ -31,6 +53,7 @@ import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
+import static org.pentaho.actionsequence.dom.XPathCache.selectNodes;
 import org.xml.sax.SAXException;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
@@ -38,7 +61,12 @@ public class ActionFactory {
 
     private static final Log logger = getLog(ActionFactory.class);
 
-    public static LinkedHashMap<String, Class> pluginActions = new LinkedHashMap<String, Class>();
+    /**
+     * The registered plugin action classes by id. Modify it through
+     * <code>registerAction</code> and <code>unregisterAction</code>; its key,
+     * value and entry views do not support modification.
+     */
+    public static final LinkedHashMap<String, Class> pluginActions = new PluginActionMap();
 
     public static String PLUGIN_XML_FILENAME = "pentaho_platform_plugin.xml";
     public static String PLUGIN_ROOT_NODE = "pentaho-plugin";
@@ -46,6 +74,19 @@ public class ActionFactory {
 
     protected static boolean pluginsLoaded = false;
 
+    private static final Lookup LOOKUP = publicLookup();
+    private static final MethodType ACCEPTS_TYPE = methodType(boolean.class, Element.class);
+    private static final MethodType CONSTRUCTOR_TYPE
+            = methodType(ActionDefinition.class, Element.class, IActionParameterMgr.class);
+
+    private static volatile DispatchIndex dispatchIndex;
+
+    /**
+     * Incremented whenever <code>pluginActions</code> is modified, so that a
+     * dispatch index built from an earlier state is rebuilt.
+     */
+    private static final AtomicInteger pluginVersion = new AtomicInteger();
+
     protected static synchronized void loadPlugins() {
         if (!pluginsLoaded) {
             try {
@@ -68,7 +109,7 @@ public class ActionFactory {
                             Document doc = reader.read(is);
                             if (doc != null) {
                                 // look for nodes
-                                List nodes = doc.selectNodes(PLUGIN_ROOT_NODE + "/" + PLUGIN_ACTION_DEFINITION_NODE);
+                                List nodes = selectNodes(doc, PLUGIN_ROOT_NODE + "/" + PLUGIN_ACTION_DEFINITION_NODE);
                                 Iterator it = nodes.iterator();
                                 while (it.hasNext()) {
                                     // make sure that one failed class will not affect any others
@@ -80,7 +121,7 @@ public class ActionFactory {
                                         // load the class
                                         Class componentClass = forName(className.trim());
                                         // add the class to the plugin list
-                                        pluginActions.put(id, componentClass);
+                                        registerAction(id, componentClass);
                                     } catch (ClassNotFoundException e) {
                                         logger.error(e);
                                     }
@@ -106,18 +147,24 @@ public class ActionFactory {
             loadPlugins();
         }
 
-        // TODO a map would improve performance here
-        for (Class actionClass : pluginActions.values()) {
+        DispatchIndex index = getDispatchIndex();
+
+        String componentName = ActionDefinition.getComponentName(actionDefDomElement);
+        ActionHandle[] candidates = null;
+        if (componentName != null) {
+            candidates = index.candidatesByComponent.get(getShortComponentName(componentName));
+        }
+        if (candidates == null) {
+            candidates = index.unindexedCandidates;
+        }
+
+        for (ActionHandle candidate : candidates) {
             try {
-                Method acceptElementMethod = actionClass.getMethod("accepts", new Class[]{Element.class});
-                if (TRUE.equals(acceptElementMethod.invoke(null, new Object[]{actionDefDomElement}))) {
-                    Constructor constructor
-                            = actionClass.getConstructor(new Class[]{Element.class, IActionParameterMgr.class});
-                    actionDefinition
-                            = (ActionDefinition) constructor.newInstance(new Object[]{actionDefDomElement, actionInputProvider});
+                if (candidate.accepts(actionDefDomElement)) {
+                    actionDefinition = candidate.newInstance(actionDefDomElement, actionInputProvider);
                     break;
                 }
-            } catch (IllegalAccessException | IllegalArgumentException | InstantiationException | NoSuchMethodException | SecurityException | InvocationTargetException e) {
+            } catch (ReflectiveOperationException | RuntimeException e) {
                 logger.error(e);
             }
         }
@@ -128,6 +175,169 @@ public class ActionFactory {
         return actionDefinition;
     }
 
+    /**
+     * Returns the substring following the last "." in the given component
+     * name, or the name itself if it contains no ".".
+     *
+     * @param componentName the fully qualified or short component name.
+     * @return the short component name.
+     */
+    public static String getShortComponentName(String componentName) {
+        int index = componentName.lastIndexOf("."); //$NON-NLS-1$
+        if ((index >= 0) && (index < componentName.length() - 1)) {
+            componentName = componentName.substring(index + 1);
+        }
+        return componentName;
+    }
+
+    /**
+     * Returns the short names of the components whose action definitions may
+     * be wrapped in an instance of the given class.
+     *
+     * @param actionClass an action definition class or interface
+     * @return the short component names, or null if action definitions of any
+     * component may be wrapped in an instance of the class
+     */
+    public static String[] getComponentNames(Class actionClass) {
+        if (!pluginsLoaded) {
+            loadPlugins();
+        }
+
+        return getDispatchIndex().getComponentNames(actionClass);
+    }
+
+    /**
+     * Registers the action definition class of a plugin, replacing any class
+     * registered under the same id.
+     *
+     * @param actionId the id of the action definition
+     * @param actionClass the action definition class
+     */
+    public static synchronized void registerAction(String actionId, Class actionClass) {
+        pluginActions.put(actionId, actionClass);
+    }
+
+    /**
+     * Removes the action definition class registered under an id.
+     *
+     * @param actionId the id of the action definition
+     */
+    public static synchronized void unregisterAction(String actionId) {
+        pluginActions.remove(actionId);
+    }
+
+    private static DispatchIndex getDispatchIndex() {
+        DispatchIndex index = dispatchIndex;
+        if ((index == null) || (index.pluginVersion != pluginVersion.get())) {
+            index = buildDispatchIndex();
+        }
+        return index;
+    }
+
+    /**
+     * Builds the component name to action class dispatch index from the
+     * current contents of <code>pluginActions</code>. Each plugin class is
+     * indexed under the component names published in its static
+     * <code>COMPONENT_NAMES</code> or <code>COMPONENT_NAME</code> field. Classes
+     * that publish neither are candidates for every component. Within each
+     * index entry the candidates keep their plugin registration order, so the
+     * first class that accepts an element is the same one the linear scan over
+     * <code>pluginActions</code> would have picked.
+     */
+    private static synchronized DispatchIndex buildDispatchIndex() {
+        DispatchIndex index = dispatchIndex;
+        int version = pluginVersion.get();
+        if ((index != null) && (index.pluginVersion == version)) {
+            return index;
+        }
+
+        ArrayList handles = new ArrayList();
+        ArrayList handleComponentNames = new ArrayList();
+        LinkedHashSet allComponentNames = new LinkedHashSet();
+        for (Class actionClass : pluginActions.values()) {
+            try {
+                Method acceptsMethod = actionClass.getMethod("accepts", new Class[]{Element.class}); //$NON-NLS-1$
+                Constructor constructor
+                        = actionClass.getConstructor(new Class[]{Element.class, IActionParameterMgr.class});
+                handles.add(new ActionHandle(actionClass, LOOKUP.unreflect(acceptsMethod).asType(ACCEPTS_TYPE),
+                        LOOKUP.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE)));
+                String[] componentNames = getPublishedComponentNames(actionClass);
+                handleComponentNames.add(componentNames);
+                allComponentNames.addAll(asList(componentNames));
+            } catch (IllegalAccessException | NoSuchMethodException | SecurityException | WrongMethodTypeException e) {
+                logger.error(e);
+            }
+        }
+
+        HashMap candidateLists = new HashMap();
+        for (Object componentName : allComponentNames) {
+            candidateLists.put(componentName, new LinkedHashSet());
+        }
+        ArrayList unindexed = new ArrayList();
+        for (int i = 0; i < handles.size(); i++) {
+            ActionHandle handle = (ActionHandle) handles.get(i);
+            String[] componentNames = (String[]) handleComponentNames.get(i);
+            if (componentNames.length == 0) {
+                unindexed.add(handle);
+                for (Object candidateList : candidateLists.values()) {
+                    ((LinkedHashSet) candidateList).add(handle);
+                }
+            } else {
+                for (String componentName : componentNames) {
+                    ((LinkedHashSet) candidateLists.get(componentName)).add(handle);
+                }
+            }
+        }
+
+        HashMap<String, ActionHandle[]> candidatesByComponent = new HashMap<String, ActionHandle[]>();
+        for (Iterator iter = candidateLists.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            candidatesByComponent.put((String) entry.getKey(),
+                    (ActionHandle[]) ((LinkedHashSet) entry.getValue()).toArray(new ActionHandle[0]));
+        }
+        index = new DispatchIndex(version, candidatesByComponent,
+                (ActionHandle[]) unindexed.toArray(new ActionHandle[0]));
+        dispatchIndex = index;
+        return index;
+    }
+
+    /**
+     * @return the short names of the components handled by the given action
+     * class, or an empty array if the class does not publish them.
+     */
+    private static String[] getPublishedComponentNames(Class actionClass) {
+        LinkedHashSet componentNames = new LinkedHashSet();
+        try {
+            Field field = getStaticField(actionClass, "COMPONENT_NAMES"); //$NON-NLS-1$
+            if ((field != null) && (field.get(null) instanceof String[])) {
+                for (String componentName : (String[]) field.get(null)) {
+                    componentNames.add(getShortComponentName(componentName));
+                }
+            } else {
+                field = getStaticField(actionClass, "COMPONENT_NAME"); //$NON-NLS-1$
+                if ((field != null) && (field.get(null) instanceof String)) {
+                    componentNames.add(getShortComponentName((String) field.get(null)));
+                }
+            }
+        } catch (IllegalAccessException | SecurityException e) {
+            logger.error(e);
+        }
+        return (String[]) componentNames.toArray(new String[0]);
+    }
+
+    private static Field getStaticField(Class actionClass, String fieldName) {
+        Field field = null;
+        try {
+            field = actionClass.getField(fieldName);
+            if (!isStatic(field.getModifiers())) {
+                field = null;
+            }
+        } catch (NoSuchFieldException e) {
+            field = null;
+        }
+        return field;
+    }
+
     public static Class getActionDefinition(String actionId) {
         if (!pluginsLoaded) {
             loadPlugins();
@@ -149,4 +359,264 @@ public class ActionFactory {
         return reader;
     }
 
+    /**
+     * The plugin action map, which invalidates the dispatch index whenever it
+     * is modified. Every mutator of the map is overridden, and its views are
+     * read only, so that the map cannot change without the version changing.
+     */
+    private static class PluginActionMap extends LinkedHashMap<String, Class> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Class put(String key, Class value) {
+            try {
+                return super.put(key, value);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Class> map) {
+            try {
+                super.putAll(map);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class remove(Object key) {
+            try {
+                return super.remove(key);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void clear() {
+            try {
+                super.clear();
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            try {
+                return super.remove(key, value);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class putIfAbsent(String key, Class value) {
+            try {
+                return super.putIfAbsent(key, value);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class replace(String key, Class value) {
+            try {
+                return super.replace(key, value);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean replace(String key, Class oldValue, Class newValue) {
+            try {
+                return super.replace(key, oldValue, newValue);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super String, ? super Class, ? extends Class> function) {
+            try {
+                super.replaceAll(function);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class computeIfAbsent(String key, Function<? super String, ? extends Class> mappingFunction) {
+            try {
+                return super.computeIfAbsent(key, mappingFunction);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class computeIfPresent(String key,
+                BiFunction<? super String, ? super Class, ? extends Class> remappingFunction) {
+            try {
+                return super.computeIfPresent(key, remappingFunction);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class compute(String key, BiFunction<? super String, ? super Class, ? extends Class> remappingFunction) {
+            try {
+                return super.compute(key, remappingFunction);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Class merge(String key, Class value,
+                BiFunction<? super Class, ? super Class, ? extends Class> remappingFunction) {
+            try {
+                return super.merge(key, value, remappingFunction);
+            } finally {
+                pluginVersion.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return unmodifiableSet(super.keySet());
+        }
+
+        @Override
+        public Collection<Class> values() {
+            return unmodifiableCollection(super.values());
+        }
+
+        /**
+         * @return a view of the entries whose entries are immutable too.
+         */
+        @Override
+        public Set<Map.Entry<String, Class>> entrySet() {
+            final Set<Map.Entry<String, Class>> entries = super.entrySet();
+            return new AbstractSet<Map.Entry<String, Class>>() {
+
+                @Override
+                public Iterator<Map.Entry<String, Class>> iterator() {
+                    final Iterator<Map.Entry<String, Class>> iter = entries.iterator();
+                    return new Iterator<Map.Entry<String, Class>>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Class> next() {
+                            return new SimpleImmutableEntry(iter.next());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Cached method handles for the <code>accepts</code> method and the
+     * wrapping constructor of a plugin action class.
+     */
+    private static class ActionHandle {
+
+        final Class actionClass;
+        final MethodHandle acceptsHandle;
+        final MethodHandle constructorHandle;
+
+        ActionHandle(Class actionClass, MethodHandle acceptsHandle, MethodHandle constructorHandle) {
+            this.actionClass = actionClass;
+            this.acceptsHandle = acceptsHandle;
+            this.constructorHandle = constructorHandle;
+        }
+
+        boolean accepts(Element actionDefDomElement) throws InvocationTargetException {
+            try {
+                return (boolean) acceptsHandle.invokeExact(actionDefDomElement);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        ActionDefinition newInstance(Element actionDefDomElement, IActionParameterMgr actionInputProvider)
+                throws InvocationTargetException {
+            try {
+                return (ActionDefinition) constructorHandle.invokeExact(actionDefDomElement, actionInputProvider);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    private static class DispatchIndex {
+
+        final int pluginVersion;
+        final HashMap<String, ActionHandle[]> candidatesByComponent;
+        final ActionHandle[] unindexedCandidates;
+
+        /**
+         * The results of <code>getComponentNames</code>, keyed by class.
+         */
+        final Map componentNamesByClass = synchronizedMap(new HashMap());
+
+        DispatchIndex(int pluginVersion, HashMap<String, ActionHandle[]> candidatesByComponent,
+                ActionHandle[] unindexedCandidates) {
+            this.pluginVersion = pluginVersion;
+            this.candidatesByComponent = candidatesByComponent;
+            this.unindexedCandidates = unindexedCandidates;
+        }
+
+        String[] getComponentNames(Class actionClass) {
+            String[] componentNames;
+            if (componentNamesByClass.containsKey(actionClass)) {
+                componentNames = (String[]) componentNamesByClass.get(actionClass);
+            } else {
+                componentNames = findComponentNames(actionClass);
+                componentNamesByClass.put(actionClass, componentNames);
+            }
+            return componentNames;
+        }
+
+        private String[] findComponentNames(Class actionClass) {
+            boolean anyComponent = actionClass.isAssignableFrom(ActionDefinition.class);
+            for (int i = 0; !anyComponent && (i < unindexedCandidates.length); i++) {
+                anyComponent = actionClass.isAssignableFrom(unindexedCandidates[i].actionClass);
+            }
+            String[] componentNames = null;
+            if (!anyComponent) {
+                ArrayList names = new ArrayList();
+                for (Map.Entry<String, ActionHandle[]> entry : candidatesByComponent.entrySet()) {
+                    for (ActionHandle candidate : entry.getValue()) {
+                        if (actionClass.isAssignableFrom(candidate.actionClass)) {
+                            names.add(entry.getKey());
+                            break;
+                        }
+                    }
+                }
+                componentNames = (String[]) names.toArray(new String[0]);
+            }
+            return componentNames;
+        }
+    }
+
 }
@@ -13,8 +13,8 @@
 package org.pentaho.actionsequence.dom.actions;
 
 import static java.lang.Integer.parseInt;
-import java.util.ArrayList;
 import static java.util.Arrays.asList;
+import java.util.HashSet;
 import org.pentaho.actionsequence.dom.ActionInput;
 import org.pentaho.actionsequence.dom.ActionInputConstant;
 import org.pentaho.actionsequence.dom.IActionInput;
@@ -26,7 +26,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class ActionInputTypeFilter implements IActionInputFilter {
 
-    ArrayList types = new ArrayList();
+    HashSet types = new HashSet();
     boolean includeConstants = false;
 
     public ActionInputTypeFilter(String[] types, boolean includeConstants) {
@@ -14,6 +14,7 @@ package org.pentaho.actionsequence.dom.actions;
 
 import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class BarChartAction extends AbstractChartAction {
 
@@ -42,7 +43,7 @@ public class BarChartAction extends AbstractChartAction {
         boolean result = false;
         if (AbstractChartAction.accepts(element)) {
             element
-                    = (Element) element.selectSingleNode(COMPONENT_DEF_NAME
+                    = (Element) selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/chart-attributes/chart-type"); //$NON-NLS-1$
             result = (element != null) && element.getText().equals(CHART_TYPE);
         }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import org.pentaho.actionsequence.dom.IActionInput;
+import org.pentaho.actionsequence.dom.IActionOutput;
+import org.pentaho.actionsequence.dom.IActionResource;
+import org.pentaho.commons.connection.IPentahoStreamSource;
+
+/**
+ * A parameter manager that remembers the input values and parameter
+ * substitutions of another parameter manager. It is meant to be used for a
+ * single execution of an action sequence, so that components reading the
+ * same inputs over and over, typically inside loops, resolve each input and
+ * each substitution once.
+ * <p>
+ * The values are remembered until the next call to <code>invalidate</code>,
+ * which starts a new generation. The caller must invalidate the cache
+ * whenever the values behind the parameter manager change other than
+ * through <code>setOutputValue</code>, which invalidates it itself; for
+ * example at each iteration of a loop. Instances are not thread safe.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class CachingActionParameterMgr implements IActionParameterMgr {
+
+    private final IActionParameterMgr actionParameterMgr;
+
+    private final HashMap inputValues = new HashMap();
+
+    private final HashMap replacedStrings = new HashMap();
+
+    private long generation;
+
+    /**
+     * @param actionParameterMgr the parameter manager that resolves the values
+     */
+    public CachingActionParameterMgr(IActionParameterMgr actionParameterMgr) {
+        this.actionParameterMgr = actionParameterMgr;
+    }
+
+    /**
+     * @return the parameter manager that resolves the values
+     */
+    public IActionParameterMgr getActionParameterMgr() {
+        return actionParameterMgr;
+    }
+
+    @Override
+    public Object getInputValue(IActionInput actionInput) {
+        Object value = inputValues.get(actionInput);
+        if ((value == null) && !inputValues.containsKey(actionInput)) {
+            value = actionParameterMgr.getInputValue(actionInput);
+            inputValues.put(actionInput, value);
+        }
+        return value;
+    }
+
+    @Override
+    public String replaceParameterReferences(String inputString) {
+        String result = (String) replacedStrings.get(inputString);
+        if ((result == null) && !replacedStrings.containsKey(inputString)) {
+            result = actionParameterMgr.replaceParameterReferences(inputString);
+            replacedStrings.put(inputString, result);
+        }
+        return result;
+    }
+
+    @Override
+    public IPentahoStreamSource getDataSource(IActionResource actionResource) throws FileNotFoundException {
+        return actionParameterMgr.getDataSource(actionResource);
+    }
+
+    @Override
+    public InputStream getInputStream(IActionResource actionResource) throws FileNotFoundException {
+        return actionParameterMgr.getInputStream(actionResource);
+    }
+
+    @Override
+    public IPentahoStreamSource getDataSource(IActionInput actionInput) {
+        return actionParameterMgr.getDataSource(actionInput);
+    }
+
+    /**
+     * Sets the output value and invalidates the cache, since the output may be
+     * the source of inputs that have already been resolved.
+     */
+    @Override
+    public void setOutputValue(IActionOutput actionOutput, Object value) {
+        actionParameterMgr.setOutputValue(actionOutput, value);
+        invalidate();
+    }
+
+    @Override
+    public String getString(IActionResource actionResource) throws IOException {
+        return actionParameterMgr.getString(actionResource);
+    }
+
+    /**
+     * Forgets all the remembered values and starts a new generation.
+     */
+    public void invalidate() {
+        inputValues.clear();
+        replacedStrings.clear();
+        generation++;
+    }
+
+    /**
+     * Forgets the remembered value of one input, along with the parameter
+     * substitutions since they may refer to it. The generation does not change.
+     *
+     * @param actionInput the input
+     */
+    public void invalidate(IActionInput actionInput) {
+        inputValues.remove(actionInput);
+        replacedStrings.clear();
+    }
+
+    /**
+     * @return the number of times the cache has been invalidated. Values
+     * derived from the cached values can be kept as long as the generation
+     * does not change.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+}
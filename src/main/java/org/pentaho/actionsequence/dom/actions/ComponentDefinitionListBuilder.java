@@ -0,0 +1,239 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import static org.dom4j.DocumentHelper.makeElement;
+import org.dom4j.Element;
+import org.pentaho.actionsequence.dom.ActionInput;
+import org.pentaho.actionsequence.dom.ActionInputConstant;
+import org.pentaho.actionsequence.dom.ActionSequenceDocument;
+import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireActionChanged;
+import static org.pentaho.actionsequence.dom.ActionSequenceDocument.fireIoAdded;
+import static org.pentaho.actionsequence.dom.IAbstractIOElement.TYPE_NAME;
+import org.pentaho.actionsequence.dom.IActionInputSource;
+import org.pentaho.actionsequence.dom.IActionInputVariable;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_INPUTS_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MAPPING_NAME;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+
+/**
+ * Appends items to a list shaped component definition, such as the arguments
+ * of a format message action, together with the action inputs the items name.
+ * The names of the action inputs and component definitions are read once when
+ * the builder is created and generated names come from a counter, so each
+ * item is appended in constant amortized time. Listeners are notified of each
+ * added action input as it is added, and of the changed component definition
+ * once, by <code>close</code>.
+ * <p>
+ * The action definition must not be modified by other means while the
+ * builder is in use.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class ComponentDefinitionListBuilder {
+
+    private final ActionDefinition actionDefinition;
+
+    private final Element actionDefElement;
+
+    /**
+     * The path of the parent of the items relative to the component
+     * definition, or null if the items are children of the component
+     * definition.
+     */
+    private final String parentPath;
+
+    private final String itemName;
+
+    private final String namePrefix;
+
+    /**
+     * The names of the action inputs and of the children of the component
+     * definition.
+     */
+    private final HashSet usedNames = new HashSet();
+
+    /**
+     * The generated names, which may not yet name an action input or
+     * component definition.
+     */
+    private final HashSet generatedNames = new HashSet();
+
+    private int nameCounter;
+
+    private Element listElement;
+
+    private boolean changed;
+
+    /**
+     * @param actionDefinition the action definition
+     * @param compDefXpath the path of the items relative to the component
+     * definition, such as <code>format/arg</code>
+     * @param namePrefix the prefix of the generated names of action inputs
+     */
+    public ComponentDefinitionListBuilder(ActionDefinition actionDefinition, String compDefXpath, String namePrefix) {
+        this.actionDefinition = actionDefinition;
+        this.namePrefix = namePrefix;
+        actionDefElement = actionDefinition.getElement();
+        int separator = compDefXpath.lastIndexOf('/');
+        parentPath = separator >= 0 ? compDefXpath.substring(0, separator) : null;
+        itemName = compDefXpath.substring(separator + 1);
+        addChildNames(ACTION_INPUTS_NAME);
+        addChildNames(COMPONENT_DEF_NAME);
+    }
+
+    private void addChildNames(String sectionName) {
+        for (Iterator iter = actionDefElement.elementIterator(sectionName); iter.hasNext();) {
+            for (Iterator childIter = ((Element) iter.next()).elementIterator(); childIter.hasNext();) {
+                usedNames.add(((Element) childIter.next()).getName());
+            }
+        }
+    }
+
+    /**
+     * Appends an item to the list.
+     *
+     * @param value the text of the item. May be null.
+     * @return the item element
+     */
+    public Element add(String value) {
+        if (listElement == null) {
+            listElement = makeElement(actionDefElement, parentPath != null ? COMPONENT_DEF_NAME + "/" + parentPath //$NON-NLS-1$
+                    : COMPONENT_DEF_NAME);
+            if (parentPath == null) {
+                usedNames.add(itemName);
+            }
+        }
+        Element item = listElement.addElement(itemName);
+        if (value != null) {
+            item.setText(value);
+        }
+        changed = true;
+        return item;
+    }
+
+    /**
+     * Appends an item naming an action input that refers to a variable or
+     * holds a constant. An input that refers to a variable is named after the
+     * variable. A constant is given a generated name.
+     *
+     * @param value the variable or constant
+     * @return the name of the action input, or null if the value is neither a
+     * variable nor a non null constant and no item was appended
+     */
+    public String addInput(IActionInputSource value) {
+        String name = null;
+        if (value instanceof IActionInputVariable) {
+            name = ((IActionInputVariable) value).getVariableName();
+        } else if ((value instanceof ActionInputConstant) && (((ActionInputConstant) value).getValue() != null)) {
+            name = getUniqueName();
+        }
+        if (name != null) {
+            setInputValue(name, value);
+            add(name);
+        }
+        return name;
+    }
+
+    /**
+     * Appends an item naming a copy of an existing action input.
+     *
+     * @param actionInput the action input
+     * @return the name of the action input
+     */
+    public String addInput(ActionInput actionInput) {
+        String name = actionInput.getName();
+        setInputValue(name, actionInput);
+        add(name);
+        return name;
+    }
+
+    /**
+     * @return a name, made of the name prefix and a number, that is not used
+     * by an action input or component definition
+     */
+    public String getUniqueName() {
+        String name;
+        do {
+            name = namePrefix + ++nameCounter;
+        } while (usedNames.contains(name) || !generatedNames.add(name));
+        return name;
+    }
+
+    /**
+     * Sets the value of an action input, as
+     * <code>ActionDefinition.setActionInputValue</code> does.
+     *
+     * @param privateName the name of the action input
+     * @param value the variable or constant. May be null.
+     */
+    public void setInputValue(String privateName, IActionInputSource value) {
+        if (usedNames.contains(privateName) || (value == null)) {
+            actionDefinition.setActionInputValue(privateName, value);
+        } else if (value instanceof ActionInputConstant) {
+            String constant = ((ActionInputConstant) value).getStringValue(false);
+            if (constant != null) {
+                makeElement(actionDefElement, COMPONENT_DEF_NAME).addElement(privateName).addCDATA(constant);
+                usedNames.add(privateName);
+                changed = true;
+            }
+        } else {
+            IActionInputVariable variable = (IActionInputVariable) value;
+            addInput(privateName, variable.getVariableName(), variable.getType());
+        }
+    }
+
+    /**
+     * Sets an action input to refer to the same variable as another, as
+     * <code>ActionDefinition.setActionInputValue</code> does.
+     *
+     * @param privateName the name of the action input
+     * @param actionInput the action input to copy
+     */
+    public void setInputValue(String privateName, ActionInput actionInput) {
+        if (usedNames.contains(privateName)) {
+            actionDefinition.setActionInputValue(privateName, actionInput);
+        } else {
+            addInput(privateName, actionInput.getReferencedVariableName(), actionInput.getType());
+        }
+    }
+
+    private void addInput(String privateName, String variableName, String type) {
+        if (variableName == null) {
+            actionDefinition.setInputParam(privateName, null, type);
+        } else {
+            Element inputElement = makeElement(actionDefElement, ACTION_INPUTS_NAME).addElement(privateName);
+            inputElement.addAttribute(TYPE_NAME, type != null ? type : STRING_TYPE);
+            variableName = variableName.trim();
+            if ((variableName.length() > 0) && !variableName.equals(privateName)) {
+                inputElement.addAttribute(MAPPING_NAME, variableName);
+            }
+            usedNames.add(privateName);
+            fireIoAdded((ActionInput) ActionSequenceDocument.getElement(inputElement,
+                    actionDefinition.getActionParameterMgr()));
+        }
+    }
+
+    /**
+     * Notifies the listeners of the document that the component definition
+     * was changed, if any items or constants were added.
+     */
+    public void close() {
+        if (changed) {
+            changed = false;
+            fireActionChanged(actionDefinition);
+        }
+    }
+}
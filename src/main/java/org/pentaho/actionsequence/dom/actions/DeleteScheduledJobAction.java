@@ -14,6 +14,7 @@ package org.pentaho.actionsequence.dom.actions;
 
 import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class DeleteScheduledJobAction extends AbstractJobSchedulerAction {
 
@@ -44,7 +45,7 @@ public class DeleteScheduledJobAction extends AbstractJobSchedulerAction {
         boolean result = false;
         if (AbstractJobSchedulerAction.accepts(element)) {
             element
-                    = (Element) element.selectSingleNode(COMPONENT_DEF_NAME + "/" + JOB_ACTION_ELEMENT); //$NON-NLS-1$
+                    = (Element) selectSingleNode(element, COMPONENT_DEF_NAME + "/" + JOB_ACTION_ELEMENT); //$NON-NLS-1$
             result = (element != null) && element.getText().equals(JOB_SCHEDULER_COMMAND);
         }
         return result;
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import org.dom4j.Element;
 import org.pentaho.actionsequence.dom.ActionInput;
+import org.pentaho.actionsequence.dom.ActionInputConstant;
 import org.pentaho.actionsequence.dom.ActionSequenceValidationError;
 import static org.pentaho.actionsequence.dom.ActionSequenceValidationError.INPUT_MISSING;
 import static org.pentaho.actionsequence.dom.ActionSequenceValidationError.INPUT_REFERENCES_UNKNOWN_VAR;
@@ -28,6 +29,9 @@ import org.pentaho.actionsequence.dom.IActionInput;
 import org.pentaho.actionsequence.dom.IActionInputSource;
 import org.pentaho.actionsequence.dom.IActionInputVariable;
 import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
+import static org.pentaho.actionsequence.dom.actions.EmailAttachment.ATTACHMENT_CONTENT_ATTRIBUTE;
+import static org.pentaho.actionsequence.dom.actions.EmailAttachment.ATTACHMENT_NAME_ATTRIBUTE;
+import static org.pentaho.actionsequence.dom.actions.EmailAttachment.ATTACHMENT_NAME_PREFIX;
 import static org.pentaho.actionsequence.dom.actions.EmailAttachment.ELEMENT_NAME;
 import static org.pentaho.actionsequence.dom.actions.EmailAttachment.OLD_ATTACHMENT_ELEMENT;
 
@@ -287,13 +291,38 @@ public class EmailAction extends ActionDefinition {
     }
 
     public EmailAttachment addAttachment(IActionInputVariable variable) {
+        return addAttachments(new IActionInputVariable[]{variable})[0];
+    }
+
+    /**
+     * Adds an attachment for each of the given variables. The attachment names
+     * are the variable names.
+     *
+     * @param variables the variables holding the attachment content
+     * @return the new attachments
+     */
+    public EmailAttachment[] addAttachments(IActionInputVariable[] variables) {
         EmailAttachment[] emailAttachments = getAttachments();
         for (EmailAttachment emailAttachment : emailAttachments) {
             if (emailAttachment.isDeprecatedAttachmentStyle()) {
                 emailAttachment.convertToNewAttachmentStyle();
             }
         }
-        return new EmailAttachment(this, variable);
+        ComponentDefinitionListBuilder builder
+                = new ComponentDefinitionListBuilder(this, ELEMENT_NAME, ATTACHMENT_NAME_PREFIX);
+        EmailAttachment[] newAttachments = new EmailAttachment[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            Element attachmentElement = builder.add(null);
+            String nameParam = builder.getUniqueName();
+            attachmentElement.addAttribute(ATTACHMENT_NAME_ATTRIBUTE, nameParam);
+            builder.setInputValue(nameParam,
+                    new ActionInputConstant(variables[i].getVariableName().trim(), actionParameterMgr));
+            attachmentElement.addAttribute(ATTACHMENT_CONTENT_ATTRIBUTE, variables[i].getVariableName());
+            builder.setInputValue(variables[i].getVariableName(), variables[i]);
+            newAttachments[i] = new EmailAttachment(attachmentElement, actionParameterMgr);
+        }
+        builder.close();
+        return newAttachments;
     }
 
     public EmailAttachment addAttachment(String name, URI uri, String mimeType) {
@@ -27,6 +27,7 @@ import org.pentaho.actionsequence.dom.IActionResource;
 import org.pentaho.actionsequence.dom.IActionSequenceDocument;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import org.pentaho.actionsequence.dom.IActionSequenceElement;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 import org.pentaho.commons.connection.IPentahoStreamSource;
 
 public class EmailAttachment implements IActionSequenceElement {
@@ -96,7 +97,7 @@ public class EmailAttachment implements IActionSequenceElement {
     public IActionSequenceDocument getDocument() {
         ActionSequenceDocument doc = null;
         if ((attachmentElement != null) && (attachmentElement.getDocument() != null)) {
-            doc = new ActionSequenceDocument(attachmentElement.getDocument(), actionInputProvider);
+            doc = ActionSequenceDocument.getActionSequenceDocument(attachmentElement.getDocument(), actionInputProvider);
         }
         return doc;
     }
@@ -119,7 +120,7 @@ public class EmailAttachment implements IActionSequenceElement {
 
         // Convert the attachment content.
         Element oldAttachmentElement
-                = (Element) actionElement.selectSingleNode(COMPONENT_DEF_NAME + "/"
+                = (Element) selectSingleNode(actionElement, COMPONENT_DEF_NAME + "/"
                         + OLD_ATTACHMENT_ELEMENT);
         String attachmentParam = oldAttachmentElement.getText();
         oldAttachmentElement.detach();
@@ -129,7 +130,7 @@ public class EmailAttachment implements IActionSequenceElement {
         String attachmentNameParam = null;
         String attachmentName = null;
         Element oldAttachmentNameElement
-                = (Element) actionElement.selectSingleNode(COMPONENT_DEF_NAME + "/"
+                = (Element) selectSingleNode(actionElement, COMPONENT_DEF_NAME + "/"
                         + OLD_ATTACHMENT_NAME_ELEMENT);
         if (oldAttachmentNameElement != null) {
             attachmentName = oldAttachmentNameElement.getText();
@@ -217,7 +218,7 @@ public class EmailAttachment implements IActionSequenceElement {
         ActionInput actionInput = null;
         if (isDeprecatedAttachmentStyle()) {
             Element oldAttachmentElement
-                    = (Element) getEmailAction().getElement().selectSingleNode(COMPONENT_DEF_NAME + "/" + OLD_ATTACHMENT_ELEMENT);
+                    = (Element) selectSingleNode(getEmailAction().getElement(), COMPONENT_DEF_NAME + "/" + OLD_ATTACHMENT_ELEMENT);
             String attachmentParam = oldAttachmentElement.getText();
             actionInput = getEmailAction().getInputParam(attachmentParam);
         } else {
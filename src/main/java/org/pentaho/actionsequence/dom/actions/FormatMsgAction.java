@@ -26,6 +26,8 @@ import org.pentaho.actionsequence.dom.IActionInputVariable;
 import org.pentaho.actionsequence.dom.IActionOutput;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectNodes;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 import static org.pentaho.actionsequence.dom.actions.CopyParamAction.COPY_PARAM_COMMAND;
 import static org.pentaho.actionsequence.dom.actions.PrintMapValsAction.PRINT_MAP_VALS_COMMAND;
 import static org.pentaho.actionsequence.dom.actions.PrintParamAction.PRINT_PARAMS_COMMAND;
@@ -80,12 +82,12 @@ public class FormatMsgAction extends ActionDefinition {
         boolean accepts = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             accepts
-                    = (element.selectNodes(COMPONENT_DEF_NAME + "/" + FORMAT_MSG_COMMAND).size() == 1) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    = (selectNodes(element, COMPONENT_DEF_NAME + "/" + FORMAT_MSG_COMMAND).size() == 1) //$NON-NLS-1$
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + COPY_PARAM_COMMAND) == null) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + PRINT_PARAMS_COMMAND) == null) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + PRINT_MAP_VALS_COMMAND) == null); //$NON-NLS-1$
         }
         return accepts;
@@ -179,42 +181,25 @@ public class FormatMsgAction extends ActionDefinition {
         return (IActionInput[]) msgInputs.toArray(new IActionInput[0]);
     }
 
+    /**
+     * Appends a message input. Existing message inputs are left in place.
+     *
+     * @param inputSource the variable or constant
+     */
     public void addMsgInput(IActionInputSource inputSource) {
-        IActionInput[] oldInputs = getMsgInputs();
-        for (IActionInput oldInput : oldInputs) {
-            if (oldInput instanceof ActionInput) {
-                ((ActionInput) oldInput).delete();
-            }
-        }
-        setComponentDefinition(ARGUMENT_XPATH, new String[0]);
-
-        ArrayList msgInputParamNames = new ArrayList();
-        for (IActionInput oldInput : oldInputs) {
-            if ((oldInput instanceof ActionInputConstant) && (oldInput.getValue() != null)) {
-                String msgInputParamName = getUniqueNameParam();
-                msgInputParamNames.add(msgInputParamName);
-                setActionInputValue(msgInputParamName, (ActionInputConstant) oldInput);
-            } else if (oldInput instanceof ActionInput) {
-                ActionInput actionInput = (ActionInput) oldInput;
-                msgInputParamNames.add(actionInput.getName());
-                setActionInputValue(actionInput.getName(), actionInput);
-            }
-        }
-
-        if (inputSource instanceof IActionInputVariable) {
-            IActionInputVariable actionVariable = (IActionInputVariable) inputSource;
-            msgInputParamNames.add(actionVariable.getVariableName());
-            setActionInputValue(actionVariable.getVariableName(), actionVariable);
-        } else if ((inputSource instanceof ActionInputConstant)
-                && (((ActionInputConstant) inputSource).getValue() != null)) {
-            String msgInputParamName = getUniqueNameParam();
-            msgInputParamNames.add(msgInputParamName);
-            setActionInputValue(msgInputParamName, (ActionInputConstant) inputSource);
-        }
+        ComponentDefinitionListBuilder builder = appendMsgInputs();
+        builder.addInput(inputSource);
+        builder.close();
+    }
 
-        if (msgInputParamNames.size() > 0) {
-            setComponentDefinition(ARGUMENT_XPATH, (String[]) msgInputParamNames.toArray(new String[0]));
-        }
+    /**
+     * Returns a builder that appends message inputs after the existing ones.
+     * Use it to add many message inputs, and close it once they are added.
+     *
+     * @return the builder
+     */
+    public ComponentDefinitionListBuilder appendMsgInputs() {
+        return new ComponentDefinitionListBuilder(this, ARGUMENT_XPATH, MSG_INPUT_PREFIX);
     }
 
     public void setMsgInputs(IActionInput[] values) {
@@ -226,34 +211,14 @@ public class FormatMsgAction extends ActionDefinition {
         }
         setComponentDefinition(ARGUMENT_XPATH, new String[0]);
 
-        ArrayList msgInputParamNames = new ArrayList();
+        ComponentDefinitionListBuilder builder = appendMsgInputs();
         for (IActionInput value : values) {
-            if (value instanceof IActionInputVariable) {
-                IActionInputVariable actionVariable = (IActionInputVariable) value;
-                msgInputParamNames.add(actionVariable.getVariableName());
-                setActionInputValue(actionVariable.getVariableName(), actionVariable);
-            } else if ((value instanceof ActionInputConstant) && (value.getValue() != null)) {
-                String msgInputParamName = getUniqueNameParam();
-                msgInputParamNames.add(msgInputParamName);
-                setActionInputValue(msgInputParamName, (ActionInputConstant) value);
+            if ((value instanceof IActionInputVariable) || (value instanceof ActionInputConstant)) {
+                builder.addInput((IActionInputSource) value);
             } else if (value instanceof ActionInput) {
-                ActionInput actionInput = (ActionInput) value;
-                msgInputParamNames.add(actionInput.getName());
-                setActionInputValue(actionInput.getName(), actionInput);
+                builder.addInput((ActionInput) value);
             }
         }
-        if (msgInputParamNames.size() > 0) {
-            setComponentDefinition(ARGUMENT_XPATH, (String[]) msgInputParamNames.toArray(new String[0]));
-        }
-    }
-
-    private String getUniqueNameParam() {
-        String name = null;
-        boolean isUnique = false;
-        for (int i = 1; !isUnique; i++) {
-            name = MSG_INPUT_PREFIX + i;
-            isUnique = (getInputParam(name) == null) && (getComponentDefElement(name) == null);
-        }
-        return name;
+        builder.close();
     }
 }
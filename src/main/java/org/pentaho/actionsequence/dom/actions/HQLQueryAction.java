@@ -20,6 +20,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_INPU
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.HQL_QUERY_TYPE;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class HQLQueryAction extends HQLConnectionAction {
 
@@ -41,8 +42,8 @@ public class HQLQueryAction extends HQLConnectionAction {
 
     public static boolean accepts(Element element) {
         return ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)
-                && ((element.selectSingleNode(COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
-                || (element.selectSingleNode(ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$
+                && ((selectSingleNode(element, COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
+                || (selectSingleNode(element, ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$
     }
 
     @Override
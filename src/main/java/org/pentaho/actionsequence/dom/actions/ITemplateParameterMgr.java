@@ -0,0 +1,31 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+/**
+ * A parameter manager that resolves the parameter references of compiled
+ * <code>ParameterTemplate</code>s one parameter at a time. Action inputs
+ * render their values through the compiled template of the value when their
+ * parameter manager implements this interface, instead of calling
+ * <code>replaceParameterReferences</code>, so that strings that are the same
+ * on every execution are only scanned for references once.
+ */
+public interface ITemplateParameterMgr extends IActionParameterMgr {
+
+    /**
+     * @param name the name between the braces of a parameter reference
+     * @return the text that replaces the reference, or null to leave the
+     * reference as it is
+     */
+    String getParameterValue(String name);
+}
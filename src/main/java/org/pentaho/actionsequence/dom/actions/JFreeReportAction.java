@@ -270,6 +270,7 @@ public class JFreeReportAction extends ActionDefinition {
     public static final String COMPONENT_NAME = "org.pentaho.jfree.JFreeReportComponent"; //$NON-NLS-1$
     public static final String JFREE_COMPONENT_SHORT_NAME = "JFreeReportComponent"; //$NON-NLS-1$
     public static final String JFREE_WIZ_COMPONENT_SHORT_NAME = "ReportWizardSpecComponent"; //$NON-NLS-1$
+    public static final String[] COMPONENT_NAMES = new String[]{JFREE_COMPONENT_SHORT_NAME, JFREE_WIZ_COMPONENT_SHORT_NAME};
     public static final String OUTPUT_TYPE_ELEMENT = "output-type"; //$NON-NLS-1$
     public static final String REPORT_OUTPUT_ELEMENT = "report-output"; //$NON-NLS-1$
     public static final String DRIVER_ELEMENT = "driver"; //$NON-NLS-1$
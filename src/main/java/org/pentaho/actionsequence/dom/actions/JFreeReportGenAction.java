@@ -23,6 +23,7 @@ import static org.pentaho.actionsequence.dom.IActionInput.NULL_INPUT;
 import org.pentaho.actionsequence.dom.IActionInputSource;
 import org.pentaho.actionsequence.dom.IActionOutput;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.CONTENT_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class JFreeReportGenAction extends ActionDefinition {
 
@@ -80,7 +81,7 @@ public class JFreeReportGenAction extends ActionDefinition {
                 Document doc = parseText(value.getStringValue());
                 Node componentNode = doc.getRootElement();
                 value
-                        = new ActionInputConstant(componentNode.selectSingleNode(elementName).getText(), this.actionParameterMgr);
+                        = new ActionInputConstant(selectSingleNode(componentNode, elementName).getText(), this.actionParameterMgr);
             }
         } catch (DocumentException e) {
             value = NULL_INPUT;
@@ -29,6 +29,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_RESO
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
 import org.pentaho.actionsequence.dom.IActionSequenceResource;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class KettleJobAction extends ActionDefinition {
@@ -76,9 +77,9 @@ public class KettleJobAction extends ActionDefinition {
         if (ActionDefinition.accepts(elem) && hasComponentName(elem, COMPONENT_NAME)) {
 
             result
-                    = (elem.selectSingleNode(ACTION_RESOURCES_NAME + "/" + JOB_FILE_ELEMENT) != null)
-                    || (elem.selectSingleNode(ACTION_INPUTS_NAME + "/" + REPOSITORY_JOB) != null)
-                    || (elem.selectSingleNode(COMPONENT_DEF_NAME + "/" + REPOSITORY_JOB) != null);
+                    = (selectSingleNode(elem, ACTION_RESOURCES_NAME + "/" + JOB_FILE_ELEMENT) != null)
+                    || (selectSingleNode(elem, ACTION_INPUTS_NAME + "/" + REPOSITORY_JOB) != null)
+                    || (selectSingleNode(elem, COMPONENT_DEF_NAME + "/" + REPOSITORY_JOB) != null);
         }
         return result;
     }
@@ -33,6 +33,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_T
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
 import org.pentaho.actionsequence.dom.IActionSequenceResource;
 import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class KettleTransformAction extends ActionDefinition {
 
@@ -98,10 +99,10 @@ public class KettleTransformAction extends ActionDefinition {
         boolean result = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             result
-                    = (element.selectSingleNode(ACTION_RESOURCES_NAME + "/" + TRANSFORMATION_FILE_ELEMENT) != null) //$NON-NLS-1$
-                    || (element.selectSingleNode(ACTION_INPUTS_NAME
+                    = (selectSingleNode(element, ACTION_RESOURCES_NAME + "/" + TRANSFORMATION_FILE_ELEMENT) != null) //$NON-NLS-1$
+                    || (selectSingleNode(element, ACTION_INPUTS_NAME
                             + "/" + REPOSITORY_TRANSFORMATION) != null) //$NON-NLS-1$
-                    || (element.selectSingleNode(COMPONENT_DEF_NAME
+                    || (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + REPOSITORY_TRANSFORMATION) != null); //$NON-NLS-1$
         }
         return result;
@@ -14,14 +14,9 @@ package org.pentaho.actionsequence.dom.actions;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
-import static org.dom4j.DocumentHelper.parseText;
 import org.dom4j.Element;
-import org.dom4j.io.OutputFormat;
-import static org.dom4j.io.OutputFormat.createPrettyPrint;
-import org.dom4j.io.XMLWriter;
 import org.pentaho.actionsequence.dom.ActionInputConstant;
+import org.pentaho.actionsequence.dom.ActionSequenceWriter;
 import org.pentaho.actionsequence.dom.IActionInput;
 import static org.pentaho.actionsequence.dom.IActionInput.NULL_INPUT;
 import org.pentaho.actionsequence.dom.IActionInputSource;
@@ -95,10 +90,10 @@ public class MQLAction extends AbstractRelationalDbAction {
             Element element = getComponentDefElement(MQL_ELEMENT);
             if (element != null) {
                 try {
-                    query
-                            = new ActionInputConstant(prettyPrint(parseText(element.asXML())).getRootElement()
-                                    .asXML(), actionParameterMgr);
-                } catch (DocumentException e) {
+                    StringWriter stringWriter = new StringWriter();
+                    new ActionSequenceWriter(stringWriter, null).writeRootElement(element);
+                    query = new ActionInputConstant(stringWriter.toString(), actionParameterMgr);
+                } catch (IOException e) {
                     query = new ActionInputConstant(element.asXML(), actionParameterMgr);
                 }
             }
@@ -151,22 +146,4 @@ public class MQLAction extends AbstractRelationalDbAction {
     public IActionInput getMqlQueryClassName() {
         return getInput(MQLQUERY_CLASSNAME);
     }
-
-    private Document prettyPrint(Document document) {
-        try {
-            OutputFormat format = createPrettyPrint();
-            format.setEncoding(document.getXMLEncoding());
-            StringWriter stringWriter = new StringWriter();
-            XMLWriter writer = new XMLWriter(stringWriter, format);
-            // XMLWriter has a bug that is avoided if we reparse the document
-            // prior to calling XMLWriter.write()
-            writer.write(parseText(document.asXML()));
-            writer.close();
-            document = parseText(stringWriter.toString());
-        } catch (IOException | DocumentException e) {
-            e.printStackTrace();
-            return (null);
-        }
-        return (document);
-    }
 }
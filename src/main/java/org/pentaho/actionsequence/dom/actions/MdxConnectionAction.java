@@ -33,6 +33,8 @@ import org.pentaho.actionsequence.dom.IActionOutput;
 import org.pentaho.actionsequence.dom.IActionResource;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MDX_CONNECTION_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectNodes;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class MdxConnectionAction extends ActionDefinition {
@@ -220,7 +222,7 @@ public class MdxConnectionAction extends ActionDefinition {
        * CONNECTION_PROPS
              */
             Properties properties = (Properties) ((ActionInputConstant) value).getValue();
-            Element compDefElement = (Element) actionDefElement.selectSingleNode(COMPONENT_DEF_NAME);
+            Element compDefElement = (Element) selectSingleNode(actionDefElement, COMPONENT_DEF_NAME);
             Element connectionPropsElement = compDefElement.addElement(CONNECTION_PROPS);
             for (Map.Entry mapEntry : properties.entrySet()) {
                 Element propElement = connectionPropsElement.addElement(PROPERTY);
@@ -241,7 +243,7 @@ public class MdxConnectionAction extends ActionDefinition {
         Element connectionPropsElement = getComponentDefElement(CONNECTION_PROPS);
         if (connectionPropsElement != null) {
             Properties properties = new Properties();
-            List propertyElements = connectionPropsElement.selectNodes(PROPERTY);
+            List propertyElements = selectNodes(connectionPropsElement, PROPERTY);
             for (Iterator iter = propertyElements.iterator(); iter.hasNext();) {
                 Element propElement = (Element) iter.next();
                 Element keyElement = propElement.element(KEY_NODE);
@@ -27,6 +27,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_INPU
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.MDX_QUERY_TYPE;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class MdxQueryAction extends MdxConnectionAction {
@@ -71,8 +72,8 @@ public class MdxQueryAction extends MdxConnectionAction {
 
     public static boolean accepts(Element element) {
         return ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)
-                && ((element.selectSingleNode(COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
-                || (element.selectSingleNode(ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$
+                && ((selectSingleNode(element, COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
+                || (selectSingleNode(element, ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$
     }
 
     @Override
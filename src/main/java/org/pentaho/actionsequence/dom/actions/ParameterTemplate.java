@@ -0,0 +1,155 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import java.util.ArrayList;
+
+/**
+ * A string parsed into literal text and <code>{name}</code> parameter
+ * references. The string is scanned once, when the template is compiled, and
+ * can then be rendered any number of times against an
+ * <code>ITemplateParameterMgr</code>. A brace without a matching closing
+ * brace is literal text. Templates are immutable and may be shared between
+ * threads.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public final class ParameterTemplate {
+
+    /**
+     * The number of characters reserved for each parameter value when sizing
+     * the rendered string.
+     */
+    private static final int PARAMETER_VALUE_LENGTH = 16;
+
+    private final String source;
+
+    /**
+     * The literal text before each reference, followed by the text after the
+     * last reference.
+     */
+    private final String[] literals;
+
+    private final String[] names;
+
+    private final int literalLength;
+
+    private ParameterTemplate(String source, String[] literals, String[] names) {
+        this.source = source;
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (int i = 0; i < literals.length; i++) {
+            length += literals[i].length();
+        }
+        literalLength = length;
+    }
+
+    /**
+     * Parses a string into a template.
+     *
+     * @param source the string
+     * @return the template
+     */
+    public static ParameterTemplate compile(String source) {
+        ArrayList literals = new ArrayList();
+        ArrayList names = new ArrayList();
+        int start = 0;
+        int open = source.indexOf('{');
+        while (open >= 0) {
+            int close = source.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            literals.add(source.substring(start, open));
+            names.add(source.substring(open + 1, close));
+            start = close + 1;
+            open = source.indexOf('{', start);
+        }
+        literals.add(source.substring(start));
+        return new ParameterTemplate(source, (String[]) literals.toArray(new String[0]),
+                (String[]) names.toArray(new String[0]));
+    }
+
+    /**
+     * Replaces the references to one parameter in a string. The parameter
+     * names are matched literally.
+     *
+     * @param text the string
+     * @param oldName the name of the referenced parameter
+     * @param newName the name to refer to instead
+     * @return the string with each <code>{oldName}</code> replaced by
+     * <code>{newName}</code>, or the string itself if it has no such reference
+     */
+    public static String renameParameter(String text, String oldName, String newName) {
+        String result = text;
+        if (text.indexOf('{') >= 0) {
+            String reference = '{' + oldName + '}';
+            int index = text.indexOf(reference);
+            if (index >= 0) {
+                StringBuilder buffer = new StringBuilder(text.length() + newName.length() - oldName.length());
+                int start = 0;
+                while (index >= 0) {
+                    buffer.append(text, start, index).append('{').append(newName).append('}');
+                    start = index + reference.length();
+                    index = text.indexOf(reference, start);
+                }
+                result = buffer.append(text, start, text.length()).toString();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the string the template was compiled from
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the names of the referenced parameters in the order they appear
+     */
+    public String[] getParameterNames() {
+        return names.clone();
+    }
+
+    /**
+     * Replaces the parameter references with their values.
+     *
+     * @param parameterMgr the parameter manager that supplies the values
+     * @return the rendered string, which is the source string itself if there
+     * are no parameter references
+     */
+    public String render(ITemplateParameterMgr parameterMgr) {
+        String result = source;
+        if (names.length > 0) {
+            StringBuilder buffer = new StringBuilder(literalLength + names.length * PARAMETER_VALUE_LENGTH);
+            for (int i = 0; i < names.length; i++) {
+                buffer.append(literals[i]);
+                String value = parameterMgr.getParameterValue(names[i]);
+                if (value != null) {
+                    buffer.append(value);
+                } else {
+                    buffer.append('{').append(names[i]).append('}');
+                }
+            }
+            result = buffer.append(literals[names.length]).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -15,6 +15,7 @@ package org.pentaho.actionsequence.dom.actions;
 import java.net.URI;
 import java.util.ArrayList;
 import static java.util.Arrays.asList;
+import java.util.HashSet;
 import java.util.List;
 import org.dom4j.Element;
 import org.pentaho.actionsequence.dom.ActionInputConstant;
@@ -149,7 +150,7 @@ public class PentahoReportAction extends ActionDefinition {
     }
 
     public List<IActionInput> getReportParameters() {
-        ArrayList<String> knownInputs = new ArrayList<>(asList(EXPECTED_INPUTS));
+        HashSet<String> knownInputs = new HashSet<>(asList(EXPECTED_INPUTS));
         ArrayList<IActionInput> reportParameters = new ArrayList<>();
         for (IActionInput input : getInputs()) {
             if ((input instanceof ActionInputConstant)
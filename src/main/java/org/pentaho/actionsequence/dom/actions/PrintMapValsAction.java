@@ -23,6 +23,8 @@ import org.pentaho.actionsequence.dom.IActionInputVariable;
 import org.pentaho.actionsequence.dom.IActionOutput;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectNodes;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 import static org.pentaho.actionsequence.dom.actions.CopyParamAction.COPY_PARAM_COMMAND;
 import static org.pentaho.actionsequence.dom.actions.FormatMsgAction.FORMAT_MSG_COMMAND;
 import static org.pentaho.actionsequence.dom.actions.PrintParamAction.PRINT_PARAMS_COMMAND;
@@ -59,12 +61,12 @@ public class PrintMapValsAction extends ActionDefinition {
         boolean accepts = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             accepts
-                    = (element.selectNodes(COMPONENT_DEF_NAME + "/" + PRINT_MAP_VALS_COMMAND).size() == 1) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    = (selectNodes(element, COMPONENT_DEF_NAME + "/" + PRINT_MAP_VALS_COMMAND).size() == 1) //$NON-NLS-1$
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + FORMAT_MSG_COMMAND) == null) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + PRINT_PARAMS_COMMAND) == null) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + COPY_PARAM_COMMAND) == null); //$NON-NLS-1$
         }
         return accepts;
@@ -22,6 +22,8 @@ import org.pentaho.actionsequence.dom.IActionInputSource;
 import org.pentaho.actionsequence.dom.IActionInputVariable;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import org.pentaho.actionsequence.dom.IActionSequenceElement;
+import static org.pentaho.actionsequence.dom.XPathCache.selectNodes;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 import static org.pentaho.actionsequence.dom.actions.CopyParamAction.COPY_PARAM_COMMAND;
 import static org.pentaho.actionsequence.dom.actions.FormatMsgAction.FORMAT_MSG_COMMAND;
 import static org.pentaho.actionsequence.dom.actions.PrintMapValsAction.PRINT_MAP_VALS_COMMAND;
@@ -57,12 +59,12 @@ public class PrintParamAction extends ActionDefinition {
         boolean accepts = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             accepts
-                    = (element.selectNodes(COMPONENT_DEF_NAME + "/" + PRINT_PARAMS_COMMAND).size() == 1) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    = (selectNodes(element, COMPONENT_DEF_NAME + "/" + PRINT_PARAMS_COMMAND).size() == 1) //$NON-NLS-1$
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + FORMAT_MSG_COMMAND) == null) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + PRINT_MAP_VALS_COMMAND) == null) //$NON-NLS-1$
-                    && (element.selectSingleNode(COMPONENT_DEF_NAME
+                    && (selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + COPY_PARAM_COMMAND) == null); //$NON-NLS-1$
         }
         return accepts;
@@ -109,42 +111,25 @@ public class PrintParamAction extends ActionDefinition {
         return (IActionInput[]) printParams.toArray(new IActionInput[0]);
     }
 
+    /**
+     * Appends an input to print. Existing inputs to print are left in place.
+     *
+     * @param inputSource the variable or constant
+     */
     public void addInputToPrint(IActionInputSource inputSource) {
-        IActionInput[] oldPrintParams = getInputsToPrint();
-        for (IActionInput oldPrintParam : oldPrintParams) {
-            if (oldPrintParam instanceof ActionInput) {
-                ((ActionInput) oldPrintParam).delete();
-            }
-        }
-        setComponentDefinition(PRINT_PARAMS_XPATH, new String[0]);
-
-        ArrayList printParamNames = new ArrayList();
-        for (IActionInput oldPrintParam : oldPrintParams) {
-            if ((oldPrintParam instanceof ActionInputConstant) && (oldPrintParam.getValue() != null)) {
-                String printParamName = getUniqueNameParam();
-                printParamNames.add(printParamName);
-                setActionInputValue(printParamName, (ActionInputConstant) oldPrintParam);
-            } else if (oldPrintParam instanceof ActionInput) {
-                ActionInput actionInput = (ActionInput) oldPrintParam;
-                printParamNames.add(actionInput.getName());
-                setActionInputValue(actionInput.getName(), actionInput);
-            }
-        }
-
-        if (inputSource instanceof IActionInputVariable) {
-            IActionInputVariable actionVariable = (IActionInputVariable) inputSource;
-            printParamNames.add(actionVariable.getVariableName());
-            setActionInputValue(actionVariable.getVariableName(), actionVariable);
-        } else if ((inputSource instanceof ActionInputConstant)
-                && (((ActionInputConstant) inputSource).getValue() != null)) {
-            String printParamName = getUniqueNameParam();
-            printParamNames.add(printParamName);
-            setActionInputValue(printParamName, (ActionInputConstant) inputSource);
-        }
+        ComponentDefinitionListBuilder builder = appendInputsToPrint();
+        builder.addInput(inputSource);
+        builder.close();
+    }
 
-        if (printParamNames.size() > 0) {
-            setComponentDefinition(PRINT_PARAMS_XPATH, (String[]) printParamNames.toArray(new String[0]));
-        }
+    /**
+     * Returns a builder that appends inputs to print after the existing ones.
+     * Use it to add many inputs, and close it once they are added.
+     *
+     * @return the builder
+     */
+    public ComponentDefinitionListBuilder appendInputsToPrint() {
+        return new ComponentDefinitionListBuilder(this, PRINT_PARAMS_XPATH, PRINT_PARAM_PREFIX);
     }
 
     public void setInputsToPrint(IActionInput[] values) {
@@ -156,34 +141,14 @@ public class PrintParamAction extends ActionDefinition {
         }
         setComponentDefinition(PRINT_PARAMS_XPATH, new String[0]);
 
-        ArrayList printParamNames = new ArrayList();
+        ComponentDefinitionListBuilder builder = appendInputsToPrint();
         for (IActionInput value : values) {
-            if (value instanceof IActionInputVariable) {
-                IActionInputVariable actionVariable = (IActionInputVariable) value;
-                printParamNames.add(actionVariable.getVariableName());
-                setActionInputValue(actionVariable.getVariableName(), actionVariable);
-            } else if ((value instanceof ActionInputConstant) && (value.getValue() != null)) {
-                String printParamName = getUniqueNameParam();
-                printParamNames.add(printParamName);
-                setActionInputValue(printParamName, (ActionInputConstant) value);
+            if ((value instanceof IActionInputVariable) || (value instanceof ActionInputConstant)) {
+                builder.addInput((IActionInputSource) value);
             } else if (value instanceof ActionInput) {
-                ActionInput actionInput = (ActionInput) value;
-                printParamNames.add(actionInput.getName());
-                setActionInputValue(actionInput.getName(), actionInput);
+                builder.addInput((ActionInput) value);
             }
         }
-        if (printParamNames.size() > 0) {
-            setComponentDefinition(PRINT_PARAMS_XPATH, (String[]) printParamNames.toArray(new String[0]));
-        }
-    }
-
-    private String getUniqueNameParam() {
-        String name = null;
-        boolean isUnique = false;
-        for (int i = 1; !isUnique; i++) {
-            name = PRINT_PARAM_PREFIX + i;
-            isUnique = (getInputParam(name) == null) && (getComponentDefElement(name) == null);
-        }
-        return name;
+        builder.close();
     }
 }
@@ -14,6 +14,7 @@ package org.pentaho.actionsequence.dom.actions;
 
 import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class SchedulerStatusAction extends ActionDefinition {
 
@@ -39,7 +40,7 @@ public class SchedulerStatusAction extends ActionDefinition {
         boolean result = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             element
-                    = (Element) element.selectSingleNode(COMPONENT_DEF_NAME
+                    = (Element) selectSingleNode(element, COMPONENT_DEF_NAME
                             + "/" + SCHEDULER_ACTION_ELEMENT); //$NON-NLS-1$
             result = (element != null) && element.getText().equals(SCHEDULER_STATUS_CMND);
         }
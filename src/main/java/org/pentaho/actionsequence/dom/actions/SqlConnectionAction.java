@@ -27,6 +27,7 @@ import org.pentaho.actionsequence.dom.IActionInputVariable;
 import org.pentaho.actionsequence.dom.IActionOutput;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_OUTPUTS_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.SQL_CONNECTION_TYPE;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class SqlConnectionAction extends ActionDefinition {
@@ -66,7 +67,7 @@ public class SqlConnectionAction extends ActionDefinition {
         boolean result = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             Element connectionOutput
-                    = (Element) element.selectSingleNode(ACTION_OUTPUTS_NAME
+                    = (Element) selectSingleNode(element, ACTION_OUTPUTS_NAME
                             + "/" + PREPARED_COMPONENT_ELEMENT); //$NON-NLS-1$
             result
                     = (connectionOutput != null)
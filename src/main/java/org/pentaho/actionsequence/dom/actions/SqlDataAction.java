@@ -23,6 +23,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_INPU
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.SQL_QUERY_TYPE;
 import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class SqlDataAction extends AbstractRelationalDbAction {
@@ -48,8 +49,8 @@ public class SqlDataAction extends AbstractRelationalDbAction {
 
     public static boolean accepts(Element element) {
         return ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)
-                && ((element.selectSingleNode(COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
-                || (element.selectSingleNode(ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$
+                && ((selectSingleNode(element, COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
+                || (selectSingleNode(element, ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$
     }
 
     @Override
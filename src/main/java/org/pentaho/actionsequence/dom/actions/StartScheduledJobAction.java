@@ -18,6 +18,7 @@ import org.pentaho.actionsequence.dom.IActionInput;
 import org.pentaho.actionsequence.dom.IActionInputSource;
 import org.pentaho.actionsequence.dom.IActionInputVariable;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class StartScheduledJobAction extends AbstractJobSchedulerAction {
 
@@ -82,7 +83,7 @@ public class StartScheduledJobAction extends AbstractJobSchedulerAction {
         boolean result = false;
         if (AbstractJobSchedulerAction.accepts(element)) {
             element
-                    = (Element) element.selectSingleNode(COMPONENT_DEF_NAME + "/" + JOB_ACTION_ELEMENT); //$NON-NLS-1$
+                    = (Element) selectSingleNode(element, COMPONENT_DEF_NAME + "/" + JOB_ACTION_ELEMENT); //$NON-NLS-1$
             result = (element != null) && element.getText().equals(START_SCHED_JOB_CMND);
         }
         return result;
@@ -14,6 +14,7 @@ package org.pentaho.actionsequence.dom.actions;
 
 import org.dom4j.Element;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_DEF_NAME;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 public class SuspendScheduledJobAction extends AbstractJobSchedulerAction {
 
@@ -43,7 +44,7 @@ public class SuspendScheduledJobAction extends AbstractJobSchedulerAction {
         boolean result = false;
         if (AbstractJobSchedulerAction.accepts(element)) {
             element
-                    = (Element) element.selectSingleNode(COMPONENT_DEF_NAME + "/" + JOB_ACTION_ELEMENT); //$NON-NLS-1$
+                    = (Element) selectSingleNode(element, COMPONENT_DEF_NAME + "/" + JOB_ACTION_ELEMENT); //$NON-NLS-1$
             result = (element != null) && element.getText().equals(SUSPEND_SCHED_JOB_CMND);
         }
         return result;
@@ -29,6 +29,7 @@ import static org.pentaho.actionsequence.dom.IActionSequenceDocument.COMPONENT_D
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.XQUERY_TYPE;
 import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class XQueryAction extends ActionDefinition {
@@ -61,8 +62,8 @@ public class XQueryAction extends ActionDefinition {
 
     public static boolean accepts(Element element) {
         return ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)
-                && ((element.selectSingleNode(COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
-                || (element.selectSingleNode(ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$;
+                && ((selectSingleNode(element, COMPONENT_DEF_NAME + "/" + QUERY_ELEMENT) != null) //$NON-NLS-1$
+                || (selectSingleNode(element, ACTION_INPUTS_NAME + "/" + QUERY_ELEMENT) != null)); //$NON-NLS-1$;
     }
 
     @Override
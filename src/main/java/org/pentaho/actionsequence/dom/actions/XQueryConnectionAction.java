@@ -21,6 +21,7 @@ import org.pentaho.actionsequence.dom.IActionOutput;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.ACTION_OUTPUTS_NAME;
 import static org.pentaho.actionsequence.dom.IActionSequenceDocument.XQUERY_CONNECTION_TYPE;
 import org.pentaho.actionsequence.dom.IActionSequenceValidationError;
+import static org.pentaho.actionsequence.dom.XPathCache.selectSingleNode;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class XQueryConnectionAction extends ActionDefinition {
@@ -43,7 +44,7 @@ public class XQueryConnectionAction extends ActionDefinition {
         boolean result = false;
         if (ActionDefinition.accepts(element) && hasComponentName(element, COMPONENT_NAME)) {
             Element connectionOutput
-                    = (Element) element.selectSingleNode(ACTION_OUTPUTS_NAME
+                    = (Element) selectSingleNode(element, ACTION_OUTPUTS_NAME
                             + "/" + PREPARED_COMPONENT_ELEMENT); //$NON-NLS-1$
             result
                     = (connectionOutput != null)
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceValidationError.INPUT_REFERENCES_UNKNOWN_VAR;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceBatchValidator</code> class.
+ */
+public class ActionSequenceBatchValidatorTest extends TestCase {
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("batch"); //$NON-NLS-1$
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Tests validating a directory tree with more files than may be pending.
+     */
+    public void testValidateDirectory() throws Exception {
+        ActionSequenceDocument validDoc = new ActionSequenceDocument();
+        ActionSequenceDocument brokenDoc = new ActionSequenceDocument();
+        ActionDefinition action = (ActionDefinition) brokenDoc.addAction(SqlQueryAction.class);
+        action.addInput("unknown", STRING_TYPE); //$NON-NLS-1$
+        Path subdirectory = Files.createDirectory(directory.resolve("sub")); //$NON-NLS-1$
+        for (int i = 0; i < 10; i++) {
+            write(directory.resolve("valid" + i + ".xaction"), validDoc.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        write(subdirectory.resolve("broken.xaction"), brokenDoc.toString()); //$NON-NLS-1$
+        write(subdirectory.resolve("malformed.XACTION"), "<action-sequence>"); //$NON-NLS-1$ //$NON-NLS-2$
+        write(subdirectory.resolve("ignored.xml"), "<action-sequence>"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List results = new ArrayList();
+        try {
+            new ActionSequenceBatchValidator(executor, 3).validate(directory, results::add);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(12, results.size());
+        int validCount = 0;
+        for (Object obj : results) {
+            ActionSequenceBatchValidator.Result result = (ActionSequenceBatchValidator.Result) obj;
+            String fileName = result.getFile().getFileName().toString();
+            if (fileName.startsWith("valid")) { //$NON-NLS-1$
+                assertTrue(result.isValid());
+                validCount++;
+            } else if (fileName.startsWith("malformed")) { //$NON-NLS-1$
+                assertNotNull(result.getException());
+            } else {
+                assertNull(result.getException());
+                ActionSequenceBatchValidator.Problem brokenReference = null;
+                for (Object problem : result.getProblems()) {
+                    if ("unknown".equals(((ActionSequenceBatchValidator.Problem) problem).getParameterName())) { //$NON-NLS-1$
+                        brokenReference = (ActionSequenceBatchValidator.Problem) problem;
+                    }
+                }
+                assertNotNull(brokenReference);
+                assertEquals(INPUT_REFERENCES_UNKNOWN_VAR, brokenReference.getErrorCode());
+                assertEquals(action.getComponentName(), brokenReference.getComponentName());
+                assertEquals(action.getElement().getUniquePath(), brokenReference.getPath());
+            }
+        }
+        assertEquals(10, validCount);
+    }
+
+    private static void write(Path file, String xml) throws Exception {
+        Files.write(file, xml.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.dom4j.DocumentException;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceBinaryFormat</code> class.
+ */
+public class ActionSequenceBinaryFormatTest extends TestCase {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //$NON-NLS-1$
+            + "<!-- header -->\n" //$NON-NLS-1$
+            + "<action-sequence xmlns:ext=\"urn:ext\">\n" //$NON-NLS-1$
+            + "  <title>Test &amp; title \u00e9\u4e2d</title>\n" //$NON-NLS-1$
+            + "  <ext:info xmlns:other=\"urn:other\" other:flag=\"yes\">text</ext:info>\n" //$NON-NLS-1$
+            + "  <inputs><rows type=\"result-set\"/><name type=\"string\"><default-value/></name></inputs>\n" //$NON-NLS-1$
+            + "  <outputs/>\n" //$NON-NLS-1$
+            + "  <resources/>\n" //$NON-NLS-1$
+            + "  <actions loop-on=\"rows\">\n" //$NON-NLS-1$
+            + "    <action-definition ext:note=\"first\">\n" //$NON-NLS-1$
+            + "      <component-name>SQLLookupRule</component-name>\n" //$NON-NLS-1$
+            + "      <action-inputs><name type=\"string\"/><other type=\"string\" mapping=\"missing\"/></action-inputs>\n" //$NON-NLS-1$
+            + "      <action-outputs><query-result type=\"result-set\" mapping=\"rows2\"/></action-outputs>\n" //$NON-NLS-1$
+            + "      <component-definition><query><![CDATA[select * from t where a < 1]]></query></component-definition>\n" //$NON-NLS-1$
+            + "    </action-definition>\n" //$NON-NLS-1$
+            + "    <?marker data?>\n" //$NON-NLS-1$
+            + "  </actions>\n" //$NON-NLS-1$
+            + "  <actions>\n" //$NON-NLS-1$
+            + "    <action-definition>\n" //$NON-NLS-1$
+            + "      <component-name>SQLLookupRule</component-name>\n" //$NON-NLS-1$
+            + "      <action-inputs><rows2 type=\"result-set\"/></action-inputs>\n" //$NON-NLS-1$
+            + "    </action-definition>\n" //$NON-NLS-1$
+            + "  </actions>\n" //$NON-NLS-1$
+            + "</action-sequence>\n"; //$NON-NLS-1$
+
+    /**
+     * Tests that a decoded document matches the document it was encoded from,
+     * and that its wrappers and reference index are available as they are for
+     * a loaded document.
+     */
+    public void testRoundTrip() throws Exception {
+        ActionSequenceDocument loaded = ActionSequenceLoader.load(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        byte[] bytes = ActionSequenceBinaryFormat.toByteArray(loaded);
+        ActionSequenceDocument decoded = ActionSequenceBinaryFormat.read(bytes);
+
+        assertEquals(loaded.getDocument().asXML(), decoded.getDocument().asXML());
+        assertEquals(loaded.toString(), decoded.toString());
+        assertEquals("UTF-8", decoded.getDocument().getXMLEncoding()); //$NON-NLS-1$
+        assertTrue(TrackingDocumentFactory.hasReferenceIndex(decoded.getDocument()));
+        assertEquals(1, decoded.getBrokenReferences().length);
+        IActionLoop loop = (IActionLoop) decoded.getExecutableChildren()[0];
+        assertTrue(loop.getChildren()[0] instanceof SqlQueryAction);
+        assertEquals(2, decoded.getExecutableChildren().length);
+        assertTrue(bytes.length < XML.length());
+
+        // Encoding the decoded document gives the same bytes.
+        assertTrue(Arrays.equals(bytes, ActionSequenceBinaryFormat.toByteArray(decoded)));
+    }
+
+    /**
+     * Tests a document built through the API and the stream and buffer forms.
+     */
+    public void testStreams() throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.setTitle("title"); //$NON-NLS-1$
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        IActionLoop loop = doc.addLoop("input1"); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        action.addInput("input1", STRING_TYPE); //$NON-NLS-1$
+        action.addOutput("output1", STRING_TYPE); //$NON-NLS-1$
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ActionSequenceBinaryFormat.write(doc, out);
+        ActionSequenceDocument decoded = ActionSequenceBinaryFormat.read(new ByteArrayInputStream(out.toByteArray()),
+                null);
+        assertEquals(doc.toString(), decoded.toString());
+        assertEquals(doc.validate().length, decoded.validate().length);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray()).flip();
+        assertEquals(doc.toString(), ActionSequenceBinaryFormat.read(buffer, null).toString());
+        assertEquals(0, buffer.position());
+    }
+
+    /**
+     * Tests that data that is not a complete encoded document is rejected.
+     */
+    public void testInvalidData() throws Exception {
+        byte[] bytes = ActionSequenceBinaryFormat.toByteArray(
+                ActionSequenceLoader.load(new ByteArrayInputStream(XML.getBytes(UTF_8))));
+        assertInvalid(XML.getBytes(UTF_8));
+        assertInvalid(Arrays.copyOf(bytes, bytes.length / 2));
+        assertInvalid(Arrays.copyOf(bytes, bytes.length - 1));
+        byte[] newVersion = bytes.clone();
+        newVersion[3] = ActionSequenceBinaryFormat.VERSION + 1;
+        assertInvalid(newVersion);
+    }
+
+    private static void assertInvalid(byte[] bytes) {
+        try {
+            ActionSequenceBinaryFormat.read(bytes);
+            fail();
+        } catch (DocumentException e) {
+            // expected
+        }
+    }
+}
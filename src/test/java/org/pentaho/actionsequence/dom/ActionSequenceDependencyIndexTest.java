@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import static java.util.Arrays.asList;
+import static java.util.Collections.EMPTY_LIST;
+import java.util.Map;
+import junit.framework.TestCase;
+import static org.pentaho.actionsequence.dom.ActionSequenceDependencyIndex.JNDI;
+import static org.pentaho.actionsequence.dom.ActionSequenceDependencyIndex.RESOURCE;
+import static org.pentaho.actionsequence.dom.ActionSequenceDependencyIndex.SUB_ACTION;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+import org.pentaho.actionsequence.dom.actions.SubActionAction;
+
+/**
+ * Tests for the <code>ActionSequenceDependencyIndex</code> class.
+ */
+public class ActionSequenceDependencyIndexTest extends TestCase {
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("index"); //$NON-NLS-1$
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Tests queries before and after the index is saved, and updates of
+     * modified, removed and unreadable files.
+     */
+    public void testFindDependents() throws Exception {
+        Path fileA = createFile("a.xaction", "jdbc/a", "sub.xaction"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        Path fileB = createFile("b.xaction", "jdbc/a", null); //$NON-NLS-1$ //$NON-NLS-2$
+        Path indexFile = directory.resolve("dependencies.idx"); //$NON-NLS-1$
+
+        ActionSequenceDependencyIndex index = new ActionSequenceDependencyIndex(indexFile);
+        assertTrue(index.updateAll(directory).isEmpty());
+        assertEquals(2, index.size());
+        assertEquals(asList(new Path[]{fileA, fileB}), index.findDependents(JNDI, "jdbc/a")); //$NON-NLS-1$
+        assertEquals(asList(new Path[]{fileA}), index.findDependents(SUB_ACTION, "sub.xaction")); //$NON-NLS-1$
+        assertEquals(asList(new Path[]{fileA, fileB}), index.findDependents(RESOURCE, "report.xml")); //$NON-NLS-1$
+        index.save();
+
+        index = new ActionSequenceDependencyIndex(indexFile);
+        assertEquals(2, index.size());
+        assertEquals(asList(new Path[]{fileA, fileB}), index.findDependents(JNDI, "jdbc/a")); //$NON-NLS-1$
+        assertFalse(index.update(fileA));
+
+        createFile("b.xaction", "jdbc/b", null); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.setLastModifiedTime(fileB, FileTime.fromMillis(Files.getLastModifiedTime(fileB).toMillis() + 5000));
+        Files.delete(fileA);
+        Path fileC = directory.resolve("c.xaction"); //$NON-NLS-1$
+        Files.write(fileC, "<action-sequence>".getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+        Map<Path, Exception> failures = index.updateAll(directory);
+        assertEquals(asList(new Path[]{fileC}), asList(failures.keySet().toArray()));
+        assertEquals(EMPTY_LIST, index.findDependents(JNDI, "jdbc/a")); //$NON-NLS-1$
+        assertEquals(asList(new Path[]{fileB}), index.findDependents(JNDI, "jdbc/b")); //$NON-NLS-1$
+        assertEquals(1, index.size());
+        index.save();
+
+        index = new ActionSequenceDependencyIndex(indexFile);
+        assertEquals(1, index.size());
+        assertEquals(EMPTY_LIST, index.findDependents(SUB_ACTION, "sub.xaction")); //$NON-NLS-1$
+        assertEquals(asList(new Path[]{fileB}), index.findDependents(JNDI, "jdbc/b")); //$NON-NLS-1$
+    }
+
+    private Path createFile(String name, String jndi, String subActionPath) throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.createInput("jndi", STRING_TYPE).setDefaultValue(jndi); //$NON-NLS-1$
+        doc.setResourceUri("report", new URI("report.xml"), "text/xml"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        SqlQueryAction query = (SqlQueryAction) doc.addAction(SqlQueryAction.class);
+        query.setJndi(new SimpleActionInputVariable("jndi", STRING_TYPE)); //$NON-NLS-1$
+        if (subActionPath != null) {
+            SubActionAction subAction = (SubActionAction) doc.addAction(SubActionAction.class);
+            subAction.setPath(new ActionInputConstant(subActionPath, null));
+        }
+        Path file = directory.resolve(name);
+        Files.write(file, doc.getDocument().asXML().getBytes("UTF-8")); //$NON-NLS-1$
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import junit.framework.TestCase;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceDocumentCache</code> class.
+ */
+public class ActionSequenceDocumentCacheTest extends TestCase {
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("cache"); //$NON-NLS-1$
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Tests hits, misses and reloading of modified files.
+     */
+    public void testGetDocument() throws Exception {
+        ActionSequenceDocumentCache cache = new ActionSequenceDocumentCache();
+        Path file = createFile("a.xaction", "title1"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        ActionSequenceDocument doc = cache.getDocument("solution", "path", "a.xaction", file); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals("title1", doc.getTitle()); //$NON-NLS-1$
+        assertEquals("a.xaction", doc.getMetadata().getDocumentName()); //$NON-NLS-1$
+        try {
+            doc.setTitle("changed"); //$NON-NLS-1$
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // The cached document is shared and read only.
+        }
+        assertSame(doc, cache.getDocument("solution", "path", "a.xaction", file)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        // Touching the file without changing it keeps the cached document.
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+        assertSame(doc, cache.getDocument("solution", "path", "a.xaction", file)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals(2, cache.getHitCount());
+
+        createFile("a.xaction", "title2"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10000));
+        ActionSequenceDocument newDoc = cache.getDocument("solution", "path", "a.xaction", file); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertNotSame(doc, newDoc);
+        assertEquals("title2", newDoc.getTitle()); //$NON-NLS-1$
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Tests that copies and snapshots are independent of the cached document.
+     */
+    public void testGetCopy() throws Exception {
+        ActionSequenceDocumentCache cache = new ActionSequenceDocumentCache();
+        Path file = createFile("a.xaction", "title1"); //$NON-NLS-1$ //$NON-NLS-2$
+        ActionSequenceDocument copy = cache.getCopy("solution", "path", "a.xaction", file); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        copy.setTitle("changed"); //$NON-NLS-1$
+        assertEquals("title1", cache.getDocument("solution", "path", "a.xaction", file).getTitle()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        assertEquals("path", copy.getMetadata().getSolutionPath()); //$NON-NLS-1$
+
+        ActionSequenceSnapshot snapshot = cache.getSnapshot("solution", "path", "a.xaction", file); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertSame(snapshot, cache.getSnapshot("solution", "path", "a.xaction", file)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals("title1", snapshot.getDocument().getTitle()); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests eviction by number of entries and by weight.
+     */
+    public void testEviction() throws Exception {
+        Path fileA = createFile("a.xaction", "a"); //$NON-NLS-1$ //$NON-NLS-2$
+        Path fileB = createFile("b.xaction", "b"); //$NON-NLS-1$ //$NON-NLS-2$
+        Path fileC = createFile("c.xaction", "c"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        ActionSequenceDocumentCache cache = new ActionSequenceDocumentCache(2, Long.MAX_VALUE);
+        cache.getDocument(null, null, "a", fileA); //$NON-NLS-1$
+        cache.getDocument(null, null, "b", fileB); //$NON-NLS-1$
+        cache.getDocument(null, null, "a", fileA); //$NON-NLS-1$
+        cache.getDocument(null, null, "c", fileC); //$NON-NLS-1$
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        // b was the least recently used entry.
+        cache.getDocument(null, null, "a", fileA); //$NON-NLS-1$
+        assertEquals(3, cache.getMissCount());
+
+        long size = Files.size(fileA);
+        cache = new ActionSequenceDocumentCache(10, (2 * size) + 1);
+        cache.getDocument(null, null, "a", fileA); //$NON-NLS-1$
+        cache.getDocument(null, null, "b", fileB); //$NON-NLS-1$
+        cache.getDocument(null, null, "c", fileC); //$NON-NLS-1$
+        assertEquals(2, cache.size());
+        assertEquals(2 * size, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    /**
+     * Tests that documents with the same name loaded from different files are
+     * cached separately, and that concurrent requests load a file once.
+     */
+    public void testKeysAndConcurrentLoads() throws Exception {
+        Path fileA = createFile("a.xaction", "a"); //$NON-NLS-1$ //$NON-NLS-2$
+        Path fileB = createFile("b.xaction", "b"); //$NON-NLS-1$ //$NON-NLS-2$
+        ActionSequenceDocumentCache cache = new ActionSequenceDocumentCache();
+        assertEquals("a", cache.getDocument(null, null, "doc", fileA).getTitle()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("b", cache.getDocument(null, null, "doc", fileB).getTitle()); //$NON-NLS-1$ //$NON-NLS-2$
+        ActionSequenceDocument doc = cache.getDocument(null, null, "doc", fileA); //$NON-NLS-1$
+        assertSame(doc, cache.getDocument(null, null, "doc", directory.resolve("./a.xaction"))); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(2, cache.size());
+        cache.invalidate(null, null, "doc"); //$NON-NLS-1$
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+
+        final ActionSequenceDocumentCache sharedCache = new ActionSequenceDocumentCache();
+        final ActionSequenceDocument[] docs = new ActionSequenceDocument[8];
+        final CyclicBarrier barrier = new CyclicBarrier(docs.length);
+        Thread[] threads = new Thread[docs.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    docs[index] = sharedCache.getDocument(null, null, "doc", fileA); //$NON-NLS-1$
+                } catch (Exception e) {
+                    // The document stays null.
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (ActionSequenceDocument loadedDoc : docs) {
+            assertSame(docs[0], loadedDoc);
+        }
+        assertNotNull(docs[0]);
+        assertEquals(1, sharedCache.getMissCount());
+        assertEquals(docs.length - 1, sharedCache.getHitCount());
+    }
+
+    /**
+     * Tests finding action definitions across the cached documents.
+     */
+    public void testFindActions() throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.addAction(SqlQueryAction.class);
+        doc.addLoop("input1").addAction(SqlQueryAction.class); //$NON-NLS-1$
+        Path fileA = directory.resolve("a.xaction"); //$NON-NLS-1$
+        Files.write(fileA, doc.getDocument().asXML().getBytes("UTF-8")); //$NON-NLS-1$
+        Path fileB = createFile("b.xaction", "b"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        ActionSequenceDocumentCache cache = new ActionSequenceDocumentCache();
+        ActionSequenceDocument docA = cache.getDocument(null, null, "a", fileA); //$NON-NLS-1$
+        cache.getDocument(null, null, "b", fileB); //$NON-NLS-1$
+        Map<ActionSequenceDocument, SqlQueryAction[]> actions = cache.findActions(SqlQueryAction.class);
+        assertEquals(1, actions.size());
+        assertEquals(2, actions.get(docA).length);
+    }
+
+    private Path createFile(String name, String title) throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.setTitle(title);
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        Path file = directory.resolve(name);
+        Files.write(file, doc.getDocument().asXML().getBytes("UTF-8")); //$NON-NLS-1$
+        return file;
+    }
+}
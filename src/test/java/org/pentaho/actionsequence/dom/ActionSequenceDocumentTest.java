@@ -0,0 +1,629 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import static java.nio.channels.Channels.newChannel;
+import java.util.Arrays;
+import static java.util.Arrays.asList;
+import java.util.HashSet;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import junit.framework.TestCase;
+import static org.dom4j.DocumentHelper.parseText;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.PROPERTY_MAP_LIST_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.AbstractRelationalDbAction;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.FormatMsgAction;
+import org.pentaho.actionsequence.dom.actions.SqlExecuteAction;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceDocument</code> class.
+ */
+public class ActionSequenceDocumentTest extends TestCase {
+
+    /**
+     * Tests that repeated navigation returns the same wrappers.
+     */
+    public void testWrapperIdentity() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionSequenceInput input = doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        IActionLoop loop = doc.addLoop("input1"); //$NON-NLS-1$
+        IActionDefinition action = loop.addAction(SqlQueryAction.class);
+
+        assertSame(input, doc.getInput("input1")); //$NON-NLS-1$
+        assertSame(doc.getInputs()[0], doc.getInputs()[0]);
+        assertSame(loop, doc.getExecutableChildren()[0]);
+        assertSame(action, loop.getChildren()[0]);
+        assertSame(loop, action.getParent());
+        assertSame(doc, action.getDocument());
+        assertSame(doc, input.getDocument());
+
+        // Equality is still based on the wrapped element.
+        assertEquals(input, new ActionSequenceInput(input.getElement(), null));
+    }
+
+    /**
+     * Tests that modified elements get new wrappers.
+     */
+    public void testWrapperInvalidation() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionLoop loop = doc.addLoop("input1"); //$NON-NLS-1$
+        IActionDefinition action = loop.addAction(SqlQueryAction.class);
+        action.delete();
+        assertEquals(0, loop.getChildren().length);
+
+        IActionDefinition newAction = loop.addAction(SqlQueryAction.class);
+        assertNotSame(action, newAction);
+        assertSame(newAction, loop.getChildren()[0]);
+
+        IActionInput actionInput = ((ActionDefinition) newAction).addInput("query", STRING_TYPE); //$NON-NLS-1$
+        assertSame(actionInput, ((ActionDefinition) loop.getChildren()[0]).getInputParam("query")); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that navigating from an element neither wraps nor modifies the
+     * document it belongs to.
+     */
+    public void testElementNavigation() throws Exception {
+        String xml = "<actions><action-definition><component-name>SQLLookupRule</component-name>" //$NON-NLS-1$
+                + "<action-inputs><query type=\"string\"/></action-inputs></action-definition></actions>"; //$NON-NLS-1$
+        Element actionElement = parseText(xml).getRootElement().element("action-definition"); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) ActionSequenceDocument.getElement(actionElement, null);
+        assertNotNull(action.getInputParam("query")); //$NON-NLS-1$
+        assertEquals(xml, actionElement.getDocument().getRootElement().asXML());
+        assertNull(ActionSequenceDocument.documentWrappers.get(actionElement.getDocument()));
+    }
+
+    /**
+     * Tests that wrappers of the same element have the same hash code so that
+     * they can be used in hash based collections.
+     */
+    public void testHashCodes() throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionSequenceInput input = doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        IActionSequenceResource resource = doc.setResourceUri("resource1", new URI("file:/tmp/a.xml"), "text/xml"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        IActionLoop loop = doc.addLoop("input1"); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        ActionInput actionInput = action.addInput("input1", STRING_TYPE); //$NON-NLS-1$
+
+        HashSet wrappers = new HashSet(asList(new Object[]{doc, input, resource, loop, action, actionInput,
+            new ActionInputConstant("value", null)})); //$NON-NLS-1$
+        assertTrue(wrappers.contains(new ActionSequenceDocument(doc.getDocument())));
+        assertTrue(wrappers.contains(new ActionSequenceInput(input.getElement(), null)));
+        assertTrue(wrappers.contains(new ActionSequenceResource(resource.getElement(), null)));
+        assertTrue(wrappers.contains(new ActionLoop(loop.getElement(), null)));
+        assertTrue(wrappers.contains(new ActionInput(actionInput.getElement(), null)));
+        assertTrue(wrappers.contains(new ActionInputConstant("value", null))); //$NON-NLS-1$
+        assertFalse(wrappers.contains(new ActionOutput(actionInput.getElement(), null)));
+
+        ActionInputConstant nullConstant = new ActionInputConstant((Object) null, null);
+        assertEquals(nullConstant, nullConstant);
+
+        // Adding the explicit resource does not change the hash of an implicit one.
+        ImplicitActionResource implicitResource = new ImplicitActionResource(action, "resource2", null); //$NON-NLS-1$
+        int hash = implicitResource.hashCode();
+        implicitResource.setMimeType("text/xml"); //$NON-NLS-1$
+        assertNotNull(action.getResource("resource2", false)); //$NON-NLS-1$
+        assertEquals(hash, implicitResource.hashCode());
+    }
+
+    /**
+     * Tests adding and removing document listeners.
+     */
+    public void testListeners() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        final int[] added = new int[1];
+        IActionSequenceDocumentListener listener = new ActionSequenceDocumentAdapter() {
+            @Override
+            public void ioAdded(IAbstractIOElement io) {
+                added[0]++;
+            }
+        };
+        doc.addListener(listener);
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        assertEquals(1, added[0]);
+
+        // Listeners are shared by all wrappers of the same dom4j document.
+        new ActionSequenceDocument(doc.getDocument()).createInput("input2", STRING_TYPE); //$NON-NLS-1$
+        assertEquals(2, added[0]);
+
+        doc.removeListener(listener);
+        doc.createInput("input3", STRING_TYPE); //$NON-NLS-1$
+        assertEquals(2, added[0]);
+
+        // A listener that refers back to its document does not keep the
+        // document alive.
+        assertCollected(createListenedDocument(added));
+        assertEquals(3, added[0]);
+    }
+
+    /**
+     * @return a reference to the dom4j document of a wrapper that is only
+     * reachable from its own listener
+     */
+    private static Reference createListenedDocument(final int[] added) {
+        final ActionSequenceDocument listenedDoc = new ActionSequenceDocument();
+        listenedDoc.addListener(new ActionSequenceDocumentAdapter() {
+            @Override
+            public void ioAdded(IAbstractIOElement io) {
+                added[0] += listenedDoc.getInputs().length;
+            }
+        });
+        listenedDoc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        return new WeakReference(listenedDoc.getDocument());
+    }
+
+    /**
+     * Asserts that the referent of a reference is garbage collected once the
+     * caller no longer refers to it.
+     */
+    static void assertCollected(Reference ref) {
+        for (int i = 0; (i < 50) && (ref.get() != null); i++) {
+            System.gc();
+            byte[][] garbage = new byte[16][];
+            for (int j = 0; j < garbage.length; j++) {
+                garbage[j] = new byte[1 << 20];
+            }
+        }
+        assertNull(ref.get());
+    }
+
+    /**
+     * Tests that a committed batch is delivered once as coalesced changes, and
+     * that a rolled back batch restores the document without notifying the
+     * listeners.
+     */
+    public void testBatch() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        final int[] events = new int[2];
+        doc.addListener(new ActionSequenceDocumentAdapter() {
+            @Override
+            public void ioAdded(IAbstractIOElement io) {
+                events[0]++;
+            }
+
+            @Override
+            public void ioChanged(IAbstractIOElement io) {
+                events[0]++;
+            }
+
+            @Override
+            public void changesCommitted(ActionSequenceChangeSet changes) {
+                events[1]++;
+                super.changesCommitted(changes);
+            }
+        });
+
+        doc.beginBatch();
+        IActionSequenceInput input = doc.createInput("input2", STRING_TYPE); //$NON-NLS-1$
+        input.setDefaultValue("a"); //$NON-NLS-1$
+        input.setDefaultValue("b"); //$NON-NLS-1$
+        IActionSequenceInput existingInput = doc.getInput("input1"); //$NON-NLS-1$
+        existingInput.setDefaultValue("a"); //$NON-NLS-1$
+        existingInput.setDefaultValue("b"); //$NON-NLS-1$
+        try {
+            doc.beginBatch();
+            fail();
+        } catch (IllegalStateException e) {
+            // Batches do not nest.
+        }
+        assertEquals(0, events[0]);
+        ActionSequenceChangeSet changes = doc.commit();
+        assertEquals(2, changes.size());
+        assertEquals(2, events[0]);
+        assertEquals(1, events[1]);
+
+        String xml = doc.toString();
+        try {
+            doc.edit(editedDoc -> {
+                editedDoc.createInput("input3", STRING_TYPE); //$NON-NLS-1$
+                editedDoc.getInput("input1").setType(RESULTSET_TYPE); //$NON-NLS-1$
+                editedDoc.setTitle("title"); //$NON-NLS-1$
+                throw new IllegalArgumentException();
+            });
+            fail();
+        } catch (IllegalArgumentException e) {
+            // The edits are rolled back.
+        }
+        assertEquals(xml, doc.toString());
+        assertEquals(STRING_TYPE, doc.getInput("input1").getType()); //$NON-NLS-1$
+        assertNull(doc.getInput("input3")); //$NON-NLS-1$
+        assertEquals(2, events[0]);
+        assertEquals(1, events[1]);
+        try {
+            doc.commit();
+            fail();
+        } catch (IllegalStateException e) {
+            // The batch was ended by the rollback.
+        }
+
+        // Changes below an element removed later in the batch are reported by
+        // its removal alone.
+        ActionDefinition action = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        changes = doc.edit(editedDoc -> {
+            action.addInput("input1", STRING_TYPE).setMapping("input2"); //$NON-NLS-1$ //$NON-NLS-2$
+            action.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+            action.delete();
+        });
+        assertEquals(1, changes.size());
+        changes = doc.edit(editedDoc -> {
+            IActionDefinition addedAction = editedDoc.addAction(SqlQueryAction.class);
+            addedAction.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+            addedAction.delete();
+        });
+        assertTrue(changes.isEmpty());
+    }
+
+    /**
+     * Tests reference lookups through input names, mappings, loop-on and
+     * action outputs.
+     */
+    public void testReferences() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionSequenceInput input = doc.createInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition producer = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        IActionOutput output = producer.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        producer.addInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        ActionInput mappedInput = producer.addInput("query", STRING_TYPE); //$NON-NLS-1$
+        mappedInput.setMapping("docInput"); //$NON-NLS-1$
+        ActionInput brokenInput = producer.addInput("unknown", STRING_TYPE); //$NON-NLS-1$
+
+        IActionLoop loop = doc.addLoop("rows"); //$NON-NLS-1$
+        loop.setLoopOn("rows"); //$NON-NLS-1$
+        ActionDefinition consumer = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        IActionInput outputInput = consumer.addInput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+
+        assertEquals(2, doc.getReferencesTo(input).length);
+        IActionSequenceElement[] outputReferences = doc.getReferencesTo(output);
+        assertEquals(2, outputReferences.length);
+        assertEquals(loop, outputReferences[0]);
+        assertEquals(outputInput, outputReferences[1]);
+
+        IActionSequenceElement[] brokenReferences = doc.getBrokenReferences();
+        assertEquals(1, brokenReferences.length);
+        assertEquals(brokenInput, brokenReferences[0]);
+        assertEquals(2, doc.getAvailInputVariables(consumer, RESULTSET_TYPE).length);
+
+        // Outputs are not available to actions that precede the producer.
+        brokenInput.delete();
+        doc.getRootLoop().add(consumer, 0);
+        assertEquals(0, doc.getAvailInputVariables(consumer, RESULTSET_TYPE).length);
+        brokenReferences = doc.getBrokenReferences();
+        assertEquals(1, brokenReferences.length);
+        assertEquals(outputInput, brokenReferences[0]);
+
+        // Direct edits of the tree are seen by the next query.
+        assertEquals(2, doc.getReferencesTo(input).length);
+        mappedInput.getElement().addAttribute("mapping", "other"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, doc.getReferencesTo(input).length);
+        consumer.getElement().element("action-inputs").addElement("docInput"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(2, doc.getReferencesTo(input).length);
+        consumer.getElement().detach();
+        assertEquals(1, doc.getReferencesTo(input).length);
+        brokenReferences = doc.getBrokenReferences();
+        assertEquals(1, brokenReferences.length);
+        assertEquals(mappedInput, brokenReferences[0]);
+    }
+
+    /**
+     * Tests renaming an action input and its parameter references in place,
+     * and renaming a variable throughout the document.
+     */
+    public void testRename() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionSequenceInput input = doc.createInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition producer = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        producer.addInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        producer.addInput("a.b", STRING_TYPE); //$NON-NLS-1$
+        ActionInput mappedInput = producer.addInput("query", STRING_TYPE); //$NON-NLS-1$
+        mappedInput.setMapping("docInput"); //$NON-NLS-1$
+        producer.setComponentDefinition("query", "select {a.b}, {axb} from {a.b}", true); //$NON-NLS-1$ //$NON-NLS-2$
+        producer.setComponentDefinitionAttribute("query", "param", "{a.b}"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        producer.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        Element componentDefElement = producer.getComponentDefElement();
+
+        producer.renameInput("a.b", "c.d"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNotNull(producer.getInputParam("c.d")); //$NON-NLS-1$
+        assertSame(componentDefElement, producer.getComponentDefElement());
+        assertEquals("select {c.d}, {axb} from {c.d}", producer.getComponentDefinitionValue("query")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("{c.d}", producer.getComponentDefElement("query").attributeValue("param")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        IActionLoop loop = doc.addLoop("rows"); //$NON-NLS-1$
+        loop.setLoopOn("rows"); //$NON-NLS-1$
+        ActionDefinition consumer = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        consumer.addInput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        IActionSequenceOutput output = doc.createOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+
+        doc.renameVariable("docInput", "name"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("name", input.getName()); //$NON-NLS-1$
+        assertEquals("name", producer.getInputParam("docInput").getMapping()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("name", mappedInput.getMapping()); //$NON-NLS-1$
+        assertEquals(2, doc.getReferencesTo(input).length);
+
+        int brokenReferences = doc.getBrokenReferences().length;
+        doc.renameVariable("rows", "query"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("query", loop.getLoopOn()); //$NON-NLS-1$
+        assertEquals("query", output.getName()); //$NON-NLS-1$
+        assertEquals("query", consumer.getInputParam("rows").getMapping()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("query", producer.getOutput("rows").getPublicName()); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(brokenReferences, doc.getBrokenReferences().length);
+    }
+
+    /**
+     * Tests the preceding statements and available variables of nested
+     * statements, before and after a statement is moved, and in a loaded
+     * document.
+     */
+    public void testScopes() throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition first = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        first.addOutput("output1", STRING_TYPE); //$NON-NLS-1$
+        IActionLoop loop = doc.addLoop("input1"); //$NON-NLS-1$
+        ActionDefinition nested = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        nested.addOutput("output2", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition nestedLast = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        ActionDefinition last = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+
+        // The containing loop is not one of the preceding statements.
+        assertEquals(asList(new Object[]{first, nested}), asList(doc.getPrecedingExecutables(nestedLast)));
+        assertEquals(asList(new Object[]{first, nested}), asList(doc.getPrecedingActionDefinitions(nestedLast)));
+        assertEquals(asList(new Object[]{first, loop}), asList(doc.getPrecedingExecutables(last)));
+        assertEquals(3, doc.getAvailInputVariables(nestedLast, STRING_TYPE).length);
+        // Outputs of actions nested in a preceding loop are not visible.
+        assertEquals(2, doc.getAvailInputVariables(last, STRING_TYPE).length);
+        assertEquals(0, doc.getPrecedingExecutables(first).length);
+
+        ActionSequenceDocument loadedDoc = ActionSequenceLoader.load(
+                new ByteArrayInputStream(doc.toString().getBytes("UTF-8"))); //$NON-NLS-1$
+        IActionSequenceExecutableStatement[] loadedChildren = loadedDoc.getExecutableChildren();
+        assertEquals(asList(new Object[]{loadedChildren[0], loadedChildren[1]}),
+                asList(loadedDoc.getPrecedingExecutables((IActionDefinition) loadedChildren[2])));
+        assertEquals(2, loadedDoc.getAvailInputVariables((IActionDefinition) loadedChildren[2], STRING_TYPE).length);
+
+        doc.getRootLoop().add(last, 0);
+        assertEquals(0, doc.getPrecedingExecutables(last).length);
+        assertEquals(asList(new Object[]{last, first}), asList(doc.getPrecedingExecutables(loop)));
+        assertEquals(1, doc.getAvailInputVariables(last, STRING_TYPE).length);
+
+        doc.moveStatement(nestedLast, null);
+        assertEquals(asList(new Object[]{last, first, loop}), asList(doc.getPrecedingExecutables(nestedLast)));
+        assertEquals(2, doc.getAvailInputVariables(nestedLast, STRING_TYPE).length);
+        doc.moveStatement(first, loop, 0);
+        assertEquals(asList(new Object[]{last, first}), asList(doc.getPrecedingExecutables(nested)));
+        assertEquals(2, doc.getAvailInputVariables(nested, STRING_TYPE).length);
+        assertEquals(asList(new Object[]{last, loop}), asList(doc.getPrecedingExecutables(nestedLast)));
+        assertEquals(1, doc.getAvailInputVariables(nestedLast, STRING_TYPE).length);
+    }
+
+    /**
+     * Tests that the reference index of a tracked document is updated in place
+     * by edits made through the wrapper API, keeping its lists in document
+     * order, and rebuilt once the tree is edited directly.
+     */
+    public void testReferenceIndexUpdates() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionSequenceInput input = doc.createInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition producer = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        producer.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        ActionInput producerInput = producer.addInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        IActionLoop loop = doc.addLoop("rows"); //$NON-NLS-1$
+        ActionDefinition consumer = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        assertEquals(1, doc.getReferencesTo(input).length);
+        ReferenceIndex index = doc.getReferenceIndex();
+
+        ActionInput consumerInput = consumer.addInput("query", STRING_TYPE); //$NON-NLS-1$
+        consumerInput.setMapping("docInput"); //$NON-NLS-1$
+        ActionDefinition first = (ActionDefinition) doc.getRootLoop().addAction(SqlQueryAction.class, 0);
+        ActionInput firstInput = first.addInput("docInput", STRING_TYPE); //$NON-NLS-1$
+        assertEquals(asList(new Object[]{firstInput, producerInput, consumerInput}),
+                asList(doc.getReferencesTo(input)));
+        assertEquals(asList(new Object[]{first, producer}), asList(doc.getPrecedingExecutables(consumer)));
+        assertSame(index, doc.getReferenceIndex());
+        assertSame(index.getVisibleOutputs(consumer.getElement()), index.getVisibleOutputs(consumer.getElement()));
+
+        producerInput.delete();
+        assertEquals(asList(new Object[]{firstInput, consumerInput}), asList(doc.getReferencesTo(input)));
+        consumerInput.setMapping(null);
+        assertEquals(asList(new Object[]{firstInput}), asList(doc.getReferencesTo(input)));
+        assertSame(index, doc.getReferenceIndex());
+
+        // A direct edit is found by the next query, even if an event about
+        // another action definition comes first.
+        producer.getElement().element("action-inputs").addElement("docInput"); //$NON-NLS-1$ //$NON-NLS-2$
+        consumer.addInput("other", STRING_TYPE); //$NON-NLS-1$
+        assertEquals(2, doc.getReferencesTo(input).length);
+        assertNotSame(index, doc.getReferenceIndex());
+        index = doc.getReferenceIndex();
+        first.getElement().detach();
+        assertEquals(1, doc.getReferencesTo(input).length);
+        assertEquals(asList(new Object[]{producer}), asList(doc.getPrecedingExecutables(consumer)));
+        assertNotSame(index, doc.getReferenceIndex());
+    }
+
+    /**
+     * Tests finding nested action definitions by class and by component, in a
+     * modified and in a loaded document.
+     */
+    public void testFindActions() throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition query = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        IActionLoop loop = doc.addLoop("input1"); //$NON-NLS-1$
+        ActionDefinition message = (ActionDefinition) loop.addAction(FormatMsgAction.class);
+        ActionDefinition execute = (ActionDefinition) loop.addAction(SqlExecuteAction.class);
+
+        assertEquals(asList(new Object[]{query}), asList(doc.findActions(SqlQueryAction.class)));
+        assertEquals(asList(new Object[]{query, execute}), asList(doc.findActions(AbstractRelationalDbAction.class)));
+        assertEquals(3, doc.findActions(IActionDefinition.class).length);
+        assertEquals(asList(new Object[]{execute}), asList(doc.findActions(SqlExecuteAction.COMPONENT_NAME)));
+        assertEquals(asList(new Object[]{query}), asList(doc.findActions(SqlQueryAction.COMPONENT_NAME)));
+
+        doc.getRootLoop().add(execute, 0);
+        assertEquals(asList(new Object[]{execute, query}), asList(doc.findActions(AbstractRelationalDbAction.class)));
+        query.delete();
+        assertEquals(asList(new Object[]{execute}), asList(doc.findActions(AbstractRelationalDbAction.class)));
+        message.setComponentName(SqlExecuteAction.COMPONENT_NAME);
+        assertEquals(0, doc.findActions(FormatMsgAction.class).length);
+        assertEquals(2, doc.findActions(SqlExecuteAction.class).length);
+
+        ActionSequenceDocument loadedDoc = ActionSequenceLoader.load(
+                new ByteArrayInputStream(doc.toString().getBytes("UTF-8"))); //$NON-NLS-1$
+        SqlExecuteAction[] loadedActions = loadedDoc.findActions(SqlExecuteAction.class);
+        assertEquals(2, loadedActions.length);
+        assertSame(loadedDoc.getExecutableChildren()[0], loadedActions[0]);
+    }
+
+    /**
+     * Tests the child list of a control statement and inserting children by
+     * position.
+     */
+    public void testChildList() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        ActionControlStatement root = (ActionControlStatement) doc.getRootLoop();
+        IActionDefinition first = root.addAction(SqlQueryAction.class);
+        IActionLoop loop = root.addLoop("input1"); //$NON-NLS-1$
+
+        ExecutableChildList children = root.getChildList();
+        assertEquals(2, children.size());
+        assertTrue(children.isActionDefinition(0));
+        assertTrue(children.isControlStatement(1));
+        assertEquals(1, children.indexOf(loop));
+        assertEquals(1, children.indexOfElement(loop.getElement()));
+        assertFalse(children.contains(new ActionSequenceDocument().getRootLoop()));
+        assertSame(first, children.get(0));
+        assertEquals(asList(root.getChildren()), children);
+
+        IActionDefinition inserted = root.addAction(SqlQueryAction.class, 1);
+        IActionIfStatement ifStatement = root.addIf("true", 0); //$NON-NLS-1$
+        root.add(first, 3);
+        assertEquals(asList(new Object[]{ifStatement, inserted, first, loop}), asList(root.getChildren()));
+        assertEquals(4, root.getChildList().size());
+    }
+
+    /**
+     * Tests that navigating a document does not compile XPath expressions once
+     * the expressions in use have been cached.
+     */
+    public void testXPathCompilation() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        doc.setTitle("title"); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        action.addInput("input1", STRING_TYPE); //$NON-NLS-1$
+
+        navigate(doc);
+        long compilationCount = XPathCache.getCompilationCount();
+        navigate(doc);
+        assertEquals(compilationCount, XPathCache.getCompilationCount());
+    }
+
+    private void navigate(ActionSequenceDocument doc) {
+        assertEquals("title", doc.getTitle()); //$NON-NLS-1$
+        assertEquals(1, doc.getInputs().length);
+        assertNotNull(doc.getInput("input1")); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) doc.getExecutableChildren()[0];
+        assertTrue(action.getInputs().length > 0);
+        assertNotNull(action.getInputParam("input1")); //$NON-NLS-1$
+        assertNotNull(action.getComponentDefElement());
+        doc.validate();
+    }
+
+    /**
+     * Tests that table default values are read through a cursor, cached until
+     * the input changes and match the tables they were set from.
+     */
+    public void testDefaultTable() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        IActionSequenceInput input = doc.createInput("table", RESULTSET_TYPE); //$NON-NLS-1$
+        DefaultTableModel model = new DefaultTableModel(new Object[] {"a", "b"}, 0); //$NON-NLS-1$ //$NON-NLS-2$
+        model.addRow(new Object[] {"1", "x"}); //$NON-NLS-1$ //$NON-NLS-2$
+        model.addRow(new Object[] {"2", "x"}); //$NON-NLS-1$ //$NON-NLS-2$
+        model.addRow(new Object[] {"1", null}); //$NON-NLS-1$
+        input.setDefaultValue(model);
+
+        DefaultTableCursor cursor = input.getDefaultValueCursor();
+        assertEquals(2, cursor.getColumnCount());
+        assertEquals(1, cursor.findColumn("b")); //$NON-NLS-1$
+        int rows = 0;
+        while (cursor.next()) {
+            assertEquals(rows++, cursor.getRow());
+        }
+        assertEquals(3, rows);
+
+        DefaultTableModel table = (DefaultTableModel) input.getDefaultValue();
+        assertEquals(3, table.getRowCount());
+        assertEquals("b", table.getColumnName(1)); //$NON-NLS-1$
+        assertEquals("2", table.getValueAt(1, 0)); //$NON-NLS-1$
+        assertEquals("x", table.getValueAt(1, 1)); //$NON-NLS-1$
+        assertEquals("", table.getValueAt(2, 1)); //$NON-NLS-1$
+
+        // Every call returns a new table, so changes to one are not shared.
+        table.setValueAt("changed", 1, 0); //$NON-NLS-1$
+        TableModel otherTable = (TableModel) doc.getInput("table").getDefaultValue(); //$NON-NLS-1$
+        assertNotSame(table, otherTable);
+        assertEquals("2", otherTable.getValueAt(1, 0)); //$NON-NLS-1$
+
+        // Rows removed directly from the document are not served from the cache.
+        Element defValElement = input.getElement().element("default-value"); //$NON-NLS-1$
+        defValElement.remove(defValElement.element("row")); //$NON-NLS-1$
+        assertEquals(2, ((TableModel) input.getDefaultValue()).getRowCount());
+
+        model.removeRow(0);
+        input.setType(PROPERTY_MAP_LIST_TYPE);
+        input.setDefaultValue(model, true);
+        AbstractTableModel propertyMaps = (AbstractTableModel) input.getDefaultValue();
+        assertNotSame(table, propertyMaps);
+        assertEquals(2, propertyMaps.getRowCount());
+        assertEquals("2", propertyMaps.getValueAt(0, propertyMaps.findColumn("a"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+        input.setType(STRING_TYPE);
+        assertNull(input.getDefaultValueCursor());
+    }
+
+    /**
+     * Tests that pretty printing is stable when the document being written was
+     * itself pretty printed, and that the stream and string forms agree.
+     */
+    public void testWriter() throws Exception {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.setTitle("title"); //$NON-NLS-1$
+        doc.createInput("input1", STRING_TYPE); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        action.addInput("input1", STRING_TYPE); //$NON-NLS-1$
+
+        String xml = doc.toString();
+        assertTrue(xml.startsWith("<action-sequence>")); //$NON-NLS-1$
+        ActionSequenceDocument reparsedDoc = new ActionSequenceDocument(parseText(xml));
+        assertEquals(xml, reparsedDoc.toString());
+        assertEquals(xml, ActionSequenceDocument.prettyPrint(doc.getDocument()).getRootElement().asXML());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.write(out);
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        ActionSequenceWriter.write(doc.getDocument(), newChannel(channelOut));
+        assertTrue(Arrays.equals(out.toByteArray(), channelOut.toByteArray()));
+        assertEquals(xml, new ActionSequenceDocument(parseText(out.toString("UTF-8"))).toString()); //$NON-NLS-1$
+    }
+}
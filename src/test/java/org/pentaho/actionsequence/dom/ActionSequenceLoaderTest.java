@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import junit.framework.TestCase;
+import static org.dom4j.DocumentHelper.parseText;
+import org.dom4j.Element;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceLoader</code> class.
+ */
+public class ActionSequenceLoaderTest extends TestCase {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //$NON-NLS-1$
+            + "<!-- header -->\n" //$NON-NLS-1$
+            + "<action-sequence xmlns:ext=\"urn:ext\">\n" //$NON-NLS-1$
+            + "  <title>Test &amp; title</title>\n" //$NON-NLS-1$
+            + "  <inputs><rows type=\"result-set\"/><name type=\"string\"/></inputs>\n" //$NON-NLS-1$
+            + "  <outputs/>\n" //$NON-NLS-1$
+            + "  <resources/>\n" //$NON-NLS-1$
+            + "  <actions loop-on=\"rows\">\n" //$NON-NLS-1$
+            + "    <action-definition ext:note=\"first\">\n" //$NON-NLS-1$
+            + "      <component-name>SQLLookupRule</component-name>\n" //$NON-NLS-1$
+            + "      <action-inputs><name type=\"string\"/><other type=\"string\" mapping=\"missing\"/></action-inputs>\n" //$NON-NLS-1$
+            + "      <action-outputs><query-result type=\"result-set\" mapping=\"rows2\"/></action-outputs>\n" //$NON-NLS-1$
+            + "      <component-definition><query><![CDATA[select * from t where a < 1]]></query></component-definition>\n" //$NON-NLS-1$
+            + "    </action-definition>\n" //$NON-NLS-1$
+            + "    <?marker data?>\n" //$NON-NLS-1$
+            + "  </actions>\n" //$NON-NLS-1$
+            + "  <actions>\n" //$NON-NLS-1$
+            + "    <action-definition>\n" //$NON-NLS-1$
+            + "      <component-name>SQLLookupRule</component-name>\n" //$NON-NLS-1$
+            + "      <action-inputs><rows2 type=\"result-set\"/></action-inputs>\n" //$NON-NLS-1$
+            + "    </action-definition>\n" //$NON-NLS-1$
+            + "  </actions>\n" //$NON-NLS-1$
+            + "</action-sequence>\n"; //$NON-NLS-1$
+
+    /**
+     * Tests that the loaded document matches the document built from the SAX
+     * parser output.
+     */
+    public void testLoad() throws Exception {
+        ActionSequenceDocument expected = new ActionSequenceDocument(parseText(XML));
+        ActionSequenceDocument loaded = ActionSequenceLoader.load(new ByteArrayInputStream(XML.getBytes("UTF-8"))); //$NON-NLS-1$
+        assertEquals(expected.getDocument().asXML(), loaded.getDocument().asXML());
+        assertEquals("UTF-8", loaded.getDocument().getXMLEncoding()); //$NON-NLS-1$
+
+        // The root actions elements were moved into a new master actions element.
+        assertEquals(1, loaded.getDocument().getRootElement().elements(IActionSequenceDocument.ACTIONS_NAME).size());
+        assertEquals(2, loaded.getExecutableChildren().length);
+    }
+
+    /**
+     * Tests that the reference index and action definition wrappers are
+     * available without further processing.
+     */
+    public void testPrepopulated() throws Exception {
+        ActionSequenceDocument expected = new ActionSequenceDocument(parseText(XML));
+        ActionSequenceDocument loaded = ActionSequenceLoader.load(ByteBuffer.wrap(XML.getBytes("UTF-8"))); //$NON-NLS-1$
+        assertTrue(TrackingDocumentFactory.hasReferenceIndex(loaded.getDocument()));
+        assertEquals(expected.getBrokenReferences().length, loaded.getBrokenReferences().length);
+        assertEquals(1, loaded.getBrokenReferences().length);
+
+        IActionLoop loop = (IActionLoop) loaded.getExecutableChildren()[0];
+        IActionSequenceExecutableStatement action = loop.getChildren()[0];
+        assertTrue(action instanceof SqlQueryAction);
+        assertSame(action, loaded.getElement(action.getElement()));
+        assertEquals(loaded.getReferencesTo(loaded.getInput("rows")).length, //$NON-NLS-1$
+                expected.getReferencesTo(expected.getInput("rows")).length); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests loading from a file.
+     */
+    public void testLoadPath() throws Exception {
+        Path path = Files.createTempFile("test", ".xaction"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            Files.write(path, XML.getBytes("UTF-8")); //$NON-NLS-1$
+            assertEquals(new ActionSequenceDocument(parseText(XML)).toString(),
+                    ActionSequenceLoader.load(path).toString());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Tests loading a file large enough to be mapped into memory, and reading
+     * its embedded XML resource without converting it to a string.
+     */
+    public void testLoadMappedPath() throws Exception {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //$NON-NLS-1$
+                + "<action-sequence><resources><big><xml><location><rows>"); //$NON-NLS-1$
+        for (int i = 0; xml.length() < ActionSequenceLoader.MAPPED_LOAD_THRESHOLD; i++) {
+            xml.append("<row id=\"").append(i).append("\">value ").append(i).append("</row>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        xml.append("</rows></location></xml></big></resources></action-sequence>"); //$NON-NLS-1$
+        Path path = Files.createTempFile("test", ".xaction"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            Files.write(path, xml.toString().getBytes("UTF-8")); //$NON-NLS-1$
+            ActionSequenceDocument loaded = ActionSequenceLoader.load(path);
+            assertEquals(new ActionSequenceDocument(parseText(xml.toString())).toString(), loaded.toString());
+
+            ActionSequenceResource resource = (ActionSequenceResource) loaded.getResource("big"); //$NON-NLS-1$
+            Element xmlElement = resource.getXmlElement();
+            assertEquals("rows", xmlElement.getName()); //$NON-NLS-1$
+            xmlElement.clearContent();
+            assertTrue(resource.getXmlElement().hasContent());
+            StringWriter writer = new StringWriter();
+            assertTrue(resource.writeXml(writer));
+            assertEquals(resource.getXml(), writer.toString());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Tests that external entities are not resolved.
+     */
+    public void testExternalEntities() throws Exception {
+        Path path = Files.createTempFile("test", ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            Files.write(path, "secret".getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+            String xml = "<?xml version=\"1.0\"?><!DOCTYPE action-sequence [<!ENTITY xxe SYSTEM \"" //$NON-NLS-1$
+                    + path.toUri() + "\">]><action-sequence><title>&xxe;</title></action-sequence>"; //$NON-NLS-1$
+            ActionSequenceDocument loaded = ActionSequenceLoader.load(new ByteArrayInputStream(xml.getBytes("UTF-8"))); //$NON-NLS-1$
+            assertEquals(-1, loaded.getDocument().asXML().indexOf("secret")); //$NON-NLS-1$
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.util.concurrent.ConcurrentHashMap;
+import junit.framework.TestCase;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.CachingActionParameterMgr;
+import org.pentaho.actionsequence.dom.actions.IActionParameterMgr;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceSnapshot</code> class.
+ */
+public class ActionSequenceSnapshotTest extends TestCase {
+
+    private ActionSequenceDocument createDocument() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.setTitle("title"); //$NON-NLS-1$
+        doc.createInput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        doc.createInput("name", STRING_TYPE).setDefaultValue("default"); //$NON-NLS-1$ //$NON-NLS-2$
+        doc.createOutput("result", STRING_TYPE); //$NON-NLS-1$
+        SqlQueryAction query = (SqlQueryAction) doc.addAction(SqlQueryAction.class);
+        query.setJndi(new ActionInputConstant("SampleData", null)); //$NON-NLS-1$ //$NON-NLS-2$
+        query.addInput("name", STRING_TYPE); //$NON-NLS-1$
+        IActionLoop loop = doc.addLoop("rows"); //$NON-NLS-1$
+        loop.setLoopOn("rows"); //$NON-NLS-1$
+        ActionDefinition action = (ActionDefinition) loop.addAction(SqlQueryAction.class);
+        action.addInput("name", STRING_TYPE); //$NON-NLS-1$
+        return doc;
+    }
+
+    /**
+     * Tests the contents of a snapshot and that reading it does not fail.
+     */
+    public void testSnapshot() {
+        ActionSequenceDocument doc = createDocument();
+        ActionSequenceSnapshot snapshot = doc.freeze();
+        ActionSequenceDocument frozenDoc = snapshot.getDocument();
+
+        assertEquals(2, snapshot.getInputs().size());
+        assertEquals(1, snapshot.getOutputs().size());
+        assertEquals(2, snapshot.getExecutableChildren().size());
+        assertEquals(2, snapshot.getActionDefinitions().size());
+        assertTrue(snapshot.getActionDefinitions().get(1) instanceof SqlQueryAction);
+        assertEquals("default", snapshot.getInput("name").getDefaultValue()); //$NON-NLS-1$ //$NON-NLS-2$
+
+        assertEquals(doc.toString(), frozenDoc.toString());
+        assertEquals("title", frozenDoc.getTitle()); //$NON-NLS-1$
+        assertEquals(doc.validate().length, frozenDoc.validate().length);
+        assertEquals(doc.getBrokenReferences().length, frozenDoc.getBrokenReferences().length);
+        SqlQueryAction query = (SqlQueryAction) snapshot.getActionDefinitions().get(0);
+        assertEquals("SampleData", query.getJndi().getStringValue()); //$NON-NLS-1$
+        assertEquals(1, frozenDoc.getAvailInputVariables(query, STRING_TYPE).length);
+        assertEquals(1, frozenDoc.getReferencesTo(snapshot.getInput("rows")).length); //$NON-NLS-1$
+
+        // The wrappers of the snapshot are held without a lock.
+        assertTrue(frozenDoc.elementWrappers instanceof ConcurrentHashMap);
+        assertSame(snapshot.getActionDefinitions().get(0), frozenDoc.getExecutableChildren()[0]);
+        assertFalse(doc.elementWrappers instanceof ConcurrentHashMap);
+
+        // The snapshot does not change with the original document.
+        doc.setTitle("changed"); //$NON-NLS-1$
+        assertEquals("title", frozenDoc.getTitle()); //$NON-NLS-1$
+
+        // Copies of the read only document can be modified.
+        ActionSequenceDocument copy = new ActionSequenceDocument((org.dom4j.Document) frozenDoc.getDocument().clone());
+        copy.setTitle("copy"); //$NON-NLS-1$
+        assertEquals("copy", copy.getTitle()); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that the mutators of the snapshot throw.
+     */
+    public void testMutators() {
+        ActionSequenceSnapshot snapshot = createDocument().freeze();
+        final ActionSequenceDocument frozenDoc = snapshot.getDocument();
+        final IActionSequenceInput input = snapshot.getInput("name"); //$NON-NLS-1$
+        final ActionDefinition action = (ActionDefinition) snapshot.getActionDefinitions().get(1);
+        final IActionLoop loop = (IActionLoop) snapshot.getExecutableChildren().get(1);
+
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                frozenDoc.setTitle("changed"); //$NON-NLS-1$
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                frozenDoc.createInput("input2", STRING_TYPE); //$NON-NLS-1$
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                input.setDefaultValue("changed"); //$NON-NLS-1$
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                action.addInput("other", STRING_TYPE); //$NON-NLS-1$
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                loop.setLoopOn("other"); //$NON-NLS-1$
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                action.delete();
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                frozenDoc.getMetadata().setDocumentName("changed"); //$NON-NLS-1$
+            }
+        });
+        assertEquals(2, snapshot.getDocument().getInputs().length);
+        assertEquals("rows", loop.getLoopOn()); //$NON-NLS-1$
+    }
+
+    /**
+     * Tests that views of a snapshot use their own parameter manager and share
+     * the read only document.
+     */
+    public void testParameterManagerView() {
+        ActionSequenceSnapshot snapshot = createDocument().freeze();
+        snapshot.getDocument().getMetadata().documentName = "a.xaction"; //$NON-NLS-1$
+        IActionParameterMgr actionParameterMgr = new CachingActionParameterMgr(null);
+        ActionSequenceSnapshot view = snapshot.withParameterManager(actionParameterMgr);
+        assertSame(view, view.withParameterManager(actionParameterMgr));
+        assertSame(snapshot, snapshot.withParameterManager(null));
+
+        assertSame(snapshot.getDocument().getDocument(), view.getDocument().getDocument());
+        assertEquals("a.xaction", view.getDocument().getMetadata().getDocumentName()); //$NON-NLS-1$
+        assertEquals(2, view.getActionDefinitions().size());
+        ActionDefinition action = (ActionDefinition) view.getActionDefinitions().get(1);
+        assertSame(actionParameterMgr, action.getActionParameterMgr());
+        assertNull(((ActionDefinition) snapshot.getActionDefinitions().get(1)).getActionParameterMgr());
+        assertEquals(1, view.getDocument().getReferencesTo(view.getInput("rows")).length); //$NON-NLS-1$
+    }
+
+    private void assertReadOnly(Runnable mutator) {
+        try {
+            mutator.run();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import static java.util.Arrays.asList;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+import static org.pentaho.actionsequence.dom.ActionSequenceDocumentTest.assertCollected;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.RESULTSET_TYPE;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.actionsequence.dom.actions.ActionDefinition;
+import org.pentaho.actionsequence.dom.actions.JavascriptAction;
+import static org.pentaho.actionsequence.dom.actions.JavascriptAction.SCRIPT_ELEMENT;
+import org.pentaho.actionsequence.dom.actions.SqlQueryAction;
+
+/**
+ * Tests for the <code>ActionSequenceValidator</code> class.
+ */
+public class ActionSequenceValidatorTest extends TestCase {
+
+    /**
+     * Tests that the errors track a full validation of the document as it is
+     * modified, and that only the affected statements are validated again.
+     */
+    public void testIncrementalValidation() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        ActionDefinition script = (ActionDefinition) doc.addAction(JavascriptAction.class);
+        script.addInput(SCRIPT_ELEMENT, STRING_TYPE);
+        IActionLoop loop = doc.addLoop("rows"); //$NON-NLS-1$
+        loop.setLoopOn("rows"); //$NON-NLS-1$
+        for (int i = 0; i < 10; i++) {
+            doc.addAction(SqlQueryAction.class);
+        }
+
+        ActionSequenceValidator validator = new ActionSequenceValidator(doc);
+        assertConsistent(doc, validator);
+        Set errors = new HashSet(validator.getErrors());
+        long validationCount = validator.getValidationCount();
+
+        // Only the script depends on string variables. It is validated once
+        // when the input is added and once when its request source is added.
+        IActionSequenceInput input = doc.createInput(SCRIPT_ELEMENT, STRING_TYPE);
+        assertEquals(validationCount + 2, validator.getValidationCount());
+        assertConsistent(doc, validator);
+        assertFalse(errors.equals(validator.getErrors()));
+
+        ((ActionSequenceInput) input).setDefaultValue("value"); //$NON-NLS-1$
+        assertConsistent(doc, validator);
+        script.addOutput("result", STRING_TYPE); //$NON-NLS-1$
+        assertConsistent(doc, validator);
+
+        ActionDefinition producer = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        producer.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        assertConsistent(doc, validator);
+        doc.getRootLoop().add(producer, 0);
+        assertConsistent(doc, validator);
+
+        input.delete();
+        assertConsistent(doc, validator);
+        loop.delete();
+        assertConsistent(doc, validator);
+
+        validator.dispose();
+        errors = new HashSet(validator.getErrors());
+        script.delete();
+        assertEquals(errors, validator.getErrors());
+    }
+
+    /**
+     * Tests that a rolled back batch leaves the validator consistent with the
+     * restored document, and that wrappers obtained before the batch can
+     * still be used to modify the document.
+     */
+    public void testRollback() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        ActionDefinition script = (ActionDefinition) doc.addAction(JavascriptAction.class);
+        script.addInput(SCRIPT_ELEMENT, STRING_TYPE);
+        IActionLoop loop = doc.addLoop("rows"); //$NON-NLS-1$
+        loop.setLoopOn("rows"); //$NON-NLS-1$
+        loop.addAction(SqlQueryAction.class);
+        ActionSequenceValidator validator = new ActionSequenceValidator(doc);
+        Set errors = new HashSet(validator.getErrors());
+
+        doc.beginBatch();
+        doc.createInput(SCRIPT_ELEMENT, STRING_TYPE);
+        ActionDefinition producer = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        producer.addOutput("rows", RESULTSET_TYPE); //$NON-NLS-1$
+        doc.moveStatement(script, loop, 0);
+        loop.delete();
+        doc.rollback();
+        assertEquals(errors, validator.getErrors());
+        assertConsistent(doc, validator);
+        assertSame(loop.getElement().getParent(), doc.getRootLoop().getElement());
+
+        loop.addAction(SqlQueryAction.class);
+        assertConsistent(doc, validator);
+        script.addOutput("result", STRING_TYPE); //$NON-NLS-1$
+        assertConsistent(doc, validator);
+        doc.createInput(SCRIPT_ELEMENT, STRING_TYPE);
+        assertConsistent(doc, validator);
+        assertFalse(errors.equals(validator.getErrors()));
+        validator.dispose();
+    }
+
+    /**
+     * Tests that a validator that is dropped without being disposed is
+     * collected while its document is still in use, and that its listener is
+     * removed from the document on the next event.
+     */
+    public void testUndisposedValidator() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        doc.addAction(JavascriptAction.class);
+        assertCollected(createValidator(doc));
+        assertNotNull(doc.listenerRegistry.getListeners());
+        doc.createInput(SCRIPT_ELEMENT, STRING_TYPE);
+        assertNull(doc.listenerRegistry.getListeners());
+    }
+
+    private static Reference createValidator(ActionSequenceDocument doc) {
+        ActionSequenceValidator validator = new ActionSequenceValidator(doc);
+        assertFalse(validator.getErrors().isEmpty());
+        return new WeakReference(validator);
+    }
+
+    private static void assertConsistent(ActionSequenceDocument doc, ActionSequenceValidator validator) {
+        assertEquals(new HashSet(asList(doc.validate())), validator.getErrors());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ * 
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import java.util.Map;
+import junit.framework.TestCase;
+import org.dom4j.Element;
+import static org.pentaho.actionsequence.dom.actions.ActionFactory.getActionDefinition;
+
+/**
+ * Tests for the <code>ActionFactory</code> class.
+ */
+public class ActionFactoryTest extends TestCase {
+
+    /**
+     * Components shared by several action classes must still resolve to the
+     * class whose <code>accepts</code> method matches the element.
+     */
+    public void testSharedComponentName() throws Exception {
+        SqlQueryAction queryAction = new SqlQueryAction();
+        assertEquals(SqlQueryAction.class, getActionDefinition(queryAction.getElement(), null).getClass());
+
+        SqlConnectionAction connectionAction = new SqlConnectionAction();
+        assertEquals(SqlConnectionAction.class, getActionDefinition(connectionAction.getElement(), null).getClass());
+
+        BarChartAction barChartAction = new BarChartAction();
+        assertEquals(BarChartAction.class, getActionDefinition(barChartAction.getElement(), null).getClass());
+        PieChartAction pieChartAction = new PieChartAction();
+        assertEquals(PieChartAction.class, getActionDefinition(pieChartAction.getElement(), null).getClass());
+    }
+
+    /**
+     * Classes that handle more than one component are found under each of
+     * their component names.
+     */
+    public void testComponentNameAliases() throws Exception {
+        JFreeReportAction reportAction = new JFreeReportAction();
+        Element element = reportAction.getElement();
+        assertEquals(JFreeReportAction.class, getActionDefinition(element, null).getClass());
+
+        element.element("component-name").setText("ReportWizardSpecComponent"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(JFreeReportAction.class, getActionDefinition(element, null).getClass());
+    }
+
+    /**
+     * Unknown components fall back to the generic action definition.
+     */
+    public void testUnknownComponent() throws Exception {
+        ActionDefinition actionDefinition = new ActionDefinition();
+        actionDefinition.setComponentName("com.example.UnknownComponent"); //$NON-NLS-1$
+        assertEquals(ActionDefinition.class, getActionDefinition(actionDefinition.getElement(), null).getClass());
+    }
+
+    /**
+     * Replacing the class registered under an id takes effect although the
+     * number of registered classes does not change.
+     */
+    public void testReplacedPlugin() throws Exception {
+        SqlQueryAction queryAction = new SqlQueryAction();
+        getActionDefinition(queryAction.getElement(), null);
+        String actionId = null;
+        for (Map.Entry<String, Class> entry : ActionFactory.pluginActions.entrySet()) {
+            if (entry.getValue() == SqlQueryAction.class) {
+                actionId = entry.getKey();
+            }
+        }
+        assertNotNull(actionId);
+        try {
+            ActionFactory.registerAction(actionId, CustomQueryAction.class);
+            assertEquals(CustomQueryAction.class, getActionDefinition(queryAction.getElement(), null).getClass());
+        } finally {
+            ActionFactory.registerAction(actionId, SqlQueryAction.class);
+        }
+        assertEquals(SqlQueryAction.class, getActionDefinition(queryAction.getElement(), null).getClass());
+    }
+
+    /**
+     * Every mutator of the plugin action map invalidates the dispatch index,
+     * and its views cannot be used to modify it.
+     */
+    public void testPluginActionMap() throws Exception {
+        SqlQueryAction queryAction = new SqlQueryAction();
+        getActionDefinition(queryAction.getElement(), null);
+        String actionId = null;
+        for (Map.Entry<String, Class> entry : ActionFactory.pluginActions.entrySet()) {
+            if (entry.getValue() == SqlQueryAction.class) {
+                actionId = entry.getKey();
+            }
+        }
+        try {
+            ActionFactory.pluginActions.computeIfPresent(actionId, (id, actionClass) -> CustomQueryAction.class);
+            assertEquals(CustomQueryAction.class, getActionDefinition(queryAction.getElement(), null).getClass());
+        } finally {
+            ActionFactory.pluginActions.replace(actionId, SqlQueryAction.class);
+        }
+        assertEquals(SqlQueryAction.class, getActionDefinition(queryAction.getElement(), null).getClass());
+
+        try {
+            ActionFactory.pluginActions.values().remove(SqlQueryAction.class);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            ActionFactory.pluginActions.entrySet().iterator().next().setValue(CustomQueryAction.class);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(SqlQueryAction.class, ActionFactory.getActionDefinition(actionId));
+    }
+
+    public static class CustomQueryAction extends SqlQueryAction {
+
+        public CustomQueryAction(Element actionDefElement, IActionParameterMgr actionParameterMgr) {
+            super(actionDefElement, actionParameterMgr);
+        }
+    }
+}
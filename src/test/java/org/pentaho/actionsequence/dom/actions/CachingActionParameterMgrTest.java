@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import junit.framework.TestCase;
+import org.pentaho.actionsequence.dom.ActionInput;
+import org.pentaho.actionsequence.dom.ActionSequenceDocument;
+import org.pentaho.actionsequence.dom.IActionInput;
+import org.pentaho.actionsequence.dom.IActionOutput;
+import org.pentaho.actionsequence.dom.IActionResource;
+import static org.pentaho.actionsequence.dom.IActionSequenceDocument.STRING_TYPE;
+import org.pentaho.commons.connection.IPentahoStreamSource;
+
+/**
+ * Tests for the <code>CachingActionParameterMgr</code> class.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class CachingActionParameterMgrTest extends TestCase {
+
+    private final HashMap values = new HashMap();
+
+    private int resolveCount;
+
+    private int replaceCount;
+
+    private final IActionParameterMgr actionParameterMgr = new IActionParameterMgr() {
+        @Override
+        public Object getInputValue(IActionInput actionInput) {
+            resolveCount++;
+            return values.get(((ActionInput) actionInput).getReferencedVariableName());
+        }
+
+        @Override
+        public String replaceParameterReferences(String inputString) {
+            replaceCount++;
+            return inputString.replace("{count}", String.valueOf(values.get("count"))); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        @Override
+        public IPentahoStreamSource getDataSource(IActionResource actionResource) {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream(IActionResource actionResource) {
+            return null;
+        }
+
+        @Override
+        public IPentahoStreamSource getDataSource(IActionInput actionInput) {
+            return null;
+        }
+
+        @Override
+        public void setOutputValue(IActionOutput actionOutput, Object value) {
+            values.put(actionOutput.getPublicName(), value);
+        }
+
+        @Override
+        public String getString(IActionResource actionResource) {
+            return null;
+        }
+    };
+
+    /**
+     * Tests that values are resolved once per generation and that the typed
+     * accessors read the cached values.
+     */
+    public void testCaching() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        ActionDefinition action = (ActionDefinition) doc.addAction(SqlQueryAction.class);
+        IActionOutput output = action.addOutput("count", STRING_TYPE); //$NON-NLS-1$
+        CachingActionParameterMgr cache = new CachingActionParameterMgr(actionParameterMgr);
+        ActionInput count = new ActionInput(action.addInput("count", STRING_TYPE).getElement(), cache); //$NON-NLS-1$
+        ActionInput flag = new ActionInput(action.addInput("flag", STRING_TYPE).getElement(), cache); //$NON-NLS-1$
+        ActionInput missing = new ActionInput(action.addInput("missing", STRING_TYPE).getElement(), cache); //$NON-NLS-1$
+        values.put("count", "12"); //$NON-NLS-1$ //$NON-NLS-2$
+        values.put("flag", "{count}"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(12, count.getIntValue(0));
+            assertEquals(Integer.valueOf(12), count.getIntValue());
+            assertEquals("12", flag.getStringValue()); //$NON-NLS-1$
+            assertFalse(flag.getBooleanValue(true));
+            assertEquals(7, missing.getIntValue(7));
+            assertNull(missing.getBooleanValue());
+        }
+        assertEquals(3, resolveCount);
+        assertEquals(2, replaceCount);
+        assertEquals(0, cache.getGeneration());
+
+        values.put("flag", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("12", flag.getStringValue()); //$NON-NLS-1$
+        cache.invalidate(flag);
+        assertTrue(flag.getBooleanValue(false));
+        assertSame(Boolean.TRUE, flag.getBooleanValue());
+
+        cache.setOutputValue(output, "13"); //$NON-NLS-1$
+        assertEquals(1, cache.getGeneration());
+        assertEquals(13, count.getIntValue(0));
+    }
+}
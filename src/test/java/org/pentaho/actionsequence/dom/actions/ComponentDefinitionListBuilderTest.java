@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import junit.framework.TestCase;
+import org.pentaho.actionsequence.dom.ActionInputConstant;
+import org.pentaho.actionsequence.dom.ActionSequenceDocument;
+import org.pentaho.actionsequence.dom.ActionSequenceDocumentAdapter;
+import org.pentaho.actionsequence.dom.IActionDefinition;
+import org.pentaho.actionsequence.dom.IActionInput;
+import org.pentaho.actionsequence.dom.IActionInputVariable;
+import org.pentaho.actionsequence.dom.SimpleActionInputVariable;
+
+/**
+ * Tests for appending to the parameter lists of the component definition.
+ */
+public class ComponentDefinitionListBuilderTest extends TestCase {
+
+    public void testAppendMsgInputs() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        FormatMsgAction action = (FormatMsgAction) doc.addAction(FormatMsgAction.class);
+        action.addMsgInput(new ActionInputConstant("first", null)); //$NON-NLS-1$
+        final int[] events = new int[1];
+        doc.addListener(new ActionSequenceDocumentAdapter() {
+            @Override
+            public void actionChanged(IActionDefinition changedAction) {
+                events[0]++;
+            }
+        });
+
+        ComponentDefinitionListBuilder builder = action.appendMsgInputs();
+        for (int i = 0; i < 100; i++) {
+            builder.addInput(new ActionInputConstant("value" + i, null)); //$NON-NLS-1$
+        }
+        builder.close();
+        assertEquals(1, events[0]);
+
+        IActionInput[] msgInputs = action.getMsgInputs();
+        assertEquals(101, msgInputs.length);
+        assertEquals("first", msgInputs[0].getStringValue()); //$NON-NLS-1$
+        assertEquals("value99", msgInputs[100].getStringValue()); //$NON-NLS-1$
+        assertEquals("msgInput101", msgInputs[100].getName()); //$NON-NLS-1$
+
+        action.setMsgInputs(new IActionInput[]{new ActionInputConstant("only", null)}); //$NON-NLS-1$
+        msgInputs = action.getMsgInputs();
+        assertEquals(1, msgInputs.length);
+        assertEquals("only", msgInputs[0].getStringValue()); //$NON-NLS-1$
+    }
+
+    public void testAddAttachments() {
+        ActionSequenceDocument doc = new ActionSequenceDocument();
+        EmailAction action = (EmailAction) doc.addAction(EmailAction.class);
+        IActionInputVariable[] variables = new IActionInputVariable[]{
+            new SimpleActionInputVariable("report", "content"), //$NON-NLS-1$ //$NON-NLS-2$
+            new SimpleActionInputVariable("chart", "content")}; //$NON-NLS-1$ //$NON-NLS-2$
+        action.addAttachments(variables);
+
+        EmailAttachment[] attachments = action.getAttachments();
+        assertEquals(2, attachments.length);
+        assertEquals("report", attachments[0].getName()); //$NON-NLS-1$
+        assertEquals("chart", attachments[1].getName()); //$NON-NLS-1$
+        assertEquals("chart", attachments[1].getContentParam().getName()); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002 - 2017 Hitachi Vantara.  All rights reserved.
+ *
+ * This software was developed by Hitachi Vantara and is provided under the terms
+ * of the Mozilla Public License, Version 1.1, or any later version. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.mozilla.org/MPL/MPL-1.1.txt. TThe Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the Mozilla Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.actionsequence.dom.actions;
+
+import java.io.InputStream;
+import static java.util.Arrays.asList;
+import java.util.HashMap;
+import junit.framework.TestCase;
+import org.pentaho.actionsequence.dom.ActionInputConstant;
+import org.pentaho.actionsequence.dom.IActionInput;
+import org.pentaho.actionsequence.dom.IActionOutput;
+import org.pentaho.actionsequence.dom.IActionResource;
+import org.pentaho.commons.connection.IPentahoStreamSource;
+
+/**
+ * Tests for the <code>ParameterTemplate</code> class.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ParameterTemplateTest extends TestCase {
+
+    private final HashMap parameters = new HashMap();
+
+    private int replaceCount;
+
+    private final ITemplateParameterMgr parameterMgr = new ITemplateParameterMgr() {
+        @Override
+        public String getParameterValue(String name) {
+            return (String) parameters.get(name);
+        }
+
+        @Override
+        public Object getInputValue(IActionInput actionInput) {
+            return null;
+        }
+
+        @Override
+        public String replaceParameterReferences(String inputString) {
+            replaceCount++;
+            return inputString;
+        }
+
+        @Override
+        public IPentahoStreamSource getDataSource(IActionResource actionResource) {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream(IActionResource actionResource) {
+            return null;
+        }
+
+        @Override
+        public IPentahoStreamSource getDataSource(IActionInput actionInput) {
+            return null;
+        }
+
+        @Override
+        public void setOutputValue(IActionOutput actionOutput, Object value) {
+        }
+
+        @Override
+        public String getString(IActionResource actionResource) {
+            return null;
+        }
+    };
+
+    /**
+     * Tests parsing and rendering of literals, references, unknown
+     * parameters and unmatched braces.
+     */
+    public void testRender() {
+        parameters.put("region", "East"); //$NON-NLS-1$ //$NON-NLS-2$
+        parameters.put("year", "2006"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        ParameterTemplate template = ParameterTemplate.compile(
+                "select * from sales where region = '{region}' and year = {year}{unknown} {"); //$NON-NLS-1$
+        assertEquals(asList(new String[]{"region", "year", "unknown"}), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                asList(template.getParameterNames()));
+        assertEquals("select * from sales where region = 'East' and year = 2006{unknown} {", //$NON-NLS-1$
+                template.render(parameterMgr));
+
+        String literal = "no references } here"; //$NON-NLS-1$
+        assertSame(literal, ParameterTemplate.compile(literal).render(parameterMgr));
+        assertEquals("East", ParameterTemplate.compile("{region}").render(parameterMgr)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("", ParameterTemplate.compile("").render(parameterMgr)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Tests that action inputs render through the template when the parameter
+     * manager supports it.
+     */
+    public void testActionInput() {
+        parameters.put("year", "2006"); //$NON-NLS-1$ //$NON-NLS-2$
+        ActionInputConstant constant = new ActionInputConstant("year = {year}", parameterMgr); //$NON-NLS-1$
+        assertEquals("year = 2006", constant.getStringValue()); //$NON-NLS-1$
+        parameters.put("year", "2007"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("year = 2007", constant.getStringValue()); //$NON-NLS-1$
+        assertEquals("year = {year}", constant.getStringValue(false)); //$NON-NLS-1$
+        assertEquals(0, replaceCount);
+    }
+}